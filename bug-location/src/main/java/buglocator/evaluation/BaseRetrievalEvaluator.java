@@ -1,21 +1,25 @@
 package buglocator.evaluation;
 
 import buglocator.indexing.data.BugReport;
-import buglocator.indexing.utils.DateTimeJsonAdapter;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.BugLocatorRetriever;
+import buglocator.retrieval.QueryReduction;
 import buglocator.retrieval.RetrieverBase;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import buglocator.retrieval.data.Deadline;
+import buglocator.retrieval.data.QueryCounters;
+import buglocator.retrieval.data.Ranking;
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.FSDirectory;
-import org.joda.time.DateTime;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
@@ -25,31 +29,196 @@ import java.util.stream.Collectors;
  * Base class for retrieval evaluators.
  */
 public abstract class BaseRetrievalEvaluator {
-    protected final Gson gson;
+    public static final String SLOW_QUERY_LOG_HEADER =
+            "System;Method;Bug;Query ms;" + QueryCounters.CSV_HEADER;
+
     protected final String systemName;
     protected final Path indexPath;
     protected IndexSearcher sourceSearcher;
     protected RetrieverBase retriever;
+    private Map<Integer, String> filePathCache = new HashMap<>();
     private Map<String, Integer> fileIDCache = new HashMap<>();
     private Path dataPath;
+    private QueryReduction queryReduction = QueryReduction.none();
+    private int maxCandidates = 0;
+    private Similarity candidateSimilarity;
+    private Path runFolder = null;
+    private int runDepth = 10;
+    private boolean resume = false;
+    private boolean fullRanks = false;
+    private boolean snapshots = false;
+    private long postingsCacheBytes = 0;
+    private long deadlineNanos = 0;
+    private boolean chronological = false;
+    private long checkpointIntervalMillis = 60000;
+    private PrintWriter slowQueryLog = null;
+    private long slowQueryNanos = 0;
+    private final List<Long> queryLatencies = new ArrayList<>();
 
     public BaseRetrievalEvaluator(String systemName, Path indexPath, Path dataPath) {
-        // Create a JSON deserializer
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
-        gsonBuilder.registerTypeAdapter(DateTime.class, new DateTimeJsonAdapter());
-        gson = gsonBuilder.create();
-
         this.systemName = systemName;
         this.indexPath = indexPath;
         this.dataPath = dataPath;
     }
 
     /**
-     * @return A system evaluation or {@code null} if it is not possible.
+     * Sets the reduction applied to the queries of the evaluated retriever.
+     */
+    public void setQueryReduction(QueryReduction queryReduction) {
+        this.queryReduction = queryReduction;
+    }
+
+    /**
+     * Makes the evaluated retriever score only the best {@code maxCandidates} source files
+     * according to {@code candidateSimilarity}.
+     *
+     * @see BugLocatorRetriever#enableTwoStageRetrieval(int, Similarity)
+     */
+    public void setTwoStageRetrieval(int maxCandidates, Similarity candidateSimilarity) {
+        this.maxCandidates = maxCandidates;
+        this.candidateSimilarity = candidateSimilarity;
+    }
+
+    /**
+     * Persists the ranked list of every query in the given folder, reusing the lists persisted by
+     * a previous evaluation of the same system, method and parameters if the indexes and bug
+     * reports didn't change since then.
+     *
+     * @param runFolder Folder of the run files or {@code null} to always perform the retrieval.
+     * @param runDepth  Length of the persisted ranked lists, at least 10 since the metrics of the
+     *                  evaluation consider the first 10 files.
+     * @see RunFile
+     */
+    public void setRunFolder(Path runFolder, int runDepth) {
+        if (runDepth < 10) {
+            throw new IllegalArgumentException("The run depth must be at least 10");
+        }
+        this.runFolder = runFolder;
+        this.runDepth = runDepth;
+    }
+
+    /**
+     * Makes the evaluation find the rank of every file of the gold sets among all the scored
+     * files, besides retrieving the best ones, so that metrics can be computed at full depth.
+     *
+     * @see RankingMetrics#getFullMeanAveragePrecision()
+     */
+    public void setFullRanks(boolean fullRanks) {
+        this.fullRanks = fullRanks;
+    }
+
+    /**
+     * Makes the retriever start from the snapshot of its derived state saved in the source code
+     * index, so that its first queries are as fast as the rest. When there is no snapshot for the
+     * current indexes, the retriever derives all of that state before the first query and saves
+     * it.
+     *
+     * @see RetrieverBase#loadSnapshot()
+     */
+    public void setSnapshots(boolean snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Makes the evaluated retriever cache the decoded postings of the most recently queried terms
+     * of each index.
+     *
+     * @param maxBytes Budget of the cache of each index, 0 to read all postings from the indexes.
+     * @see BugLocatorRetriever#enablePostingsCache(long)
+     */
+    public void setPostingsCache(long maxBytes) {
+        this.postingsCacheBytes = maxBytes;
+    }
+
+    /**
+     * Gives every query a deadline, the rankings of the queries that reach it are partial and
+     * counted in the result of the evaluation.
+     *
+     * @param deadlineNanos Time from the start of each query to its deadline, 0 for no deadline.
+     * @see BugLocatorRetriever#locate(BugReport, int, Deadline)
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Replays the creation and resolution of the bug reports in chronological order instead of
+     * querying them in the order of the file. Every creation queries the retriever and every
+     * resolution adds the bug report to the history of similar bug reports of the next queries,
+     * which gives the same rankings without filtering the bug reports by date for each query.
+     *
+     * @see BugLocatorRetriever#enableBugHistory()
+     */
+    public void setChronological(boolean chronological) {
+        this.chronological = chronological;
+    }
+
+    /**
+     * Makes the evaluation continue from the last checkpoint saved by an interrupted evaluation
+     * of the same system, method and parameters. Checkpoints are only saved and found if the
+     * evaluation has a run folder.
+     *
+     * @see #setRunFolder(Path, int)
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * Sets how often the query runs of an evaluation in progress are saved to the checkpoints
+     * folder inside the run folder, 60 seconds by default.
+     */
+    public void setCheckpointInterval(long checkpointIntervalMillis) {
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    /**
+     * Logs the work counters and time of every query that takes at least the given time, one
+     * line per query in the format of {@link #SLOW_QUERY_LOG_HEADER}.
+     *
+     * @param slowQueryLog Destination of the log, or {@code null} to log nothing.
+     * @see RetrieverBase#getQueryCounters()
+     */
+    public void setSlowQueryLog(PrintWriter slowQueryLog, long thresholdMillis) {
+        this.slowQueryLog = slowQueryLog;
+        this.slowQueryNanos = thresholdMillis * 1000000;
+    }
+
+    /**
+     * @return A system evaluation or {@code null} if it is not possible. Evaluators of several
+     * methods return the evaluation of the first one.
      * @throws IOException
      */
     public EvaluationResult evaluate() throws IOException {
+        return evaluateAll().get(0);
+    }
+
+    /**
+     * Evaluates every method of this evaluator in a single pass over the bug reports.
+     *
+     * @return The evaluation of each method in the order of {@link #getMethodTags()}, with
+     * {@code null} for those that are not possible.
+     * @throws IOException
+     */
+    public List<EvaluationResult> evaluateAll() throws IOException {
+        Path bugReportsPath =
+                CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), systemName);
+        String[] methodTags = getMethodTags();
+        MethodEvaluation[] methods = new MethodEvaluation[methodTags.length];
+        boolean allReused = true;
+
+        for (int m = 0; m < methods.length; m++) {
+            methods[m] = new MethodEvaluation(methodTags[m]);
+            if (runFolder != null) {
+                methods[m].prepareRun(getMethodParameters(m), bugReportsPath);
+            }
+            allReused &= methods[m].reusedResult != null;
+        }
+
+        if (allReused) {
+            return Arrays.stream(methods).map(method -> method.reusedResult)
+                    .collect(Collectors.toList());
+        }
 
         FSDirectory sourceIndexDirectory =
                 FSDirectory.open(indexPath.resolve(Paths.get("source-code", systemName)));
@@ -57,30 +226,120 @@ public abstract class BaseRetrievalEvaluator {
                 new IndexSearcher(DirectoryReader.open(sourceIndexDirectory));
 
         retriever = setupRetriever();
+        retriever.setQueryReduction(queryReduction);
+        if (snapshots && !retriever.loadSnapshot()) {
+            retriever.warmUp();
+            retriever.saveSnapshot();
+        }
+        if (maxCandidates > 0) {
+            if (!(retriever instanceof BugLocatorRetriever)) {
+                throw new IllegalStateException(
+                        getLogTag() + " doesn't support two stage retrieval");
+            }
+            ((BugLocatorRetriever) retriever)
+                    .enableTwoStageRetrieval(maxCandidates, candidateSimilarity);
+        }
+        if (postingsCacheBytes > 0) {
+            if (!(retriever instanceof BugLocatorRetriever)) {
+                throw new IllegalStateException(
+                        getLogTag() + " doesn't support postings caches");
+            }
+            ((BugLocatorRetriever) retriever).enablePostingsCache(postingsCacheBytes);
+        }
+        if (chronological) {
+            if (!(retriever instanceof BugLocatorRetriever)) {
+                throw new IllegalStateException(
+                        getLogTag() + " doesn't support chronological replays");
+            }
+            ((BugLocatorRetriever) retriever).enableBugHistory();
+        }
 
-        int top1s = 0;
-        int top5s = 0;
-        int top10s = 0;
-        // Amount of actually performed queries. A query will not be performed if the
-        // corresponding bug report doesn't have the required field specified in the UseField
-        // parameter of this method.
-        int actualQueries = 0;
-        float reciprocalRankAccum = 0;
-        float averagePrecisionAccum = 0;
-        float precisionAccum = 0;
-        float recallAccum = 0;
+        long queryNanos = 0;
+        int firstLine = 0;
+
+        // Only the queries performed by this evaluation are counted, not those of a checkpoint
+        QueryCounters totalCounters = new QueryCounters();
+        queryLatencies.clear();
+
+        // All the checkpoints are saved together, so they are only resumed if every method that
+        // is still evaluated has one for the same bug report. The methods save them one after
+        // the other, those saved before an interruption go back to their previous save.
+        if (resume && runFolder != null) {
+            int position = Integer.MAX_VALUE;
+            for (MethodEvaluation method : methods) {
+                if (method.reusedResult == null) {
+                    position = Math.min(position,
+                            RunFile.getCheckpointPosition(method.checkpointPrefix));
+                }
+            }
+            List<Properties> checkpoints = new ArrayList<>();
+            for (MethodEvaluation method : methods) {
+                if (method.reusedResult == null && position >= 0) {
+                    checkpoints.add(method.readCheckpoint(position));
+                }
+            }
+            if (!checkpoints.isEmpty() && !checkpoints.contains(null)) {
+                firstLine = position;
+                queryNanos = Long.parseLong(checkpoints.get(0).getProperty(RunFile.QUERY_NANOS));
+                System.out.println(String.format("Resuming %s evaluation of system %s from " +
+                        "bug report %d\n", getLogTag(), systemName, firstLine + 1));
+            } else {
+                for (MethodEvaluation method : methods) {
+                    method.runs.clear();
+                    method.partialQueries = 0;
+                    method.savedRuns = -1;
+                }
+            }
+        }
+        long lastCheckpointTime = System.currentTimeMillis();
 
         System.out.println(
                 String.format("Beginning %s evaluation of system %s\n", getLogTag(), systemName));
 
-        List<String> lines = FileUtils.readLines(Paths.get(dataPath.toString(),
-                "processed-bug-reports", systemName + ".json").toFile());
-        int lineCount = lines.size();
+        List<BugReport> bugReports = CorpusFiles.readAll(bugReportsPath, BugReport.class);
+        int lineCount = bugReports.size();
+
+        // Bug reports without creation date don't use the history, they are queried last. The
+        // runs are put back in the order of the file, so that the metrics are accumulated in the
+        // same order as in the other evaluations.
+        List<BugReport> resolutions = Collections.emptyList();
+        Map<String, Integer> filePositions = null;
+        if (chronological) {
+            filePositions = new HashMap<>();
+            for (int i = 0; i < bugReports.size(); i++) {
+                filePositions.putIfAbsent(bugReports.get(i).getKey(), i);
+            }
+            bugReports.sort(Comparator.comparingLong(bugReport ->
+                    bugReport.getCreationDate() == null ? Long.MAX_VALUE :
+                            bugReport.getCreationDate().getMillis()));
+            resolutions = bugReports.stream()
+                    .filter(bugReport -> bugReport.getResolutionDate() != null &&
+                            bugReport.getResolutionDate().getMillis() >= 1)
+                    .sorted(Comparator.comparingLong(
+                            bugReport -> bugReport.getResolutionDate().getMillis()))
+                    .collect(Collectors.toList());
+        }
+        int nextResolution = 0;
         int notificationInterval = lineCount / 10;
 
-        for (int i = 0; i < lines.size(); i++) {
-            String jsonLine = lines.get(i);
-            BugReport bugReport = gson.fromJson(jsonLine, BugReport.class);
+        for (int i = firstLine; i < bugReports.size(); i++) {
+            if (runFolder != null && i > firstLine &&
+                    System.currentTimeMillis() - lastCheckpointTime >= checkpointIntervalMillis) {
+                for (MethodEvaluation method : methods) {
+                    method.saveCheckpoint(i, queryNanos);
+                }
+                lastCheckpointTime = System.currentTimeMillis();
+            }
+
+            BugReport bugReport = bugReports.get(i);
+
+            // Resolutions at the same time as the creation are replayed after the query
+            while (nextResolution < resolutions.size() && bugReport.getCreationDate() != null &&
+                    resolutions.get(nextResolution).getResolutionDate().getMillis() <
+                            bugReport.getCreationDate().getMillis()) {
+                ((BugLocatorRetriever) retriever)
+                        .addToBugHistory(resolutions.get(nextResolution++));
+            }
 
             if (i % notificationInterval == 0) {
                 System.out.println(
@@ -88,131 +347,294 @@ public abstract class BaseRetrievalEvaluator {
                                 systemName, getLogTag(), i + 1, lineCount));
             }
 
-            ScoreDoc[] scoredFiles = retriever.locate(bugReport, 10);
-            // If the bug report doesn't have the required information it will return null
-            if (scoredFiles == null) {
-                continue;
-            }
-
-            actualQueries++;
-            Set<Integer> goldSet = bugReport.getFixedFiles()
-                    .stream()
-                    .map(f -> {
-                        try {
-                            return getSourceFileID(f);
-                        } catch (IOException e) {
-                            System.err.println("Index read error at gold set collection");
-                        }
-                        return null;
-                    }).collect(Collectors.toSet());
-
-            int topRank = getTopRank(goldSet, scoredFiles);
-
-            if (topRank > 0 && topRank <= 10) {
-                top10s++;
-                if (topRank <= 5) {
-                    top5s++;
-                    if (topRank == 1) {
-                        top1s++;
+            Set<String> goldSet = new LinkedHashSet<>(bugReport.getFixedFiles());
+            int[] goldDocs = fullRanks ? getSourceFileIDs(goldSet) : new int[0];
+
+            Deadline deadline =
+                    deadlineNanos > 0 ? Deadline.after(deadlineNanos) : Deadline.NONE;
+            long queryStart = System.nanoTime();
+            Ranking[] rankings = rank(bugReport, runDepth, goldDocs, deadline);
+            long elapsedNanos = System.nanoTime() - queryStart;
+            queryNanos += elapsedNanos;
+
+            if (Arrays.stream(rankings).anyMatch(Objects::nonNull)) {
+                QueryCounters counters = retriever.getQueryCounters();
+                totalCounters.add(counters);
+                queryLatencies.add(elapsedNanos);
+                if (slowQueryLog != null && elapsedNanos >= slowQueryNanos) {
+                    slowQueryLog.println(String.join(";", Arrays.<CharSequence>asList(
+                            systemName,
+                            getLogTag(),
+                            bugReport.getKey(),
+                            String.valueOf(elapsedNanos / 1e6F),
+                            counters.getCSVLine())));
+                    slowQueryLog.flush();
+                }
+            }
+
+            for (int m = 0; m < methods.length; m++) {
+                // If the bug report doesn't have the required information it will return null
+                if (rankings[m] == null || methods[m].reusedResult != null) {
+                    continue;
+                }
+
+                if (rankings[m].isPartial()) {
+                    methods[m].partialQueries++;
+                }
+                QueryRun run = new QueryRun(bugReport.getKey(), goldSet);
+                for (ScoreDoc scoredFile : rankings[m].getTopDocs()) {
+                    run.addRankedFile(getSourceFilePath(scoredFile.doc), scoredFile.score);
+                }
+                if (fullRanks) {
+                    int g = 0;
+                    for (String goldFile : goldSet) {
+                        run.setRelevantRank(goldFile,
+                                goldDocs[g] < 0 ? 0 : rankings[m].getRank(goldDocs[g]));
+                        g++;
                     }
                 }
+                methods[m].runs.add(run);
             }
+        }
 
-            reciprocalRankAccum += topRank > 0 ? 1F / topRank : 0;
-            averagePrecisionAccum += calculateAveragePrecision(goldSet, scoredFiles);
-            int relevantRetrieved = getRelevantRetrieved(goldSet, scoredFiles);
-            precisionAccum += relevantRetrieved / ((float) scoredFiles.length);
-            recallAccum += relevantRetrieved / ((float) goldSet.size());
-        }
-
-        EvaluationResult result = null;
-
-        if (actualQueries > 0) {
-            float top1Precision = (float) top1s / actualQueries;
-            float top5Precision = (float) top5s / actualQueries;
-            float top10Precision = (float) top10s / actualQueries;
-            float meanReciprocalRank = reciprocalRankAccum / actualQueries;
-            float meanAveragePrecision = averagePrecisionAccum / actualQueries;
-            float averagePrecision = precisionAccum / actualQueries;
-            float averageRecall = recallAccum / actualQueries;
-
-            result = new EvaluationResult(
-                    systemName,
-                    actualQueries,
-                    top1Precision,
-                    top5Precision,
-                    top10Precision,
-                    meanReciprocalRank,
-                    meanAveragePrecision,
-                    averagePrecision,
-                    averageRecall);
-        } else {
-            System.err.println("No valid queries for system " + systemName);
+        List<EvaluationResult> results = new ArrayList<>();
+        for (MethodEvaluation method : methods) {
+            results.add(method.finish(queryNanos, totalCounters, filePositions));
         }
 
         System.out.println(
                 String.format("\nFinished %s evaluation for system %s\n", getLogTag(), systemName));
         System.out.println("--------\n");
 
-        return result;
+        return results;
     }
 
-    private int getSourceFileID(String fileName) throws IOException {
-        if (!fileIDCache.containsKey(fileName)) {
-            fileIDCache.put(fileName, sourceSearcher.search(
-                    new TermQuery(new Term("path", fileName)), 1).scoreDocs[0].doc);
-        }
+    /**
+     * @return The time taken by each query performed by the last evaluation in nanoseconds, in
+     * the order of the bug reports. Queries that no method could answer aren't included.
+     */
+    public long[] getQueryLatencies() {
+        return queryLatencies.stream().mapToLong(Long::longValue).toArray();
+    }
 
-        return fileIDCache.get(fileName);
+    /**
+     * Retrieves the ranked source files of a bug report for every method.
+     *
+     * @param goldDocs Documents whose rank among all the scored ones is required.
+     * @return The rankings of each method in the order of {@link #getMethodTags()}, {@code null}
+     * for those that can't use the bug report as query.
+     * @throws IOException
+     * @see RetrieverBase#rank(BugReport, int, int[], Deadline)
+     */
+    protected Ranking[] rank(BugReport bugReport, int maxResults, int[] goldDocs,
+                             Deadline deadline) throws IOException {
+        return new Ranking[]{retriever.rank(bugReport, maxResults, goldDocs, deadline)};
     }
 
-    private int getRelevantRetrieved(Set<Integer> goldSet, ScoreDoc[] scoredFiles) {
-        return (int) Arrays.stream(scoredFiles).filter(sd -> goldSet.contains(sd.doc)).count();
+    /**
+     * @return The methods evaluated, by default only the one of this evaluator's log tag.
+     */
+    protected String[] getMethodTags() {
+        return new String[]{getLogTag()};
     }
 
-    private float calculateAveragePrecision(Set<Integer> goldSet, ScoreDoc[] scoredFiles) {
-        float totalRelevant = Math.min(goldSet.size(), scoredFiles.length);
-        if (totalRelevant == 0) {
-            return 0;
+    /**
+     * @return The parameters of a method in {@link #getMethodTags()}.
+     */
+    protected String getMethodParameters(int method) {
+        return getParameters();
+    }
+
+    /**
+     * Query runs and run files of one of the evaluated methods.
+     */
+    private class MethodEvaluation {
+        private final String logTag;
+
+        // Runs of the actually performed queries. A query will not be performed if the
+        // corresponding bug report doesn't have the required field specified in the UseField
+        // parameter of this method.
+        private final List<QueryRun> runs = new ArrayList<>();
+        private int partialQueries = 0;
+        // Amount of runs in the checkpoint, -1 until the method starts or resumes it
+        private int savedRuns = -1;
+        private final Properties runInfo = new Properties();
+        private Path runPrefix = null;
+        private Path checkpointPrefix = null;
+        private EvaluationResult reusedResult = null;
+
+        MethodEvaluation(String logTag) {
+            this.logTag = logTag;
+        }
+
+        /**
+         * Identifies the run files of the method, reusing its run if it exists.
+         */
+        void prepareRun(String parameters, Path bugReportsPath) throws IOException {
+            runInfo.setProperty(RunFile.SYSTEM, systemName);
+            runInfo.setProperty(RunFile.METHOD, logTag);
+            runInfo.setProperty(RunFile.PARAMETERS, String.format(
+                    "%s, queryReduction=%s, candidates=%d, candidateSimilarity=%s%s%s%s",
+                    parameters, queryReduction, maxCandidates,
+                    maxCandidates > 0 ? candidateSimilarity : "-",
+                    fullRanks ? ", fullRanks=true" : "",
+                    deadlineNanos > 0 ? ", deadlineNanos=" + deadlineNanos : "",
+                    chronological ? ", chronological=true" : ""));
+            runInfo.setProperty(RunFile.DEPTH, String.valueOf(runDepth));
+            runInfo.setProperty(RunFile.FINGERPRINT, RunFile.getFingerprint(
+                    indexPath.resolve(Paths.get("source-code", systemName)),
+                    indexPath.resolve(Paths.get("source-code", systemName, "stats.txt")),
+                    indexPath.resolve(Paths.get("bug-reports", systemName)),
+                    bugReportsPath));
+
+            String key = RunFile.getKey(systemName, logTag,
+                    runInfo.getProperty(RunFile.PARAMETERS),
+                    runInfo.getProperty(RunFile.DEPTH),
+                    runInfo.getProperty(RunFile.FINGERPRINT));
+            runPrefix = runFolder.resolve(String.format("%s-%s-%s", systemName,
+                    logTag.replaceAll("\\W", ""), key.substring(0, 16)));
+            checkpointPrefix = runFolder.resolve("checkpoints").resolve(runPrefix.getFileName());
+
+            if (RunFile.exists(runPrefix)) {
+                System.out.println(String.format("Reusing the %s run of system %s from %s\n",
+                        logTag, systemName, runPrefix));
+                RunFile runFile = RunFile.read(runPrefix);
+                reusedResult = computeResult(runFile.getRuns(),
+                        Float.parseFloat(runFile.getInfo().getProperty(RunFile.QUERY_MILLIS)));
+                if (reusedResult != null) {
+                    reusedResult.setPartialQueries(Integer.parseInt(
+                            runFile.getInfo().getProperty(RunFile.PARTIAL_QUERIES, "0")));
+                }
+            }
+        }
+
+        /**
+         * Loads the runs of the method's checkpoint as saved at the given position.
+         *
+         * @return The properties of the checkpoint or {@code null} if it has no save there.
+         */
+        Properties readCheckpoint(int position) throws IOException {
+            RunFile checkpoint = RunFile.readCheckpoint(checkpointPrefix, position);
+            if (checkpoint == null) {
+                return null;
+            }
+
+            runs.addAll(checkpoint.getRuns());
+            savedRuns = runs.size();
+            partialQueries = Integer.parseInt(
+                    checkpoint.getInfo().getProperty(RunFile.PARTIAL_QUERIES, "0"));
+            return checkpoint.getInfo();
         }
 
-        float currentRelevant = 0;
+        /**
+         * Saves the runs of the bug reports before the given position to the checkpoint, which
+         * only receives the runs performed since its last save.
+         */
+        void saveCheckpoint(int position, long queryNanos) throws IOException {
+            if (reusedResult != null) {
+                return;
+            }
+
+            if (savedRuns < 0) {
+                FileUtils.forceMkdir(checkpointPrefix.getParent().toFile());
+                RunFile.delete(checkpointPrefix);
+                savedRuns = 0;
+            }
+
+            Properties checkpointInfo = new Properties();
+            checkpointInfo.putAll(runInfo);
+            checkpointInfo.setProperty(RunFile.POSITION, String.valueOf(position));
+            checkpointInfo.setProperty(RunFile.QUERY_NANOS, String.valueOf(queryNanos));
+            checkpointInfo.setProperty(RunFile.PARTIAL_QUERIES, String.valueOf(partialQueries));
+
+            new RunFile(checkpointInfo, runs.subList(savedRuns, runs.size()))
+                    .appendCheckpoint(checkpointPrefix);
+            savedRuns = runs.size();
+        }
+
+        /**
+         * Persists the run of the method, if it has a run folder, and computes its metrics.
+         *
+         * @param queryNanos    Time spent retrieving the results of every method.
+         * @param totalCounters Work done retrieving the results of every method.
+         * @param filePositions Position in the file of each bug report, to sort the runs of a
+         *                      chronological replay, or {@code null} if they are in file order.
+         */
+        EvaluationResult finish(long queryNanos, QueryCounters totalCounters,
+                                Map<String, Integer> filePositions) throws IOException {
+            if (reusedResult != null) {
+                return reusedResult;
+            }
+            if (filePositions != null) {
+                runs.sort(Comparator.comparingInt(run -> filePositions.get(run.getQueryId())));
+            }
 
-        float accumulator = 0;
-        for (int i = 0; i < scoredFiles.length; i++) {
-            // If the current document is relevant
-            if (goldSet.contains(scoredFiles[i].doc)) {
-                currentRelevant++;
-                accumulator += currentRelevant / (i + 1);
+            float averageQueryMillis = runs.isEmpty() ? 0 : queryNanos / 1e6F / runs.size();
+            if (runPrefix != null && !runs.isEmpty()) {
+                FileUtils.forceMkdir(runFolder.toFile());
+                runInfo.setProperty(RunFile.QUERY_MILLIS, String.valueOf(averageQueryMillis));
+                runInfo.setProperty(RunFile.PARTIAL_QUERIES, String.valueOf(partialQueries));
+                new RunFile(runInfo, runs).write(runPrefix);
+            }
+            if (checkpointPrefix != null) {
+                RunFile.delete(checkpointPrefix);
             }
 
-            if (currentRelevant == totalRelevant) {
-                break;
+            EvaluationResult result = computeResult(runs, averageQueryMillis);
+            if (result != null) {
+                result.setPartialQueries(partialQueries);
+            }
+            if (result != null && totalCounters.getQueries() > 0) {
+                result.setQueryCounters(totalCounters);
             }
+
+            return result;
+        }
+    }
+
+    private EvaluationResult computeResult(List<QueryRun> runs, float averageQueryMillis) {
+        if (runs.isEmpty()) {
+            System.err.println("No valid queries for system " + systemName);
+            return null;
         }
 
-        return accumulator / totalRelevant;
+        RankingMetrics metrics = new RankingMetrics(runs);
+        EvaluationResult result = metrics.toEvaluationResult(systemName, averageQueryMillis);
+        if (metrics.hasFullRanks()) {
+            result.setFullRankMetrics(metrics.getFullMeanReciprocalRank(),
+                    metrics.getFullMeanAveragePrecision(), metrics.getFullRecall());
+        }
+
+        return result;
     }
 
     /**
-     * Finds the first returned file belonging to the gold set.
-     *
-     * @param goldSet     A set of file IDs known to be the cause of this bug.
-     * @param scoredFiles The ranked files returned by the approach.
-     * @return The rank of the first file returned that is found in the gold set or {@code 0} if it
-     * is not found.
+     * @return The document ID of each file, -1 for the files that aren't in the index.
      */
-    private int getTopRank(Set<Integer> goldSet, ScoreDoc[] scoredFiles) {
-        int topRank = 0;
-
-        for (int i = 0; i < scoredFiles.length; i++) {
-            if (goldSet.contains(scoredFiles[i].doc)) {
-                topRank = i + 1;
-                break;
+    private int[] getSourceFileIDs(Set<String> fileNames) throws IOException {
+        int[] fileIDs = new int[fileNames.size()];
+        int i = 0;
+        for (String fileName : fileNames) {
+            Integer fileID = fileIDCache.get(fileName);
+            if (fileID == null) {
+                TopDocs file = sourceSearcher.search(new TermQuery(new Term("path", fileName)), 1);
+                fileID = file.scoreDocs.length > 0 ? file.scoreDocs[0].doc : -1;
+                fileIDCache.put(fileName, fileID);
             }
+            fileIDs[i++] = fileID;
         }
 
-        return topRank;
+        return fileIDs;
+    }
+
+    private String getSourceFilePath(int docID) throws IOException {
+        String path = filePathCache.get(docID);
+        if (path == null) {
+            path = sourceSearcher.doc(docID).get("path");
+            filePathCache.put(docID, path);
+        }
+
+        return path;
     }
 
     /**
@@ -223,4 +645,10 @@ public abstract class BaseRetrievalEvaluator {
     protected abstract RetrieverBase setupRetriever() throws IOException;
 
     protected abstract String getLogTag();
+
+    /**
+     * @return The parameters of the evaluated retriever, which identify its runs together with
+     * the system and the log tag.
+     */
+    protected abstract String getParameters();
 }
@@ -11,6 +11,8 @@ import java.nio.file.Path;
  * Evaluator using plain Lucene relevance to locate bugs.
  */
 public class BaselineEvaluator extends BaseRetrievalEvaluator {
+    static final String LOG_TAG = "Baseline (VSM)";
+
     private final UseField useField;
 
     public BaselineEvaluator(String systemName, UseField useField, Path indexPath, Path dataPath) {
@@ -25,6 +27,15 @@ public class BaselineEvaluator extends BaseRetrievalEvaluator {
 
     @Override
     protected String getLogTag() {
-        return "Baseline (VSM)";
+        return LOG_TAG;
+    }
+
+    @Override
+    protected String getParameters() {
+        return getParameters(useField);
+    }
+
+    static String getParameters(UseField useField) {
+        return "useField=" + useField;
     }
 }
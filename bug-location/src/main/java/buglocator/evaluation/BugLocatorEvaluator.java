@@ -17,7 +17,9 @@ import java.util.Arrays;
  * Retrieval evaluator for the BugLocator approach.
  */
 public class BugLocatorEvaluator extends BaseRetrievalEvaluator {
-    private final UseField useField;
+    static final String LOG_TAG = "BugLocator";
+
+    protected final UseField useField;
     private final float alpha;
 
     public BugLocatorEvaluator(
@@ -51,6 +53,11 @@ public class BugLocatorEvaluator extends BaseRetrievalEvaluator {
 
     @Override
     protected String getLogTag() {
-        return "BugLocator";
+        return LOG_TAG;
+    }
+
+    @Override
+    protected String getParameters() {
+        return "useField=" + useField + ", alpha=" + alpha;
     }
 }
@@ -0,0 +1,46 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.data.BugReport;
+import buglocator.retrieval.BugLocatorRetriever;
+import buglocator.retrieval.RetrieverBase.UseField;
+import buglocator.retrieval.data.Deadline;
+import buglocator.retrieval.data.Ranking;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Evaluates BugLocator and the baseline VSM in a single pass, computing the shared part of their
+ * scores once per bug report. Its evaluations and runs are the same as those of a
+ * {@link BugLocatorEvaluator} and a {@link BaselineEvaluator}.
+ *
+ * @see BugLocatorRetriever#rankWithBaseline(BugReport, int, int[])
+ */
+public class CombinedEvaluator extends BugLocatorEvaluator {
+    public CombinedEvaluator(
+            String systemName, UseField useField, Path indexPath, Path dataPath, float alpha) {
+        super(systemName, useField, indexPath, dataPath, alpha);
+    }
+
+    @Override
+    protected Ranking[] rank(BugReport bugReport, int maxResults, int[] goldDocs,
+                             Deadline deadline) throws IOException {
+        return ((BugLocatorRetriever) retriever)
+                .rankWithBaseline(bugReport, maxResults, goldDocs, deadline);
+    }
+
+    @Override
+    protected String[] getMethodTags() {
+        return new String[]{BugLocatorEvaluator.LOG_TAG, BaselineEvaluator.LOG_TAG};
+    }
+
+    @Override
+    protected String getMethodParameters(int method) {
+        return method == 0 ? getParameters() : BaselineEvaluator.getParameters(useField);
+    }
+
+    @Override
+    protected String getLogTag() {
+        return "BugLocator and Baseline (VSM)";
+    }
+}
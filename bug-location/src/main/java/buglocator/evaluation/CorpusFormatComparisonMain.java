@@ -0,0 +1,165 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.bug.reports.BugReportIndexBuilder;
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.data.SourceFileText;
+import buglocator.indexing.source.code.SourceCodeIndexBuilder;
+import buglocator.indexing.utils.BinaryCorpus;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.RetrieverBase.UseField;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares loading the corpora, building the indexes and evaluating every system from the JSON
+ * corpora, from gzip copies of them and from their {@link BinaryCorpus} conversion. Each format
+ * is written to a subfolder of a separate data folder with the same structure, unless it is
+ * already up to date.
+ */
+public class CorpusFormatComparisonMain {
+    private static final String[] corpusFolders = {"processed-source-code",
+            "processed-bug-reports"};
+    private static final Class<?>[] corpusTypes = {SourceFileText.class, BugReport.class};
+    private static final String[] formats = {"Plain", "Gzip", "Binary"};
+
+    public static void main(String[] args) throws IOException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+        Namespace arguments = options.arguments;
+        Path dataPath = options.dataPath;
+        float alpha = options.alpha;
+
+        Path convertedDataPath = Paths.get(arguments.getString("converted_data_folder"));
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println("Format;System;Input bytes;Load ms;Build ms;Evaluation ms;MAP");
+
+        for (String system : options.getSystems()) {
+            boolean dataFound = true;
+            for (String corpusFolder : corpusFolders) {
+                dataFound &= Files.exists(
+                        dataPath.resolve(corpusFolder).resolve(system + CorpusFiles.EXTENSION));
+            }
+            if (!dataFound) {
+                System.err.println("Data for \"" + system + "\" not found in data folder");
+                continue;
+            }
+
+            // Every format gets its own data folder, so that each evaluator reads the right one
+            Path[] formatDataPaths = new Path[formats.length];
+            for (int f = 0; f < formats.length; f++) {
+                formatDataPaths[f] = convertedDataPath.resolve(formats[f].toLowerCase());
+            }
+
+            for (int c = 0; c < corpusFolders.length; c++) {
+                Path file =
+                        dataPath.resolve(corpusFolders[c]).resolve(system + CorpusFiles.EXTENSION);
+                Path plainFile = formatDataPaths[0].resolve(corpusFolders[c])
+                        .resolve(system + CorpusFiles.EXTENSION);
+                Path compressedFile = formatDataPaths[1].resolve(corpusFolders[c])
+                        .resolve(system + CorpusFiles.COMPRESSED_EXTENSION);
+                Path binaryFile = formatDataPaths[2].resolve(corpusFolders[c])
+                        .resolve(system + CorpusFiles.BINARY_EXTENSION);
+
+                if (!CorpusFiles.isUpToDate(plainFile, file)) {
+                    FileUtils.copyFile(file.toFile(), plainFile.toFile());
+                }
+                if (!CorpusFiles.isUpToDate(compressedFile, file)) {
+                    FileUtils.forceMkdir(compressedFile.getParent().toFile());
+                    compress(file, compressedFile);
+                }
+                if (!CorpusFiles.isUpToDate(binaryFile, file)) {
+                    FileUtils.forceMkdir(binaryFile.getParent().toFile());
+                    BinaryCorpus.convert(file, binaryFile, corpusTypes[c]);
+                }
+            }
+
+            for (int f = 0; f < formats.length; f++) {
+                Path sourceCodeFile = CorpusFiles.resolve(
+                        formatDataPaths[f].resolve(corpusFolders[0]), system);
+                Path bugReportsFile = CorpusFiles.resolve(
+                        formatDataPaths[f].resolve(corpusFolders[1]), system);
+                long inputBytes = Files.size(sourceCodeFile) + Files.size(bugReportsFile);
+
+                System.out.println(String.format("Loading %s corpora of system %s",
+                        formats[f].toLowerCase(), system));
+                long startTime = System.nanoTime();
+                CorpusFiles.readAll(sourceCodeFile, SourceFileText.class);
+                CorpusFiles.readAll(bugReportsFile, BugReport.class);
+                long loadNanos = System.nanoTime() - startTime;
+
+                Path formatIndexPath = options.indexPath.resolve(formats[f].toLowerCase());
+                Path sourceCodePath = formatIndexPath.resolve(Paths.get("source-code", system));
+                Path bugReportsPath = formatIndexPath.resolve(Paths.get("bug-reports", system));
+                FileUtils.deleteDirectory(sourceCodePath.toFile());
+                FileUtils.deleteDirectory(bugReportsPath.toFile());
+                FileUtils.forceMkdir(sourceCodePath.toFile());
+                FileUtils.forceMkdir(bugReportsPath.toFile());
+
+                startTime = System.nanoTime();
+                new SourceCodeIndexBuilder().buildIndex(sourceCodeFile, sourceCodePath);
+                new BugReportIndexBuilder().buildIndex(bugReportsFile, bugReportsPath);
+                long buildNanos = System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                EvaluationResult result = new BugLocatorEvaluator(system,
+                        UseField.TITLE_AND_DESCRIPTION, formatIndexPath, formatDataPaths[f], alpha)
+                        .evaluate();
+                long evaluationNanos = System.nanoTime() - startTime;
+
+                outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                        formats[f],
+                        system,
+                        String.valueOf(inputBytes),
+                        String.valueOf(loadNanos / 1000000),
+                        String.valueOf(buildNanos / 1000000),
+                        String.valueOf(evaluationNanos / 1000000),
+                        String.valueOf(result == null ?
+                                Float.NaN : result.getMeanAveragePrecision()))));
+                outputWriter.flush();
+            }
+        }
+
+        outputWriter.close();
+    }
+
+    /**
+     * Writes a gzip copy of a corpus file.
+     */
+    private static void compress(Path file, Path compressedFile) throws IOException {
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(compressedFile),
+                1 << 16)) {
+            Files.copy(file, output);
+        }
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("CorpusFormatComparison")
+                .defaultHelp(true)
+                .description("Compares reading the corpora as JSON, compressed with gzip and " +
+                        "in the binary format.");
+
+        EvaluationOptions.addArguments(parser, "corpus-format-comparison.csv",
+                "corpus-format-index", "Folder where the indexes of each format will be rebuilt");
+
+        parser.addArgument("-c", "--converted-data-folder")
+                .help("Folder where the corpora are copied in every format. Those that are up " +
+                        "to date are reused")
+                .setDefault("converted-data");
+
+        return parser;
+    }
+}
@@ -0,0 +1,118 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.RetrieverBase.UseField;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates both approaches without deadline and with several per-query deadlines, reporting how
+ * often the deadline is reached and how much accuracy the partial rankings cost.
+ */
+public class DeadlineEvaluationMain {
+    public static void main(String[] args) throws IOException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+        Namespace arguments = options.arguments;
+        Path dataPath = options.dataPath;
+        Path indexPath = options.indexPath;
+        float alpha = options.alpha;
+
+        boolean snapshots = arguments.getBoolean("snapshots");
+
+        // Zero stands for no deadline
+        List<Double> deadlines = new ArrayList<>();
+        deadlines.add(0.0);
+        for (String deadline : arguments.getString("deadlines").split(",")) {
+            deadlines.add(Double.parseDouble(deadline.trim()));
+        }
+
+        options.buildIndexes();
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println("Method;System;Deadline ms;% Top 1;% Top 5;% Top 10;MRR;MAP;" +
+                "Average Precision;Average Recall;Amount of Queries;% Partial;MRR Loss;" +
+                "MAP Loss;ms/query;Max query ms");
+
+        for (String system : options.getSystems()) {
+            if (!Files.exists(
+                    CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), system))) {
+                System.err.println("Bug reports for \"" + system + "\" not found in data folder");
+                continue;
+            }
+
+            List<EvaluationResult> references = null;
+            for (double deadline : deadlines) {
+                CombinedEvaluator evaluator = new CombinedEvaluator(system,
+                        UseField.TITLE_AND_DESCRIPTION, indexPath, dataPath, alpha);
+                evaluator.setSnapshots(snapshots);
+                evaluator.setDeadline((long) (deadline * 1e6));
+                List<EvaluationResult> results = evaluator.evaluateAll();
+                if (references == null) {
+                    references = results;
+                }
+                long maxQueryNanos =
+                        Arrays.stream(evaluator.getQueryLatencies()).max().orElse(0);
+
+                String[] methods = evaluator.getMethodTags();
+                for (int m = 0; m < methods.length; m++) {
+                    EvaluationResult result = results.get(m);
+                    EvaluationResult reference = references.get(m);
+                    if (result == null || reference == null) {
+                        continue;
+                    }
+
+                    outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                            methods[m],
+                            system,
+                            deadline > 0 ? String.valueOf(deadline) : "none",
+                            result.getCSVLine(),
+                            String.valueOf(100F * result.getPartialQueries() /
+                                    result.getActualQueries()),
+                            String.valueOf(reference.getMeanReciprocalRank() -
+                                    result.getMeanReciprocalRank()),
+                            String.valueOf(reference.getMeanAveragePrecision() -
+                                    result.getMeanAveragePrecision()),
+                            String.valueOf(result.getAverageQueryMillis()),
+                            String.valueOf(maxQueryNanos / 1e6F))));
+                    outputWriter.flush();
+                }
+            }
+        }
+
+        outputWriter.close();
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("DeadlineEvaluation")
+                .defaultHelp(true)
+                .description("Evaluates the retrieval approaches with per-query deadlines, " +
+                        "after which they return partial rankings.");
+
+        EvaluationOptions.addArguments(parser, "deadline-evaluation.csv");
+
+        parser.addArgument("-t", "--deadlines")
+                .help("Comma separated deadlines of each query, in milliseconds")
+                .setDefault("1,2,5,10,20");
+
+        parser.addArgument("--snapshots")
+                .help("Starts every retriever from the snapshot of its derived state saved in " +
+                        "the source code index, so that the first queries don't reach the " +
+                        "deadline because of the state they derive")
+                .action(Arguments.storeTrue());
+
+        return parser;
+    }
+}
@@ -0,0 +1,161 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.IndexProfile;
+import buglocator.indexing.bug.reports.BugReportIndexBuilder;
+import buglocator.indexing.source.code.SourceCodeIndexBuilder;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.RetrieverBase.UseField;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Builds the source code index of every system with the source files in input order and sorted
+ * by path, comparing the size of the postings, the query latency and the accuracy of both. The
+ * indexes of each order are built from scratch in a subfolder of the index folder named after it.
+ */
+public class DocIdReorderingMain {
+    private static final String[] ORDERS = {"input", "path"};
+
+    public static void main(String[] args) throws IOException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+        Namespace arguments = options.arguments;
+
+        Path dataPath = options.dataPath;
+        Path indexPath = options.indexPath;
+        IndexProfile profile =
+                arguments.getBoolean("lean") ? IndexProfile.LEAN : IndexProfile.STANDARD;
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println("Order;System;Build ms;Postings bytes;Index bytes;Method;MAP;" +
+                "ms/query");
+
+        for (String system : options.getSystems()) {
+            Path sourceCodeFile =
+                    CorpusFiles.resolve(dataPath.resolve("processed-source-code"), system);
+            Path bugReportsFile =
+                    CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), system);
+            if (!Files.exists(sourceCodeFile) || !Files.exists(bugReportsFile)) {
+                System.err.println("Data for \"" + system + "\" not found in data folder");
+                continue;
+            }
+
+            for (String order : ORDERS) {
+                Path orderIndexPath = indexPath.resolve(order);
+                Path sourceCodePath = orderIndexPath.resolve(Paths.get("source-code", system));
+                Path bugReportsPath = orderIndexPath.resolve(Paths.get("bug-reports", system));
+                FileUtils.deleteDirectory(sourceCodePath.toFile());
+                FileUtils.forceMkdir(sourceCodePath.toFile());
+                if (!Files.exists(bugReportsPath)) {
+                    FileUtils.forceMkdir(bugReportsPath.toFile());
+                    new BugReportIndexBuilder(null, profile)
+                            .buildIndex(bugReportsFile, bugReportsPath);
+                }
+
+                System.out.println(String.format("Building source code index for system %s " +
+                        "in %s order", system, order));
+                long startTime = System.currentTimeMillis();
+                new SourceCodeIndexBuilder(profile, order.equals("path"))
+                        .buildIndex(sourceCodeFile, sourceCodePath);
+                long buildMillis = System.currentTimeMillis() - startTime;
+                long postingsBytes = getPostingsBytes(sourceCodePath);
+                long indexBytes = FileUtils.sizeOfDirectory(sourceCodePath.toFile());
+
+                BaseRetrievalEvaluator[] evaluators = {
+                        new BugLocatorEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                                orderIndexPath, dataPath, options.alpha),
+                        new BaselineEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                                orderIndexPath, dataPath)};
+
+                for (BaseRetrievalEvaluator evaluator : evaluators) {
+                    EvaluationResult result = evaluator.evaluate();
+                    if (result == null) {
+                        continue;
+                    }
+
+                    outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                            order,
+                            system,
+                            String.valueOf(buildMillis),
+                            String.valueOf(postingsBytes),
+                            String.valueOf(indexBytes),
+                            evaluator.getLogTag(),
+                            String.valueOf(result.getMeanAveragePrecision()),
+                            String.valueOf(result.getAverageQueryMillis()))));
+                    outputWriter.flush();
+                }
+            }
+        }
+
+        outputWriter.close();
+    }
+
+    /**
+     * @return Size of the document and frequency postings of every segment of an index,
+     * including those packed in compound files.
+     */
+    private static long getPostingsBytes(Path indexPath) throws IOException {
+        long bytes = 0;
+        try (Directory directory = FSDirectory.open(indexPath)) {
+            for (SegmentCommitInfo commitInfo : SegmentInfos.readLatestCommit(directory)) {
+                SegmentInfo info = commitInfo.info;
+                if (info.getUseCompoundFile()) {
+                    try (Directory compoundDirectory = info.getCodec().compoundFormat()
+                            .getCompoundReader(directory, info, IOContext.READ)) {
+                        bytes += getPostingsBytes(compoundDirectory,
+                                compoundDirectory.listAll());
+                    }
+                } else {
+                    bytes += getPostingsBytes(directory,
+                            commitInfo.files().toArray(new String[0]));
+                }
+            }
+        }
+
+        return bytes;
+    }
+
+    private static long getPostingsBytes(Directory directory, String[] files) throws IOException {
+        long bytes = 0;
+        for (String file : files) {
+            if (file.endsWith(".doc")) {
+                bytes += directory.fileLength(file);
+            }
+        }
+
+        return bytes;
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("DocIdReordering")
+                .defaultHelp(true)
+                .description("Compares source code indexes in input order and sorted by path.");
+
+        EvaluationOptions.addArguments(parser, "docid-reordering.csv", "reordering-index",
+                "Folder where the indexes of each order will be rebuilt");
+
+        parser.addArgument("--lean")
+                .help("Builds the indexes with the lean profile")
+                .action(Arguments.storeTrue());
+
+        return parser;
+    }
+}
@@ -3,7 +3,9 @@ package buglocator.evaluation;
 import buglocator.indexing.BaseIndexBuilder;
 import buglocator.indexing.bug.reports.BugReportIndexBuilder;
 import buglocator.indexing.source.code.SourceCodeIndexBuilder;
+import buglocator.indexing.utils.CorpusFiles;
 import buglocator.retrieval.RetrieverBase.UseField;
+import buglocator.retrieval.data.QueryCounters;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
@@ -11,18 +13,21 @@ import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 import org.apache.commons.io.FileUtils;
 
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Fully evaluates this retrieval approach, creating indexes if they are not already found.
  */
 public class EvaluationMain {
-    private static final String[] systems = {"eclipse-3.1", "aspectj-1.5.3", "swt-3.1",
+    static final String[] systems = {"eclipse-3.1", "aspectj-1.5.3", "swt-3.1",
             "bookkeeper-4.1.0", "derby-10.9.1.0", "lucene-4.0", "mahout-0.8", "openjpa-2.2.0",
             "pig-0.11.1", "solr-4.4.0", "tika-1.3", "zookeeper-3.4.5"};
 
@@ -43,6 +48,17 @@ public class EvaluationMain {
         Path bugReportsPath = dataPath.resolve("processed-bug-reports");
         float alpha = arguments.getFloat("alpha");
         boolean fullAnalysis = arguments.getBoolean("full_analysis");
+        String runFolder = arguments.getString("run_folder");
+        int runDepth = arguments.getInt("run_depth");
+        boolean resume = arguments.getBoolean("resume");
+        boolean fullRanks = arguments.getBoolean("full_ranks");
+        boolean snapshots = arguments.getBoolean("snapshots");
+        long postingsCacheBytes = arguments.getInt("postings_cache_mb") * 1024L * 1024L;
+        boolean chronological = arguments.getBoolean("chronological");
+        long checkpointIntervalMillis = arguments.getInt("checkpoint_interval") * 1000L;
+        boolean workCounters = arguments.getBoolean("work_counters");
+        String slowQueryLogFile = arguments.getString("slow_query_log");
+        long slowQueryMillis = arguments.getInt("slow_query_millis");
 
         if (!Files.exists(dataPath)) {
             System.err.println(String.format("Data folder '%s' does not exist",
@@ -64,12 +80,34 @@ public class EvaluationMain {
             return;
         }
 
-        if (Files.exists(outputFilePath)) {
-            System.err.println("Output file already exists, please choose a different output" +
-                    "file name with the option -o");
+        if (resume && runFolder == null) {
+            System.err.println("Resuming an evaluation requires the run folder of the " +
+                    "interrupted evaluation, please provide it with the option -r");
             return;
         }
 
+        // A resumed evaluation writes the whole output again
+        if (!resume && !EvaluationOptions.isNewOutputFile(outputFilePath)) {
+            return;
+        }
+
+        // A resumed evaluation appends the queries it performs to the slow query log
+        PrintWriter slowQueryWriter = null;
+        if (slowQueryLogFile != null) {
+            Path slowQueryLogPath = Paths.get(slowQueryLogFile);
+            if (!resume && Files.exists(slowQueryLogPath)) {
+                System.err.println("Slow query log already exists, please choose a different " +
+                        "file name with the option --slow-query-log");
+                return;
+            }
+
+            boolean newLog = !Files.exists(slowQueryLogPath);
+            slowQueryWriter = new PrintWriter(new FileWriter(slowQueryLogPath.toFile(), true));
+            if (newLog) {
+                slowQueryWriter.println(BaseRetrievalEvaluator.SLOW_QUERY_LOG_HEADER);
+            }
+        }
+
         PrintWriter outputWriter = new PrintWriter(outputFilePath.toFile());
         buildIndexes(indexPath, dataPath, fullAnalysis);
 
@@ -84,47 +122,79 @@ public class EvaluationMain {
         long startTime = System.currentTimeMillis();
 
         outputWriter.println("Method;System;Alpha;% Top 1;% Top 5;% Top 10;MRR;MAP;" +
-                "Average Precision;Average Recall;Amount of Queries");
+                "Average Precision;Average Recall;Amount of Queries" +
+                (fullRanks ? ";Full MRR;Full MAP;Full Recall" : "") +
+                (workCounters ? ";" + QueryCounters.CSV_HEADER : ""));
+
+        // The work of the methods is output in a row of its own
+        String noCounters =
+                workCounters ? ";" + dashes(QueryCounters.CSV_HEADER.split(";").length) : "";
 
         for (String system : systems) {
             if (!fullAnalysis && system.startsWith("eclipse")) {
                 continue;
             }
 
-            String bugReportsFileName = system + ".json";
-            if (!Files.exists(bugReportsPath.resolve(bugReportsFileName))) {
+            if (!Files.exists(CorpusFiles.resolve(bugReportsPath, system))) {
                 System.err.println("Bug reports for \"" + system + "\" not found in data folder");
                 continue;
             }
 
-            BugLocatorEvaluator bugLocatorEvaluator = new BugLocatorEvaluator(system,
+            // Both approaches are evaluated in a single pass over the bug reports
+            CombinedEvaluator evaluator = new CombinedEvaluator(system,
                     UseField.TITLE_AND_DESCRIPTION,
                     indexPath,
                     dataPath,
                     alpha);
 
-            BaselineEvaluator baselineEvaluator = new BaselineEvaluator(system,
-                    UseField.TITLE_AND_DESCRIPTION, indexPath, dataPath);
+            evaluator.setFullRanks(fullRanks);
+            evaluator.setSnapshots(snapshots);
+            evaluator.setPostingsCache(postingsCacheBytes);
+            evaluator.setChronological(chronological);
+            evaluator.setSlowQueryLog(slowQueryWriter, slowQueryMillis);
+            if (runFolder != null) {
+                evaluator.setRunFolder(Paths.get(runFolder), runDepth);
+                evaluator.setResume(resume);
+                evaluator.setCheckpointInterval(checkpointIntervalMillis);
+            }
 
-            EvaluationResult bugLocatorResult = bugLocatorEvaluator.evaluate();
-            EvaluationResult baselineResult = baselineEvaluator.evaluate();
+            List<EvaluationResult> results = evaluator.evaluateAll();
+            EvaluationResult bugLocatorResult = results.get(0);
+            EvaluationResult baselineResult = results.get(1);
 
             outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
                     "BugLocator",
                     system,
                     String.valueOf(alpha),
-                    bugLocatorResult.getCSVLine()
+                    bugLocatorResult.getCSVLine() +
+                            (fullRanks ? ";" + bugLocatorResult.getFullRankCSVLine() : "") +
+                            noCounters
             )));
 
             outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
                     "Baseline (VSM)",
                     system,
                     "-",
-                    baselineResult.getCSVLine()
+                    baselineResult.getCSVLine() +
+                            (fullRanks ? ";" + baselineResult.getFullRankCSVLine() : "") +
+                            noCounters
             )));
+
+            // Both methods are scored by the same queries, so their work is only known together
+            if (workCounters) {
+                outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                        "Shared by both",
+                        system,
+                        String.valueOf(alpha),
+                        dashes(8 + (fullRanks ? 3 : 0)),
+                        bugLocatorResult.getQueryCountersCSVLine())));
+            }
         }
 
         outputWriter.close();
+        if (slowQueryWriter != null) {
+            slowQueryWriter.close();
+        }
 
         long finishTime = System.currentTimeMillis();
         long runTime = finishTime - startTime;
@@ -138,7 +208,8 @@ public class EvaluationMain {
                 minutesWhole, secondsWhole));
     }
 
-    private static void buildIndexes(Path indexPath, Path dataPath, boolean fullAnalysis) throws IOException {
+    static void buildIndexes(Path indexPath, Path dataPath, boolean fullAnalysis)
+            throws IOException {
         boolean indexesBuilt = false;
         for (String system : systems) {
             if (!fullAnalysis && system.startsWith("eclipse")) {
@@ -152,7 +223,7 @@ public class EvaluationMain {
                 System.out.println(
                         String.format("Building source code index for system %s", system));
                 Path srcFile =
-                        dataPath.resolve(Paths.get("processed-source-code", system + ".json"));
+                        CorpusFiles.resolve(dataPath.resolve("processed-source-code"), system);
                 buildIndex(srcFile, sourceCodePath, new SourceCodeIndexBuilder());
                 indexesBuilt = true;
             }
@@ -161,7 +232,7 @@ public class EvaluationMain {
                 System.out.println(
                         String.format("Building bug report index for system %s", system));
                 Path srcFile =
-                        dataPath.resolve(Paths.get("processed-bug-reports", system + ".json"));
+                        CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), system);
                 buildIndex(srcFile, bugReportsPath, new BugReportIndexBuilder());
                 indexesBuilt = true;
             }
@@ -174,6 +245,13 @@ public class EvaluationMain {
         System.out.println();
     }
 
+    /**
+     * @return The given amount of empty CSV values.
+     */
+    private static String dashes(int columns) {
+        return String.join(";", Collections.nCopies(columns, "-"));
+    }
+
     private static void buildIndex(Path originPath, Path destPath, BaseIndexBuilder indexBuilder)
             throws IOException {
         FileUtils.forceMkdir(destPath.toFile());
@@ -204,6 +282,68 @@ public class EvaluationMain {
                 .help("File to which the results of the analysis will be output")
                 .setDefault("buglocator-evaluation.csv");
 
+        parser.addArgument("-r", "--run-folder")
+                .help("Folder where the ranked lists of every query are persisted, so that " +
+                        "metrics can be computed again with RunMetricsMain. Runs found in it " +
+                        "are reused if the indexes and parameters didn't change");
+
+        parser.addArgument("--run-depth")
+                .help("Amount of ranked source files persisted for every query")
+                .type(Integer.class)
+                .setDefault(100);
+
+        parser.addArgument("--checkpoint-interval")
+                .help("Seconds between the checkpoints saved to the run folder while " +
+                        "evaluating")
+                .type(Integer.class)
+                .setDefault(60);
+
+        parser.addArgument("--resume")
+                .help("Continues an interrupted evaluation with the same run folder, reusing " +
+                        "the finished runs and the checkpoint of the one in progress. The output " +
+                        "file is written again")
+                .action(Arguments.storeTrue());
+
+        parser.addArgument("--full-ranks")
+                .help("Finds the rank of every file of the gold sets among all the scored " +
+                        "files, adding the MRR, MAP and recall at full depth to the output")
+                .action(Arguments.storeTrue());
+
+        parser.addArgument("--snapshots")
+                .help("Starts every retriever from the snapshot of its derived state saved in " +
+                        "the source code index, creating it if it's missing or outdated")
+                .action(Arguments.storeTrue());
+
+        parser.addArgument("--postings-cache-mb")
+                .help("Budget in MiB of the cache of decoded postings of the most recently " +
+                        "queried terms of each index, 0 to disable it")
+                .type(Integer.class)
+                .setDefault(0);
+
+        parser.addArgument("--chronological")
+                .help("Replays the creation and resolution of the bug reports in chronological " +
+                        "order, growing the history of similar bug reports incrementally instead " +
+                        "of filtering it by date for each query")
+                .action(Arguments.storeTrue());
+
+        parser.addArgument("--work-counters")
+                .help("Adds the average work done per query to the output: query terms kept " +
+                        "and dropped, postings visited and decoded, postings cache hit rate, " +
+                        "documents scored, term vectors decoded, similar bug reports matched, " +
+                        "fixed files looked up and the time of each stage. Both methods share " +
+                        "the queries, so their work is output once per system in a row of its " +
+                        "own")
+                .action(Arguments.storeTrue());
+
+        parser.addArgument("--slow-query-log")
+                .help("File where the bug key, work counters and time of the slow queries " +
+                        "are logged");
+
+        parser.addArgument("--slow-query-millis")
+                .help("Time from which a query is logged as slow, in milliseconds")
+                .type(Integer.class)
+                .setDefault(1000);
+
         parser.addArgument("-f", "--full-analysis")
                 .help("Includes the analysis of the Eclipse system, which takes a long time to " +
                         "process")
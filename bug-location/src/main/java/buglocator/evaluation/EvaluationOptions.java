@@ -0,0 +1,131 @@
+package buglocator.evaluation;
+
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Options shared by the evaluation tools: the data and index folders, the combination factor of
+ * BugLocator, the output file, which is never overwritten, and whether the Eclipse system, which
+ * takes a long time to process, is evaluated.
+ */
+class EvaluationOptions {
+    private static final String INDEX_HELP = "Folder where the index will be located. It will " +
+            "be created if it doesn't exist";
+
+    final Namespace arguments;
+    final Path dataPath;
+    final Path indexPath;
+    final Path outputFilePath;
+    final float alpha;
+    final boolean fullAnalysis;
+
+    private EvaluationOptions(Namespace arguments) {
+        this.arguments = arguments;
+        dataPath = Paths.get(arguments.getString("data_folder"));
+        indexPath = Paths.get(arguments.getString("index_folder"));
+        outputFilePath = Paths.get(arguments.getString("output_file"));
+        alpha = arguments.getFloat("alpha");
+        fullAnalysis = arguments.getBoolean("full_analysis");
+    }
+
+    /**
+     * Adds the shared options to the parser of a tool that uses the indexes of
+     * {@link EvaluationMain}.
+     */
+    static void addArguments(ArgumentParser parser, String outputFile) {
+        addArguments(parser, outputFile, "index", INDEX_HELP);
+    }
+
+    /**
+     * Adds the shared options to the parser of a tool with an index folder of its own.
+     */
+    static void addArguments(ArgumentParser parser, String outputFile, String indexFolder,
+                             String indexHelp) {
+        parser.addArgument("-d", "--data-folder")
+                .help("The folder where the data for the analysis is located")
+                .setDefault("data");
+
+        parser.addArgument("-i", "--index-folder")
+                .help(indexHelp)
+                .setDefault(indexFolder);
+
+        parser.addArgument("-a", "--alpha")
+                .help("Combination factor for the two kinds of scores used by the tool, " +
+                        "the default is 0.3")
+                .type(Float.class)
+                .setDefault(0.3F);
+
+        parser.addArgument("-o", "--output-file")
+                .help("File to which the results of the analysis will be output")
+                .setDefault(outputFile);
+
+        parser.addArgument("-f", "--full-analysis")
+                .help("Includes the analysis of the Eclipse system, which takes a long time to " +
+                        "process")
+                .action(Arguments.storeTrue());
+    }
+
+    /**
+     * Parses the arguments of a tool, reporting those that are invalid.
+     *
+     * @return The options or {@code null} if the tool can't run.
+     */
+    static EvaluationOptions parse(ArgumentParser parser, String[] args) {
+        Namespace arguments;
+        try {
+            arguments = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            return null;
+        }
+
+        EvaluationOptions options = new EvaluationOptions(arguments);
+        return isNewOutputFile(options.outputFilePath) ? options : null;
+    }
+
+    /**
+     * @return Whether the output file doesn't exist yet, otherwise it is reported.
+     */
+    static boolean isNewOutputFile(Path outputFilePath) {
+        if (Files.exists(outputFilePath)) {
+            System.err.println("Output file already exists, please choose a different output " +
+                    "file name with the option -o");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return The systems selected by the options.
+     */
+    List<String> getSystems() {
+        return getSystems(fullAnalysis);
+    }
+
+    /**
+     * @return The systems to evaluate, Eclipse only in full analyses.
+     */
+    static List<String> getSystems(boolean fullAnalysis) {
+        return Arrays.stream(EvaluationMain.systems)
+                .filter(system -> fullAnalysis || !system.startsWith("eclipse"))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Builds the indexes of {@link EvaluationMain} that are missing.
+     */
+    void buildIndexes() throws IOException {
+        EvaluationMain.buildIndexes(indexPath, dataPath, fullAnalysis);
+    }
+}
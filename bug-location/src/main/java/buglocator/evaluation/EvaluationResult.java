@@ -1,5 +1,7 @@
 package buglocator.evaluation;
 
+import buglocator.retrieval.data.QueryCounters;
+
 /**
  * Encapsulates the results of an evaluation for a single system
  */
@@ -14,12 +16,18 @@ public class EvaluationResult {
     private final float averageRecall;
     private final boolean valid;
     private final int actualQueries;
+    private final float averageQueryMillis;
+    private float fullMeanReciprocalRank = Float.NaN;
+    private float fullMeanAveragePrecision = Float.NaN;
+    private float fullRecall = Float.NaN;
+    private QueryCounters queryCounters = null;
+    private int partialQueries = 0;
 
     public EvaluationResult(String system, int actualQueries, float top1Precision,
                             float top5Precision, float top10Precision,
                             float meanReciprocalRank,
                             float meanAveragePrecision, float averagePrecision,
-                            float averageRecall) {
+                            float averageRecall, float averageQueryMillis) {
         this.valid = true;
         this.system = system;
         this.actualQueries = actualQueries;
@@ -30,6 +38,7 @@ public class EvaluationResult {
         this.meanAveragePrecision = meanAveragePrecision;
         this.averagePrecision = averagePrecision;
         this.averageRecall = averageRecall;
+        this.averageQueryMillis = averageQueryMillis;
     }
 
     public boolean isValid() {
@@ -72,6 +81,71 @@ public class EvaluationResult {
         return averageRecall;
     }
 
+    /**
+     * @return Average time taken by the retriever to locate a bug, in milliseconds.
+     */
+    public float getAverageQueryMillis() {
+        return averageQueryMillis;
+    }
+
+    /**
+     * Sets the metrics computed at full depth, which are only known for evaluations that found
+     * the rank of every relevant file.
+     */
+    void setFullRankMetrics(float fullMeanReciprocalRank, float fullMeanAveragePrecision,
+                            float fullRecall) {
+        this.fullMeanReciprocalRank = fullMeanReciprocalRank;
+        this.fullMeanAveragePrecision = fullMeanAveragePrecision;
+        this.fullRecall = fullRecall;
+    }
+
+    /**
+     * @return The MRR, MAP and recall at full depth, {@code NaN} if they aren't known.
+     */
+    public String getFullRankCSVLine() {
+        return String.join(";",
+                String.valueOf(fullMeanReciprocalRank),
+                String.valueOf(fullMeanAveragePrecision),
+                String.valueOf(fullRecall));
+    }
+
+    /**
+     * Sets the work done by the queries of the evaluation, which is unknown for evaluations
+     * reused from run files.
+     */
+    void setQueryCounters(QueryCounters queryCounters) {
+        this.queryCounters = queryCounters;
+    }
+
+    /**
+     * @return The work done by the queries performed by the evaluation or {@code null} if it is
+     * unknown. Methods evaluated in a single pass share their queries, so they all get the work
+     * of every method.
+     */
+    public QueryCounters getQueryCounters() {
+        return queryCounters;
+    }
+
+    void setPartialQueries(int partialQueries) {
+        this.partialQueries = partialQueries;
+    }
+
+    /**
+     * @return Amount of queries that reached their deadline, whose rankings are partial.
+     * @see buglocator.retrieval.data.Ranking#isPartial()
+     */
+    public int getPartialQueries() {
+        return partialQueries;
+    }
+
+    /**
+     * @return The average work counters per query, {@code NaN} if they aren't known.
+     * @see QueryCounters#CSV_HEADER
+     */
+    public String getQueryCountersCSVLine() {
+        return (queryCounters == null ? new QueryCounters() : queryCounters).getCSVLine();
+    }
+
     public String getCSVLine() {
         return String.join(";",
                 String.valueOf(top1Precision),
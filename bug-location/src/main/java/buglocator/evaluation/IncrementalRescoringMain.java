@@ -0,0 +1,207 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.BugLocatorRetriever;
+import buglocator.retrieval.BugLocatorRetriever.IncrementalQuery;
+import buglocator.retrieval.RetrieverBase.UseField;
+import buglocator.retrieval.data.QueryCounters;
+import buglocator.retrieval.data.Ranking;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Simulates the edits of every bug report while it is written, the reporter typing its
+ * description after its title, and ranks each version both from scratch and incrementally with
+ * {@link IncrementalQuery}. Reports the latency and work of both ways and how many versions got a
+ * different ranking, which should be none.
+ */
+public class IncrementalRescoringMain {
+    private static final int[] NO_DOCS = new int[0];
+
+    public static void main(String[] args) throws IOException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+        Namespace arguments = options.arguments;
+        float alpha = options.alpha;
+
+        int edits = arguments.getInt("edits");
+        int depth = arguments.getInt("depth");
+
+        if (edits < 1 || depth < 1) {
+            System.err.println("The amount of edits and the depth must be positive");
+            return;
+        }
+
+        options.buildIndexes();
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println("System;Bug Reports;Edits;Mismatches;Full ms/edit;" +
+                "Incremental ms/edit;Speedup;Full postings/edit;Incremental postings/edit;" +
+                "Full scored/edit;Incremental scored/edit");
+
+        for (String system : options.getSystems()) {
+            Path bugReportsFile =
+                    CorpusFiles.resolve(options.dataPath.resolve("processed-bug-reports"), system);
+            if (!Files.exists(bugReportsFile)) {
+                System.err.println("Bug reports for \"" + system + "\" not found in data folder");
+                continue;
+            }
+            List<BugReport> bugReports = CorpusFiles.readAll(bugReportsFile, BugReport.class);
+
+            Path sourceIndexPath = options.indexPath.resolve(Paths.get("source-code", system));
+            IndexSearcher sourceSearcher = new IndexSearcher(
+                    DirectoryReader.open(FSDirectory.open(sourceIndexPath)));
+            IndexSearcher bugReportSearcher = new IndexSearcher(DirectoryReader.open(
+                    FSDirectory.open(options.indexPath.resolve(Paths.get("bug-reports", system)))));
+            int[] extrema = Arrays.stream(FileUtils.readFileToString(
+                    sourceIndexPath.resolve("stats.txt").toFile()).split("\n"))
+                    .mapToInt(Integer::parseInt).toArray();
+
+            BugLocatorRetriever retriever = new BugLocatorRetriever(
+                    UseField.TITLE_AND_DESCRIPTION, sourceSearcher, bugReportSearcher, alpha,
+                    extrema[0], extrema[1]);
+
+            // The retriever derives its state and compiles the code paths of both ways first
+            System.out.println("Warming up for system " + system);
+            retriever.warmUp();
+            for (BugReport bugReport : bugReports) {
+                IncrementalQuery query = retriever.openIncrementalQuery(bugReport);
+                for (BugReport version : createVersions(bugReport, edits)) {
+                    retriever.rank(version, depth, NO_DOCS);
+                    query.rescore(version, depth, NO_DOCS);
+                }
+            }
+
+            System.out.println("Rescoring the edits for system " + system);
+            int versions = 0;
+            int mismatches = 0;
+            long fullNanos = 0;
+            long incrementalNanos = 0;
+            QueryCounters fullCounters = new QueryCounters();
+            QueryCounters incrementalCounters = new QueryCounters();
+            for (BugReport bugReport : bugReports) {
+                IncrementalQuery query = retriever.openIncrementalQuery(bugReport);
+                for (BugReport version : createVersions(bugReport, edits)) {
+                    long start = System.nanoTime();
+                    Ranking expected = retriever.rank(version, depth, NO_DOCS);
+                    fullNanos += System.nanoTime() - start;
+                    fullCounters.add(retriever.getQueryCounters());
+
+                    start = System.nanoTime();
+                    Ranking actual = query.rescore(version, depth, NO_DOCS);
+                    incrementalNanos += System.nanoTime() - start;
+                    incrementalCounters.add(retriever.getQueryCounters());
+
+                    versions++;
+                    if (!sameRanking(expected, actual)) {
+                        mismatches++;
+                    }
+                }
+            }
+
+            outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                    system,
+                    String.valueOf(bugReports.size()),
+                    String.valueOf(versions),
+                    String.valueOf(mismatches),
+                    String.valueOf(fullNanos / 1e6F / versions),
+                    String.valueOf(incrementalNanos / 1e6F / versions),
+                    String.valueOf((float) fullNanos / incrementalNanos),
+                    String.valueOf((float) fullCounters.getPostingsVisited() / versions),
+                    String.valueOf((float) incrementalCounters.getPostingsVisited() / versions),
+                    String.valueOf((float) fullCounters.getDocumentsScored() / versions),
+                    String.valueOf(
+                            (float) incrementalCounters.getDocumentsScored() / versions))));
+            outputWriter.flush();
+
+            sourceSearcher.getIndexReader().close();
+            bugReportSearcher.getIndexReader().close();
+        }
+
+        outputWriter.close();
+    }
+
+    /**
+     * @return The versions of the bug report while its description is typed: the title alone,
+     * then a growing part of the description, the last version being the whole bug report.
+     */
+    private static BugReport[] createVersions(BugReport bugReport, int edits) {
+        String description = bugReport.getDescription() == null ? "" :
+                bugReport.getDescription();
+        String[] words = description.split(" +");
+
+        BugReport[] versions = new BugReport[edits + 1];
+        for (int i = 0; i <= edits; i++) {
+            int typedWords = (int) ((long) words.length * i / edits);
+            versions[i] = bugReport.withTexts(bugReport.getTitle(),
+                    String.join(" ", Arrays.copyOf(words, typedWords)));
+        }
+
+        return versions;
+    }
+
+    /**
+     * @return Whether both rankings have the same top documents with the same scores.
+     */
+    private static boolean sameRanking(Ranking expected, Ranking actual) {
+        if (expected == null || actual == null) {
+            return expected == actual;
+        }
+
+        ScoreDoc[] expectedDocs = expected.getTopDocs();
+        ScoreDoc[] actualDocs = actual.getTopDocs();
+        if (expected.getScoredDocs() != actual.getScoredDocs() ||
+                expectedDocs.length != actualDocs.length) {
+            return false;
+        }
+
+        for (int i = 0; i < expectedDocs.length; i++) {
+            if (expectedDocs[i].doc != actualDocs[i].doc ||
+                    Float.floatToIntBits(expectedDocs[i].score) !=
+                            Float.floatToIntBits(actualDocs[i].score)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("IncrementalRescoring")
+                .defaultHelp(true)
+                .description("Compares ranking every edit of the bug reports from scratch with " +
+                        "rescoring it incrementally.");
+
+        EvaluationOptions.addArguments(parser, "incremental-rescoring.csv");
+
+        parser.addArgument("-e", "--edits")
+                .help("Amount of edits typing the description of each bug report after its " +
+                        "title")
+                .type(Integer.class)
+                .setDefault(5);
+
+        parser.addArgument("-n", "--depth")
+                .help("Amount of top source files compared between both rankings")
+                .type(Integer.class)
+                .setDefault(100);
+
+        return parser;
+    }
+}
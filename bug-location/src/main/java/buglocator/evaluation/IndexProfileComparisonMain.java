@@ -0,0 +1,102 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.IndexProfile;
+import buglocator.indexing.bug.reports.BugReportIndexBuilder;
+import buglocator.indexing.source.code.SourceCodeIndexBuilder;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.RetrieverBase.UseField;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Builds the indexes of every system with each {@link IndexProfile} and compares their build
+ * time, size on disk, query latency and accuracy. The indexes of each profile are built from
+ * scratch in a subfolder of the index folder named after it.
+ */
+public class IndexProfileComparisonMain {
+    public static void main(String[] args) throws IOException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+
+        Path dataPath = options.dataPath;
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println("Profile;System;Build ms;Index bytes;Method;MAP;ms/query");
+
+        for (String system : options.getSystems()) {
+            Path sourceCodeFile =
+                    CorpusFiles.resolve(dataPath.resolve("processed-source-code"), system);
+            Path bugReportsFile =
+                    CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), system);
+            if (!Files.exists(sourceCodeFile) || !Files.exists(bugReportsFile)) {
+                System.err.println("Data for \"" + system + "\" not found in data folder");
+                continue;
+            }
+
+            for (IndexProfile profile : IndexProfile.values()) {
+                Path profileIndexPath = options.indexPath.resolve(profile.name().toLowerCase());
+                Path sourceCodePath = profileIndexPath.resolve(Paths.get("source-code", system));
+                Path bugReportsPath = profileIndexPath.resolve(Paths.get("bug-reports", system));
+                FileUtils.deleteDirectory(sourceCodePath.toFile());
+                FileUtils.deleteDirectory(bugReportsPath.toFile());
+                FileUtils.forceMkdir(sourceCodePath.toFile());
+                FileUtils.forceMkdir(bugReportsPath.toFile());
+
+                System.out.println(String.format("Building %s indexes for system %s",
+                        profile.name().toLowerCase(), system));
+                long startTime = System.currentTimeMillis();
+                new SourceCodeIndexBuilder(profile).buildIndex(sourceCodeFile, sourceCodePath);
+                new BugReportIndexBuilder(null, profile).buildIndex(bugReportsFile, bugReportsPath);
+                long buildMillis = System.currentTimeMillis() - startTime;
+                long indexBytes = FileUtils.sizeOfDirectory(sourceCodePath.toFile()) +
+                        FileUtils.sizeOfDirectory(bugReportsPath.toFile());
+
+                BaseRetrievalEvaluator[] evaluators = {
+                        new BugLocatorEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                                profileIndexPath, dataPath, options.alpha),
+                        new BaselineEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                                profileIndexPath, dataPath)};
+
+                for (BaseRetrievalEvaluator evaluator : evaluators) {
+                    EvaluationResult result = evaluator.evaluate();
+                    if (result == null) {
+                        continue;
+                    }
+
+                    outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                            profile.name(),
+                            system,
+                            String.valueOf(buildMillis),
+                            String.valueOf(indexBytes),
+                            evaluator.getLogTag(),
+                            String.valueOf(result.getMeanAveragePrecision()),
+                            String.valueOf(result.getAverageQueryMillis()))));
+                    outputWriter.flush();
+                }
+            }
+        }
+
+        outputWriter.close();
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("IndexProfileComparison")
+                .defaultHelp(true)
+                .description("Compares the standard and lean index profiles.");
+
+        EvaluationOptions.addArguments(parser, "index-profile-comparison.csv", "profile-index",
+                "Folder where the indexes of each profile will be rebuilt");
+
+        return parser;
+    }
+}
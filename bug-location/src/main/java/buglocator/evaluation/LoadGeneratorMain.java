@@ -0,0 +1,300 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.BaselineRetriever;
+import buglocator.retrieval.BugLocatorRetriever;
+import buglocator.retrieval.RetrieverBase;
+import buglocator.retrieval.RetrieverBase.UseField;
+import buglocator.retrieval.RetrieverRegistry.RetrieverFactory;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays the bug reports of every system against retrievers shared by a pool of threads, with
+ * the queries arriving at a fixed rate whatever the latency of the previous ones (open loop).
+ * <p>
+ * Latencies are measured from the time each query was scheduled to arrive, so the queries that
+ * wait behind a slow one account for that wait, instead of being sent late and hiding it.
+ * Retrievers are not thread safe, so in the shared mode all the threads query a single retriever
+ * one at a time, which exposes the contention on it, while in the per-thread mode every thread
+ * queries its own retriever and only the index searchers are shared.
+ */
+public class LoadGeneratorMain {
+    private static final String[] METHODS = {"BugLocator", "Baseline"};
+    private static final String[] MODES = {"Shared", "Per thread"};
+    private static final int[] PERCENTILES = {50, 90, 99};
+    private static final double SATURATION_THRESHOLD = 0.95;
+    private static final long ARRIVAL_SEED = 42;
+    private static final int[] NO_DOCS = new int[0];
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+        Namespace arguments = options.arguments;
+        float alpha = options.alpha;
+
+        int requests = arguments.getInt("requests");
+        boolean poisson = arguments.getBoolean("poisson");
+        double[] rates = Arrays.stream(arguments.getString("rates").split(","))
+                .mapToDouble(r -> Double.parseDouble(r.trim())).toArray();
+        int[] threadCounts = Arrays.stream(arguments.getString("threads").split(","))
+                .mapToInt(t -> Integer.parseInt(t.trim())).toArray();
+
+        if (requests < 1 || Arrays.stream(rates).anyMatch(r -> r <= 0) ||
+                Arrays.stream(threadCounts).anyMatch(t -> t < 1)) {
+            System.err.println("The requests, rates and thread counts must be positive");
+            return;
+        }
+
+        options.buildIndexes();
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println("Method;System;Mode;Threads;Offered q/s;Achieved q/s;Saturated;" +
+                "p50 ms;p90 ms;p99 ms;Max ms;Service p50 ms;Service p99 ms;Mean queue ms;" +
+                "Mean lock wait ms");
+        int maxThreads = Arrays.stream(threadCounts).max().getAsInt();
+
+        for (String system : options.getSystems()) {
+            Path bugReportsFile =
+                    CorpusFiles.resolve(options.dataPath.resolve("processed-bug-reports"), system);
+            if (!Files.exists(bugReportsFile)) {
+                System.err.println("Bug reports for \"" + system + "\" not found in data folder");
+                continue;
+            }
+            List<BugReport> bugReports = CorpusFiles.readAll(bugReportsFile, BugReport.class);
+
+            Path sourceIndexPath = options.indexPath.resolve(Paths.get("source-code", system));
+            IndexSearcher sourceSearcher = new IndexSearcher(
+                    DirectoryReader.open(FSDirectory.open(sourceIndexPath)));
+            IndexSearcher bugReportSearcher = new IndexSearcher(DirectoryReader.open(
+                    FSDirectory.open(options.indexPath.resolve(Paths.get("bug-reports", system)))));
+            int[] extrema = Arrays.stream(FileUtils.readFileToString(
+                    sourceIndexPath.resolve("stats.txt").toFile()).split("\n"))
+                    .mapToInt(Integer::parseInt).toArray();
+
+            for (String method : METHODS) {
+                RetrieverFactory factory = method.equals("BugLocator") ?
+                        () -> new BugLocatorRetriever(UseField.TITLE_AND_DESCRIPTION,
+                                sourceSearcher, bugReportSearcher, alpha, extrema[0], extrema[1]) :
+                        () -> new BaselineRetriever(UseField.TITLE_AND_DESCRIPTION,
+                                sourceSearcher, sourceSearcher);
+
+                // Every retriever derives its state and compiles the code paths before the runs
+                System.out.println(String.format("Warming up %d %s retrievers for system %s",
+                        maxThreads, method, system));
+                RetrieverBase[] retrievers = new RetrieverBase[maxThreads];
+                for (int i = 0; i < maxThreads; i++) {
+                    retrievers[i] = factory.create();
+                    retrievers[i].warmUp();
+                    for (BugReport bugReport : bugReports) {
+                        retrievers[i].rank(bugReport, 10, NO_DOCS);
+                    }
+                }
+
+                for (String mode : MODES) {
+                    for (int threads : threadCounts) {
+                        RetrieverBase[] used = mode.equals("Shared") ?
+                                Arrays.copyOf(retrievers, 1) : Arrays.copyOf(retrievers, threads);
+                        for (double rate : rates) {
+                            System.out.println(String.format(
+                                    "Offering %s q/s to %s (%s, %d threads) for system %s",
+                                    rate, method, mode.toLowerCase(), threads, system));
+                            LoadRun run = new LoadRun(requests);
+                            run.execute(used, threads, rate, poisson, bugReports);
+
+                            outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                                    method,
+                                    system,
+                                    mode,
+                                    String.valueOf(threads),
+                                    String.valueOf(rate),
+                                    run.getCSVLine(rate))));
+                            outputWriter.flush();
+                        }
+                    }
+                }
+            }
+
+            sourceSearcher.getIndexReader().close();
+            bugReportSearcher.getIndexReader().close();
+        }
+
+        outputWriter.close();
+    }
+
+    /**
+     * One open-loop run of a fixed amount of queries, keeping the times of each of them in
+     * nanoseconds.
+     */
+    private static class LoadRun {
+        /**
+         * From the scheduled arrival of a query until its ranking is ready.
+         */
+        private final long[] latencies;
+
+        /**
+         * From the time a thread picks up a query until its ranking is ready, which is the
+         * latency a closed-loop benchmark would report.
+         */
+        private final long[] serviceTimes;
+
+        /**
+         * From the scheduled arrival of a query until a thread picks it up.
+         */
+        private final long[] queueTimes;
+
+        /**
+         * From the time a thread picks up a query until it gets hold of its retriever.
+         */
+        private final long[] lockWaits;
+
+        private long elapsedNanos;
+
+        LoadRun(int requests) {
+            latencies = new long[requests];
+            serviceTimes = new long[requests];
+            queueTimes = new long[requests];
+            lockWaits = new long[requests];
+        }
+
+        void execute(RetrieverBase[] retrievers, int threads, double rate, boolean poisson,
+                     List<BugReport> bugReports) throws IOException, InterruptedException {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            AtomicInteger nextSlot = new AtomicInteger();
+            ThreadLocal<RetrieverBase> threadRetriever = ThreadLocal.withInitial(
+                    () -> retrievers[nextSlot.getAndIncrement() % retrievers.length]);
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            long[] ends = new long[latencies.length];
+
+            Random random = new Random(ARRIVAL_SEED);
+            long startTime = System.nanoTime();
+            double arrivalNanos = 0;
+            for (int i = 0; i < latencies.length; i++) {
+                long scheduled = startTime + (long) arrivalNanos;
+                arrivalNanos += poisson ? -Math.log(1 - random.nextDouble()) * 1e9 / rate :
+                        1e9 / rate;
+                for (long wait = scheduled - System.nanoTime(); wait > 0;
+                     wait = scheduled - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+
+                int query = i;
+                BugReport bugReport = bugReports.get(i % bugReports.size());
+                executor.execute(() -> {
+                    long pickedUp = System.nanoTime();
+                    RetrieverBase retriever = threadRetriever.get();
+                    try {
+                        synchronized (retriever) {
+                            lockWaits[query] = System.nanoTime() - pickedUp;
+                            retriever.rank(bugReport, 10, NO_DOCS);
+                        }
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                    long end = System.nanoTime();
+                    latencies[query] = end - scheduled;
+                    serviceTimes[query] = end - pickedUp;
+                    queueTimes[query] = pickedUp - scheduled;
+                    ends[query] = end;
+                });
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            elapsedNanos = Arrays.stream(ends).max().getAsLong() - startTime;
+        }
+
+        /**
+         * @return The completed queries per second, from the first arrival to the last ranking.
+         */
+        double getThroughput() {
+            return latencies.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * @return The throughput, whether it fell behind the offered rate, the percentiles and
+         * maximum of the latency, the median and p99 service time and the mean queue and lock
+         * wait times, in milliseconds.
+         */
+        String getCSVLine(double rate) {
+            return String.join(";", Arrays.<CharSequence>asList(
+                    String.valueOf(getThroughput()),
+                    String.valueOf(getThroughput() < SATURATION_THRESHOLD * rate),
+                    getPercentileMillis(latencies, PERCENTILES[0]),
+                    getPercentileMillis(latencies, PERCENTILES[1]),
+                    getPercentileMillis(latencies, PERCENTILES[2]),
+                    getPercentileMillis(latencies, 100),
+                    getPercentileMillis(serviceTimes, PERCENTILES[0]),
+                    getPercentileMillis(serviceTimes, PERCENTILES[2]),
+                    getMeanMillis(queueTimes),
+                    getMeanMillis(lockWaits)));
+        }
+
+        private static String getPercentileMillis(long[] values, int percentile) {
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            return String.valueOf(PerformanceRegressionMain.percentile(sorted, percentile) / 1e6);
+        }
+
+        private static String getMeanMillis(long[] values) {
+            return String.valueOf(Arrays.stream(values).average().orElse(0) / 1e6);
+        }
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("LoadGenerator")
+                .defaultHelp(true)
+                .description("Measures the latency and throughput of the retrieval approaches " +
+                        "under concurrent queries arriving at a fixed rate.");
+
+        EvaluationOptions.addArguments(parser, "load-evaluation.csv");
+
+        parser.addArgument("-r", "--rates")
+                .help("Comma separated arrival rates of the queries, in queries per second")
+                .setDefault("20,50,100,200,500");
+
+        parser.addArgument("-t", "--threads")
+                .help("Comma separated amounts of threads answering the queries")
+                .setDefault("1,2,4");
+
+        parser.addArgument("-n", "--requests")
+                .help("Amount of queries of every run, the bug reports of the system are " +
+                        "replayed in order as many times as needed")
+                .type(Integer.class)
+                .setDefault(1000);
+
+        parser.addArgument("--poisson")
+                .help("Spaces the arrivals randomly as a Poisson process with the same rate, " +
+                        "instead of evenly")
+                .action(Arguments.storeTrue());
+
+        return parser;
+    }
+}
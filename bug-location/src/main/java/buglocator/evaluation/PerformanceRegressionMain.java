@@ -0,0 +1,332 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.bug.reports.BugReportIndexBuilder;
+import buglocator.indexing.source.code.SourceCodeIndexBuilder;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.RetrieverBase.UseField;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * End-to-end performance regression suite. Builds the indexes of every system found in the data
+ * folder from scratch, replays all its bug reports through BugLocator and the baseline VSM and
+ * records the build time, throughput, latency percentiles, peak heap and accuracy of each.
+ * <p>
+ * Every time is measured in several rounds and the best round is kept, since noise can only make
+ * a round slower. A round of queries starts with a new retriever, so it includes the queries that
+ * compute the derived state of the retriever.
+ * <p>
+ * When given a baseline, which is the output of a previous run of the suite, every measure is
+ * compared with it and the suite exits with status 1 if any of them is worse than the baseline
+ * by more than its tolerance.
+ */
+public class PerformanceRegressionMain {
+    private static final String HEADER = "System;Method;Build ms;Queries;Queries/s;p50 ms;" +
+            "p95 ms;p99 ms;Peak heap MB;MAP;MRR";
+    private static final String[] TIME_COLUMNS = {"Build ms", "p50 ms", "p95 ms", "p99 ms"};
+    private static final String[] ACCURACY_COLUMNS = {"MAP", "MRR"};
+    private static final int[] PERCENTILES = {50, 95, 99};
+
+    public static void main(String[] args) throws IOException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+        Namespace arguments = options.arguments;
+
+        Path dataPath = options.dataPath;
+        Path indexPath = options.indexPath;
+        String baselineFile = arguments.getString("baseline");
+        int warmupRounds = arguments.getInt("warmup_rounds");
+        int rounds = arguments.getInt("rounds");
+        float timeTolerance = arguments.getFloat("time_tolerance");
+        float timeSlackMillis = arguments.getFloat("time_slack_ms");
+        float memoryTolerance = arguments.getFloat("memory_tolerance");
+        float accuracyTolerance = arguments.getFloat("accuracy_tolerance");
+
+        if (rounds < 1) {
+            System.err.println("At least one measured round is required");
+            return;
+        }
+
+        Map<String, Map<String, String>> baseline = null;
+        if (baselineFile != null) {
+            if (!Files.exists(Paths.get(baselineFile))) {
+                System.err.println(String.format("Baseline file '%s' does not exist",
+                        Paths.get(baselineFile).toAbsolutePath().toString()));
+                return;
+            }
+            baseline = readMeasures(Paths.get(baselineFile));
+        }
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println(HEADER);
+        List<String> lines = new ArrayList<>();
+
+        for (String system : options.getSystems()) {
+            Path sourceCodeFile =
+                    CorpusFiles.resolve(dataPath.resolve("processed-source-code"), system);
+            Path bugReportsFile =
+                    CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), system);
+            if (!Files.exists(sourceCodeFile) || !Files.exists(bugReportsFile)) {
+                continue;
+            }
+
+            System.out.println(String.format("Building indexes for system %s", system));
+            for (int i = 0; i < warmupRounds; i++) {
+                buildIndexes(system, sourceCodeFile, bugReportsFile, indexPath);
+            }
+            long buildNanos = Long.MAX_VALUE;
+            for (int i = 0; i < rounds; i++) {
+                buildNanos = Math.min(buildNanos,
+                        buildIndexes(system, sourceCodeFile, bugReportsFile, indexPath));
+            }
+
+            BaseRetrievalEvaluator[] evaluators = {
+                    new BugLocatorEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                            indexPath, dataPath, options.alpha),
+                    new BaselineEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                            indexPath, dataPath)};
+
+            for (BaseRetrievalEvaluator evaluator : evaluators) {
+                for (int i = 0; i < warmupRounds; i++) {
+                    evaluator.evaluate();
+                }
+
+                // The peak of each heap pool is measured from a collected heap
+                System.gc();
+                List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                        pool.resetPeakUsage();
+                        heapPools.add(pool);
+                    }
+                }
+
+                EvaluationResult result = null;
+                float throughput = 0;
+                long[] bestPercentiles = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+                for (int i = 0; i < rounds; i++) {
+                    result = evaluator.evaluate();
+                    long[] latencies = evaluator.getQueryLatencies();
+                    Arrays.sort(latencies);
+                    throughput = Math.max(throughput,
+                            latencies.length / (Arrays.stream(latencies).sum() / 1e9F));
+                    for (int p = 0; p < PERCENTILES.length; p++) {
+                        bestPercentiles[p] = Math.min(bestPercentiles[p],
+                                percentile(latencies, PERCENTILES[p]));
+                    }
+                }
+                if (result == null) {
+                    continue;
+                }
+
+                long peakHeapBytes = 0;
+                for (MemoryPoolMXBean pool : heapPools) {
+                    peakHeapBytes += pool.getPeakUsage().getUsed();
+                }
+
+                String line = String.join(";", Arrays.<CharSequence>asList(
+                        system,
+                        evaluator.getLogTag(),
+                        String.valueOf(buildNanos / 1e6F),
+                        String.valueOf(result.getActualQueries()),
+                        String.valueOf(throughput),
+                        String.valueOf(bestPercentiles[0] / 1e6F),
+                        String.valueOf(bestPercentiles[1] / 1e6F),
+                        String.valueOf(bestPercentiles[2] / 1e6F),
+                        String.valueOf(peakHeapBytes / 1048576F),
+                        String.valueOf(result.getMeanAveragePrecision()),
+                        String.valueOf(result.getMeanReciprocalRank())));
+                outputWriter.println(line);
+                outputWriter.flush();
+                lines.add(line);
+            }
+        }
+
+        outputWriter.close();
+
+        if (baseline == null) {
+            return;
+        }
+
+        List<String> regressions = new ArrayList<>();
+        String[] columns = HEADER.split(";");
+        for (String line : lines) {
+            Map<String, String> measures = toMeasures(columns, line.split(";"));
+            String key = measures.get("System") + ";" + measures.get("Method");
+            Map<String, String> expected = baseline.get(key);
+            if (expected == null) {
+                System.err.println(String.format("%s has no baseline, skipping it", key));
+                continue;
+            }
+
+            for (String column : TIME_COLUMNS) {
+                float limit = getMeasure(expected, column) * (1 + timeTolerance) +
+                        timeSlackMillis;
+                checkAtMost(regressions, key, column, getMeasure(measures, column), limit);
+            }
+            checkAtMost(regressions, key, "Peak heap MB", getMeasure(measures, "Peak heap MB"),
+                    getMeasure(expected, "Peak heap MB") * (1 + memoryTolerance));
+
+            float throughput = getMeasure(measures, "Queries/s");
+            float minThroughput = getMeasure(expected, "Queries/s") / (1 + timeTolerance);
+            if (throughput < minThroughput) {
+                regressions.add(String.format("%s: Queries/s is %f, below the limit of %f",
+                        key, throughput, minThroughput));
+            }
+
+            // Accuracy shouldn't change at all, in either direction
+            for (String column : ACCURACY_COLUMNS) {
+                float difference = getMeasure(measures, column) - getMeasure(expected, column);
+                if (Math.abs(difference) > accuracyTolerance) {
+                    regressions.add(String.format("%s: %s changed by %f from %s", key, column,
+                            difference, expected.get(column)));
+                }
+            }
+        }
+
+        if (regressions.isEmpty()) {
+            System.out.println(String.format("No performance regressions against %s",
+                    baselineFile));
+            return;
+        }
+
+        System.err.println(String.format("%d performance regressions against %s:",
+                regressions.size(), baselineFile));
+        regressions.forEach(System.err::println);
+        System.exit(1);
+    }
+
+    /**
+     * Builds the indexes of a system from scratch.
+     *
+     * @return The time taken in nanoseconds.
+     */
+    private static long buildIndexes(String system, Path sourceCodeFile, Path bugReportsFile,
+                                     Path indexPath) throws IOException {
+        Path sourceCodePath = indexPath.resolve(Paths.get("source-code", system));
+        Path bugReportsPath = indexPath.resolve(Paths.get("bug-reports", system));
+        FileUtils.deleteDirectory(sourceCodePath.toFile());
+        FileUtils.deleteDirectory(bugReportsPath.toFile());
+        FileUtils.forceMkdir(sourceCodePath.toFile());
+        FileUtils.forceMkdir(bugReportsPath.toFile());
+
+        long buildStart = System.nanoTime();
+        new SourceCodeIndexBuilder().buildIndex(sourceCodeFile, sourceCodePath);
+        new BugReportIndexBuilder().buildIndex(bugReportsFile, bugReportsPath);
+
+        return System.nanoTime() - buildStart;
+    }
+
+    /**
+     * @return The value at the given percentile of the sorted values, by the nearest rank.
+     */
+    static long percentile(long[] sortedValues, int percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedValues.length);
+        return sortedValues[Math.max(rank, 1) - 1];
+    }
+
+    private static void checkAtMost(List<String> regressions, String key, String column,
+                                    float value, float limit) {
+        if (value > limit) {
+            regressions.add(String.format("%s: %s is %f, above the limit of %f", key, column,
+                    value, limit));
+        }
+    }
+
+    private static float getMeasure(Map<String, String> measures, String column) {
+        return Float.parseFloat(measures.get(column));
+    }
+
+    /**
+     * Reads the measures of an output of this suite, indexed by system and method.
+     */
+    private static Map<String, Map<String, String>> readMeasures(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        String[] columns = lines.get(0).split(";");
+
+        Map<String, Map<String, String>> measures = new HashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            Map<String, String> lineMeasures = toMeasures(columns, line.split(";"));
+            measures.put(lineMeasures.get("System") + ";" + lineMeasures.get("Method"),
+                    lineMeasures);
+        }
+
+        return measures;
+    }
+
+    private static Map<String, String> toMeasures(String[] columns, String[] values) {
+        Map<String, String> measures = new HashMap<>();
+        for (int i = 0; i < columns.length && i < values.length; i++) {
+            measures.put(columns[i], values[i]);
+        }
+
+        return measures;
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("PerformanceRegression")
+                .defaultHelp(true)
+                .description("Measures the indexing and retrieval performance on every system " +
+                        "and compares it with a baseline.");
+
+        EvaluationOptions.addArguments(parser, "performance.csv", "benchmark-index",
+                "Folder where the indexes of every system will be rebuilt");
+
+        parser.addArgument("-b", "--baseline")
+                .help("Output of a previous run of this suite to compare the measures with");
+
+        parser.addArgument("--warmup-rounds")
+                .help("Times the indexes are built and every bug report is replayed before " +
+                        "measuring")
+                .type(Integer.class)
+                .setDefault(1);
+
+        parser.addArgument("--rounds")
+                .help("Times the indexes are built and every bug report is replayed while " +
+                        "measuring, the best time of them is kept")
+                .type(Integer.class)
+                .setDefault(5);
+
+        parser.addArgument("--time-tolerance")
+                .help("Fraction by which build time and latencies may grow, and throughput " +
+                        "may shrink, over the baseline")
+                .type(Float.class)
+                .setDefault(0.5F);
+
+        parser.addArgument("--time-slack-ms")
+                .help("Milliseconds that times may exceed the tolerance by, so that the " +
+                        "noise of very short times isn't reported")
+                .type(Float.class)
+                .setDefault(1F);
+
+        parser.addArgument("--memory-tolerance")
+                .help("Fraction by which the peak heap may grow over the baseline")
+                .type(Float.class)
+                .setDefault(0.25F);
+
+        parser.addArgument("--accuracy-tolerance")
+                .help("Largest difference allowed between the MAP and MRR and those of the " +
+                        "baseline")
+                .type(Float.class)
+                .setDefault(0.0001F);
+
+        return parser;
+    }
+}
@@ -0,0 +1,212 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.BaseIndexBuilder;
+import buglocator.indexing.analysis.PreprocessingAnalyzer;
+import buglocator.indexing.bug.reports.BugReportIndexBuilder;
+import buglocator.indexing.source.code.SourceCodeIndexBuilder;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Compares ingesting raw data with the Java {@link PreprocessingAnalyzer} in a single pass
+ * against running the Python preprocessing scripts and indexing their output. For every system
+ * it reports the end-to-end time of both and the amount of documents whose tokens differ.
+ * <p>
+ * The raw folder must contain the source texts output by {@code TextExtractionMain} in
+ * {@code raw-source/<system>.json} and the collected bug reports in
+ * {@code raw-bug-reports/<system>.json}.
+ */
+public class PreprocessingComparisonMain {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ArgumentParser argumentParser = createArgumentParser();
+        Namespace arguments;
+        try {
+            arguments = argumentParser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            argumentParser.handleError(e);
+            return;
+        }
+
+        Path rawPath = Paths.get(arguments.getString("raw_folder"));
+        Path scriptsPath = Paths.get(arguments.getString("scripts_folder"));
+        Path indexPath = Paths.get(arguments.getString("index_folder"));
+        Path outputFilePath = Paths.get(arguments.getString("output_file"));
+        boolean fullAnalysis = arguments.getBoolean("full_analysis");
+
+        if (!EvaluationOptions.isNewOutputFile(outputFilePath)) {
+            return;
+        }
+
+        FileUtils.forceMkdir(indexPath.toFile());
+        PreprocessingAnalyzer analyzer = new PreprocessingAnalyzer();
+        PrintWriter outputWriter = new PrintWriter(outputFilePath.toFile());
+        outputWriter.println("System;Documents;Mismatching documents;Java ingest ms;" +
+                "Python ingest ms");
+
+        for (String system : EvaluationOptions.getSystems(fullAnalysis)) {
+            Path rawSourceFile = rawPath.resolve(Paths.get("raw-source", system + ".json"));
+            Path rawBugReportsFile =
+                    rawPath.resolve(Paths.get("raw-bug-reports", system + ".json"));
+            if (!Files.exists(rawSourceFile) || !Files.exists(rawBugReportsFile)) {
+                System.err.println("Raw data for \"" + system + "\" not found in raw folder");
+                continue;
+            }
+
+            // Java: raw texts are preprocessed while they are indexed
+            System.out.println(String.format("Ingesting system %s in Java", system));
+            long startTime = System.currentTimeMillis();
+            SourceCodeIndexBuilder sourceCodeBuilder = new SourceCodeIndexBuilder();
+            sourceCodeBuilder.setPreprocessingAnalyzer(analyzer);
+            buildIndex(sourceCodeBuilder, rawSourceFile,
+                    indexPath.resolve(Paths.get("java", "source-code", system)));
+            BugReportIndexBuilder bugReportBuilder = new BugReportIndexBuilder();
+            bugReportBuilder.setPreprocessingAnalyzer(analyzer);
+            buildIndex(bugReportBuilder, rawBugReportsFile,
+                    indexPath.resolve(Paths.get("java", "bug-reports", system)));
+            long javaMillis = System.currentTimeMillis() - startTime;
+
+            // Python: the scripts write processed data that is indexed afterwards
+            System.out.println(String.format("Ingesting system %s with the Python scripts",
+                    system));
+            Path processedSourceFile = indexPath.resolve(system + "-source.json");
+            Path processedBugReportsFile = indexPath.resolve(system + "-bug-reports.json");
+            startTime = System.currentTimeMillis();
+            if (!runScript(scriptsPath.resolve("preprocess-source-texts.py"), rawSourceFile,
+                    processedSourceFile) ||
+                    !runScript(scriptsPath.resolve("preprocess-bug-reports.py"),
+                            rawBugReportsFile, processedBugReportsFile)) {
+                System.err.println("The preprocessing scripts failed for system " + system);
+                outputWriter.println(String.join(";", system, "n/a", "n/a",
+                        String.valueOf(javaMillis), "n/a"));
+                outputWriter.flush();
+                continue;
+            }
+            buildIndex(new SourceCodeIndexBuilder(), processedSourceFile,
+                    indexPath.resolve(Paths.get("python", "source-code", system)));
+            buildIndex(new BugReportIndexBuilder(), processedBugReportsFile,
+                    indexPath.resolve(Paths.get("python", "bug-reports", system)));
+            long pythonMillis = System.currentTimeMillis() - startTime;
+
+            int[] sourceComparison = compareTokens(analyzer, rawSourceFile, processedSourceFile,
+                    "text");
+            int[] bugReportComparison = compareTokens(analyzer, rawBugReportsFile,
+                    processedBugReportsFile, "title", "description");
+
+            outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                    system,
+                    String.valueOf(sourceComparison[0] + bugReportComparison[0]),
+                    String.valueOf(sourceComparison[1] + bugReportComparison[1]),
+                    String.valueOf(javaMillis),
+                    String.valueOf(pythonMillis))));
+            outputWriter.flush();
+        }
+
+        outputWriter.close();
+    }
+
+    private static void buildIndex(BaseIndexBuilder<?> indexBuilder, Path originPath,
+                                   Path destPath) throws IOException {
+        FileUtils.deleteDirectory(destPath.toFile());
+        FileUtils.forceMkdir(destPath.toFile());
+        indexBuilder.buildIndex(originPath, destPath);
+    }
+
+    private static boolean runScript(Path script, Path input, Path output)
+            throws IOException, InterruptedException {
+        Process process = new ProcessBuilder("python3", script.toString())
+                .redirectInput(input.toFile())
+                .redirectOutput(output.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        return process.waitFor() == 0;
+    }
+
+    /**
+     * Compares the given fields of the raw documents preprocessed in Java with the ones written
+     * by the scripts, line by line, printing the first difference.
+     *
+     * @return The amount of documents and the amount of them with different tokens.
+     */
+    private static int[] compareTokens(PreprocessingAnalyzer analyzer, Path rawFile,
+                                       Path processedFile, String... fields) throws IOException {
+        Gson gson = new Gson();
+        int documents = 0;
+        int mismatches = 0;
+        try (BufferedReader rawReader = Files.newBufferedReader(rawFile);
+             BufferedReader processedReader = Files.newBufferedReader(processedFile)) {
+            String rawLine;
+            while ((rawLine = rawReader.readLine()) != null) {
+                String processedLine = processedReader.readLine();
+                JsonObject raw = gson.fromJson(rawLine, JsonObject.class);
+                JsonObject processed = processedLine == null ?
+                        new JsonObject() : gson.fromJson(processedLine, JsonObject.class);
+                documents++;
+
+                for (String field : fields) {
+                    String rawText = raw.has(field) && !raw.get(field).isJsonNull() ?
+                            raw.get(field).getAsString() : null;
+                    String expected = processed.has(field) ?
+                            processed.get(field).getAsString() : null;
+                    String actual = analyzer.preprocess(rawText);
+                    if (!actual.equals(expected)) {
+                        if (mismatches == 0) {
+                            System.err.println(String.format("First difference in %s, " +
+                                    "field %s:\nJava:   %s\nPython: %s", rawFile, field,
+                                    actual, expected));
+                        }
+                        mismatches++;
+                        break;
+                    }
+                }
+            }
+        }
+
+        return new int[]{documents, mismatches};
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("PreprocessingComparison")
+                .defaultHelp(true)
+                .description("Compares the Java preprocessing analyzer with the Python " +
+                        "preprocessing scripts.");
+
+        parser.addArgument("-r", "--raw-folder")
+                .help("The folder where the raw source texts and bug reports are located")
+                .setDefault("raw-data");
+
+        parser.addArgument("-s", "--scripts-folder")
+                .help("The folder where the Python preprocessing scripts are located")
+                .setDefault(".." + File.separator + "data-preprocessing");
+
+        parser.addArgument("-i", "--index-folder")
+                .help("Folder where the indexes of both pipelines will be rebuilt")
+                .setDefault("preprocessing-index");
+
+        parser.addArgument("-o", "--output-file")
+                .help("File to which the results of the analysis will be output")
+                .setDefault("preprocessing-comparison.csv");
+
+        parser.addArgument("-f", "--full-analysis")
+                .help("Includes the analysis of the Eclipse system, which takes a long time to " +
+                        "process")
+                .action(Arguments.storeTrue());
+
+        return parser;
+    }
+}
@@ -0,0 +1,98 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.QueryReduction;
+import buglocator.retrieval.RetrieverBase.UseField;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates both approaches with several query reduction cutoffs, reporting the accuracy and the
+ * average query latency of each one so that an operating point can be chosen.
+ */
+public class QueryReductionMain {
+    public static void main(String[] args) throws IOException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+        Namespace arguments = options.arguments;
+        Path dataPath = options.dataPath;
+
+        List<QueryReduction> reductions = new ArrayList<>();
+        reductions.add(QueryReduction.none());
+        for (String maxTerms : arguments.getString("top_terms").split(",")) {
+            reductions.add(QueryReduction.topTerms(Integer.parseInt(maxTerms.trim())));
+        }
+        for (String minIdf : arguments.getString("idf_thresholds").split(",")) {
+            reductions.add(QueryReduction.idfThreshold(Float.parseFloat(minIdf.trim())));
+        }
+
+        options.buildIndexes();
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println("Method;System;Query Reduction;% Top 1;% Top 5;% Top 10;MRR;MAP;" +
+                "Average Precision;Average Recall;Amount of Queries;ms/query");
+
+        for (String system : options.getSystems()) {
+            if (!Files.exists(
+                    CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), system))) {
+                System.err.println("Bug reports for \"" + system + "\" not found in data folder");
+                continue;
+            }
+
+            for (QueryReduction reduction : reductions) {
+                BaseRetrievalEvaluator[] evaluators = {
+                        new BugLocatorEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                                options.indexPath, dataPath, options.alpha),
+                        new BaselineEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                                options.indexPath, dataPath)};
+
+                for (BaseRetrievalEvaluator evaluator : evaluators) {
+                    evaluator.setQueryReduction(reduction);
+                    EvaluationResult result = evaluator.evaluate();
+                    if (result == null) {
+                        continue;
+                    }
+
+                    outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                            evaluator.getLogTag(),
+                            system,
+                            reduction.toString(),
+                            result.getCSVLine(),
+                            String.valueOf(result.getAverageQueryMillis()))));
+                    outputWriter.flush();
+                }
+            }
+        }
+
+        outputWriter.close();
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("QueryReduction")
+                .defaultHelp(true)
+                .description("Evaluates the retrieval approaches with reduced queries.");
+
+        EvaluationOptions.addArguments(parser, "query-reduction-evaluation.csv");
+
+        parser.addArgument("-n", "--top-terms")
+                .help("Comma separated amounts of terms to keep, by query tf * idf")
+                .setDefault("10,25,50,100");
+
+        parser.addArgument("-t", "--idf-thresholds")
+                .help("Comma separated minimum idf values of the terms to keep")
+                .setDefault("0.5,1,2");
+
+        return parser;
+    }
+}
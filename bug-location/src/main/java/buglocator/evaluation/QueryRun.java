@@ -0,0 +1,72 @@
+package buglocator.evaluation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ranked list of source files retrieved for a bug report, together with the files that fixed it.
+ * Files are identified by their path, which is unique within each system.
+ */
+public class QueryRun {
+    private final String queryId;
+    private final Set<String> relevantFiles;
+    private final List<String> rankedFiles = new ArrayList<>();
+    private final List<Float> scores = new ArrayList<>();
+
+    /**
+     * Rank of each relevant file among all the scored files, {@code null} if they weren't found.
+     */
+    private Map<String, Integer> relevantRanks = null;
+
+    public QueryRun(String queryId, Set<String> relevantFiles) {
+        this.queryId = queryId;
+        this.relevantFiles = new LinkedHashSet<>(relevantFiles);
+    }
+
+    /**
+     * Appends a file to the end of the ranked list.
+     */
+    public void addRankedFile(String path, float score) {
+        rankedFiles.add(path);
+        scores.add(score);
+    }
+
+    /**
+     * @param rank Rank of a relevant file among all the scored files, starting at 1, or 0 if it
+     *             wasn't scored.
+     */
+    public void setRelevantRank(String path, int rank) {
+        if (relevantRanks == null) {
+            relevantRanks = new LinkedHashMap<>();
+        }
+        relevantRanks.put(path, rank);
+    }
+
+    public String getQueryId() {
+        return queryId;
+    }
+
+    public Set<String> getRelevantFiles() {
+        return relevantFiles;
+    }
+
+    public List<String> getRankedFiles() {
+        return rankedFiles;
+    }
+
+    public float getScore(int index) {
+        return scores.get(index);
+    }
+
+    /**
+     * @return The rank of every relevant file among all the scored files, or {@code null} if
+     * they weren't found.
+     */
+    public Map<String, Integer> getRelevantRanks() {
+        return relevantRanks;
+    }
+}
@@ -0,0 +1,214 @@
+package buglocator.evaluation;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes the evaluation metrics of a set of query runs considering only the first {@code k}
+ * files of each ranked list, so that the metrics for any cutoff up to the depth of the runs can be
+ * obtained without repeating the retrieval.
+ */
+public class RankingMetrics {
+    private final List<QueryRun> runs;
+
+    public RankingMetrics(List<QueryRun> runs) {
+        this.runs = runs;
+    }
+
+    public int getQueryCount() {
+        return runs.size();
+    }
+
+    /**
+     * @return Fraction of the queries with a relevant file in the first {@code n} positions.
+     */
+    public float getTopNPrecision(int n) {
+        int hits = 0;
+        for (QueryRun run : runs) {
+            int topRank = getTopRank(run, n);
+            if (topRank > 0) {
+                hits++;
+            }
+        }
+
+        return (float) hits / runs.size();
+    }
+
+    public float getMeanReciprocalRank(int k) {
+        float reciprocalRankAccum = 0;
+        for (QueryRun run : runs) {
+            int topRank = getTopRank(run, k);
+            reciprocalRankAccum += topRank > 0 ? 1F / topRank : 0;
+        }
+
+        return reciprocalRankAccum / runs.size();
+    }
+
+    public float getMeanAveragePrecision(int k) {
+        float averagePrecisionAccum = 0;
+        for (QueryRun run : runs) {
+            averagePrecisionAccum += calculateAveragePrecision(run, k);
+        }
+
+        return averagePrecisionAccum / runs.size();
+    }
+
+    public float getAveragePrecision(int k) {
+        float precisionAccum = 0;
+        for (QueryRun run : runs) {
+            precisionAccum += getRelevantRetrieved(run, k) / ((float) getLength(run, k));
+        }
+
+        return precisionAccum / runs.size();
+    }
+
+    public float getAverageRecall(int k) {
+        float recallAccum = 0;
+        for (QueryRun run : runs) {
+            recallAccum += getRelevantRetrieved(run, k) / ((float) run.getRelevantFiles().size());
+        }
+
+        return recallAccum / runs.size();
+    }
+
+    /**
+     * @return Whether the rank of every relevant file among all the scored ones is known, which
+     * the full depth metrics need.
+     */
+    public boolean hasFullRanks() {
+        return runs.stream().allMatch(run -> run.getRelevantRanks() != null);
+    }
+
+    /**
+     * @return The mean reciprocal rank of the first relevant file at any depth.
+     */
+    public float getFullMeanReciprocalRank() {
+        float reciprocalRankAccum = 0;
+        for (QueryRun run : runs) {
+            int[] ranks = getFullRanks(run);
+            reciprocalRankAccum += ranks.length > 0 ? 1F / ranks[0] : 0;
+        }
+
+        return reciprocalRankAccum / runs.size();
+    }
+
+    /**
+     * @return The mean average precision at any depth, the relevant files that weren't scored
+     * contribute a precision of 0.
+     */
+    public float getFullMeanAveragePrecision() {
+        float averagePrecisionAccum = 0;
+        for (QueryRun run : runs) {
+            int[] ranks = getFullRanks(run);
+            float accumulator = 0;
+            for (int i = 0; i < ranks.length; i++) {
+                accumulator += (i + 1F) / ranks[i];
+            }
+            averagePrecisionAccum += accumulator / run.getRelevantFiles().size();
+        }
+
+        return averagePrecisionAccum / runs.size();
+    }
+
+    /**
+     * @return The average fraction of the relevant files scored at all.
+     */
+    public float getFullRecall() {
+        float recallAccum = 0;
+        for (QueryRun run : runs) {
+            recallAccum += getFullRanks(run).length / ((float) run.getRelevantFiles().size());
+        }
+
+        return recallAccum / runs.size();
+    }
+
+    /**
+     * @return The metrics reported by the evaluators, with a cutoff of 10.
+     */
+    public EvaluationResult toEvaluationResult(String systemName, float averageQueryMillis) {
+        return new EvaluationResult(
+                systemName,
+                runs.size(),
+                getTopNPrecision(1),
+                getTopNPrecision(5),
+                getTopNPrecision(10),
+                getMeanReciprocalRank(10),
+                getMeanAveragePrecision(10),
+                getAveragePrecision(10),
+                getAverageRecall(10),
+                averageQueryMillis);
+    }
+
+    /**
+     * @return The ranks of the scored relevant files in increasing order.
+     */
+    private static int[] getFullRanks(QueryRun run) {
+        if (run.getRelevantRanks() == null) {
+            throw new IllegalStateException("The ranks of the relevant files of query " +
+                    run.getQueryId() + " are unknown");
+        }
+
+        return run.getRelevantRanks().values().stream()
+                .mapToInt(Integer::intValue).filter(rank -> rank > 0).sorted().toArray();
+    }
+
+    private static int getLength(QueryRun run, int k) {
+        return Math.min(k, run.getRankedFiles().size());
+    }
+
+    private static int getRelevantRetrieved(QueryRun run, int k) {
+        Set<String> goldSet = run.getRelevantFiles();
+        List<String> rankedFiles = run.getRankedFiles();
+        int relevantRetrieved = 0;
+        for (int i = 0; i < getLength(run, k); i++) {
+            if (goldSet.contains(rankedFiles.get(i))) {
+                relevantRetrieved++;
+            }
+        }
+
+        return relevantRetrieved;
+    }
+
+    private static float calculateAveragePrecision(QueryRun run, int k) {
+        Set<String> goldSet = run.getRelevantFiles();
+        List<String> rankedFiles = run.getRankedFiles();
+        int length = getLength(run, k);
+        float totalRelevant = Math.min(goldSet.size(), length);
+        if (totalRelevant == 0) {
+            return 0;
+        }
+
+        float currentRelevant = 0;
+
+        float accumulator = 0;
+        for (int i = 0; i < length; i++) {
+            // If the current document is relevant
+            if (goldSet.contains(rankedFiles.get(i))) {
+                currentRelevant++;
+                accumulator += currentRelevant / (i + 1);
+            }
+
+            if (currentRelevant == totalRelevant) {
+                break;
+            }
+        }
+
+        return accumulator / totalRelevant;
+    }
+
+    /**
+     * @return The rank of the first relevant file among the first {@code k} or {@code 0} if
+     * there is none.
+     */
+    private static int getTopRank(QueryRun run, int k) {
+        Set<String> goldSet = run.getRelevantFiles();
+        List<String> rankedFiles = run.getRankedFiles();
+        for (int i = 0; i < getLength(run, k); i++) {
+            if (goldSet.contains(rankedFiles.get(i))) {
+                return i + 1;
+            }
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,391 @@
+package buglocator.evaluation;
+
+import org.apache.lucene.index.SegmentInfos;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Query runs of an evaluation persisted in TREC format with tab-separated fields: a {@code .run}
+ * file with a {@code query Q0 path rank score tag} line per retrieved file, a {@code .qrels} file
+ * with a {@code query 0 path 1} line per relevant file, a {@code .queries} file with the id of
+ * every query in order, including those without relevant or retrieved files, and an {@code .info}
+ * properties file describing the evaluation. Runs with the rank of each relevant file among all
+ * the scored files also have a {@code .ranks} file with {@code query path rank} lines.
+ * <p>
+ * Run files written before the {@code .queries} file existed separate their fields with spaces
+ * and take the order of the queries from the {@code .qrels} file, they can still be read.
+ * <p>
+ * Checkpoints of evaluations in progress have the same files, but each save only appends its new
+ * runs and then replaces the info file atomically. The info records the length of every other
+ * file at the time of the save, so that the runs appended by an interrupted save are discarded.
+ */
+public class RunFile {
+    public static final String SYSTEM = "system";
+    public static final String METHOD = "method";
+    public static final String PARAMETERS = "parameters";
+    public static final String FINGERPRINT = "fingerprint";
+    public static final String DEPTH = "depth";
+    public static final String QUERY_MILLIS = "queryMillis";
+    public static final String PARTIAL_QUERIES = "partialQueries";
+    // Only in checkpoints of evaluations in progress
+    public static final String POSITION = "position";
+    public static final String QUERY_NANOS = "queryNanos";
+    public static final String LENGTHS = "lengths";
+    // Prefix of the state of the save before the last one of a checkpoint
+    public static final String PREVIOUS = "previous.";
+
+    private static final String[] EXTENSIONS = {".queries", ".run", ".qrels", ".ranks"};
+    private static final String[] CHECKPOINT_STATE =
+            {POSITION, QUERY_NANOS, PARTIAL_QUERIES, LENGTHS};
+
+    private final Properties info;
+    private final List<QueryRun> runs;
+
+    public RunFile(Properties info, List<QueryRun> runs) {
+        this.info = info;
+        this.runs = runs;
+    }
+
+    public Properties getInfo() {
+        return info;
+    }
+
+    public List<QueryRun> getRuns() {
+        return runs;
+    }
+
+    /**
+     * @return Whether the run files with the given prefix exist.
+     */
+    public static boolean exists(Path prefix) {
+        return Files.exists(getPath(prefix, ".info"));
+    }
+
+    /**
+     * Deletes the run files with the given prefix, starting with the info file so that they
+     * aren't found if the deletion is interrupted.
+     */
+    public static void delete(Path prefix) throws IOException {
+        Files.deleteIfExists(getPath(prefix, ".info"));
+        Files.deleteIfExists(getPath(prefix, ".info.tmp"));
+        for (String extension : EXTENSIONS) {
+            Files.deleteIfExists(getPath(prefix, extension));
+        }
+    }
+
+    /**
+     * Writes the run files with the given prefix, replacing any previous ones. The info file is
+     * written last, so runs whose writing was interrupted are not found.
+     */
+    public void write(Path prefix) throws IOException {
+        delete(prefix);
+        append(prefix);
+        writeInfo(prefix, info);
+    }
+
+    /**
+     * Saves the runs to the checkpoint with the given prefix after the runs of its previous
+     * saves, replacing its info with this one. The info of the checkpoint keeps the state of the
+     * previous save besides the new one, so that evaluations of several methods whose
+     * checkpoints weren't all saved can resume every method from the same position.
+     *
+     * @see #readCheckpoint(Path, int)
+     */
+    public void appendCheckpoint(Path prefix) throws IOException {
+        Properties checkpointInfo = new Properties();
+        checkpointInfo.putAll(info);
+        if (exists(prefix)) {
+            Properties previousInfo = readInfo(prefix);
+            for (String key : CHECKPOINT_STATE) {
+                if (previousInfo.containsKey(key)) {
+                    checkpointInfo.setProperty(PREVIOUS + key, previousInfo.getProperty(key));
+                }
+            }
+        } else {
+            // Data of a first save that was interrupted
+            delete(prefix);
+        }
+
+        long[] lengths = append(prefix);
+        checkpointInfo.setProperty(LENGTHS, Arrays.stream(lengths)
+                .mapToObj(String::valueOf).collect(Collectors.joining(",")));
+        writeInfo(prefix, checkpointInfo);
+    }
+
+    /**
+     * @return The position of the last save of the checkpoint with the given prefix, or -1 if
+     * there is no checkpoint.
+     */
+    public static int getCheckpointPosition(Path prefix) throws IOException {
+        return exists(prefix) ?
+                Integer.parseInt(readInfo(prefix).getProperty(POSITION, "-1")) : -1;
+    }
+
+    /**
+     * Reads the checkpoint with the given prefix as it was saved at the given position, either by
+     * its last save or by the one before, and discards the runs appended after that save so that
+     * the next one continues from it.
+     *
+     * @return The checkpoint, or {@code null} if it has no save at the position.
+     */
+    public static RunFile readCheckpoint(Path prefix, int position) throws IOException {
+        if (!exists(prefix)) {
+            return null;
+        }
+
+        Properties info = readInfo(prefix);
+        String state;
+        if (String.valueOf(position).equals(info.getProperty(POSITION))) {
+            state = "";
+        } else if (String.valueOf(position).equals(info.getProperty(PREVIOUS + POSITION))) {
+            state = PREVIOUS;
+        } else {
+            return null;
+        }
+        String lengths = info.getProperty(state + LENGTHS);
+        if (lengths == null) {
+            return null;
+        }
+
+        Properties checkpointInfo = new Properties();
+        checkpointInfo.putAll(info);
+        for (String key : CHECKPOINT_STATE) {
+            checkpointInfo.remove(key);
+            if (info.containsKey(state + key)) {
+                checkpointInfo.setProperty(key, info.getProperty(state + key));
+            }
+            checkpointInfo.remove(PREVIOUS + key);
+        }
+
+        String[] fileLengths = lengths.split(",");
+        for (int i = 0; i < EXTENSIONS.length; i++) {
+            try (FileChannel channel = FileChannel.open(getPath(prefix, EXTENSIONS[i]),
+                    StandardOpenOption.WRITE)) {
+                channel.truncate(Long.parseLong(fileLengths[i]));
+            }
+        }
+        writeInfo(prefix, checkpointInfo);
+
+        return read(prefix);
+    }
+
+    /**
+     * Appends the runs to the files with the given prefix and flushes them to the disk.
+     *
+     * @return The length of each file after appending, in the order of {@link #EXTENSIONS}.
+     */
+    private long[] append(Path prefix) throws IOException {
+        String tag = info.getProperty(METHOD, "run").replaceAll("\\W", "");
+        try (BufferedWriter queriesWriter = newAppendingWriter(prefix, ".queries");
+             BufferedWriter runWriter = newAppendingWriter(prefix, ".run");
+             BufferedWriter qrelsWriter = newAppendingWriter(prefix, ".qrels");
+             BufferedWriter ranksWriter = newAppendingWriter(prefix, ".ranks")) {
+            for (QueryRun run : runs) {
+                queriesWriter.write(run.getQueryId());
+                queriesWriter.newLine();
+
+                for (String relevantFile : run.getRelevantFiles()) {
+                    qrelsWriter.write(String.join("\t", run.getQueryId(), "0", relevantFile, "1"));
+                    qrelsWriter.newLine();
+                }
+
+                List<String> rankedFiles = run.getRankedFiles();
+                for (int i = 0; i < rankedFiles.size(); i++) {
+                    runWriter.write(String.join("\t", run.getQueryId(), "Q0", rankedFiles.get(i),
+                            String.valueOf(i + 1), String.valueOf(run.getScore(i)), tag));
+                    runWriter.newLine();
+                }
+
+                if (run.getRelevantRanks() != null) {
+                    for (Map.Entry<String, Integer> rank : run.getRelevantRanks().entrySet()) {
+                        ranksWriter.write(String.join("\t", run.getQueryId(), rank.getKey(),
+                                String.valueOf(rank.getValue())));
+                        ranksWriter.newLine();
+                    }
+                }
+            }
+        }
+
+        long[] lengths = new long[EXTENSIONS.length];
+        for (int i = 0; i < EXTENSIONS.length; i++) {
+            try (FileChannel channel = FileChannel.open(getPath(prefix, EXTENSIONS[i]),
+                    StandardOpenOption.WRITE)) {
+                channel.force(true);
+                lengths[i] = channel.size();
+            }
+        }
+        return lengths;
+    }
+
+    private static BufferedWriter newAppendingWriter(Path prefix, String extension)
+            throws IOException {
+        return Files.newBufferedWriter(getPath(prefix, extension), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Writes the info file under a temporary name and moves it into place, so that it is always
+     * either the previous info or the new one.
+     */
+    private static void writeInfo(Path prefix, Properties info) throws IOException {
+        Path temporaryPath = getPath(prefix, ".info.tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer infoWriter = Channels.newWriter(channel, StandardCharsets.UTF_8.name());
+            info.store(infoWriter, null);
+            infoWriter.flush();
+            channel.force(true);
+        }
+        Files.move(temporaryPath, getPath(prefix, ".info"), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static Properties readInfo(Path prefix) throws IOException {
+        Properties info = new Properties();
+        try (Reader infoReader = Files.newBufferedReader(getPath(prefix, ".info"))) {
+            info.load(infoReader);
+        }
+        return info;
+    }
+
+    public static RunFile read(Path prefix) throws IOException {
+        Properties info = readInfo(prefix);
+
+        Path queriesPath = getPath(prefix, ".queries");
+        boolean legacy = !Files.exists(queriesPath);
+        String separator = legacy ? " " : "\t";
+
+        Map<String, Set<String>> relevantFiles = new LinkedHashMap<>();
+        if (!legacy) {
+            for (String queryId : Files.readAllLines(queriesPath)) {
+                relevantFiles.put(queryId, new LinkedHashSet<>());
+            }
+        }
+        try (BufferedReader qrelsReader = Files.newBufferedReader(getPath(prefix, ".qrels"))) {
+            String line;
+            while ((line = qrelsReader.readLine()) != null) {
+                String[] fields = line.split(separator);
+                relevantFiles.computeIfAbsent(fields[0], q -> new LinkedHashSet<>()).add(fields[2]);
+            }
+        }
+
+        Map<String, QueryRun> runs = new LinkedHashMap<>();
+        relevantFiles.forEach((queryId, files) -> runs.put(queryId, new QueryRun(queryId, files)));
+        // Legacy run files have no record of the queries without relevant files
+        Function<String, QueryRun> getRun = queryId -> runs.computeIfAbsent(queryId,
+                q -> new QueryRun(q, Collections.emptySet()));
+
+        try (BufferedReader runReader = Files.newBufferedReader(getPath(prefix, ".run"))) {
+            String line;
+            while ((line = runReader.readLine()) != null) {
+                // Lines are written in rank order
+                String[] fields = line.split(separator);
+                getRun.apply(fields[0]).addRankedFile(fields[2], Float.parseFloat(fields[4]));
+            }
+        }
+
+        Path ranksPath = getPath(prefix, ".ranks");
+        if (Files.exists(ranksPath)) {
+            try (BufferedReader ranksReader = Files.newBufferedReader(ranksPath)) {
+                String line;
+                while ((line = ranksReader.readLine()) != null) {
+                    String[] fields = line.split(separator);
+                    getRun.apply(fields[0]).setRelevantRank(fields[1],
+                            Integer.parseInt(fields[2]));
+                }
+            }
+        }
+
+        return new RunFile(info, new ArrayList<>(runs.values()));
+    }
+
+    /**
+     * @return The prefixes of the run files found in a folder, sorted by name.
+     */
+    public static List<Path> list(Path folder) throws IOException {
+        List<Path> prefixes = new ArrayList<>();
+        if (!Files.isDirectory(folder)) {
+            return prefixes;
+        }
+
+        try (DirectoryStream<Path> infoFiles = Files.newDirectoryStream(folder, "*.info")) {
+            for (Path infoFile : infoFiles) {
+                String fileName = infoFile.getFileName().toString();
+                prefixes.add(folder.resolve(fileName.substring(0, fileName.length() - 5)));
+            }
+        }
+        Collections.sort(prefixes);
+
+        return prefixes;
+    }
+
+    /**
+     * Hashes the last commit of the Lucene indexes and the contents of the files among the given
+     * paths, so that the fingerprint changes whenever any of them is rebuilt or modified. Paths
+     * that don't exist are skipped.
+     */
+    public static String getFingerprint(Path... paths) throws IOException {
+        MessageDigest digest = createDigest();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                String[] files = path.toFile().list();
+                String segmentsFile = SegmentInfos.getLastCommitSegmentsFileName(
+                        files == null ? new String[0] : files);
+                if (segmentsFile != null) {
+                    digest.update(Files.readAllBytes(path.resolve(segmentsFile)));
+                }
+            } else if (Files.exists(path)) {
+                digest.update(Files.readAllBytes(path));
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return A hash identifying an evaluation with the given description.
+     */
+    public static String getKey(String... parts) {
+        MessageDigest digest = createDigest();
+        digest.update(String.join("\n", parts).getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(2 * hash.length);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                    .append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static Path getPath(Path prefix, String extension) {
+        return prefix.resolveSibling(prefix.getFileName() + extension);
+    }
+}
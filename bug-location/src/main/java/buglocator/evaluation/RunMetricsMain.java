@@ -0,0 +1,115 @@
+package buglocator.evaluation;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Computes the evaluation metrics for several cutoffs from the run files persisted by the
+ * evaluators, without performing any retrieval.
+ */
+public class RunMetricsMain {
+    public static void main(String[] args) throws IOException {
+        ArgumentParser argumentParser = createArgumentParser();
+        Namespace arguments;
+        try {
+            arguments = argumentParser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            argumentParser.handleError(e);
+            return;
+        }
+
+        Path runFolder = Paths.get(arguments.getString("run_folder"));
+        Path outputFilePath = Paths.get(arguments.getString("output_file"));
+
+        if (!EvaluationOptions.isNewOutputFile(outputFilePath)) {
+            return;
+        }
+
+        List<Integer> cutoffs = new ArrayList<>();
+        for (String cutoff : arguments.getString("cutoffs").split(",")) {
+            cutoffs.add(Integer.parseInt(cutoff.trim()));
+        }
+
+        List<Path> runPrefixes = RunFile.list(runFolder);
+        if (runPrefixes.isEmpty()) {
+            System.err.println(String.format("No run files found in '%s'",
+                    runFolder.toAbsolutePath().toString()));
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        PrintWriter outputWriter = new PrintWriter(outputFilePath.toFile());
+        outputWriter.println("Method;System;Parameters;Depth;k;% Top k;MRR;MAP;" +
+                "Average Precision;Average Recall;Amount of Queries;Full MRR;Full MAP;" +
+                "Full Recall");
+
+        for (Path runPrefix : runPrefixes) {
+            RunFile runFile = RunFile.read(runPrefix);
+            Properties info = runFile.getInfo();
+            int depth = Integer.parseInt(info.getProperty(RunFile.DEPTH));
+            RankingMetrics metrics = new RankingMetrics(runFile.getRuns());
+            String fullRankMetrics = metrics.hasFullRanks() ?
+                    String.join(";", String.valueOf(metrics.getFullMeanReciprocalRank()),
+                            String.valueOf(metrics.getFullMeanAveragePrecision()),
+                            String.valueOf(metrics.getFullRecall())) :
+                    "-;-;-";
+
+            for (int k : cutoffs) {
+                if (k > depth) {
+                    System.err.println(String.format("Skipping k = %d for %s, its runs only " +
+                            "have %d files", k, runPrefix.getFileName(), depth));
+                    continue;
+                }
+
+                outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                        info.getProperty(RunFile.METHOD),
+                        info.getProperty(RunFile.SYSTEM),
+                        info.getProperty(RunFile.PARAMETERS),
+                        String.valueOf(depth),
+                        String.valueOf(k),
+                        String.valueOf(metrics.getTopNPrecision(k)),
+                        String.valueOf(metrics.getMeanReciprocalRank(k)),
+                        String.valueOf(metrics.getMeanAveragePrecision(k)),
+                        String.valueOf(metrics.getAveragePrecision(k)),
+                        String.valueOf(metrics.getAverageRecall(k)),
+                        String.valueOf(metrics.getQueryCount()),
+                        fullRankMetrics)));
+            }
+        }
+
+        outputWriter.close();
+        System.out.println(String.format("Computed the metrics of %d runs in %d ms",
+                runPrefixes.size(), System.currentTimeMillis() - startTime));
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("RunMetrics")
+                .defaultHelp(true)
+                .description("Computes the evaluation metrics from persisted run files.");
+
+        parser.addArgument("-r", "--run-folder")
+                .help("Folder where the evaluations persisted their run files")
+                .setDefault("runs");
+
+        parser.addArgument("-k", "--cutoffs")
+                .help("Comma separated amounts of ranked source files considered by the metrics")
+                .setDefault("1,5,10,20,50,100");
+
+        parser.addArgument("-o", "--output-file")
+                .help("File to which the metrics will be output")
+                .setDefault("run-metrics.csv");
+
+        return parser;
+    }
+}
@@ -0,0 +1,137 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.data.TermFrequencyDictionary;
+import buglocator.retrieval.internals.FrequencyCollectingQuery;
+import buglocator.retrieval.similarity.BaseSimilarity;
+import buglocator.retrieval.similarity.BugLocatorSimilarity;
+import buglocator.retrieval.similarity.QueryVector;
+import buglocator.retrieval.similarity.TfIdfSimilarity;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Micro benchmark of the document scoring kernels. For every bug report of a system the matching
+ * source files are collected once, then the rVSM and tf-idf kernels score them repeatedly while
+ * the time and the bytes allocated by the scoring thread are measured. Document norms are warmed
+ * up before measuring, so the figures correspond to steady state scoring.
+ * <p>
+ * Usage: {@code ScoringKernelBenchmarkMain <index folder> <data folder> <system> [rounds]}
+ */
+public class ScoringKernelBenchmarkMain {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: ScoringKernelBenchmarkMain <index folder> <data folder> " +
+                    "<system> [rounds]");
+            return;
+        }
+
+        Path indexPath = Paths.get(args[0]);
+        Path dataPath = Paths.get(args[1]);
+        String system = args[2];
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        IndexReader reader = DirectoryReader.open(
+                FSDirectory.open(indexPath.resolve(Paths.get("source-code", system))));
+        IndexSearcher searcher = new IndexSearcher(reader);
+        String[] stats = FileUtils.readFileToString(indexPath.resolve(
+                Paths.get("source-code", system, "stats.txt")).toFile()).split("\n");
+
+        TermFrequencyDictionary tfCounts = new TermFrequencyDictionary();
+        BaseSimilarity[] similarities = {
+                new BugLocatorSimilarity(tfCounts, reader,
+                        Integer.parseInt(stats[0]), Integer.parseInt(stats[1])),
+                new TfIdfSimilarity(tfCounts, reader)};
+
+        // Collect the query frequencies and matching documents of every bug report
+        List<Map<String, Integer>> queries = new ArrayList<>();
+        List<int[]> matches = new ArrayList<>();
+        for (BugReport bugReport : CorpusFiles.readAll(
+                CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), system),
+                BugReport.class)) {
+            Map<String, Integer> queryFreqs = new HashMap<>();
+            for (String w : (bugReport.getTitle() + " " + bugReport.getDescription()).split(" +")) {
+                if (queryFreqs.containsKey(w)) {
+                    queryFreqs.put(w, queryFreqs.get(w) + 1);
+                } else if (reader.docFreq(new Term("text", w)) > 0) {
+                    queryFreqs.put(w, 1);
+                }
+            }
+            if (queryFreqs.isEmpty()) {
+                continue;
+            }
+
+            BooleanQuery query = new BooleanQuery();
+            queryFreqs.keySet().forEach(term -> query.add(new BooleanClause(
+                    new FrequencyCollectingQuery("text", term, tfCounts),
+                    BooleanClause.Occur.SHOULD)));
+            ScoreDoc[] scoreDocs = searcher.search(query, reader.numDocs()).scoreDocs;
+
+            queries.add(queryFreqs);
+            matches.add(Arrays.stream(scoreDocs).mapToInt(sd -> sd.doc).toArray());
+        }
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        System.out.println("Kernel;Scored documents;ns/document;Allocated bytes/document");
+        for (BaseSimilarity similarity : similarities) {
+            List<QueryVector> vectors = new ArrayList<>();
+            for (Map<String, Integer> queryFreqs : queries) {
+                vectors.add(similarity.createQueryVector(queryFreqs));
+            }
+
+            // Warm up: compute the document norms and let the JIT compile the kernel
+            float checksum = score(similarity, vectors, matches);
+
+            long scoredDocuments = 0;
+            long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+            long startTime = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                checksum += score(similarity, vectors, matches);
+            }
+            long elapsed = System.nanoTime() - startTime;
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+            for (int[] docs : matches) {
+                scoredDocuments += (long) docs.length * rounds;
+            }
+
+            System.out.println(String.join(";",
+                    similarity.getClass().getSimpleName(),
+                    String.valueOf(scoredDocuments),
+                    String.valueOf((float) elapsed / scoredDocuments),
+                    String.valueOf((float) allocated / scoredDocuments)));
+            // Printed so that the scoring can't be optimized away
+            System.err.println("Checksum: " + checksum);
+        }
+    }
+
+    private static float score(BaseSimilarity similarity, List<QueryVector> vectors,
+                               List<int[]> matches) throws IOException {
+        float checksum = 0;
+        for (int i = 0; i < vectors.size(); i++) {
+            QueryVector vector = vectors.get(i);
+            for (int doc : matches.get(i)) {
+                checksum += similarity.calculate(vector, doc);
+            }
+        }
+
+        return checksum;
+    }
+}
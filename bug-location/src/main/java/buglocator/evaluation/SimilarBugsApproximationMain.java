@@ -0,0 +1,167 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.bug.reports.BugReportIndexBuilder;
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.indexing.utils.MinHashLSH;
+import buglocator.retrieval.BugLocatorRetriever;
+import buglocator.retrieval.RetrieverBase.UseField;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the approximate (LSH based) retrieval of similar bug reports against the exact one
+ * used for SimiScore, reporting the recall of the approximation and the latency of both modes.
+ */
+public class SimilarBugsApproximationMain {
+    public static void main(String[] args) throws IOException {
+        ArgumentParser argumentParser = createArgumentParser();
+        Namespace arguments;
+        try {
+            arguments = argumentParser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            argumentParser.handleError(e);
+            return;
+        }
+
+        Path dataPath = Paths.get(arguments.getString("data_folder"));
+        Path indexPath = Paths.get(arguments.getString("index_folder"));
+        int maxCandidates = arguments.getInt("max_candidates");
+        boolean fullAnalysis = arguments.getBoolean("full_analysis");
+
+        EvaluationMain.buildIndexes(indexPath, dataPath, fullAnalysis);
+
+        System.out.println("System;Queries;Recall;Top 10 Recall;Exact ms/query;" +
+                "Approximate ms/query");
+
+        for (String system : EvaluationOptions.getSystems(fullAnalysis)) {
+            Path bugReportsFile =
+                    CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), system);
+            if (!Files.exists(bugReportsFile)) {
+                System.err.println("Bug reports for \"" + system + "\" not found in data folder");
+                continue;
+            }
+
+            // The default bug report index has no LSH buckets, both modes use one that has them
+            Path bugReportIndexPath = indexPath.resolve(Paths.get("bug-reports-lsh", system));
+            MinHashLSH lsh = MinHashLSH.load(bugReportIndexPath);
+            if (lsh == null) {
+                System.out.println(
+                        String.format("Building bug report index with LSH for system %s", system));
+                lsh = new MinHashLSH();
+                FileUtils.deleteDirectory(bugReportIndexPath.toFile());
+                FileUtils.forceMkdir(bugReportIndexPath.toFile());
+                new BugReportIndexBuilder(lsh).buildIndex(bugReportsFile, bugReportIndexPath);
+            }
+
+            IndexSearcher sourceSearcher = new IndexSearcher(DirectoryReader.open(
+                    FSDirectory.open(indexPath.resolve(Paths.get("source-code", system)))));
+            IndexSearcher bugReportSearcher = new IndexSearcher(DirectoryReader.open(
+                    FSDirectory.open(bugReportIndexPath)));
+
+            BugLocatorRetriever exactRetriever = new BugLocatorRetriever(
+                    UseField.TITLE_AND_DESCRIPTION, sourceSearcher, bugReportSearcher, 0, 0, 0);
+            BugLocatorRetriever approximateRetriever = new BugLocatorRetriever(
+                    UseField.TITLE_AND_DESCRIPTION, sourceSearcher, bugReportSearcher, 0, 0, 0);
+            approximateRetriever.enableApproximateSimilarBugs(lsh, maxCandidates);
+
+            int queries = 0;
+            long exactFound = 0;
+            long approximateFound = 0;
+            long exactTop10 = 0;
+            long approximateTop10 = 0;
+            long exactNanos = 0;
+            long approximateNanos = 0;
+
+            for (BugReport bugReport : CorpusFiles.readAll(bugReportsFile, BugReport.class)) {
+
+                long startTime = System.nanoTime();
+                ScoreDoc[] exact = exactRetriever.findSimilarBugReports(bugReport);
+                long midTime = System.nanoTime();
+                ScoreDoc[] approximate = approximateRetriever.findSimilarBugReports(bugReport);
+                long endTime = System.nanoTime();
+
+                if (exact == null) {
+                    continue;
+                }
+
+                queries++;
+                exactNanos += midTime - startTime;
+                approximateNanos += endTime - midTime;
+
+                Set<Integer> approximateDocs = Arrays.stream(approximate)
+                        .map(sd -> sd.doc)
+                        .collect(Collectors.toSet());
+                exactFound += exact.length;
+                approximateFound += Arrays.stream(exact)
+                        .filter(sd -> approximateDocs.contains(sd.doc))
+                        .count();
+
+                ScoreDoc[] exactBest = Arrays.stream(exact)
+                        .sorted((o1, o2) -> Float.compare(o2.score, o1.score))
+                        .limit(10)
+                        .toArray(ScoreDoc[]::new);
+                exactTop10 += exactBest.length;
+                approximateTop10 += Arrays.stream(exactBest)
+                        .filter(sd -> approximateDocs.contains(sd.doc))
+                        .count();
+            }
+
+            if (queries == 0) {
+                System.err.println("No valid queries for system " + system);
+                continue;
+            }
+
+            System.out.println(String.join(";",
+                    system,
+                    String.valueOf(queries),
+                    String.valueOf(exactFound > 0 ? (float) approximateFound / exactFound : 1F),
+                    String.valueOf(exactTop10 > 0 ? (float) approximateTop10 / exactTop10 : 1F),
+                    String.valueOf(exactNanos / 1e6F / queries),
+                    String.valueOf(approximateNanos / 1e6F / queries)));
+        }
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("SimilarBugsApproximation")
+                .defaultHelp(true)
+                .description("Compares exact and LSH based retrieval of similar bug reports.");
+
+        parser.addArgument("-d", "--data-folder")
+                .help("The folder where the data for the analysis is located")
+                .setDefault("data");
+
+        parser.addArgument("-i", "--index-folder")
+                .help("Folder where the index will be located. It will be created if it " +
+                        "doesn't exist, along with the bug report indexes with LSH buckets")
+                .setDefault("index");
+
+        parser.addArgument("-c", "--max-candidates")
+                .help("Maximum amount of candidate bug reports rescored for each query")
+                .type(Integer.class)
+                .setDefault(200);
+
+        parser.addArgument("-f", "--full-analysis")
+                .help("Includes the analysis of the Eclipse system, which takes a long time to " +
+                        "process")
+                .action(Arguments.storeTrue());
+
+        return parser;
+    }
+}
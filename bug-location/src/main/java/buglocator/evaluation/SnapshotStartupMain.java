@@ -0,0 +1,164 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.BugLocatorRetriever;
+import buglocator.retrieval.RetrieverBase.UseField;
+import buglocator.retrieval.data.RetrieverSnapshot;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.FSDirectory;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures how long a new BugLocator retriever takes to answer queries at steady-state speed
+ * when it derives its state lazily and when it starts from a snapshot of that state. A query is
+ * fast when its latency is within a factor of the latency of the same query on a retriever that
+ * already derived all of its state.
+ */
+public class SnapshotStartupMain {
+    private static final int[] NO_DOCS = new int[0];
+
+    public static void main(String[] args) throws IOException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+        Namespace arguments = options.arguments;
+        float alpha = options.alpha;
+
+        double fastFactor = arguments.getDouble("fast_factor");
+
+        options.buildIndexes();
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println("System;Mode;Queries;Startup ms;First query ms;" +
+                "Queries until fast;Time to first fast query ms;Snapshot bytes");
+
+        for (String system : options.getSystems()) {
+            Path bugReportsFile =
+                    CorpusFiles.resolve(options.dataPath.resolve("processed-bug-reports"), system);
+            if (!Files.exists(bugReportsFile)) {
+                System.err.println("Bug reports for \"" + system + "\" not found in data folder");
+                continue;
+            }
+            List<BugReport> bugReports = CorpusFiles.readAll(bugReportsFile, BugReport.class);
+
+            Path sourceIndexPath = options.indexPath.resolve(Paths.get("source-code", system));
+            IndexSearcher sourceSearcher = new IndexSearcher(
+                    DirectoryReader.open(FSDirectory.open(sourceIndexPath)));
+            IndexSearcher bugReportSearcher = new IndexSearcher(DirectoryReader.open(
+                    FSDirectory.open(options.indexPath.resolve(Paths.get("bug-reports", system)))));
+            int[] extrema = Arrays.stream(FileUtils.readFileToString(
+                    sourceIndexPath.resolve("stats.txt").toFile()).split("\n"))
+                    .mapToInt(Integer::parseInt).toArray();
+
+            // The steady-state latency of every query is the best of two passes over a warm
+            // retriever, which also compiles the code paths before any measurement
+            BugLocatorRetriever warmRetriever = new BugLocatorRetriever(
+                    UseField.TITLE_AND_DESCRIPTION, sourceSearcher, bugReportSearcher, alpha,
+                    extrema[0], extrema[1]);
+            warmRetriever.warmUp();
+            long[] steadyNanos = runQueries(warmRetriever, bugReports);
+            long[] secondPassNanos = runQueries(warmRetriever, bugReports);
+            for (int i = 0; i < steadyNanos.length; i++) {
+                steadyNanos[i] = Math.min(steadyNanos[i], secondPassNanos[i]);
+            }
+            warmRetriever.saveSnapshot();
+            Path snapshotFile = sourceIndexPath.resolve(
+                    RetrieverSnapshot.getFileName(
+                            BugLocatorRetriever.class.getSimpleName()));
+
+            for (String mode : new String[]{"Lazy", "Snapshot"}) {
+                System.out.println(String.format("Starting %s retriever for system %s",
+                        mode.toLowerCase(), system));
+                long startTime = System.nanoTime();
+                BugLocatorRetriever retriever = new BugLocatorRetriever(
+                        UseField.TITLE_AND_DESCRIPTION, sourceSearcher, bugReportSearcher, alpha,
+                        extrema[0], extrema[1]);
+                if (mode.equals("Snapshot") && !retriever.loadSnapshot()) {
+                    throw new IllegalStateException("The snapshot of " + system + " wasn't found");
+                }
+                long startupNanos = System.nanoTime() - startTime;
+
+                long firstQueryNanos = -1;
+                int queriesUntilFast = -1;
+                long timeToFastNanos = -1;
+                for (int i = 0; i < bugReports.size(); i++) {
+                    long queryStart = System.nanoTime();
+                    retriever.rank(bugReports.get(i), 10, NO_DOCS);
+                    long queryEnd = System.nanoTime();
+                    if (i == 0) {
+                        firstQueryNanos = queryEnd - queryStart;
+                    }
+                    if (queryEnd - queryStart <= fastFactor * steadyNanos[i]) {
+                        queriesUntilFast = i;
+                        timeToFastNanos = queryEnd - startTime;
+                        break;
+                    }
+                }
+
+                outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                        system,
+                        mode,
+                        String.valueOf(bugReports.size()),
+                        String.valueOf(startupNanos / 1e6),
+                        String.valueOf(firstQueryNanos / 1e6),
+                        String.valueOf(queriesUntilFast),
+                        String.valueOf(timeToFastNanos < 0 ? Double.NaN : timeToFastNanos / 1e6),
+                        String.valueOf(mode.equals("Snapshot") ? Files.size(snapshotFile) : 0))));
+                outputWriter.flush();
+            }
+
+            sourceSearcher.getIndexReader().close();
+            bugReportSearcher.getIndexReader().close();
+        }
+
+        outputWriter.close();
+    }
+
+    /**
+     * @return The latency of every query, in nanoseconds.
+     */
+    private static long[] runQueries(BugLocatorRetriever retriever, List<BugReport> bugReports)
+            throws IOException {
+        long[] latencies = new long[bugReports.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            long queryStart = System.nanoTime();
+            retriever.rank(bugReports.get(i), 10, NO_DOCS);
+            latencies[i] = System.nanoTime() - queryStart;
+        }
+
+        return latencies;
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("SnapshotStartup")
+                .defaultHelp(true)
+                .description("Measures the time a new retriever takes to answer queries at " +
+                        "steady-state speed with and without a snapshot of its state.");
+
+        EvaluationOptions.addArguments(parser, "snapshot-startup.csv", "index",
+                "Folder where the index will be located. It will be created if it " +
+                        "doesn't exist. The snapshots are saved in it");
+
+        parser.addArgument("--fast-factor")
+                .help("Maximum ratio between the latency of a query and its steady-state " +
+                        "latency for it to count as fast")
+                .type(Double.class)
+                .setDefault(1.5);
+
+        return parser;
+    }
+}
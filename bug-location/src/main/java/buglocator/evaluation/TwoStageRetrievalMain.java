@@ -0,0 +1,103 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.retrieval.RetrieverBase.UseField;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Evaluates both approaches scoring every matching source file and with two stage retrieval for
+ * several candidate set sizes, reporting the accuracy and the average query latency of each one.
+ */
+public class TwoStageRetrievalMain {
+    public static void main(String[] args) throws IOException {
+        EvaluationOptions options = EvaluationOptions.parse(createArgumentParser(), args);
+        if (options == null) {
+            return;
+        }
+        Namespace arguments = options.arguments;
+
+        Path dataPath = options.dataPath;
+        Similarity candidateSimilarity =
+                arguments.getBoolean("bm25") ? new BM25Similarity() : new DefaultSimilarity();
+
+        // Zero stands for exhaustive scoring
+        List<Integer> candidateLimits = new ArrayList<>();
+        candidateLimits.add(0);
+        for (String limit : arguments.getString("candidates").split(",")) {
+            candidateLimits.add(Integer.parseInt(limit.trim()));
+        }
+
+        options.buildIndexes();
+
+        PrintWriter outputWriter = new PrintWriter(options.outputFilePath.toFile());
+        outputWriter.println("Method;System;Candidates;% Top 1;% Top 5;% Top 10;MRR;MAP;" +
+                "Average Precision;Average Recall;Amount of Queries;ms/query");
+
+        for (String system : options.getSystems()) {
+            if (!Files.exists(
+                    CorpusFiles.resolve(dataPath.resolve("processed-bug-reports"), system))) {
+                System.err.println("Bug reports for \"" + system + "\" not found in data folder");
+                continue;
+            }
+
+            for (int candidateLimit : candidateLimits) {
+                BaseRetrievalEvaluator[] evaluators = {
+                        new BugLocatorEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                                options.indexPath, dataPath, options.alpha),
+                        new BaselineEvaluator(system, UseField.TITLE_AND_DESCRIPTION,
+                                options.indexPath, dataPath)};
+
+                for (BaseRetrievalEvaluator evaluator : evaluators) {
+                    evaluator.setTwoStageRetrieval(candidateLimit, candidateSimilarity);
+                    EvaluationResult result = evaluator.evaluate();
+                    if (result == null) {
+                        continue;
+                    }
+
+                    outputWriter.println(String.join(";", Arrays.<CharSequence>asList(
+                            evaluator.getLogTag(),
+                            system,
+                            candidateLimit > 0 ? String.valueOf(candidateLimit) : "all",
+                            result.getCSVLine(),
+                            String.valueOf(result.getAverageQueryMillis()))));
+                    outputWriter.flush();
+                }
+            }
+        }
+
+        outputWriter.close();
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("TwoStageRetrieval")
+                .defaultHelp(true)
+                .description("Evaluates the retrieval approaches scoring only the best " +
+                        "candidates of a first Lucene search.");
+
+        EvaluationOptions.addArguments(parser, "two-stage-evaluation.csv");
+
+        parser.addArgument("-n", "--candidates")
+                .help("Comma separated amounts of candidate source files to rerank")
+                .setDefault("100,250,500,1000,2000");
+
+        parser.addArgument("--bm25")
+                .help("Selects the candidates with BM25 instead of Lucene's default similarity")
+                .action(Arguments.storeTrue());
+
+        return parser;
+    }
+}
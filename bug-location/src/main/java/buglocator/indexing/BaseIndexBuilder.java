@@ -1,79 +1,156 @@
 package buglocator.indexing;
 
-import buglocator.indexing.utils.DateTimeJsonAdapter;
-import com.google.gson.FieldNamingPolicy;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import buglocator.indexing.analysis.PreprocessingAnalyzer;
+import buglocator.indexing.utils.CorpusFiles;
+import buglocator.indexing.utils.CorpusReader;
 import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
-import org.joda.time.DateTime;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Base class for index builders.
  */
 public abstract class BaseIndexBuilder<T> {
     private final Class<T> jsonElementClass;
+    private final String textField;
+    private final IndexProfile profile;
+    private PreprocessingAnalyzer preprocessingAnalyzer = null;
     protected static final FieldType termVectorsFieldType;
+    protected static final FieldType leanFieldType;
 
     static {
         termVectorsFieldType = new FieldType();
         termVectorsFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
         termVectorsFieldType.setStoreTermVectors(true);
         termVectorsFieldType.setTokenized(true);
+        termVectorsFieldType.freeze();
+
+        leanFieldType = new FieldType();
+        leanFieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS);
+        leanFieldType.setTokenized(true);
+        leanFieldType.freeze();
     }
 
-    public BaseIndexBuilder(Class<T> jsonElementClass) {
+    /**
+     * @param textField Name of the field scored by the retrievers, whose document statistics are
+     *                  saved when building a {@link IndexProfile#LEAN} index.
+     */
+    public BaseIndexBuilder(Class<T> jsonElementClass, String textField, IndexProfile profile) {
         this.jsonElementClass = jsonElementClass;
+        this.textField = textField;
+        this.profile = profile;
+    }
+
+    /**
+     * @param preprocessingAnalyzer When given, the items are read as raw texts, as output by
+     *                              {@code TextExtractionMain} or the data collection scripts, and
+     *                              preprocessed in the same pass that indexes them.
+     */
+    public void setPreprocessingAnalyzer(PreprocessingAnalyzer preprocessingAnalyzer) {
+        this.preprocessingAnalyzer = preprocessingAnalyzer;
     }
 
     public void buildIndex(Path sourceFilePath, Path indexPath) throws IOException {
         // Create an index writer
         IndexWriterConfig writerConfig = createIndexBuilderConfig();
-        IndexWriter indexWriter =
-                new IndexWriter(FSDirectory.open(indexPath), writerConfig);
-
-        // Create a JSON deserializer
-        GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES);
-        gsonBuilder.registerTypeAdapter(DateTime.class, new DateTimeJsonAdapter());
-        Gson gson = gsonBuilder.create();
-
-        // Iterate through the JSON lines file and extract all the documents
-        try (BufferedReader br = new BufferedReader(new FileReader(sourceFilePath.toFile()))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                T item = gson.fromJson(line, jsonElementClass);
-                // TODO: use index numbers instead of names for fixed files indexing
-                try {
-                    Document newDocument = createDocument(item);
-
-                    if (newDocument != null) {
-                        indexWriter.addDocument(newDocument);
-                    }
-                } catch (IllegalArgumentException e) {
+        Directory directory = FSDirectory.open(indexPath);
+        IndexWriter indexWriter = new IndexWriter(directory, writerConfig);
+
+        // Iterate through the corpus file and extract all the documents, buffering them if they
+        // have to be added in a given order
+        Comparator<T> documentOrder = getDocumentOrder();
+        List<T> bufferedItems = new ArrayList<>();
+        try (CorpusReader<T> corpusReader =
+                     CorpusFiles.newItemReader(sourceFilePath, jsonElementClass)) {
+            T item;
+            while ((item = corpusReader.read()) != null) {
+                if (preprocessingAnalyzer != null) {
+                    item = preprocess(item, preprocessingAnalyzer);
+                }
+                if (documentOrder != null) {
+                    bufferedItems.add(item);
+                } else {
+                    addDocument(indexWriter, item);
                 }
             }
         }
 
+        if (documentOrder != null) {
+            bufferedItems.sort(documentOrder);
+            for (T item : bufferedItems) {
+                addDocument(indexWriter, item);
+            }
+        }
+
         indexWriter.close();
+
+        if (profile == IndexProfile.LEAN) {
+            try (DirectoryReader reader = DirectoryReader.open(directory)) {
+                DocumentStatistics.compute(reader, textField).write(directory, textField);
+            }
+        }
+    }
+
+    private void addDocument(IndexWriter indexWriter, T item) throws IOException {
+        // TODO: use index numbers instead of names for fixed files indexing
+        try {
+            Document newDocument = createDocument(item);
+
+            if (newDocument != null) {
+                indexWriter.addDocument(newDocument);
+            }
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public IndexProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return The field type of the scored text field according to the index profile.
+     */
+    protected FieldType getTextFieldType() {
+        return profile == IndexProfile.LEAN ? leanFieldType : termVectorsFieldType;
     }
 
     protected IndexWriterConfig createIndexBuilderConfig() {
         IndexWriterConfig writerConfig = new IndexWriterConfig(new WhitespaceAnalyzer());
         writerConfig.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        if (getDocumentOrder() != null) {
+            // Only merges adjacent segments, so document IDs keep the order of insertion
+            writerConfig.setMergePolicy(new LogByteSizeMergePolicy());
+        }
         return writerConfig;
     }
 
+    /**
+     * @return The order in which the items are added to the index, which determines their
+     * document IDs, or {@code null} to add them in the order they are read. Items are held in
+     * memory until all of them are read when an order is given.
+     */
+    protected Comparator<T> getDocumentOrder() {
+        return null;
+    }
+
+    /**
+     * @return A copy of a raw item with its texts preprocessed by the analyzer.
+     */
+    protected abstract T preprocess(T item, PreprocessingAnalyzer analyzer);
+
     /**
      * @param item The item to be indexed
      * @return A new lucene document representing the item or {@code null} if the item is invalid.
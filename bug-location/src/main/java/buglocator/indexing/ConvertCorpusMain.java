@@ -0,0 +1,99 @@
+package buglocator.indexing;
+
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.data.SourceFileText;
+import buglocator.indexing.utils.BinaryCorpus;
+import buglocator.indexing.utils.CorpusFiles;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts the preprocessed source code and bug report corpora of the data folder to the
+ * {@link BinaryCorpus} format, next to the JSON files. Only the corpora whose binary file is
+ * missing or older than the JSON one are converted, unless asked otherwise.
+ */
+public class ConvertCorpusMain {
+    public static void main(String[] args) throws IOException {
+        ArgumentParser argumentParser = createArgumentParser();
+        Namespace arguments;
+        try {
+            arguments = argumentParser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            argumentParser.handleError(e);
+            return;
+        }
+
+        Path dataPath = Paths.get(arguments.getString("data_folder"));
+        boolean all = arguments.getBoolean("all");
+
+        int converted = convertFolder(dataPath.resolve("processed-source-code"),
+                SourceFileText.class, all);
+        converted += convertFolder(dataPath.resolve("processed-bug-reports"), BugReport.class,
+                all);
+        System.out.println(String.format("Converted %d corpora", converted));
+    }
+
+    /**
+     * Converts every JSON corpus of a folder whose binary file is not up to date.
+     *
+     * @return The amount of corpora converted.
+     */
+    private static int convertFolder(Path folder, Class<?> type, boolean all) throws IOException {
+        if (!Files.isDirectory(folder)) {
+            System.err.println(String.format("Data folder '%s' does not exist",
+                    folder.toAbsolutePath().toString()));
+            return 0;
+        }
+
+        int converted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                String system = CorpusFiles.getSystem(file);
+                if (system == null || file.toString().endsWith(CorpusFiles.BINARY_EXTENSION)) {
+                    continue;
+                }
+
+                Path binaryFile = folder.resolve(system + CorpusFiles.BINARY_EXTENSION);
+                if (!all && CorpusFiles.isUpToDate(binaryFile, file)) {
+                    System.out.println(String.format("%s is up to date", binaryFile));
+                    continue;
+                }
+
+                long startTime = System.currentTimeMillis();
+                int documents = BinaryCorpus.convert(file, binaryFile, type);
+                System.out.println(String.format("Converted %d documents to %s in %d ms " +
+                                "(%d to %d bytes)", documents, binaryFile,
+                        System.currentTimeMillis() - startTime, Files.size(file),
+                        Files.size(binaryFile)));
+                converted++;
+            }
+        }
+
+        return converted;
+    }
+
+    private static ArgumentParser createArgumentParser() {
+        ArgumentParser parser = ArgumentParsers.newArgumentParser("ConvertCorpus")
+                .defaultHelp(true)
+                .description("Converts the preprocessed corpora to the binary format.");
+
+        parser.addArgument("-d", "--data-folder")
+                .help("The folder where the data for the analysis is located")
+                .setDefault("data");
+
+        parser.addArgument("-a", "--all")
+                .help("Converts every corpus again, even those whose binary file is up to date")
+                .action(Arguments.storeTrue());
+
+        return parser;
+    }
+}
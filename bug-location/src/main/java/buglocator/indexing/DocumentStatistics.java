@@ -0,0 +1,156 @@
+package buglocator.indexing;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per-document quantities of a text field needed for scoring: the length in terms, the norm of
+ * the raw term frequency vector and the norm of the tf-idf vector. They are computed by walking
+ * the postings of the field once, so indexes that keep this file don't need term vectors.
+ * <p>
+ * The file is stored in the index directory and records the version of the index it was computed
+ * for, statistics of any other version are ignored.
+ */
+public class DocumentStatistics {
+    private static final String CODEC_NAME = "DocumentStatistics";
+    private static final int FORMAT_VERSION = 0;
+
+    private final long indexVersion;
+    private final int[] lengths;
+    private final float[] frequencyNorms;
+    private final float[] tfIdfNorms;
+
+    private DocumentStatistics(long indexVersion, int[] lengths, float[] frequencyNorms,
+                               float[] tfIdfNorms) {
+        this.indexVersion = indexVersion;
+        this.lengths = lengths;
+        this.frequencyNorms = frequencyNorms;
+        this.tfIdfNorms = tfIdfNorms;
+    }
+
+    public static String getFileName(String field) {
+        return field + ".docstats";
+    }
+
+    /**
+     * Walks the postings of a field accumulating the statistics of every document. Terms are
+     * visited in the same order as a term vector lists them, so the sums are the same as those
+     * computed from term vectors.
+     */
+    public static DocumentStatistics compute(DirectoryReader reader, String field)
+            throws IOException {
+        int maxDoc = reader.maxDoc();
+        float numDocs = reader.numDocs();
+        int[] lengths = new int[maxDoc];
+        float[] frequencyNorms = new float[maxDoc];
+        float[] tfIdfNorms = new float[maxDoc];
+
+        Terms terms = MultiFields.getTerms(reader, field);
+        if (terms != null) {
+            Bits liveDocs = MultiFields.getLiveDocs(reader);
+            TermsEnum termsEnum = terms.iterator();
+            PostingsEnum postings = null;
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                double idf = Math.log(numDocs / termsEnum.docFreq());
+                postings = termsEnum.postings(liveDocs, postings, PostingsEnum.FREQS);
+                int doc;
+                while ((doc = postings.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    int freq = postings.freq();
+                    lengths[doc] += freq;
+                    frequencyNorms[doc] += (double) freq * freq;
+                    float tfIdfWeight = (float) ((Math.log(freq) + 1) * idf);
+                    tfIdfNorms[doc] += (double) tfIdfWeight * tfIdfWeight;
+                }
+            }
+        }
+
+        for (int doc = 0; doc < maxDoc; doc++) {
+            frequencyNorms[doc] = (float) Math.sqrt(frequencyNorms[doc]);
+            tfIdfNorms[doc] = (float) Math.sqrt(tfIdfNorms[doc]);
+        }
+
+        return new DocumentStatistics(reader.getVersion(), lengths, frequencyNorms, tfIdfNorms);
+    }
+
+    /**
+     * @return The statistics of the field stored in the reader's index, or {@code null} if there
+     * are none or they belong to another version of the index.
+     */
+    public static DocumentStatistics load(IndexReader reader, String field) throws IOException {
+        if (!(reader instanceof DirectoryReader)) {
+            return null;
+        }
+
+        DirectoryReader directoryReader = (DirectoryReader) reader;
+        Directory directory = directoryReader.directory();
+        String fileName = getFileName(field);
+        if (!Arrays.asList(directory.listAll()).contains(fileName)) {
+            return null;
+        }
+
+        try (IndexInput input = directory.openInput(fileName, IOContext.READONCE)) {
+            CodecUtil.checkHeader(input, CODEC_NAME, FORMAT_VERSION, FORMAT_VERSION);
+            long indexVersion = input.readLong();
+            int maxDoc = input.readInt();
+            if (indexVersion != directoryReader.getVersion() || maxDoc != reader.maxDoc()) {
+                return null;
+            }
+
+            int[] lengths = new int[maxDoc];
+            float[] frequencyNorms = new float[maxDoc];
+            float[] tfIdfNorms = new float[maxDoc];
+            for (int doc = 0; doc < maxDoc; doc++) {
+                lengths[doc] = input.readVInt();
+                frequencyNorms[doc] = Float.intBitsToFloat(input.readInt());
+                tfIdfNorms[doc] = Float.intBitsToFloat(input.readInt());
+            }
+
+            return new DocumentStatistics(indexVersion, lengths, frequencyNorms, tfIdfNorms);
+        }
+    }
+
+    public void write(Directory directory, String field) throws IOException {
+        try (IndexOutput output = directory.createOutput(getFileName(field), IOContext.DEFAULT)) {
+            CodecUtil.writeHeader(output, CODEC_NAME, FORMAT_VERSION);
+            output.writeLong(indexVersion);
+            output.writeInt(lengths.length);
+            for (int doc = 0; doc < lengths.length; doc++) {
+                output.writeVInt(lengths[doc]);
+                output.writeInt(Float.floatToIntBits(frequencyNorms[doc]));
+                output.writeInt(Float.floatToIntBits(tfIdfNorms[doc]));
+            }
+        }
+    }
+
+    /**
+     * @return Total amount of terms in the document.
+     */
+    public int getLength(int docId) {
+        return lengths[docId];
+    }
+
+    /**
+     * @return Euclidean norm of the vector of raw term frequencies of the document.
+     */
+    public float getFrequencyNorm(int docId) {
+        return frequencyNorms[docId];
+    }
+
+    /**
+     * @return Euclidean norm of the vector of {@code (log(tf) + 1) * log(numDocs / df)} weights.
+     */
+    public float getTfIdfNorm(int docId) {
+        return tfIdfNorms[docId];
+    }
+}
@@ -0,0 +1,18 @@
+package buglocator.indexing;
+
+/**
+ * Layout of the indexes written by the index builders.
+ */
+public enum IndexProfile {
+    /**
+     * Stores the term vector of every text field, scoring reads them to compute document norms
+     * and lengths.
+     */
+    STANDARD,
+
+    /**
+     * Stores no term vectors. The per-document values needed for scoring are computed from the
+     * postings once the index is built and saved in a {@link DocumentStatistics} file.
+     */
+    LEAN
+}
@@ -0,0 +1,57 @@
+package buglocator.indexing.analysis;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Drops invalid tokens and lower cases the rest, following each identifier made of several words
+ * by its valid words. For instance {@code startDocument} produces {@code startdocument},
+ * {@code start} and {@code document}.
+ */
+public final class IdentifierSplittingFilter extends TokenFilter {
+    private final PreprocessingRules rules;
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+    private final ArrayDeque<String> pendingWords = new ArrayDeque<>();
+
+    public IdentifierSplittingFilter(TokenStream input, PreprocessingRules rules) {
+        super(input);
+        this.rules = rules;
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!pendingWords.isEmpty()) {
+            termAttribute.setEmpty().append(pendingWords.poll());
+            return true;
+        }
+
+        while (input.incrementToken()) {
+            if (!rules.isValid(termAttribute)) {
+                continue;
+            }
+
+            String token = termAttribute.toString();
+            List<String> words = PreprocessingRules.splitIdentifier(token);
+            if (words.size() > 1) {
+                words.stream().filter(rules::isValid).forEach(pendingWords::add);
+            }
+
+            termAttribute.setEmpty().append(token.toLowerCase(Locale.ROOT));
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        pendingWords.clear();
+    }
+}
@@ -0,0 +1,31 @@
+package buglocator.indexing.analysis;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+
+/**
+ * Stems every token with {@link NltkPorterStemmer} and strips the split and intra-word
+ * characters from the edges of the stem.
+ */
+public final class NltkPorterStemFilter extends TokenFilter {
+    private final NltkPorterStemmer stemmer = new NltkPorterStemmer();
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+
+    public NltkPorterStemFilter(TokenStream input) {
+        super(input);
+    }
+
+    @Override
+    public boolean incrementToken() throws IOException {
+        if (!input.incrementToken()) {
+            return false;
+        }
+
+        String stem = PreprocessingRules.strip(stemmer.stem(termAttribute.toString()));
+        termAttribute.setEmpty().append(stem);
+        return true;
+    }
+}
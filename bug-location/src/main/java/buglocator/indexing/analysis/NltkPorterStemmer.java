@@ -0,0 +1,408 @@
+package buglocator.indexing.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Port of the Porter stemmer of NLTK 3.2 used by the Python preprocessing scripts, including its
+ * departures from the published algorithm: irregular forms, words of up to two characters left
+ * as they are, {@code -ies} and {@code -ied} of short words, {@code y} to {@code i} only after a
+ * consonant and the {@code -alli}, {@code -bli} and {@code -logi} rules. Negative indices wrap
+ * around as they do in Python, so that stems match the original ones in every corner case.
+ * <p>
+ * Expects lower case words. Not thread safe, use one instance per thread.
+ */
+public class NltkPorterStemmer {
+    private static final Map<String, String> irregularForms = new HashMap<>();
+
+    static {
+        String[][] forms = {
+                {"sky", "sky", "skies"},
+                {"die", "dying"},
+                {"lie", "lying"},
+                {"tie", "tying"},
+                {"news", "news"},
+                {"inning", "innings", "inning"},
+                {"outing", "outings", "outing"},
+                {"canning", "cannings", "canning"},
+                {"howe", "howe"},
+                {"proceed", "proceed"},
+                {"exceed", "exceed"},
+                {"succeed", "succeed"}};
+        for (String[] form : forms) {
+            for (int i = 1; i < form.length; i++) {
+                irregularForms.put(form[i], form[0]);
+            }
+        }
+    }
+
+    /**
+     * Word being stemmed. Characters after {@link #k} are no longer part of the stem but are
+     * kept, as in the original implementation.
+     */
+    private String b;
+    private int k;
+    private int j;
+
+    public String stem(String word) {
+        String irregularForm = irregularForms.get(word);
+        if (irregularForm != null) {
+            return irregularForm;
+        }
+
+        if (word.length() <= 2) {
+            return word;
+        }
+
+        b = word;
+        k = word.length() - 1;
+        j = 0;
+
+        step1ab();
+        step1c();
+        step2();
+        step3();
+        step4();
+        step5();
+
+        return b.substring(0, k + 1);
+    }
+
+    private char at(int i) {
+        return i < 0 ? b.charAt(b.length() + i) : b.charAt(i);
+    }
+
+    private String slice(int from, int to) {
+        from = Math.min(from, b.length());
+        to = Math.min(to, b.length());
+        return from >= to ? "" : b.substring(from, to);
+    }
+
+    private boolean cons(int i) {
+        char c = at(i);
+        if (c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u') {
+            return false;
+        }
+        if (c == 'y') {
+            return i == 0 || !cons(i - 1);
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of vowel-consonant sequences between 0 and {@link #j}.
+     */
+    private int m() {
+        int n = 0;
+        int i = 0;
+        while (true) {
+            if (i > j) {
+                return n;
+            }
+            if (!cons(i)) {
+                break;
+            }
+            i++;
+        }
+        i++;
+        while (true) {
+            while (true) {
+                if (i > j) {
+                    return n;
+                }
+                if (cons(i)) {
+                    break;
+                }
+                i++;
+            }
+            i++;
+            n++;
+            while (true) {
+                if (i > j) {
+                    return n;
+                }
+                if (!cons(i)) {
+                    break;
+                }
+                i++;
+            }
+            i++;
+        }
+    }
+
+    private boolean vowelInStem() {
+        for (int i = 0; i <= j; i++) {
+            if (!cons(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean doubleC(int i) {
+        if (i < 1) {
+            return false;
+        }
+        if (at(i) != at(i - 1)) {
+            return false;
+        }
+        return cons(i);
+    }
+
+    private boolean cvc(int i) {
+        if (i == 0) {
+            return false;
+        }
+        if (i == 1) {
+            return !cons(0) && cons(1);
+        }
+        if (!cons(i) || cons(i - 1) || !cons(i - 2)) {
+            return false;
+        }
+
+        char c = at(i);
+        return c != 'w' && c != 'x' && c != 'y';
+    }
+
+    private boolean ends(String s) {
+        int length = s.length();
+        if (s.charAt(length - 1) != at(k)) {
+            return false;
+        }
+        if (length > k + 1) {
+            return false;
+        }
+        if (!slice(k - length + 1, k + 1).equals(s)) {
+            return false;
+        }
+        j = k - length;
+        return true;
+    }
+
+    private void setTo(String s) {
+        int length = s.length();
+        b = slice(0, j + 1) + s + slice(j + length + 1, b.length());
+        k = j + length;
+    }
+
+    private void r(String s) {
+        if (m() > 0) {
+            setTo(s);
+        }
+    }
+
+    private void step1ab() {
+        if (at(k) == 's') {
+            if (ends("sses")) {
+                k -= 2;
+            } else if (ends("ies")) {
+                k -= j == 0 ? 1 : 2;
+            } else if (at(k - 1) != 's') {
+                k--;
+            }
+        }
+
+        if (ends("ied")) {
+            k -= j == 0 ? 1 : 2;
+        } else if (ends("eed")) {
+            if (m() > 0) {
+                k--;
+            }
+        } else if ((ends("ed") || ends("ing")) && vowelInStem()) {
+            k = j;
+            if (ends("at")) {
+                setTo("ate");
+            } else if (ends("bl")) {
+                setTo("ble");
+            } else if (ends("iz")) {
+                setTo("ize");
+            } else if (doubleC(k)) {
+                k--;
+                char c = at(k);
+                if (c == 'l' || c == 's' || c == 'z') {
+                    k++;
+                }
+            } else if (m() == 1 && cvc(k)) {
+                setTo("e");
+            }
+        }
+    }
+
+    private void step1c() {
+        if (ends("y") && j > 0 && cons(k - 1)) {
+            b = slice(0, k) + 'i' + slice(k + 1, b.length());
+        }
+    }
+
+    private void step2() {
+        switch (at(k - 1)) {
+            case 'a':
+                if (ends("ational")) {
+                    r("ate");
+                } else if (ends("tional")) {
+                    r("tion");
+                }
+                break;
+            case 'c':
+                if (ends("enci")) {
+                    r("ence");
+                } else if (ends("anci")) {
+                    r("ance");
+                }
+                break;
+            case 'e':
+                if (ends("izer")) {
+                    r("ize");
+                }
+                break;
+            case 'l':
+                if (ends("bli")) {
+                    r("ble");
+                } else if (ends("alli")) {
+                    if (m() > 0) {
+                        setTo("al");
+                        step2();
+                    }
+                } else if (ends("entli")) {
+                    r("ent");
+                } else if (ends("eli")) {
+                    r("e");
+                } else if (ends("ousli")) {
+                    r("ous");
+                }
+                break;
+            case 'o':
+                if (ends("ization")) {
+                    r("ize");
+                } else if (ends("ation")) {
+                    r("ate");
+                } else if (ends("ator")) {
+                    r("ate");
+                }
+                break;
+            case 's':
+                if (ends("alism")) {
+                    r("al");
+                } else if (ends("iveness")) {
+                    r("ive");
+                } else if (ends("fulness")) {
+                    r("ful");
+                } else if (ends("ousness")) {
+                    r("ous");
+                }
+                break;
+            case 't':
+                if (ends("aliti")) {
+                    r("al");
+                } else if (ends("iviti")) {
+                    r("ive");
+                } else if (ends("biliti")) {
+                    r("ble");
+                }
+                break;
+            case 'g':
+                if (ends("logi")) {
+                    j++;
+                    r("og");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void step3() {
+        switch (at(k)) {
+            case 'e':
+                if (ends("icate")) {
+                    r("ic");
+                } else if (ends("ative")) {
+                    r("");
+                } else if (ends("alize")) {
+                    r("al");
+                }
+                break;
+            case 'i':
+                if (ends("iciti")) {
+                    r("ic");
+                }
+                break;
+            case 'l':
+                if (ends("ical")) {
+                    r("ic");
+                } else if (ends("ful")) {
+                    r("");
+                }
+                break;
+            case 's':
+                if (ends("ness")) {
+                    r("");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void step4() {
+        boolean matched;
+        switch (at(k - 1)) {
+            case 'a':
+                matched = ends("al");
+                break;
+            case 'c':
+                matched = ends("ance") || ends("ence");
+                break;
+            case 'e':
+                matched = ends("er");
+                break;
+            case 'i':
+                matched = ends("ic");
+                break;
+            case 'l':
+                matched = ends("able") || ends("ible");
+                break;
+            case 'n':
+                matched = ends("ant") || ends("ement") || ends("ment") || ends("ent");
+                break;
+            case 'o':
+                matched = (ends("ion") && (at(j) == 's' || at(j) == 't')) || ends("ou");
+                break;
+            case 's':
+                matched = ends("ism");
+                break;
+            case 't':
+                matched = ends("ate") || ends("iti");
+                break;
+            case 'u':
+                matched = ends("ous");
+                break;
+            case 'v':
+                matched = ends("ive");
+                break;
+            case 'z':
+                matched = ends("ize");
+                break;
+            default:
+                matched = false;
+                break;
+        }
+
+        if (matched && m() > 1) {
+            k = j;
+        }
+    }
+
+    private void step5() {
+        j = k;
+        if (at(k) == 'e') {
+            int a = m();
+            if (a > 1 || (a == 1 && !cvc(k - 1))) {
+                k--;
+            }
+        }
+        if (at(k) == 'l' && doubleC(k) && m() > 1) {
+            k--;
+        }
+    }
+}
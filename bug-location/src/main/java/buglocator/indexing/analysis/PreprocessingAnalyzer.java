@@ -0,0 +1,70 @@
+package buglocator.indexing.analysis;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.pattern.PatternTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Analyzer equivalent to the {@code Preprocessor} of the Python preprocessing scripts:
+ * tokenization, validation, identifier splitting, Porter stemming and validation of the stems.
+ * Produces the same tokens, in the same order, as the processed data, so raw texts can be
+ * indexed without running the scripts.
+ */
+public class PreprocessingAnalyzer extends Analyzer {
+    private final PreprocessingRules rules;
+
+    public PreprocessingAnalyzer() {
+        this(PreprocessingRules.createDefault());
+    }
+
+    public PreprocessingAnalyzer(PreprocessingRules rules) {
+        this.rules = rules;
+    }
+
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        Tokenizer tokenizer = new PatternTokenizer(PreprocessingRules.TOKEN_PATTERN, 0);
+        TokenStream stream = new IdentifierSplittingFilter(tokenizer, rules);
+        stream = new NltkPorterStemFilter(stream);
+        stream = new ValidTokenFilter(stream, rules);
+
+        return new TokenStreamComponents(tokenizer, stream);
+    }
+
+    /**
+     * @return The tokens of a text.
+     */
+    public List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        try (TokenStream stream = tokenStream("", text)) {
+            CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(termAttribute.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            // Texts are read from memory
+            throw new IllegalStateException(e);
+        }
+
+        return tokens;
+    }
+
+    /**
+     * @return The text as written by the Python scripts: its tokens joined by spaces.
+     */
+    public String preprocess(String text) {
+        return String.join(" ", tokenize(text));
+    }
+}
@@ -0,0 +1,117 @@
+package buglocator.indexing.analysis;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Token rules of the Python preprocessing scripts: the token pattern, the validity of a token,
+ * identifier splitting as done by {@code inflection.underscore} and the characters stripped from
+ * the edges of stemmed tokens.
+ */
+public class PreprocessingRules {
+    /**
+     * Sequences of letters and digits, optionally joined by apostrophes.
+     */
+    public static final Pattern TOKEN_PATTERN =
+            Pattern.compile("[a-zA-Z0-9]+(?:['][a-zA-Z0-9]+)*");
+
+    private static final Pattern ID_SPLIT_PATTERN = Pattern.compile("[_$-]");
+    private static final String STRIP_CHARACTERS = "_$-'";
+    private static final String[] DEFAULT_IGNORE_FILES = {"stop-words.txt", "java-keywords.txt"};
+
+    private final int minLength;
+    private final Set<String> ignore;
+
+    public PreprocessingRules(int minLength, Collection<String> ignore) {
+        this.minLength = minLength;
+        this.ignore = new HashSet<>();
+        ignore.forEach(term -> this.ignore.add(term.toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * @return The rules used to preprocess the bundled data: a minimum length of 3 and the stop
+     * words and Java keywords of the Python scripts.
+     */
+    public static PreprocessingRules createDefault() {
+        List<String> ignore = new ArrayList<>();
+        for (String fileName : DEFAULT_IGNORE_FILES) {
+            try (InputStream input = PreprocessingRules.class.getResourceAsStream(fileName)) {
+                IOUtils.readLines(input, StandardCharsets.UTF_8)
+                        .forEach(term -> ignore.add(term.trim()));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + fileName, e);
+            }
+        }
+
+        return new PreprocessingRules(3, ignore);
+    }
+
+    /**
+     * @return Whether a token is at least the minimum length, isn't numeric and isn't ignored.
+     */
+    public boolean isValid(CharSequence token) {
+        return token.length() >= minLength && !isNumeric(token) &&
+                !ignore.contains(token.toString().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return {@code true} unless the token has at least the minimum amount of letters and more
+     * letters than digits. Other characters are not counted.
+     */
+    public boolean isNumeric(CharSequence token) {
+        int letters = 0;
+        int numbers = 0;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (Character.isLetter(c)) {
+                letters++;
+            } else if (Character.isDigit(c)) {
+                numbers++;
+            }
+        }
+
+        return letters < minLength || letters <= numbers;
+    }
+
+    /**
+     * @return The lower case words of an identifier split at case changes, as
+     * {@code inflection.underscore} followed by a split at underscores, dollars and dashes.
+     */
+    public static List<String> splitIdentifier(String token) {
+        String underscored = token
+                .replaceAll("([A-Z]+)([A-Z][a-z])", "$1_$2")
+                .replaceAll("([a-z\\d])([A-Z])", "$1_$2")
+                .replace('-', '_')
+                .toLowerCase(Locale.ROOT);
+
+        List<String> words = new ArrayList<>();
+        for (String word : ID_SPLIT_PATTERN.split(underscored)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * @return The token without the split and intra-word characters at its edges.
+     */
+    public static String strip(String token) {
+        int start = 0;
+        int end = token.length();
+        while (start < end && STRIP_CHARACTERS.indexOf(token.charAt(start)) >= 0) {
+            start++;
+        }
+        while (end > start && STRIP_CHARACTERS.indexOf(token.charAt(end - 1)) >= 0) {
+            end--;
+        }
+
+        return token.substring(start, end);
+    }
+}
@@ -0,0 +1,23 @@
+package buglocator.indexing.analysis;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.util.FilteringTokenFilter;
+
+/**
+ * Keeps only the tokens that are valid according to the preprocessing rules.
+ */
+public final class ValidTokenFilter extends FilteringTokenFilter {
+    private final PreprocessingRules rules;
+    private final CharTermAttribute termAttribute = addAttribute(CharTermAttribute.class);
+
+    public ValidTokenFilter(TokenStream input, PreprocessingRules rules) {
+        super(input);
+        this.rules = rules;
+    }
+
+    @Override
+    protected boolean accept() {
+        return rules.isValid(termAttribute);
+    }
+}
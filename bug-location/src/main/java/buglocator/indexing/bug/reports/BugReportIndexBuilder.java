@@ -1,8 +1,11 @@
 package buglocator.indexing.bug.reports;
 
 import buglocator.indexing.BaseIndexBuilder;
+import buglocator.indexing.IndexProfile;
+import buglocator.indexing.analysis.PreprocessingAnalyzer;
 import buglocator.indexing.data.BugReport;
 import buglocator.indexing.utils.DateTimeJsonAdapter;
+import buglocator.indexing.utils.MinHashLSH;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -25,8 +28,39 @@ import java.nio.file.Paths;
  * reused.
  */
 public class BugReportIndexBuilder extends BaseIndexBuilder<BugReport> {
+    private final MinHashLSH lsh;
+
     public BugReportIndexBuilder() {
-        super(BugReport.class);
+        this(null);
+    }
+
+    /**
+     * @param lsh Used to add the LSH buckets of every bug report to the index, which allows
+     *            retrieving similar bug reports approximately. May be {@code null} to skip them.
+     */
+    public BugReportIndexBuilder(MinHashLSH lsh) {
+        this(lsh, IndexProfile.STANDARD);
+    }
+
+    public BugReportIndexBuilder(MinHashLSH lsh, IndexProfile profile) {
+        super(BugReport.class, "fullText", profile);
+        this.lsh = lsh;
+    }
+
+    @Override
+    public void buildIndex(Path sourceFilePath, Path indexPath) throws IOException {
+        super.buildIndex(sourceFilePath, indexPath);
+
+        if (lsh != null) {
+            // Queries have to be hashed with the same parameters as the indexed documents
+            lsh.save(indexPath);
+        }
+    }
+
+    @Override
+    protected BugReport preprocess(BugReport bugReport, PreprocessingAnalyzer analyzer) {
+        return bugReport.withTexts(analyzer.preprocess(bugReport.getTitle()),
+                analyzer.preprocess(bugReport.getDescription()));
     }
 
     @Override
@@ -36,10 +70,10 @@ public class BugReportIndexBuilder extends BaseIndexBuilder<BugReport> {
         }
 
         Document document = new Document();
+        String fullText = bugReport.getTitle() + " " + bugReport.getDescription();
 
         document.add(new StringField("key", bugReport.getKey(), Field.Store.YES));
-        document.add(new Field("fullText",
-                bugReport.getTitle() + " " + bugReport.getDescription(), termVectorsFieldType));
+        document.add(new Field("fullText", fullText, getTextFieldType()));
         document.add(new LongField("creationDate",
                 bugReport.getCreationDate().getMillis(), Field.Store.NO));
         document.add(new LongField("resolutionDate",
@@ -47,6 +81,11 @@ public class BugReportIndexBuilder extends BaseIndexBuilder<BugReport> {
         document.add(new StringField("fixedFiles",
                 String.join(";", bugReport.getFixedFiles()), Field.Store.YES));
 
+        if (lsh != null) {
+            lsh.buckets(fullText).forEach(bucket ->
+                    document.add(new StringField(MinHashLSH.BUCKETS_FIELD, bucket, Field.Store.NO)));
+        }
+
         return document;
     }
 }
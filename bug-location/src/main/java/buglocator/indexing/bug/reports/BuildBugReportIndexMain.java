@@ -1,5 +1,6 @@
 package buglocator.indexing.bug.reports;
 
+import buglocator.indexing.utils.CorpusFiles;
 import org.apache.commons.io.FileUtils;
 
 import java.io.IOException;
@@ -25,8 +26,12 @@ public class BuildBugReportIndexMain {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
                     throws IOException {
-                String fileName = file.getFileName().toString();
-                String system = fileName.substring(0, fileName.indexOf(".json"));
+                String system = CorpusFiles.getSystem(file);
+                if (system == null || !file.equals(CorpusFiles.resolve(file.getParent(), system))) {
+                    // Only read one corpus file per system, in the preferred format
+                    return FileVisitResult.CONTINUE;
+                }
+
                 Path indexPath = Paths.get("..", "index", "bug-reports", system);
                 FileUtils.forceMkdir(indexPath.toFile());
                 indexBuilder.buildIndex(file, indexPath);
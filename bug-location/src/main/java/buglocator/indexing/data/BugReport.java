@@ -15,6 +15,19 @@ public class BugReport {
     private DateTime resolutionDate;
     private List<String> fixedFiles;
 
+    public BugReport() {
+    }
+
+    public BugReport(String key, String title, String description, DateTime creationDate,
+                     DateTime resolutionDate, List<String> fixedFiles) {
+        this.key = key;
+        this.title = title;
+        this.description = description;
+        this.creationDate = creationDate;
+        this.resolutionDate = resolutionDate;
+        this.fixedFiles = fixedFiles;
+    }
+
     public String getKey() {
         return key;
     }
@@ -38,4 +51,11 @@ public class BugReport {
     public List<String> getFixedFiles() {
         return fixedFiles;
     }
+
+    /**
+     * @return A copy of this bug report with other title and description.
+     */
+    public BugReport withTexts(String title, String description) {
+        return new BugReport(key, title, description, creationDate, resolutionDate, fixedFiles);
+    }
 }
@@ -7,6 +7,14 @@ public class SourceFileText {
     private String filePath;
     private String text;
 
+    public SourceFileText() {
+    }
+
+    public SourceFileText(String filePath, String text) {
+        this.filePath = filePath;
+        this.text = text;
+    }
+
     public String getFilePath() {
         return filePath;
     }
@@ -14,4 +22,11 @@ public class SourceFileText {
     public String getText() {
         return text;
     }
+
+    /**
+     * @return A copy of this source file text with another text.
+     */
+    public SourceFileText withText(String text) {
+        return new SourceFileText(filePath, text);
+    }
 }
@@ -1,5 +1,6 @@
 package buglocator.indexing.source.code;
 
+import buglocator.indexing.utils.CorpusFiles;
 import org.apache.commons.io.FileUtils;
 
 import java.io.IOException;
@@ -22,13 +23,12 @@ public class BuildSourceCodeIndexMain {
             @Override
             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
                     throws IOException {
-                if (!file.toString().endsWith(".json")) {
-                    // Only read JSON files
+                String system = CorpusFiles.getSystem(file);
+                if (system == null || !file.equals(CorpusFiles.resolve(file.getParent(), system))) {
+                    // Only read one corpus file per system, in the preferred format
                     return FileVisitResult.CONTINUE;
                 }
 
-                String fileName = file.getFileName().toString();
-                String system = fileName.substring(0, fileName.indexOf(".json"));
                 Path indexPath = Paths.get("..", "index", "source-code", system);
                 FileUtils.forceMkdir(indexPath.toFile());
                 SourceCodeIndexBuilder indexBuilder = new SourceCodeIndexBuilder();
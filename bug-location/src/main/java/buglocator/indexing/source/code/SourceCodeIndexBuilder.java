@@ -1,6 +1,8 @@
 package buglocator.indexing.source.code;
 
 import buglocator.indexing.BaseIndexBuilder;
+import buglocator.indexing.IndexProfile;
+import buglocator.indexing.analysis.PreprocessingAnalyzer;
 import buglocator.indexing.data.SourceFileText;
 import org.apache.commons.io.FileUtils;
 import org.apache.lucene.document.Document;
@@ -11,6 +13,7 @@ import org.apache.lucene.index.IndexWriterConfig;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -20,9 +23,25 @@ public class SourceCodeIndexBuilder extends BaseIndexBuilder<SourceFileText> {
     private StatCollectingSimilarity similarity = new StatCollectingSimilarity();
     private boolean used = false;
     private List<Integer> documentLengths = new ArrayList<>();
+    private final boolean sortByPath;
 
     public SourceCodeIndexBuilder() {
-        super(SourceFileText.class);
+        this(IndexProfile.STANDARD);
+    }
+
+    public SourceCodeIndexBuilder(IndexProfile profile) {
+        this(profile, false);
+    }
+
+    /**
+     * @param sortByPath Whether to add the source files ordered by directory and then by path,
+     *                   so that files of the same package, which share most of their vocabulary,
+     *                   get adjacent document IDs. Files are identified by path, so this doesn't
+     *                   affect the evaluation.
+     */
+    public SourceCodeIndexBuilder(IndexProfile profile, boolean sortByPath) {
+        super(SourceFileText.class, "text", profile);
+        this.sortByPath = sortByPath;
     }
 
     @Override
@@ -54,7 +73,7 @@ public class SourceCodeIndexBuilder extends BaseIndexBuilder<SourceFileText> {
         Document document = new Document();
 
         document.add(new StringField("path", item.getFilePath(), Field.Store.YES));
-        document.add(new Field("text", item.getText(), termVectorsFieldType));
+        document.add(new Field("text", item.getText(), getTextFieldType()));
 
         int wordCount = countSpaces(item.getText()) + 1;
         documentLengths.add(wordCount);
@@ -62,6 +81,21 @@ public class SourceCodeIndexBuilder extends BaseIndexBuilder<SourceFileText> {
         return document;
     }
 
+    @Override
+    protected SourceFileText preprocess(SourceFileText item, PreprocessingAnalyzer analyzer) {
+        return item.withText(analyzer.preprocess(item.getText()));
+    }
+
+    @Override
+    protected Comparator<SourceFileText> getDocumentOrder() {
+        if (!sortByPath) {
+            return null;
+        }
+
+        return Comparator.comparing((SourceFileText item) -> getDirectory(item.getFilePath()))
+                .thenComparing(SourceFileText::getFilePath);
+    }
+
     @Override
     protected IndexWriterConfig createIndexBuilderConfig() {
         IndexWriterConfig indexBuilderConfig = super.createIndexBuilderConfig();
@@ -70,6 +104,11 @@ public class SourceCodeIndexBuilder extends BaseIndexBuilder<SourceFileText> {
         return indexBuilderConfig;
     }
 
+    private static String getDirectory(String filePath) {
+        int separatorIndex = Math.max(filePath.lastIndexOf('/'), filePath.lastIndexOf('\\'));
+        return separatorIndex < 0 ? "" : filePath.substring(0, separatorIndex);
+    }
+
     private int countSpaces(String string) {
         int count = 0;
         for (char c : string.toCharArray()) {
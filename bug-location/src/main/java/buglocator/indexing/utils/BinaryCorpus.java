@@ -0,0 +1,297 @@
+package buglocator.indexing.utils;
+
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.data.SourceFileText;
+import org.joda.time.DateTime;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary format of the preprocessed corpora, which can be loaded without parsing JSON or
+ * dates. Every string of a corpus file, either a term of the texts, a key or a path, is stored
+ * once in a dictionary shared by all of its documents, most frequent first. Texts are sequences
+ * of varint dictionary IDs, split on single spaces so that they are restored exactly, fixed files
+ * are lists of IDs and dates are epoch milliseconds.
+ */
+public class BinaryCorpus {
+    private static final int MAGIC = 0x424c4331;
+    private static final byte SOURCE_FILES = 0;
+    private static final byte BUG_REPORTS = 1;
+
+    private BinaryCorpus() {
+    }
+
+    /**
+     * Converts a corpus file of source file texts or bug reports to the binary format.
+     *
+     * @return The amount of documents converted.
+     */
+    public static int convert(Path corpusFile, Path binaryFile, Class<?> type) throws IOException {
+        List<?> items = CorpusFiles.readAll(corpusFile, type);
+        write(items, type, binaryFile);
+        return items.size();
+    }
+
+    /**
+     * Writes source file texts or bug reports to a binary corpus file.
+     */
+    public static void write(List<?> items, Class<?> type, Path binaryFile) throws IOException {
+        byte kind = getKind(type);
+
+        // Assign the smallest IDs to the most frequent strings
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (Object item : items) {
+            forEachString(item, s -> {
+                if (s != null) {
+                    frequencies.merge(s, 1, Integer::sum);
+                }
+            });
+        }
+        List<String> dictionary = new ArrayList<>(frequencies.keySet());
+        dictionary.sort(Comparator.comparing((String s) -> -frequencies.get(s))
+                .thenComparing(Comparator.naturalOrder()));
+        Map<String, Integer> ids = new HashMap<>();
+        for (String s : dictionary) {
+            ids.put(s, ids.size());
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(binaryFile), CorpusFiles.BUFFER_SIZE))) {
+            output.writeInt(MAGIC);
+            output.writeByte(kind);
+
+            writeVInt(output, dictionary.size());
+            for (String s : dictionary) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                writeVInt(output, bytes.length);
+                output.write(bytes);
+            }
+
+            writeVInt(output, items.size());
+            for (Object item : items) {
+                if (kind == SOURCE_FILES) {
+                    SourceFileText sourceFile = (SourceFileText) item;
+                    writeString(output, sourceFile.getFilePath(), ids);
+                    writeText(output, sourceFile.getText(), ids);
+                } else {
+                    BugReport bugReport = (BugReport) item;
+                    writeString(output, bugReport.getKey(), ids);
+                    writeText(output, bugReport.getTitle(), ids);
+                    writeText(output, bugReport.getDescription(), ids);
+                    writeDate(output, bugReport.getCreationDate());
+                    writeDate(output, bugReport.getResolutionDate());
+                    writeStrings(output, bugReport.getFixedFiles(), ids);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether the file starts as a binary corpus file.
+     */
+    public static boolean isBinary(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(file))) {
+            return input.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a binary corpus file, which is loaded in memory at once and decoded as its items
+     * are read.
+     */
+    public static <T> CorpusReader<T> newReader(Path binaryFile, Class<T> type)
+            throws IOException {
+        return new Reader<>(Files.readAllBytes(binaryFile), type, binaryFile);
+    }
+
+    private static byte getKind(Class<?> type) {
+        if (type == SourceFileText.class) {
+            return SOURCE_FILES;
+        } else if (type == BugReport.class) {
+            return BUG_REPORTS;
+        }
+
+        throw new IllegalArgumentException(
+                "Binary corpora only hold source file texts or bug reports, not " +
+                        type.getSimpleName());
+    }
+
+    private static void forEachString(Object item, Consumer<String> action) {
+        if (item instanceof SourceFileText) {
+            SourceFileText sourceFile = (SourceFileText) item;
+            action.accept(sourceFile.getFilePath());
+            forEachTerm(sourceFile.getText(), action);
+        } else {
+            BugReport bugReport = (BugReport) item;
+            action.accept(bugReport.getKey());
+            forEachTerm(bugReport.getTitle(), action);
+            forEachTerm(bugReport.getDescription(), action);
+            if (bugReport.getFixedFiles() != null) {
+                bugReport.getFixedFiles().forEach(action);
+            }
+        }
+    }
+
+    private static void forEachTerm(String text, Consumer<String> action) {
+        if (text != null) {
+            for (String term : text.split(" ", -1)) {
+                action.accept(term);
+            }
+        }
+    }
+
+    // Lists and strings are written with their size plus one, so that zero stands for null
+
+    private static void writeString(DataOutput output, String s, Map<String, Integer> ids)
+            throws IOException {
+        writeVInt(output, s == null ? 0 : ids.get(s) + 1);
+    }
+
+    private static void writeText(DataOutput output, String text, Map<String, Integer> ids)
+            throws IOException {
+        writeStrings(output, text == null ? null : Arrays.asList(text.split(" ", -1)), ids);
+    }
+
+    private static void writeStrings(DataOutput output, List<String> strings,
+                                     Map<String, Integer> ids) throws IOException {
+        if (strings == null) {
+            writeVInt(output, 0);
+            return;
+        }
+
+        writeVInt(output, strings.size() + 1);
+        for (String s : strings) {
+            writeVInt(output, ids.get(s));
+        }
+    }
+
+    private static void writeDate(DataOutput output, DateTime date) throws IOException {
+        output.writeBoolean(date != null);
+        if (date != null) {
+            output.writeLong(date.getMillis());
+        }
+    }
+
+    private static void writeVInt(DataOutput output, int i) throws IOException {
+        while ((i & ~0x7F) != 0) {
+            output.writeByte((i & 0x7F) | 0x80);
+            i >>>= 7;
+        }
+        output.writeByte(i);
+    }
+
+    private static class Reader<T> implements CorpusReader<T> {
+        private final byte[] bytes;
+        private final Class<T> type;
+        private final String[] dictionary;
+        private final StringBuilder builder = new StringBuilder();
+        private int position = 0;
+        private int remainingItems;
+
+        Reader(byte[] bytes, Class<T> type, Path file) throws IOException {
+            this.bytes = bytes;
+            this.type = type;
+
+            if (bytes.length < 5 || readInt() != MAGIC) {
+                throw new IOException(file + " is not a binary corpus file");
+            }
+            if (bytes[position++] != getKind(type)) {
+                throw new IOException(file + " doesn't hold " + type.getSimpleName() + " items");
+            }
+
+            dictionary = new String[readVInt()];
+            for (int i = 0; i < dictionary.length; i++) {
+                int length = readVInt();
+                dictionary[i] = new String(bytes, position, length, StandardCharsets.UTF_8);
+                position += length;
+            }
+            remainingItems = readVInt();
+        }
+
+        @Override
+        public T read() {
+            if (remainingItems == 0) {
+                return null;
+            }
+
+            remainingItems--;
+            if (type == SourceFileText.class) {
+                return type.cast(new SourceFileText(readString(), readText()));
+            } else {
+                return type.cast(new BugReport(readString(), readText(), readText(), readDate(),
+                        readDate(), readStrings()));
+            }
+        }
+
+        private String readString() {
+            int id = readVInt();
+            return id == 0 ? null : dictionary[id - 1];
+        }
+
+        private String readText() {
+            int size = readVInt() - 1;
+            if (size < 0) {
+                return null;
+            }
+
+            builder.setLength(0);
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    builder.append(' ');
+                }
+                builder.append(dictionary[readVInt()]);
+            }
+            return builder.toString();
+        }
+
+        private List<String> readStrings() {
+            int size = readVInt() - 1;
+            if (size < 0) {
+                return null;
+            }
+
+            List<String> strings = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                strings.add(dictionary[readVInt()]);
+            }
+            return strings;
+        }
+
+        private DateTime readDate() {
+            return bytes[position++] == 0 ? null : new DateTime(readLong());
+        }
+
+        private int readInt() {
+            int i = 0;
+            for (int b = 0; b < 4; b++) {
+                i = (i << 8) | (bytes[position++] & 0xFF);
+            }
+            return i;
+        }
+
+        private long readLong() {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        private int readVInt() {
+            byte b = bytes[position++];
+            int i = b & 0x7F;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = bytes[position++];
+                i |= (b & 0x7F) << shift;
+            }
+            return i;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
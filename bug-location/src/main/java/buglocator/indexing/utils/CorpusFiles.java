@@ -0,0 +1,285 @@
+package buglocator.indexing.utils;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.joda.time.DateTime;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens the JSON lines files of the processed corpora, which may be compressed with gzip. A
+ * corpus {@code <system>.json} may also be stored as {@code <system>.json.gz}, and compressed
+ * files are recognized by their extension or by the gzip magic bytes. Corpora converted to the
+ * {@link BinaryCorpus} format, {@code <system>.bin}, are preferred over the JSON files they were
+ * converted from as long as they are up to date.
+ * <p>
+ * Compressed files are decompressed on a separate thread, one chunk ahead of the reader, so that
+ * decompression overlaps with parsing.
+ */
+public class CorpusFiles {
+    public static final String EXTENSION = ".json";
+    public static final String COMPRESSED_EXTENSION = ".json.gz";
+    public static final String BINARY_EXTENSION = ".bin";
+
+    /**
+     * Size of the read buffers and of the chunks handed over by the decompression thread.
+     */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Decompressed chunks waiting to be read.
+     */
+    private static final int QUEUED_CHUNKS = 4;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private static final Gson gson = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+            .registerTypeAdapter(DateTime.class, new DateTimeJsonAdapter())
+            .create();
+
+    private CorpusFiles() {
+    }
+
+    /**
+     * @return The corpus file of a system in a folder: the binary one if it isn't older than the
+     * JSON one, then the uncompressed JSON one and then the compressed one. If none exists, the
+     * path of the uncompressed JSON file.
+     */
+    public static Path resolve(Path folder, String system) throws IOException {
+        Path file = folder.resolve(system + EXTENSION);
+        Path compressedFile = folder.resolve(system + COMPRESSED_EXTENSION);
+        if (!Files.exists(file) && Files.exists(compressedFile)) {
+            file = compressedFile;
+        }
+
+        Path binaryFile = folder.resolve(system + BINARY_EXTENSION);
+        return isUpToDate(binaryFile, file) ? binaryFile : file;
+    }
+
+    /**
+     * @return Whether a file converted from another exists and isn't older than it.
+     */
+    public static boolean isUpToDate(Path convertedFile, Path originalFile) throws IOException {
+        return Files.exists(convertedFile) && (!Files.exists(originalFile) ||
+                Files.getLastModifiedTime(convertedFile)
+                        .compareTo(Files.getLastModifiedTime(originalFile)) >= 0);
+    }
+
+    /**
+     * @return The name of the system of a corpus file or {@code null} if it isn't one.
+     */
+    public static String getSystem(Path file) {
+        String fileName = file.getFileName().toString();
+        if (fileName.endsWith(EXTENSION)) {
+            return fileName.substring(0, fileName.length() - EXTENSION.length());
+        }
+        if (fileName.endsWith(COMPRESSED_EXTENSION)) {
+            return fileName.substring(0, fileName.length() - COMPRESSED_EXTENSION.length());
+        }
+        if (fileName.endsWith(BINARY_EXTENSION)) {
+            return fileName.substring(0, fileName.length() - BINARY_EXTENSION.length());
+        }
+
+        return null;
+    }
+
+    /**
+     * @return Whether the file is compressed with gzip, by its extension or its first bytes.
+     */
+    public static boolean isCompressed(Path file) throws IOException {
+        if (file.getFileName().toString().endsWith(".gz")) {
+            return true;
+        }
+
+        try (InputStream input = Files.newInputStream(file)) {
+            int first = input.read();
+            int second = input.read();
+            return second >= 0 && (first | (second << 8)) == GZIP_MAGIC;
+        }
+    }
+
+    /**
+     * Opens a corpus file for reading as UTF-8 text with large buffers.
+     */
+    public static BufferedReader newReader(Path file) throws IOException {
+        InputStream input = Files.newInputStream(file);
+        if (isCompressed(file)) {
+            input = new DecompressingInputStream(
+                    new GZIPInputStream(new BufferedInputStream(input, BUFFER_SIZE), BUFFER_SIZE));
+        }
+
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+    }
+
+    /**
+     * @return Every line of a corpus file.
+     */
+    public static List<String> readLines(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = newReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Opens a corpus file of items in any of the formats, JSON lines, compressed or not, or
+     * binary.
+     */
+    public static <T> CorpusReader<T> newItemReader(Path file, Class<T> type) throws IOException {
+        if (file.getFileName().toString().endsWith(BINARY_EXTENSION) ||
+                BinaryCorpus.isBinary(file)) {
+            return BinaryCorpus.newReader(file, type);
+        }
+
+        BufferedReader reader = newReader(file);
+        return new CorpusReader<T>() {
+            @Override
+            public T read() throws IOException {
+                String line = reader.readLine();
+                return line == null ? null : gson.fromJson(line, type);
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    /**
+     * @return Every item of a corpus file in any of the formats.
+     */
+    public static <T> List<T> readAll(Path file, Class<T> type) throws IOException {
+        List<T> items = new ArrayList<>();
+        try (CorpusReader<T> reader = newItemReader(file, type)) {
+            T item;
+            while ((item = reader.read()) != null) {
+                items.add(item);
+            }
+        }
+
+        return items;
+    }
+
+    /**
+     * Reads a stream on a separate thread, handing over its contents in chunks.
+     */
+    private static class DecompressingInputStream extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        private final InputStream source;
+        private final Thread thread;
+        private volatile IOException failure = null;
+        private byte[] chunk = null;
+        private int position = 0;
+
+        DecompressingInputStream(InputStream source) {
+            this.source = source;
+            thread = new Thread(this::decompress, "corpus-decompression");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void decompress() {
+            try {
+                while (true) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int length = 0;
+                    int read;
+                    while (length < buffer.length &&
+                            (read = source.read(buffer, length, buffer.length - length)) > 0) {
+                        length += read;
+                    }
+                    if (length == 0) {
+                        break;
+                    }
+                    chunks.put(length == buffer.length ? buffer : copyOf(buffer, length));
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                // The reader was closed
+                return;
+            }
+
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                // The reader was closed
+            }
+        }
+
+        private static byte[] copyOf(byte[] buffer, int length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(buffer, 0, copy, 0, length);
+            return copy;
+        }
+
+        /**
+         * @return Whether there is data left to read.
+         */
+        private boolean nextChunk() throws IOException {
+            while (chunk == null || (chunk != END && position == chunk.length)) {
+                try {
+                    chunk = chunks.take();
+                    position = 0;
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            if (chunk == END && failure != null) {
+                throw failure;
+            }
+
+            return chunk != END;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return nextChunk() ? chunk[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+
+            int length = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, length);
+            position += length;
+            return length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            source.close();
+        }
+    }
+}
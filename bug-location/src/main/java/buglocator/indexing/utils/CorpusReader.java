@@ -0,0 +1,16 @@
+package buglocator.indexing.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the items of a corpus file one at a time.
+ *
+ * @see CorpusFiles#newItemReader(java.nio.file.Path, Class)
+ */
+public interface CorpusReader<T> extends Closeable {
+    /**
+     * @return The next item of the corpus or {@code null} if all of them were read.
+     */
+    T read() throws IOException;
+}
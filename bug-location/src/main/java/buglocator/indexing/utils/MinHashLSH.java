@@ -0,0 +1,140 @@
+package buglocator.indexing.utils;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Computes MinHash signatures over the set of terms of a text and splits them in bands for
+ * locality sensitive hashing. Two texts with Jaccard similarity {@code s} share at least one
+ * bucket with probability {@code 1 - (1 - s^rows)^bands}.
+ * <p>
+ * The hash functions are derived from a fixed seed, so instances created with the same parameters
+ * produce the same buckets at index and query time.
+ */
+public class MinHashLSH {
+    /**
+     * Name of the index field holding the LSH buckets of every document.
+     */
+    public static final String BUCKETS_FIELD = "lshBucket";
+
+    /**
+     * File in the index directory storing the parameters used to build the buckets.
+     */
+    public static final String PARAMETERS_FILE_NAME = "lsh.txt";
+
+    public static final int DEFAULT_BANDS = 64;
+    public static final int DEFAULT_ROWS = 1;
+
+    private static final long SEED = 0x5EEDL;
+
+    private final int bands;
+    private final int rows;
+    private final long[] hashSeeds;
+
+    public MinHashLSH() {
+        this(DEFAULT_BANDS, DEFAULT_ROWS);
+    }
+
+    public MinHashLSH(int bands, int rows) {
+        if (bands <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("Bands and rows must be positive");
+        }
+        this.bands = bands;
+        this.rows = rows;
+
+        Random random = new Random(SEED);
+        hashSeeds = new long[bands * rows];
+        for (int i = 0; i < hashSeeds.length; i++) {
+            hashSeeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Reads the parameters stored in an index directory by {@link #save(Path)}.
+     *
+     * @return The LSH instance used to build that index or {@code null} if the index has no
+     * buckets.
+     */
+    public static MinHashLSH load(Path indexPath) throws IOException {
+        Path parametersPath = indexPath.resolve(PARAMETERS_FILE_NAME);
+        if (!parametersPath.toFile().exists()) {
+            return null;
+        }
+
+        String[] parameters = FileUtils.readFileToString(parametersPath.toFile()).split("\n");
+        return new MinHashLSH(Integer.parseInt(parameters[0]), Integer.parseInt(parameters[1]));
+    }
+
+    public void save(Path indexPath) throws IOException {
+        FileUtils.write(indexPath.resolve(PARAMETERS_FILE_NAME).toFile(), bands + "\n" + rows);
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @param text Whitespace separated terms.
+     * @return The MinHash signature of the set of terms, or {@code null} if there are no terms.
+     */
+    public long[] signature(String text) {
+        Set<String> terms = new HashSet<>(Arrays.asList(text.trim().split(" +")));
+        terms.remove("");
+        if (terms.isEmpty()) {
+            return null;
+        }
+
+        long[] signature = new long[hashSeeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String term : terms) {
+            int termHash = term.hashCode();
+            for (int i = 0; i < signature.length; i++) {
+                long hash = mix(termHash ^ hashSeeds[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+
+        return signature;
+    }
+
+    /**
+     * Finalizer of the SplitMix64 generator, turns each seed into an independent permutation of
+     * the term hashes.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * @param text Whitespace separated terms.
+     * @return One bucket name per band, or an empty list if the text has no terms.
+     */
+    public List<String> buckets(String text) {
+        long[] signature = signature(text);
+        if (signature == null) {
+            return Collections.emptyList();
+        }
+
+        List<String> buckets = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            long bandHash = 1;
+            for (int row = 0; row < rows; row++) {
+                bandHash = 31 * bandHash + signature[band * rows + row];
+            }
+            buckets.add(band + "_" + Long.toString(bandHash, 36));
+        }
+
+        return buckets;
+    }
+}
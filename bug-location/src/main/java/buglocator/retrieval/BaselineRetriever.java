@@ -1,12 +1,16 @@
 package buglocator.retrieval;
 
 import buglocator.indexing.data.BugReport;
+import buglocator.retrieval.data.Deadline;
+import buglocator.retrieval.data.Ranking;
+import buglocator.retrieval.similarity.BugLocatorSimilarity;
+import buglocator.retrieval.similarity.CosineSimilarity;
+import buglocator.retrieval.similarity.QueryVector;
 import buglocator.retrieval.similarity.TfIdfSimilarity;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -19,10 +23,13 @@ public class BaselineRetriever extends BugLocatorRetriever {
                              IndexSearcher bugReportSearcher) {
         super(usefield, sourceTextSearcher, bugReportSearcher, 0, 0, 0);
         tfIdfSimilarity = new TfIdfSimilarity(sourceFileTFCounts, sourceTextIndexReader);
+        tfIdfSimilarity.setCounters(counters);
     }
 
     @Override
-    public ScoreDoc[] locate(BugReport bugReport, int maxResults) throws IOException {
+    public Ranking rank(BugReport bugReport, int maxResults, int[] trackedDocs,
+                        Deadline deadline) throws IOException {
+        counters.reset();
         String queryString = getQueryString(bugReport);
 
         if (queryString == null) {
@@ -31,40 +38,58 @@ public class BaselineRetriever extends BugLocatorRetriever {
 
         Map<String, Integer> queryFreqs = extractQueryFreqs(queryString);
 
-        // Create the BooleanQuery that wraps the term queries to search source files
-        BooleanQuery sourceFilesQuery = createSourceFilesQuery(queryFreqs, sourceFileTFCounts);
+        ScoreDoc[] sourceFiles = searchSourceFiles(queryFreqs, deadline);
+        tfIdfScore(queryFreqs, sourceFiles);
 
-        TopDocs topSourceFiles =
-                sourceTextSearcher.search(sourceFilesQuery, sourceTextIndexReader.numDocs());
-        tfIdfScore(queryFreqs, topSourceFiles.scoreDocs);
+        Ranking ranking = Ranking.of(sourceFiles, maxResults, trackedDocs);
+        return deadline.wasReached() ? ranking.asPartial() : ranking;
+    }
+
+    /**
+     * Source files are scored with a different similarity and bug reports aren't scored.
+     */
+    @Override
+    protected boolean supportsIncrementalRescoring() {
+        return false;
+    }
+
+    @Override
+    public long getDerivedStateBytes() {
+        return super.getDerivedStateBytes() + tfIdfSimilarity.estimateCacheBytes();
+    }
+
+    @Override
+    public void releaseDerivedState() {
+        super.releaseDerivedState();
+        tfIdfSimilarity.clearCaches();
+    }
 
-        ScoreDoc[] sortedEntries = Arrays.stream(topSourceFiles.scoreDocs)
-                .sorted((o1, o2) -> Float.compare(o2.score, o1.score))
-                .toArray(ScoreDoc[]::new);
+    @Override
+    protected BugLocatorSimilarity getSourceSimilarity() {
+        return tfIdfSimilarity;
+    }
 
-        return Arrays.copyOfRange(sortedEntries, 0, Math.min(maxResults, sortedEntries.length));
+    /**
+     * Bug reports aren't scored, the bug report searcher may even search the source files.
+     */
+    @Override
+    protected CosineSimilarity getBugReportSimilarity() {
+        return null;
     }
 
     private void tfIdfScore(Map<String, Integer> queryFreqs, ScoreDoc[] scoreDocs) {
-        int numDocs = sourceTextIndexReader.numDocs();
-        float queryNorm = (float) Math.sqrt(queryFreqs.entrySet().stream()
-                .map(e -> {
-                    String termString = e.getKey();
-                    int termQueryFreq = e.getValue();
-                    // Dampened term frequency value in query
-                    float dampTf = (float) (Math.log(termQueryFreq) + 1);
-                    // idf value for term
-                    float idf = (float) Math.log(numDocs / tfIdfSimilarity.getDocFreq(termString));
-                    return (float) Math.pow(dampTf * idf, 2);
-                })
-                .reduce((x, y) -> x + y).get());
-
-        Arrays.stream(scoreDocs).forEach(sd -> {
+        long scoringStart = System.nanoTime();
+        QueryVector queryVector = tfIdfSimilarity.createQueryVector(queryFreqs);
+
+        for (ScoreDoc sd : scoreDocs) {
             try {
-                sd.score = tfIdfSimilarity.calculate(queryFreqs, queryNorm, sd.doc);
+                sd.score = tfIdfSimilarity.calculate(queryVector, sd.doc);
             } catch (IOException e) {
                 e.printStackTrace();
             }
-        });
+        }
+
+        counters.countDocumentsScored(scoreDocs.length);
+        counters.addScoringNanos(System.nanoTime() - scoringStart);
     }
 }
@@ -1,22 +1,43 @@
 package buglocator.retrieval;
 
 import buglocator.indexing.data.BugReport;
+import buglocator.indexing.utils.MinHashLSH;
+import buglocator.retrieval.data.BugHistory;
+import buglocator.retrieval.data.Deadline;
+import buglocator.retrieval.data.IntIntHashMap;
+import buglocator.retrieval.data.MemoryEstimates;
+import buglocator.retrieval.data.PostingsCache;
+import buglocator.retrieval.data.Ranking;
+import buglocator.retrieval.data.RetrieverSnapshot;
 import buglocator.retrieval.data.TermFrequencyDictionary;
 import buglocator.retrieval.internals.FrequencyCollectingQuery;
 import buglocator.retrieval.similarity.BugLocatorSimilarity;
 import buglocator.retrieval.similarity.CosineSimilarity;
+import buglocator.retrieval.similarity.QueryVector;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.*;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * Retriever that implements the BugLocator algorithm.
  */
 public class BugLocatorRetriever extends RetrieverBase {
+    /**
+     * Amount of source files scored between checks of the deadline.
+     */
+    private static final int DEADLINE_CHECK_INTERVAL = 1024;
 
     TermFrequencyDictionary sourceFileTFCounts;
     private BugLocatorSimilarity bugLocatorSimilarity;
@@ -32,6 +53,33 @@ public class BugLocatorRetriever extends RetrieverBase {
     private float minRVSMScore;
     private float alpha;
 
+    /**
+     * When not {@code null}, similar bug reports are retrieved approximately using the LSH
+     * buckets stored in the bug report index.
+     */
+    private MinHashLSH lsh;
+    private int maxSimilarBugCandidates;
+
+    /**
+     * When not {@code null}, source files are retrieved in two stages, see
+     * {@link #enableTwoStageRetrieval(int, Similarity)}.
+     */
+    private IndexSearcher candidateSearcher;
+    private int maxSourceFileCandidates;
+
+    /**
+     * When not {@code null}, the postings of the query terms are read from these caches, see
+     * {@link #enablePostingsCache(long)}.
+     */
+    private PostingsCache sourcePostingsCache;
+    private PostingsCache bugReportPostingsCache;
+
+    /**
+     * When not {@code null}, similar bug reports are only retrieved among those in the history,
+     * see {@link #enableBugHistory()}.
+     */
+    private BugHistory bugHistory;
+
     public BugLocatorRetriever(UseField useField,
                                IndexSearcher sourceTextSearcher,
                                IndexSearcher bugReportSearcher,
@@ -51,6 +99,91 @@ public class BugLocatorRetriever extends RetrieverBase {
         bugLocatorSimilarity = new BugLocatorSimilarity(sourceFileTFCounts, sourceTextIndexReader,
                 minSourceFileLength, maxSourceFileLength);
         cosineSimilarity = new CosineSimilarity(bugReportTFCounts, bugReportIndexReader);
+        bugLocatorSimilarity.setCounters(counters);
+        cosineSimilarity.setCounters(counters);
+    }
+
+    /**
+     * Switches the SimiScore computation to approximate mode: instead of scoring every past bug
+     * report sharing a term with the query, only the reports sharing an LSH bucket with it are
+     * considered, and at most {@code maxCandidates} of them are rescored with the exact cosine
+     * similarity.
+     *
+     * @param lsh           The parameters used to build the bug report index, see
+     *                      {@link MinHashLSH#load(java.nio.file.Path)}.
+     * @param maxCandidates Upper bound of bug reports rescored for each query.
+     */
+    public void enableApproximateSimilarBugs(MinHashLSH lsh, int maxCandidates) {
+        if (lsh == null) {
+            throw new IllegalArgumentException("The bug report index has no LSH buckets");
+        }
+        this.lsh = lsh;
+        this.maxSimilarBugCandidates = maxCandidates;
+    }
+
+    /**
+     * Switches source file retrieval to two stages: Lucene's own top-k scoring with the given
+     * similarity selects the best {@code maxCandidates} source files, and only those are scored
+     * with the exact similarity of this retriever. Documents outside the candidate set can still
+     * be ranked through SimiScore.
+     */
+    public void enableTwoStageRetrieval(int maxCandidates, Similarity candidateSimilarity) {
+        if (maxCandidates <= 0) {
+            throw new IllegalArgumentException("The amount of candidates must be positive");
+        }
+        maxSourceFileCandidates = maxCandidates;
+        candidateSearcher = new IndexSearcher(sourceTextIndexReader);
+        candidateSearcher.setSimilarity(candidateSimilarity);
+    }
+
+    /**
+     * Keeps the decoded postings of the most recently queried terms of each index in memory, so
+     * that the terms found in most bug reports are neither looked up nor decoded again for every
+     * query. The caches are shared by the searches that use the same retriever in parallel.
+     *
+     * @param maxBytes Budget of the cache of each index, see {@link PostingsCache}.
+     */
+    public void enablePostingsCache(long maxBytes) {
+        sourcePostingsCache = new PostingsCache(maxBytes);
+        bugReportPostingsCache = new PostingsCache(maxBytes);
+    }
+
+    /**
+     * Switches the similar bug reports of every query from those resolved before it was reported
+     * to those added to the history with {@link #addToBugHistory(BugReport)}, which starts empty.
+     * Replaying the creation and resolution of every bug report in chronological order gives the
+     * same rankings without filtering the bug reports by date for each query.
+     */
+    public void enableBugHistory() {
+        bugHistory = new BugHistory(bugReportIndexReader);
+    }
+
+    /**
+     * Makes a resolved bug report a candidate similar bug report of the next queries.
+     *
+     * @return Whether the bug report is in the bug report index.
+     * @throws IOException when an index read fails.
+     */
+    public boolean addToBugHistory(BugReport bugReport) throws IOException {
+        if (bugHistory == null) {
+            throw new IllegalStateException("The bug history is not enabled");
+        }
+        return bugHistory.add(bugReport.getKey());
+    }
+
+    /**
+     * Opens the query of a bug report that is still being edited, see {@link IncrementalQuery}.
+     */
+    public IncrementalQuery openIncrementalQuery(BugReport bugReport) {
+        return new IncrementalQuery(bugReport);
+    }
+
+    /**
+     * @return Whether {@link IncrementalQuery} can rescore the versions of a bug report
+     * incrementally, otherwise it ranks each of them with {@link #rank(BugReport, int, int[])}.
+     */
+    protected boolean supportsIncrementalRescoring() {
+        return lsh == null && candidateSearcher == null;
     }
 
     /**
@@ -63,6 +196,35 @@ public class BugLocatorRetriever extends RetrieverBase {
      */
     @Override
     public ScoreDoc[] locate(BugReport bugReport, int maxResults) throws IOException {
+        Ranking ranking = rank(bugReport, maxResults, NO_DOCS);
+        return ranking == null ? null : ranking.getTopDocs();
+    }
+
+    /**
+     * Same as {@link #locate(BugReport, int)}, stopping at the deadline. The source file search
+     * stops between blocks of postings and their scoring between blocks of files, so that only the
+     * files found and scored so far are ranked. SimiScore is only added if the related bug
+     * reports are completely retrieved before the deadline.
+     *
+     * @return The ranking, partial if the deadline was reached, or {@code null} if the bug report
+     * can't be used as query.
+     * @throws IOException when an index read fails.
+     */
+    public Ranking locate(BugReport bugReport, int maxResults, Deadline deadline)
+            throws IOException {
+        return rank(bugReport, maxResults, NO_DOCS, deadline);
+    }
+
+    @Override
+    public Ranking rank(BugReport bugReport, int maxResults, int[] trackedDocs)
+            throws IOException {
+        return rank(bugReport, maxResults, trackedDocs, Deadline.NONE);
+    }
+
+    @Override
+    public Ranking rank(BugReport bugReport, int maxResults, int[] trackedDocs,
+                        Deadline deadline) throws IOException {
+        counters.reset();
         if (bugReport.getCreationDate() == null) {
             return null;
         }
@@ -73,29 +235,107 @@ public class BugLocatorRetriever extends RetrieverBase {
             return null;
         }
 
-        maxRVSMScore = maxSimiScore = Float.MIN_VALUE;
-        minRVSMScore = minSimiScore = Float.MAX_VALUE;
         Map<String, Integer> queryFreqs = extractQueryFreqs(queryString);
 
-        // Create the BooleanQuery that wraps the term queries to search source files
-        BooleanQuery sourceFilesQuery = createSourceFilesQuery(queryFreqs, sourceFileTFCounts);
+        ScoreDoc[] sourceFiles = searchSourceFiles(queryFreqs, deadline);
+        sourceFiles = scoreSourceFiles(queryFreqs, sourceFiles, null, deadline);
 
-        TopDocs topSourceFiles =
-                sourceTextSearcher.search(sourceFilesQuery, sourceTextIndexReader.numDocs());
-        scoreSourceFiles(queryFreqs, topSourceFiles.scoreDocs);
+        return combineScores(bugReport, queryString, queryFreqs, sourceFiles, maxResults,
+                trackedDocs, deadline);
+    }
 
-        // Search related bug reports
-        BooleanQuery relatedBugsQuery =
-                createRelatedBugsQuery(queryFreqs, bugReport, bugReportTFCounts);
+    /**
+     * Ranks the source files both with this retriever and with the plain VSM of
+     * {@link BaselineRetriever}, which scores the same source files with the cosine similarity of
+     * their tf-idf vectors, the part of rVSM that doesn't depend on their length. The source file
+     * search and that part of the scores are computed only once for both rankings.
+     *
+     * @return The rankings of {@link #rank(BugReport, int, int[])} and those of
+     * {@link BaselineRetriever#rank(BugReport, int, int[])}, in this order.
+     * @throws IOException when an index read fails.
+     */
+    public Ranking[] rankWithBaseline(BugReport bugReport, int maxResults, int[] trackedDocs)
+            throws IOException {
+        return rankWithBaseline(bugReport, maxResults, trackedDocs, Deadline.NONE);
+    }
 
-        TopDocs topBugReports =
-                bugReportSearcher.search(relatedBugsQuery, bugReportIndexReader.numDocs());
-        Map<Integer, Float> simiScores = scoreBugReports(queryFreqs, topBugReports.scoreDocs);
+    /**
+     * Same as {@link #rankWithBaseline(BugReport, int, int[])}, stopping at the deadline like
+     * {@link #locate(BugReport, int, Deadline)}.
+     */
+    public Ranking[] rankWithBaseline(BugReport bugReport, int maxResults, int[] trackedDocs,
+                                      Deadline deadline) throws IOException {
+        counters.reset();
+        Ranking[] results = new Ranking[2];
+        String queryString = getQueryString(bugReport);
 
+        if (queryString == null) {
+            return results;
+        }
+
+        Map<String, Integer> queryFreqs = extractQueryFreqs(queryString);
+
+        ScoreDoc[] sourceFiles = searchSourceFiles(queryFreqs, deadline);
+        float[] tfIdfScores = new float[sourceFiles.length];
+        sourceFiles = scoreSourceFiles(queryFreqs, sourceFiles, tfIdfScores, deadline);
+
+        ScoreDoc[] baselineFiles = new ScoreDoc[sourceFiles.length];
+        for (int i = 0; i < sourceFiles.length; i++) {
+            baselineFiles[i] = new ScoreDoc(sourceFiles[i].doc, tfIdfScores[i]);
+        }
+        results[1] = Ranking.of(baselineFiles, maxResults, trackedDocs);
+        if (deadline.wasReached()) {
+            results[1] = results[1].asPartial();
+        }
+
+        // The baseline doesn't need the creation date
+        if (bugReport.getCreationDate() != null) {
+            results[0] = combineScores(bugReport, queryString, queryFreqs, sourceFiles,
+                    maxResults, trackedDocs, deadline);
+        }
+
+        return results;
+    }
+
+    /**
+     * Combines the rVSM scores of the source files with their SimiScore. Only the rVSM scores are
+     * used once the deadline is reached, in which case the ranking is partial.
+     */
+    private Ranking combineScores(BugReport bugReport, String queryString,
+                                  Map<String, Integer> queryFreqs, ScoreDoc[] sourceFiles,
+                                  int maxResults, int[] trackedDocs, Deadline deadline)
+            throws IOException {
+        maxSimiScore = Float.MIN_VALUE;
+        minSimiScore = Float.MAX_VALUE;
+
+        // Search related bug reports, those of a search stopped by the deadline are incomplete
+        Map<Integer, Float> simiScores = Collections.emptyMap();
+        boolean partial = deadline.isExpired();
+        if (!partial) {
+            long similarBugsStart = System.nanoTime();
+            TopDocs topBugReports =
+                    searchRelatedBugs(queryFreqs, bugReport, queryString, deadline);
+            partial = deadline.isExpired();
+            if (!partial) {
+                simiScores = scoreBugReports(queryFreqs, topBugReports.scoreDocs);
+            }
+            counters.addSimilarBugsNanos(System.nanoTime() - similarBugsStart);
+        }
+
+        Ranking ranking = combineScores(sourceFiles, simiScores, maxResults, trackedDocs);
+        return partial ? ranking.asPartial() : ranking;
+    }
+
+    /**
+     * Combines the rVSM scores of the source files with their SimiScore, both normalized with the
+     * extreme scores of the query.
+     */
+    private Ranking combineScores(ScoreDoc[] sourceFiles, Map<Integer, Float> simiScores,
+                                  int maxResults, int[] trackedDocs) {
         Map<Integer, Float> totalScores = new HashMap<>();
 
         float rVSMNormalizeVal = maxRVSMScore - minRVSMScore;
-        Arrays.stream(topSourceFiles.scoreDocs).forEach(sd -> {
+        Arrays.stream(sourceFiles).forEach(sd -> {
             totalScores.put(sd.doc, (1 - alpha) * ((sd.score - minRVSMScore) / rVSMNormalizeVal));
         });
 
@@ -116,39 +356,193 @@ public class BugLocatorRetriever extends RetrieverBase {
             totalScores.put(docId, finalScore);
         });
 
-        Object[] sortedEntries = totalScores.entrySet().stream().sorted(
-                (o1, o2) -> Float.compare(o2.getValue(), o1.getValue())).toArray();
+        ScoreDoc[] scoredFiles = totalScores.entrySet().stream()
+                .map(e -> new ScoreDoc(e.getKey(), e.getValue()))
+                .toArray(ScoreDoc[]::new);
+
+        return Ranking.of(scoredFiles, maxResults, trackedDocs);
+    }
+
+    @Override
+    public long getDerivedStateBytes() {
+        long pathBytes = MemoryEstimates.stringMapBytes(sourceFileIDS);
+        long postingsBytes = sourcePostingsCache == null ? 0 :
+                sourcePostingsCache.estimateBytes() + bugReportPostingsCache.estimateBytes();
+
+        return sourceFileTFCounts.estimateBytes() + bugReportTFCounts.estimateBytes() +
+                bugLocatorSimilarity.estimateCacheBytes() + cosineSimilarity.estimateCacheBytes() +
+                pathBytes + postingsBytes;
+    }
 
-        ScoreDoc[] results = new ScoreDoc[Math.min(maxResults, sortedEntries.length)];
+    @Override
+    public void releaseDerivedState() {
+        sourceFileTFCounts.clear();
+        bugReportTFCounts.clear();
+        bugLocatorSimilarity.clearCaches();
+        cosineSimilarity.clearCaches();
+        sourceFileIDS.clear();
+        if (sourcePostingsCache != null) {
+            sourcePostingsCache.clear();
+            bugReportPostingsCache.clear();
+        }
+    }
 
-        for (int i = 0; i < results.length; i++) {
-            Map.Entry<Integer, Float> e = (Map.Entry<Integer, Float>) sortedEntries[i];
-            results[i] = new ScoreDoc(e.getKey(), e.getValue());
+    /**
+     * Computes the norms of every source file and bug report, the document frequencies of every
+     * term in the source files and the ID of every source file path.
+     */
+    @Override
+    public void warmUp() throws IOException {
+        getSourceSimilarity().warmUp();
+        if (getBugReportSimilarity() != null) {
+            getBugReportSimilarity().warmUp();
         }
 
-        return results;
+        // The lowest live document of a path is the one a term query on it finds first
+        Bits liveDocs = MultiFields.getLiveDocs(sourceTextIndexReader);
+        for (int docId = 0; docId < sourceTextIndexReader.maxDoc(); docId++) {
+            if (liveDocs == null || liveDocs.get(docId)) {
+                sourceFileIDS.putIfAbsent(sourceTextIndexReader.document(docId).get("path"),
+                        docId);
+            }
+        }
+    }
+
+    @Override
+    public void saveSnapshot() throws IOException {
+        RetrieverSnapshot.save(getClass().getSimpleName(), sourceTextIndexReader,
+                bugReportIndexReader, output -> {
+                    getSourceSimilarity().writeState(output);
+                    if (getBugReportSimilarity() != null) {
+                        getBugReportSimilarity().writeState(output);
+                    }
+                    RetrieverSnapshot.writeStringIntMap(output, sourceFileIDS);
+                });
+    }
+
+    @Override
+    public boolean loadSnapshot() throws IOException {
+        try (IndexInput input = RetrieverSnapshot.open(getClass().getSimpleName(),
+                sourceTextIndexReader, bugReportIndexReader)) {
+            if (input == null) {
+                return false;
+            }
+
+            getSourceSimilarity().readState(input);
+            if (getBugReportSimilarity() != null) {
+                getBugReportSimilarity().readState(input);
+            }
+            sourceFileIDS = RetrieverSnapshot.readStringIntMap(input);
+            return true;
+        }
+    }
+
+    /**
+     * @return The similarity whose cached values are saved to snapshots for the source files.
+     */
+    protected BugLocatorSimilarity getSourceSimilarity() {
+        return bugLocatorSimilarity;
+    }
+
+    /**
+     * @return The similarity whose cached values are saved to snapshots for the bug reports or
+     * {@code null} if this retriever doesn't score them.
+     */
+    protected CosineSimilarity getBugReportSimilarity() {
+        return cosineSimilarity;
+    }
+
+    /**
+     * Retrieves the bug reports fixed before the given one was reported that are similar to it,
+     * as used for SimiScore.
+     *
+     * @return The similar bug reports with their cosine similarity as score, in no particular
+     * order, or {@code null} if the bug report can't be used as a query.
+     * @throws IOException when an index read fails.
+     */
+    public ScoreDoc[] findSimilarBugReports(BugReport bugReport) throws IOException {
+        counters.reset();
+        String queryString = getQueryString(bugReport);
+        if (bugReport.getCreationDate() == null || queryString == null) {
+            return null;
+        }
+
+        Map<String, Integer> queryFreqs = extractQueryFreqs(queryString);
+        if (queryFreqs.isEmpty()) {
+            return new ScoreDoc[0];
+        }
+
+        TopDocs relatedBugs = searchRelatedBugs(queryFreqs, bugReport, queryString, Deadline.NONE);
+        QueryVector queryVector = cosineSimilarity.createQueryVector(queryFreqs);
+
+        List<ScoreDoc> similarBugs = new ArrayList<>();
+        for (ScoreDoc sd : relatedBugs.scoreDocs) {
+            sd.score = cosineSimilarity.calculate(queryVector, sd.doc);
+            if (sd.score > 0) {
+                similarBugs.add(sd);
+            }
+        }
+
+        return similarBugs.toArray(new ScoreDoc[similarBugs.size()]);
+    }
+
+    private TopDocs searchRelatedBugs(
+            Map<String, Integer> queryFreqs, BugReport bugReport, String queryString,
+            Deadline deadline) throws IOException {
+        BooleanQuery relatedBugsQuery =
+                createRelatedBugsQuery(queryFreqs, bugReport, bugReportTFCounts, deadline);
+
+        if (lsh == null) {
+            return bugReportSearcher.search(relatedBugsQuery, bugReportIndexReader.numDocs());
+        }
+
+        // Only the bug reports that share at least one bucket with the query are candidates, the
+        // term clauses then collect their frequencies for the exact rescoring
+        BooleanQuery bucketsQuery = new BooleanQuery();
+        lsh.buckets(queryString).forEach(bucket -> bucketsQuery.add(new BooleanClause(
+                new TermQuery(new Term(MinHashLSH.BUCKETS_FIELD, bucket)),
+                BooleanClause.Occur.SHOULD)));
+        relatedBugsQuery.add(new BooleanClause(bucketsQuery, BooleanClause.Occur.MUST));
+
+        return bugReportSearcher.search(relatedBugsQuery, maxSimilarBugCandidates);
     }
 
     private Map<Integer, Float> scoreBugReports(
             Map<String, Integer> queryFreqs, ScoreDoc[] scoreDocs) {
+        QueryVector queryVector = cosineSimilarity.createQueryVector(queryFreqs);
+        for (ScoreDoc sd : scoreDocs) {
+            try {
+                sd.score = cosineSimilarity.calculate(queryVector, sd.doc);
+            } catch (IOException e) {
+                e.printStackTrace();
+                sd.score = 0;
+            }
+        }
+
+        return sumSimiScores(scoreDocs);
+    }
+
+    /**
+     * Distributes the cosine similarity of every similar bug report among the source files it
+     * fixed, in the order of the bug reports.
+     *
+     * @return The SimiScore of every source file fixed by a similar bug report.
+     */
+    private Map<Integer, Float> sumSimiScores(ScoreDoc[] scoreDocs) {
         Map<Integer, List<ScoreDoc>> fixedBy = new HashMap<>();
         Map<ScoreDoc, Integer> amountOfFixedFiles = new HashMap<>();
 
-        // Calculate the norm of the query vector: square root of the sum of square term frequencies
-        float queryNorm = (float) Math.sqrt(queryFreqs.entrySet().stream()
-                .map(e -> (float) Math.pow(e.getValue(), 2))
-                .reduce((x, y) -> x + y).get());
-
         Arrays.stream(scoreDocs).forEach(sd -> {
             try {
-                sd.score = cosineSimilarity.calculate(queryFreqs, queryNorm, sd.doc);
                 if (sd.score == 0) {
                     // It's a false positive
                     return;
                 }
+                counters.countSimilarBug();
                 Document bugReport = bugReportIndexReader.document(sd.doc);
                 Arrays.stream(bugReport.get("fixedFiles").split(";")).forEach(f -> {
                     try {
+                        counters.countFixedFileLookup();
                         int sourceFileID = getSourceFileID(f);
                         if (!fixedBy.containsKey(sourceFileID)) {
                             fixedBy.put(sourceFileID, new ArrayList<>());
@@ -201,15 +595,20 @@ public class BugLocatorRetriever extends RetrieverBase {
 
     private BooleanQuery createRelatedBugsQuery(
             Map<String, Integer> queryFreqs, BugReport bugReport,
-            TermFrequencyDictionary tfCounts) {
+            TermFrequencyDictionary tfCounts, Deadline deadline) {
         BooleanQuery relatedBugsQuery = new BooleanQuery();
 
         // Add clause for fixed date, we are only interested in the bug reports that were fixed
-        // before this bug was reported.
-        relatedBugsQuery.add(new BooleanClause(
-                NumericRangeQuery.newLongRange("resolutionDate", 1L,
-                        bugReport.getCreationDate().getMillis(), true, false),
-                BooleanClause.Occur.FILTER));
+        // before this bug was reported. In a chronological replay those are the history.
+        if (bugHistory != null) {
+            relatedBugsQuery.add(new BooleanClause(bugHistory.createFilter(),
+                    BooleanClause.Occur.FILTER));
+        } else {
+            relatedBugsQuery.add(new BooleanClause(
+                    NumericRangeQuery.newLongRange("resolutionDate", 1L,
+                            bugReport.getCreationDate().getMillis(), true, false),
+                    BooleanClause.Occur.FILTER));
+        }
 
         // Make sure the bug report used as query is not retrieved by explicitly forbidding its key
         relatedBugsQuery.add(new BooleanClause(new TermQuery(new Term("key", bugReport.getKey())),
@@ -217,35 +616,50 @@ public class BugLocatorRetriever extends RetrieverBase {
 
         queryFreqs.forEach((term, __) -> {
             FrequencyCollectingQuery newClause =
-                    new FrequencyCollectingQuery("fullText", term, tfCounts);
+                    new FrequencyCollectingQuery("fullText", term, tfCounts, counters,
+                            bugReportPostingsCache, deadline);
             relatedBugsQuery.add(new BooleanClause(newClause, BooleanClause.Occur.SHOULD));
         });
 
         return relatedBugsQuery;
     }
 
-    private void scoreSourceFiles(Map<String, Integer> queryFreqs, ScoreDoc[] scoreDocs) {
-        int numDocs = sourceTextIndexReader.numDocs();
-        float queryNorm = (float) Math.sqrt(queryFreqs.entrySet().stream()
-                .map(e -> {
-                    String termString = e.getKey();
-                    int termQueryFreq = e.getValue();
-                    // Dampened term frequency value in query
-                    float dampTf = (float) (Math.log(termQueryFreq) + 1);
-                    // idf value for term
-                    float idf = (float) Math.log(numDocs / bugLocatorSimilarity.getDocFreq(termString));
-                    return (float) Math.pow(dampTf * idf, 2);
-                })
-                .reduce((x, y) -> x + y).get());
+    /**
+     * Sets the rVSM score of every source file, or of the first ones if the deadline is reached.
+     *
+     * @param tfIdfScores If not {@code null}, receives the score of each source file before it
+     *                    is weighted by its length.
+     * @return The scored source files.
+     */
+    private ScoreDoc[] scoreSourceFiles(Map<String, Integer> queryFreqs, ScoreDoc[] scoreDocs,
+                                        float[] tfIdfScores, Deadline deadline) {
+        long scoringStart = System.nanoTime();
+        maxRVSMScore = Float.MIN_VALUE;
+        minRVSMScore = Float.MAX_VALUE;
+        QueryVector queryVector = bugLocatorSimilarity.createQueryVector(queryFreqs);
+
+        for (int i = 0; i < scoreDocs.length; i++) {
+            if (i > 0 && i % DEADLINE_CHECK_INTERVAL == 0 && deadline.isExpired()) {
+                scoreDocs = Arrays.copyOf(scoreDocs, i);
+                break;
+            }
 
-        Arrays.stream(scoreDocs).forEach(sd -> {
+            ScoreDoc sd = scoreDocs[i];
             try {
-                sd.score = bugLocatorSimilarity.calculate(queryFreqs, queryNorm, sd.doc);
+                float tfIdfScore = bugLocatorSimilarity.calculateTfIdf(queryVector, sd.doc);
+                if (tfIdfScores != null) {
+                    tfIdfScores[i] = tfIdfScore;
+                }
+                sd.score = bugLocatorSimilarity.normalizeLength(tfIdfScore, sd.doc);
                 updateExtremeRVSMScores(sd.score);
             } catch (IOException e) {
                 e.printStackTrace();
             }
-        });
+        }
+
+        counters.countDocumentsScored(scoreDocs.length);
+        counters.addScoringNanos(System.nanoTime() - scoringStart);
+        return scoreDocs;
     }
 
     private void updateExtremeRVSMScores(float score) {
@@ -253,15 +667,415 @@ public class BugLocatorRetriever extends RetrieverBase {
         maxRVSMScore = score > maxRVSMScore ? score : maxRVSMScore;
     }
 
+    /**
+     * Retrieves the source files sharing terms with the query, collecting the frequencies of the
+     * query terms in them. Their scores are left to be calculated by the caller.
+     *
+     * @param deadline Once reached, the postings left aren't collected, so that files may be
+     *                 missing or have frequencies missing.
+     */
+    protected ScoreDoc[] searchSourceFiles(Map<String, Integer> queryFreqs, Deadline deadline)
+            throws IOException {
+        long searchStart = System.nanoTime();
+        if (candidateSearcher == null) {
+            // Create the BooleanQuery that wraps the term queries to search source files
+            BooleanQuery sourceFilesQuery =
+                    createSourceFilesQuery(queryFreqs, sourceFileTFCounts, deadline);
+
+            ScoreDoc[] sourceFiles = sourceTextSearcher.search(
+                    sourceFilesQuery, sourceTextIndexReader.numDocs()).scoreDocs;
+            counters.addSearchNanos(System.nanoTime() - searchStart);
+            return sourceFiles;
+        }
+
+        // First stage: plain term queries, weighted by their frequency in the bug report
+        BooleanQuery candidatesQuery = new BooleanQuery();
+        queryFreqs.forEach((term, freq) -> {
+            TermQuery termQuery = new TermQuery(new Term("text", term));
+            termQuery.setBoost(freq);
+            candidatesQuery.add(new BooleanClause(termQuery, BooleanClause.Occur.SHOULD));
+        });
+
+        ScoreDoc[] candidates =
+                candidateSearcher.search(candidatesQuery, maxSourceFileCandidates).scoreDocs;
+        collectCandidateFrequencies(queryFreqs, candidates, deadline);
+        counters.addSearchNanos(System.nanoTime() - searchStart);
+
+        return candidates;
+    }
+
+    /**
+     * Reads the frequencies of the query terms in the candidate documents, walking the postings
+     * of each term once in document order, until the deadline is reached.
+     */
+    private void collectCandidateFrequencies(Map<String, Integer> queryFreqs,
+                                             ScoreDoc[] candidates, Deadline deadline)
+            throws IOException {
+        int[] docs = Arrays.stream(candidates).mapToInt(sd -> sd.doc).sorted().toArray();
+        Bits liveDocs = MultiFields.getLiveDocs(sourceTextIndexReader);
+
+        for (String term : queryFreqs.keySet()) {
+            if (deadline.isExpired()) {
+                return;
+            }
+
+            PostingsEnum postings = MultiFields.getTermDocsEnum(sourceTextIndexReader, liveDocs,
+                    "text", new BytesRef(term), PostingsEnum.FREQS);
+            if (postings == null) {
+                continue;
+            }
+
+            for (int doc : docs) {
+                int current = postings.docID() < doc ? postings.advance(doc) : postings.docID();
+                if (current == DocIdSetIterator.NO_MORE_DOCS) {
+                    break;
+                }
+                if (current == doc) {
+                    sourceFileTFCounts.putTermFrequency(doc, term, postings.freq());
+                    counters.countPosting();
+                    counters.countPostingsDecoded(1);
+                }
+            }
+        }
+    }
+
     protected BooleanQuery createSourceFilesQuery(Map<String, Integer> queryFreqs,
-                                                TermFrequencyDictionary tfCounts) {
+                                                TermFrequencyDictionary tfCounts,
+                                                Deadline deadline) {
         BooleanQuery wrapperQuery = new BooleanQuery();
         queryFreqs.forEach((term, freq) -> {
             FrequencyCollectingQuery newClause =
-                    new FrequencyCollectingQuery("text", term, tfCounts);
+                    new FrequencyCollectingQuery("text", term, tfCounts, counters,
+                            sourcePostingsCache, deadline);
             wrapperQuery.add(new BooleanClause(newClause, BooleanClause.Occur.SHOULD));
         });
 
         return wrapperQuery;
     }
+
+    /**
+     * @return The documents having some of the query terms in the order the search of the whole
+     * query finds them: by decreasing amount of terms, then by increasing ID.
+     */
+    private static int[] searchOrder(int[] termCounts) {
+        return IntStream.range(0, termCounts.length)
+                .filter(doc -> termCounts[doc] > 0)
+                .mapToLong(doc -> (long) -termCounts[doc] << 32 | doc)
+                .sorted()
+                .mapToInt(key -> (int) key)
+                .toArray();
+    }
+
+    /**
+     * Frequencies of a query term in the documents that have it.
+     */
+    private static class TermMatches {
+        final int[] docs;
+        final int[] freqs;
+
+        /**
+         * Reads the frequencies of the term in the documents found by a search that collected
+         * them.
+         */
+        TermMatches(ScoreDoc[] found, String term, TermFrequencyDictionary tfCounts) {
+            IntIntHashMap frequencies = tfCounts.get(term);
+            int[] docs = new int[frequencies == null ? 0 : found.length];
+            int[] freqs = new int[docs.length];
+            int size = 0;
+            for (int i = 0; i < docs.length; i++) {
+                int freq = frequencies.get(found[i].doc, 0);
+                if (freq > 0) {
+                    docs[size] = found[i].doc;
+                    freqs[size++] = freq;
+                }
+            }
+
+            this.docs = Arrays.copyOf(docs, size);
+            this.freqs = Arrays.copyOf(freqs, size);
+        }
+    }
+
+    /**
+     * Query of a bug report that is still open while its text is edited. It keeps the matches of
+     * its terms and, for every document, the amount of query terms it has and the part of its
+     * score that only changes with those terms, so that ranking a new version only reads the
+     * postings of the terms the edit added and only recombines the tf-idf values of the source
+     * files having a term whose frequency the edit changed.
+     * <p>
+     * Every version gets the ranking of {@link BugLocatorRetriever#rank(BugReport, int, int[])}:
+     * documents are visited in the order of the search of the whole query and their scores are
+     * summed in the same order. The query terms are in alphabetical order, so the terms of the
+     * other source files keep their order and their combined tf-idf values are reused. A version
+     * following new resolutions in the bug history is ranked from scratch.
+     */
+    public class IncrementalQuery {
+        private final BugReport bugReport;
+        private Map<String, Integer> queryFreqs = Collections.emptyMap();
+
+        private final Map<String, TermMatches> sourceMatches = new HashMap<>();
+        private final int[] sourceTermCounts;
+        private final float[] combinedTfIdf;
+
+        private final Map<String, TermMatches> bugReportMatches = new HashMap<>();
+        private final int[] bugReportTermCounts;
+        private final int[] dotProducts;
+
+        /**
+         * Bug reports the query can be similar to in document order, {@code null} until searched.
+         */
+        private int[] pastBugReports;
+        private int historySize;
+
+        private IncrementalQuery(BugReport bugReport) {
+            this.bugReport = bugReport;
+            sourceTermCounts = new int[sourceTextIndexReader.maxDoc()];
+            combinedTfIdf = new float[sourceTermCounts.length];
+            bugReportTermCounts = new int[bugReportIndexReader.maxDoc()];
+            dotProducts = new int[bugReportTermCounts.length];
+        }
+
+        /**
+         * Ranks the source files for a new version of the bug report.
+         *
+         * @param version The edited bug report, with the same key and creation date.
+         * @return Same as {@link BugLocatorRetriever#rank(BugReport, int, int[])} for the version.
+         * @throws IOException when an index read fails.
+         */
+        public Ranking rescore(BugReport version, int maxResults, int[] trackedDocs)
+                throws IOException {
+            if (!version.getKey().equals(bugReport.getKey()) ||
+                    !Objects.equals(version.getCreationDate(), bugReport.getCreationDate())) {
+                throw new IllegalArgumentException(
+                        "Not a version of bug report " + bugReport.getKey());
+            }
+            if (!supportsIncrementalRescoring()) {
+                return rank(version, maxResults, trackedDocs);
+            }
+
+            counters.reset();
+            String queryString = getQueryString(version);
+            if (version.getCreationDate() == null || queryString == null) {
+                return null;
+            }
+
+            int currentHistorySize = bugHistory == null ? 0 : bugHistory.size();
+            if (pastBugReports == null || currentHistorySize != historySize) {
+                clear();
+                historySize = currentHistorySize;
+            }
+
+            Map<String, Integer> newQueryFreqs = extractQueryFreqs(queryString);
+            Map<String, Integer> addedFreqs = new HashMap<>();
+            Set<String> changedTerms = new HashSet<>();
+            newQueryFreqs.forEach((term, freq) -> {
+                Integer oldFreq = queryFreqs.get(term);
+                if (oldFreq == null) {
+                    addedFreqs.put(term, freq);
+                } else if (!oldFreq.equals(freq)) {
+                    changedTerms.add(term);
+                }
+            });
+            List<String> removedTerms = new ArrayList<>();
+            for (String term : queryFreqs.keySet()) {
+                if (!newQueryFreqs.containsKey(term)) {
+                    removedTerms.add(term);
+                }
+            }
+
+            FixedBitSet changedSourceFiles =
+                    updateSourceFiles(addedFreqs, removedTerms, changedTerms);
+            updateBugReports(version, newQueryFreqs, addedFreqs, removedTerms, changedTerms);
+            queryFreqs = newQueryFreqs;
+
+            ScoreDoc[] sourceFiles = scoreSourceFiles(changedSourceFiles);
+
+            long similarBugsStart = System.nanoTime();
+            Map<Integer, Float> simiScores = sumSimiScores(scoreBugReports());
+            counters.addSimilarBugsNanos(System.nanoTime() - similarBugsStart);
+
+            return combineScores(sourceFiles, simiScores, maxResults, trackedDocs);
+        }
+
+        private void clear() {
+            queryFreqs = Collections.emptyMap();
+            sourceMatches.clear();
+            bugReportMatches.clear();
+            Arrays.fill(sourceTermCounts, 0);
+            Arrays.fill(bugReportTermCounts, 0);
+            Arrays.fill(dotProducts, 0);
+            pastBugReports = null;
+        }
+
+        /**
+         * Searches the source files having the added terms and updates the amount of query terms
+         * of every source file.
+         *
+         * @return The source files having an added, removed or changed term.
+         */
+        private FixedBitSet updateSourceFiles(Map<String, Integer> addedFreqs,
+                                              List<String> removedTerms, Set<String> changedTerms)
+                throws IOException {
+            long searchStart = System.nanoTime();
+            FixedBitSet changedSourceFiles = new FixedBitSet(sourceTermCounts.length);
+            if (!addedFreqs.isEmpty()) {
+                ScoreDoc[] found = sourceTextSearcher.search(
+                        createSourceFilesQuery(addedFreqs, sourceFileTFCounts, Deadline.NONE),
+                        sourceTextIndexReader.numDocs()).scoreDocs;
+                for (String term : addedFreqs.keySet()) {
+                    TermMatches matches = new TermMatches(found, term, sourceFileTFCounts);
+                    sourceMatches.put(term, matches);
+                    for (int doc : matches.docs) {
+                        sourceTermCounts[doc]++;
+                        changedSourceFiles.set(doc);
+                    }
+                }
+            }
+
+            for (String term : removedTerms) {
+                for (int doc : sourceMatches.remove(term).docs) {
+                    sourceTermCounts[doc]--;
+                    changedSourceFiles.set(doc);
+                }
+            }
+            for (String term : changedTerms) {
+                for (int doc : sourceMatches.get(term).docs) {
+                    changedSourceFiles.set(doc);
+                }
+            }
+
+            counters.addSearchNanos(System.nanoTime() - searchStart);
+            return changedSourceFiles;
+        }
+
+        /**
+         * Searches the past bug reports having the added terms and updates the amount of query
+         * terms of every past bug report and the dot product of their frequencies.
+         */
+        private void updateBugReports(BugReport version, Map<String, Integer> newQueryFreqs,
+                                      Map<String, Integer> addedFreqs, List<String> removedTerms,
+                                      Set<String> changedTerms) throws IOException {
+            long similarBugsStart = System.nanoTime();
+            if (pastBugReports == null) {
+                pastBugReports = Arrays.stream(bugReportSearcher.search(
+                        createRelatedBugsQuery(Collections.emptyMap(), version,
+                                bugReportTFCounts, Deadline.NONE),
+                        bugReportIndexReader.numDocs()).scoreDocs)
+                        .mapToInt(sd -> sd.doc)
+                        .sorted()
+                        .toArray();
+            }
+
+            if (!addedFreqs.isEmpty()) {
+                BooleanQuery termsQuery = new BooleanQuery();
+                addedFreqs.forEach((term, __) -> termsQuery.add(new BooleanClause(
+                        new FrequencyCollectingQuery("fullText", term, bugReportTFCounts,
+                                counters, bugReportPostingsCache, Deadline.NONE),
+                        BooleanClause.Occur.SHOULD)));
+                BooleanQuery relatedBugsQuery = createRelatedBugsQuery(Collections.emptyMap(),
+                        version, bugReportTFCounts, Deadline.NONE);
+                relatedBugsQuery.add(new BooleanClause(termsQuery, BooleanClause.Occur.MUST));
+
+                ScoreDoc[] found = bugReportSearcher.search(relatedBugsQuery,
+                        bugReportIndexReader.numDocs()).scoreDocs;
+                addedFreqs.forEach((term, freq) -> {
+                    TermMatches matches = new TermMatches(found, term, bugReportTFCounts);
+                    bugReportMatches.put(term, matches);
+                    for (int i = 0; i < matches.docs.length; i++) {
+                        bugReportTermCounts[matches.docs[i]]++;
+                        dotProducts[matches.docs[i]] += freq * matches.freqs[i];
+                    }
+                });
+            }
+
+            for (String term : removedTerms) {
+                TermMatches matches = bugReportMatches.remove(term);
+                int freq = queryFreqs.get(term);
+                for (int i = 0; i < matches.docs.length; i++) {
+                    bugReportTermCounts[matches.docs[i]]--;
+                    dotProducts[matches.docs[i]] -= freq * matches.freqs[i];
+                }
+            }
+            for (String term : changedTerms) {
+                TermMatches matches = bugReportMatches.get(term);
+                int delta = newQueryFreqs.get(term) - queryFreqs.get(term);
+                for (int i = 0; i < matches.docs.length; i++) {
+                    dotProducts[matches.docs[i]] += delta * matches.freqs[i];
+                }
+            }
+
+            counters.addSimilarBugsNanos(System.nanoTime() - similarBugsStart);
+        }
+
+        /**
+         * Sets the rVSM score of every source file having query terms, recombining the tf-idf
+         * values of the changed ones.
+         */
+        private ScoreDoc[] scoreSourceFiles(FixedBitSet changedSourceFiles) throws IOException {
+            long scoringStart = System.nanoTime();
+            maxRVSMScore = Float.MIN_VALUE;
+            minRVSMScore = Float.MAX_VALUE;
+
+            // The frequencies collected by the searches may have been released since
+            sourceMatches.forEach((term, matches) -> {
+                IntIntHashMap frequencies = sourceFileTFCounts.get(term);
+                if (frequencies == null || frequencies.size() != matches.docs.length) {
+                    for (int i = 0; i < matches.docs.length; i++) {
+                        sourceFileTFCounts.putTermFrequency(matches.docs[i], term,
+                                matches.freqs[i]);
+                    }
+                }
+            });
+            QueryVector queryVector = bugLocatorSimilarity.createQueryVector(queryFreqs);
+
+            int[] docs = searchOrder(sourceTermCounts);
+            ScoreDoc[] sourceFiles = new ScoreDoc[docs.length];
+            int recombined = 0;
+            for (int i = 0; i < docs.length; i++) {
+                int doc = docs[i];
+                if (changedSourceFiles.get(doc)) {
+                    combinedTfIdf[doc] = bugLocatorSimilarity.combineTfIdf(queryVector, doc);
+                    recombined++;
+                }
+
+                float tfIdfScore =
+                        bugLocatorSimilarity.calculateTfIdf(queryVector, doc, combinedTfIdf[doc]);
+                sourceFiles[i] =
+                        new ScoreDoc(doc, bugLocatorSimilarity.normalizeLength(tfIdfScore, doc));
+                updateExtremeRVSMScores(sourceFiles[i].score);
+            }
+
+            counters.countDocumentsScored(recombined);
+            counters.addScoringNanos(System.nanoTime() - scoringStart);
+            return sourceFiles;
+        }
+
+        /**
+         * @return The past bug reports with their cosine similarity as score, in the order of
+         * the search of the whole query.
+         */
+        private ScoreDoc[] scoreBugReports() throws IOException {
+            maxSimiScore = Float.MIN_VALUE;
+            minSimiScore = Float.MAX_VALUE;
+            QueryVector queryVector = cosineSimilarity.createQueryVector(queryFreqs);
+
+            List<ScoreDoc> relatedBugs = new ArrayList<>();
+            for (int doc : searchOrder(bugReportTermCounts)) {
+                relatedBugs.add(new ScoreDoc(doc,
+                        cosineSimilarity.calculate(dotProducts[doc], queryVector, doc)));
+            }
+
+            // The search finds the others last. Their similarity is zero unless the bug report or
+            // the query is empty, in which case it isn't a number
+            for (int doc : pastBugReports) {
+                if (bugReportTermCounts[doc] == 0) {
+                    float score = cosineSimilarity.calculate(0, queryVector, doc);
+                    if (score != 0) {
+                        relatedBugs.add(new ScoreDoc(doc, score));
+                    }
+                }
+            }
+
+            return relatedBugs.toArray(new ScoreDoc[relatedBugs.size()]);
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package buglocator.retrieval;
+
+import java.util.*;
+
+/**
+ * Reduces the terms of long queries, keeping either the {@code N} terms with the highest query
+ * tf * idf weight or every term whose idf is above a threshold. Stack trace heavy bug reports
+ * otherwise produce queries with hundreds of clauses, most of them with very low idf.
+ */
+public class QueryReduction {
+    private final int maxTerms;
+    private final float minIdf;
+
+    private QueryReduction(int maxTerms, float minIdf) {
+        this.maxTerms = maxTerms;
+        this.minIdf = minIdf;
+    }
+
+    /**
+     * @return A reduction that keeps every term.
+     */
+    public static QueryReduction none() {
+        return new QueryReduction(Integer.MAX_VALUE, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * @return A reduction that keeps the {@code maxTerms} terms with the highest tf * idf.
+     */
+    public static QueryReduction topTerms(int maxTerms) {
+        if (maxTerms <= 0) {
+            throw new IllegalArgumentException("At least one term has to be kept");
+        }
+        return new QueryReduction(maxTerms, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * @return A reduction that keeps the terms whose idf is at least {@code minIdf}.
+     */
+    public static QueryReduction idfThreshold(float minIdf) {
+        return new QueryReduction(Integer.MAX_VALUE, minIdf);
+    }
+
+    public boolean isNone() {
+        return maxTerms == Integer.MAX_VALUE && minIdf == Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Removes the discarded terms from the query in place, so that the remaining ones keep their
+     * iteration order.
+     *
+     * @param queryFreqs Frequency of each query term, all of them must appear in the corpus.
+     * @param docFreqs   Document frequency of each query term in the corpus.
+     * @param numDocs    Number of documents of the corpus.
+     */
+    public void reduce(Map<String, Integer> queryFreqs, Map<String, Integer> docFreqs,
+                       int numDocs) {
+        if (isNone()) {
+            return;
+        }
+
+        Map<String, Double> idfs = new HashMap<>();
+        queryFreqs.keySet().forEach(term ->
+                idfs.put(term, Math.log((double) numDocs / docFreqs.get(term))));
+
+        queryFreqs.keySet().removeIf(term -> idfs.get(term) < minIdf);
+
+        if (queryFreqs.size() > maxTerms) {
+            // Ties are broken alphabetically so that the reduction is deterministic
+            Set<String> keptTerms = new HashSet<>();
+            queryFreqs.keySet().stream()
+                    .sorted(Comparator.<String>comparingDouble(
+                            term -> -queryFreqs.get(term) * idfs.get(term))
+                            .thenComparing(Comparator.naturalOrder()))
+                    .limit(maxTerms)
+                    .forEach(keptTerms::add);
+            queryFreqs.keySet().retainAll(keptTerms);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (isNone()) {
+            return "none";
+        } else if (maxTerms != Integer.MAX_VALUE) {
+            return "top " + maxTerms;
+        } else {
+            return "idf >= " + minIdf;
+        }
+    }
+}
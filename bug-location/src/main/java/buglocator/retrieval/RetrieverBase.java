@@ -1,6 +1,10 @@
 package buglocator.retrieval;
 
 import buglocator.indexing.data.BugReport;
+import buglocator.retrieval.data.Deadline;
+import buglocator.retrieval.data.QueryCounters;
+import buglocator.retrieval.data.Ranking;
+import buglocator.retrieval.data.RetrieverSnapshot;
 import buglocator.retrieval.data.TermFrequencyDictionary;
 import buglocator.retrieval.internals.FrequencyCollectingQuery;
 import buglocator.retrieval.similarity.BugLocatorSimilarity;
@@ -18,10 +22,18 @@ import java.util.*;
  */
 public abstract class RetrieverBase {
 
+    protected static final int[] NO_DOCS = new int[0];
+
     protected final UseField useField;
     protected IndexReader sourceTextIndexReader;
     protected IndexSearcher sourceTextSearcher;
 
+    /**
+     * Work done to answer the last query, reset when a query starts.
+     */
+    protected final QueryCounters counters = new QueryCounters();
+    private QueryReduction queryReduction = QueryReduction.none();
+
     public enum UseField {
         TITLE,
         DESCRIPTION,
@@ -49,6 +61,96 @@ public abstract class RetrieverBase {
      */
     public abstract ScoreDoc[] locate(BugReport bugReport, int maxResults) throws IOException;
 
+    /**
+     * Same as {@link #locate(BugReport, int)}, also finding the rank of some documents among all
+     * the ones scored for the bug report. By default every scored document is retrieved to find
+     * the ranks, implementations may avoid sorting all of them.
+     *
+     * @param trackedDocs Documents whose rank is required, such as those of the gold set.
+     * @return The ranking or {@code null} if the bug report can't be used as query.
+     * @throws IOException when an index read fails.
+     */
+    public Ranking rank(BugReport bugReport, int maxResults, int[] trackedDocs)
+            throws IOException {
+        counters.reset();
+        ScoreDoc[] results = locate(bugReport, Integer.MAX_VALUE);
+        return results == null ? null : Ranking.ofSorted(results, maxResults, trackedDocs);
+    }
+
+    /**
+     * Same as {@link #rank(BugReport, int, int[])}, returning a partial ranking if the query
+     * reaches the deadline. By default the query is completely answered whatever the deadline.
+     *
+     * @see Ranking#isPartial()
+     */
+    public Ranking rank(BugReport bugReport, int maxResults, int[] trackedDocs,
+                        Deadline deadline) throws IOException {
+        return rank(bugReport, maxResults, trackedDocs);
+    }
+
+    /**
+     * Sets the reduction applied to the terms of every query, both for the source file and the
+     * related bug report searches. No reduction is applied by default.
+     */
+    public void setQueryReduction(QueryReduction queryReduction) {
+        this.queryReduction = queryReduction;
+    }
+
+    public QueryReduction getQueryReduction() {
+        return queryReduction;
+    }
+
+    /**
+     * @return The work done to answer the last query, overwritten by the next one.
+     */
+    public QueryCounters getQueryCounters() {
+        return counters;
+    }
+
+    /**
+     * @return Approximate heap size in bytes of the query-independent state this retriever has
+     * derived from its indexes so far (norms, cached frequencies, path lookups...).
+     */
+    public long getDerivedStateBytes() {
+        return 0;
+    }
+
+    /**
+     * Drops all derived state. The retriever stays usable and rebuilds that state lazily while
+     * answering the next queries.
+     */
+    public void releaseDerivedState() {
+    }
+
+    /**
+     * Derives all the query-independent state from the indexes at once, instead of while
+     * answering the first queries.
+     *
+     * @throws IOException when an index read fails.
+     */
+    public void warmUp() throws IOException {
+    }
+
+    /**
+     * Saves the query-independent state derived so far to a {@link RetrieverSnapshot} in the
+     * source code index, replacing the previous one.
+     *
+     * @throws IOException when the snapshot can't be written.
+     */
+    public void saveSnapshot() throws IOException {
+    }
+
+    /**
+     * Replaces the derived state with the one saved by {@link #saveSnapshot()} for the current
+     * version of the indexes.
+     *
+     * @return Whether such a snapshot was found.
+     * @throws IOException when the snapshot can't be read.
+     */
+    public boolean loadSnapshot() throws IOException {
+        return false;
+    }
+
     protected String getQueryString(BugReport bugReport) {
         String queryString;
 
@@ -79,22 +181,39 @@ public abstract class RetrieverBase {
         return queryString;
     }
 
+    /**
+     * @return The frequency of every query word that appears in the corpus, in alphabetical
+     * order, so that the terms of a query keep their order in any query that has them.
+     */
     protected Map<String, Integer> extractQueryFreqs(String queryString) {
-        Map<String, Integer> queryFreqs = new HashMap<>();
+        Map<String, Integer> queryFreqs = new TreeMap<>();
+        Map<String, Integer> docFreqs = new HashMap<>();
+        Set<String> missingWords = new HashSet<>();
 
         Arrays.stream(queryString.split(" +")).forEach(w -> {
             try {
                 // Only use the query words that appear in the corpus
                 if (queryFreqs.containsKey(w)) {
                     queryFreqs.put(w, queryFreqs.get(w) + 1);
-                } else if (sourceTextIndexReader.docFreq(new Term("text", w)) > 0) {
-                    queryFreqs.put(w, 1);
+                } else if (!missingWords.contains(w)) {
+                    int docFreq = sourceTextIndexReader.docFreq(new Term("text", w));
+                    if (docFreq > 0) {
+                        queryFreqs.put(w, 1);
+                        docFreqs.put(w, docFreq);
+                    } else {
+                        missingWords.add(w);
+                    }
                 }
             } catch (IOException e) {
                 e.printStackTrace();
             }
         });
 
+        int foundWords = queryFreqs.size();
+        queryReduction.reduce(queryFreqs, docFreqs, sourceTextIndexReader.numDocs());
+        counters.countTerms(queryFreqs.size(),
+                missingWords.size() + foundWords - queryFreqs.size());
+
         return queryFreqs;
     }
 }
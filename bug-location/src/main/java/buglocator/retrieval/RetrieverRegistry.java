@@ -0,0 +1,215 @@
+package buglocator.retrieval;
+
+import buglocator.indexing.data.BugReport;
+import org.apache.lucene.search.ScoreDoc;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Hosts the retrievers of many systems in a single JVM under a global memory budget. The derived
+ * state of every system (see {@link RetrieverBase#getDerivedStateBytes()}) is accounted after each
+ * query and, whenever the total goes over the budget, the least recently used systems are asked
+ * to release it. Released state is rebuilt lazily by the next queries on that system.
+ * <p>
+ * Queries for different systems may run concurrently, queries for the same system are
+ * serialized since retrievers are not thread safe.
+ */
+public class RetrieverRegistry {
+    private final long memoryBudget;
+
+    /**
+     * Hosted systems in access order, the first entry is the least recently used.
+     */
+    private final LinkedHashMap<String, HostedSystem> systems = new LinkedHashMap<>();
+    private long usedBytes = 0;
+
+    /**
+     * Creates the retriever of a system the first time it is queried.
+     */
+    @FunctionalInterface
+    public interface RetrieverFactory {
+        RetrieverBase create() throws IOException;
+    }
+
+    /**
+     * @param memoryBudget Maximum amount of bytes of derived state kept for all systems together.
+     */
+    public RetrieverRegistry(long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive");
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    public synchronized void register(String systemName, RetrieverFactory factory) {
+        if (systems.containsKey(systemName)) {
+            throw new IllegalArgumentException("System " + systemName + " is already registered");
+        }
+        systems.put(systemName, new HostedSystem(factory));
+    }
+
+    /**
+     * Locates a bug using the retriever of the given system.
+     *
+     * @see RetrieverBase#locate(BugReport, int)
+     */
+    public ScoreDoc[] locate(String systemName, BugReport bugReport, int maxResults)
+            throws IOException {
+        HostedSystem system = acquire(systemName);
+        // Stays negative if the query fails, leaving the accounted size untouched
+        long newBytes = -1;
+        try {
+            synchronized (system) {
+                if (system.retriever == null) {
+                    system.retriever = system.factory.create();
+                }
+                ScoreDoc[] results = system.retriever.locate(bugReport, maxResults);
+                newBytes = system.retriever.getDerivedStateBytes();
+
+                return results;
+            }
+        } finally {
+            release(system, newBytes);
+        }
+    }
+
+    public synchronized Set<String> getSystemNames() {
+        return new LinkedHashSet<>(systems.keySet());
+    }
+
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return Bytes of derived state currently accounted for all systems.
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return A snapshot of the usage counters of a system.
+     */
+    public synchronized SystemStats getStats(String systemName) {
+        HostedSystem system = systems.get(systemName);
+        if (system == null) {
+            throw new IllegalArgumentException("Unknown system " + systemName);
+        }
+
+        return new SystemStats(systemName, system.hits, system.evictions, system.reloads,
+                system.bytes);
+    }
+
+    private synchronized HostedSystem acquire(String systemName) {
+        HostedSystem system = systems.remove(systemName);
+        if (system == null) {
+            throw new IllegalArgumentException("Unknown system " + systemName);
+        }
+        // Reinserting moves the system to the most recently used position
+        systems.put(systemName, system);
+
+        if (system.loaded) {
+            system.hits++;
+        } else if (system.retriever != null) {
+            // The retriever was created before, but its state was evicted
+            system.reloads++;
+        }
+        system.loaded = true;
+        system.activeQueries++;
+
+        return system;
+    }
+
+    private synchronized void release(HostedSystem system, long newBytes) {
+        system.activeQueries--;
+        if (newBytes >= 0) {
+            usedBytes += newBytes - system.bytes;
+            system.bytes = newBytes;
+        }
+
+        evictIfNeeded();
+    }
+
+    private void evictIfNeeded() {
+        Iterator<HostedSystem> lruIterator = systems.values().iterator();
+        while (usedBytes > memoryBudget && lruIterator.hasNext()) {
+            HostedSystem candidate = lruIterator.next();
+            // Systems answering a query can't be touched, the most recently used one is kept
+            // even if it doesn't fit in the budget by itself
+            if (candidate.activeQueries > 0 || candidate.bytes == 0 || !lruIterator.hasNext()) {
+                continue;
+            }
+
+            synchronized (candidate) {
+                candidate.retriever.releaseDerivedState();
+            }
+            usedBytes -= candidate.bytes;
+            candidate.bytes = 0;
+            candidate.loaded = false;
+            candidate.evictions++;
+        }
+    }
+
+    private static class HostedSystem {
+        private final RetrieverFactory factory;
+        private RetrieverBase retriever;
+        private boolean loaded = false;
+        private int activeQueries = 0;
+        private long bytes = 0;
+        private long hits = 0;
+        private long evictions = 0;
+        private long reloads = 0;
+
+        private HostedSystem(RetrieverFactory factory) {
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * Usage counters of a hosted system. A hit is a query answered while the system's derived
+     * state was loaded, a reload is the first query after the state was evicted.
+     */
+    public static class SystemStats {
+        private final String system;
+        private final long hits;
+        private final long evictions;
+        private final long reloads;
+        private final long bytes;
+
+        public SystemStats(String system, long hits, long evictions, long reloads, long bytes) {
+            this.system = system;
+            this.hits = hits;
+            this.evictions = evictions;
+            this.reloads = reloads;
+            this.bytes = bytes;
+        }
+
+        public String getSystem() {
+            return system;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getReloads() {
+            return reloads;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d hits, %d evictions, %d reloads, %d bytes",
+                    system, hits, evictions, reloads, bytes);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package buglocator.retrieval.data;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.BitDocIdSet;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The bug reports of an index that were already resolved at the current point of a chronological
+ * replay, which grows as their resolutions are replayed. Filtering the past bug reports with it
+ * spares every query the range query on their resolution date.
+ */
+public class BugHistory {
+    private final List<LeafReaderContext> leaves;
+    private final FixedBitSet[] resolved;
+    private int size = 0;
+
+    public BugHistory(IndexReader bugReportReader) {
+        leaves = bugReportReader.leaves();
+        resolved = new FixedBitSet[leaves.size()];
+        for (LeafReaderContext leaf : leaves) {
+            resolved[leaf.ord] = new FixedBitSet(leaf.reader().maxDoc());
+        }
+    }
+
+    /**
+     * Adds the documents of the bug report with the given key to the history.
+     *
+     * @return Whether the bug report is in the index.
+     */
+    public boolean add(String key) throws IOException {
+        boolean found = false;
+        for (LeafReaderContext leaf : leaves) {
+            PostingsEnum postings = leaf.reader().postings(new Term("key", key), PostingsEnum.NONE);
+            if (postings == null) {
+                continue;
+            }
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+                 doc = postings.nextDoc()) {
+                if (!resolved[leaf.ord].getAndSet(doc)) {
+                    size++;
+                }
+                found = true;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * @return The amount of documents in the history.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return A filter matching the documents in the history while the query using it runs.
+     */
+    public Filter createFilter() {
+        return new Filter() {
+            @Override
+            public DocIdSet getDocIdSet(LeafReaderContext context, Bits acceptDocs) {
+                return BitsFilteredDocIdSet.wrap(new BitDocIdSet(resolved[context.ord]),
+                        acceptDocs);
+            }
+
+            @Override
+            public String toString(String field) {
+                return "BugHistory(" + size + ")";
+            }
+
+            // The history changes between queries, so no filter equals another one when cached
+            @Override
+            public boolean equals(Object o) {
+                return this == o;
+            }
+
+            @Override
+            public int hashCode() {
+                return System.identityHashCode(this);
+            }
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package buglocator.retrieval.data;
+
+/**
+ * Point in time by which a query has to be answered. A retriever that reaches it stops scoring
+ * at its next check and returns the best ranking it has so far, marked as partial.
+ * <p>
+ * Each query has its own deadline, which isn't meant to be checked by several threads.
+ */
+public final class Deadline {
+    /**
+     * Deadline that never expires.
+     */
+    public static final Deadline NONE = new Deadline(0);
+
+    private final long expiryNanoTime;
+    private boolean reached = false;
+
+    private Deadline(long expiryNanoTime) {
+        this.expiryNanoTime = expiryNanoTime;
+    }
+
+    /**
+     * @return A deadline that expires once the given time, in nanoseconds, has passed from now.
+     */
+    public static Deadline after(long nanos) {
+        if (nanos <= 0) {
+            throw new IllegalArgumentException("The time until the deadline must be positive");
+        }
+        return new Deadline(System.nanoTime() + nanos);
+    }
+
+    /**
+     * Checks the deadline, callers skip the work left once it is expired.
+     */
+    public boolean isExpired() {
+        if (!reached && this != NONE && System.nanoTime() - expiryNanoTime >= 0) {
+            reached = true;
+        }
+        return reached;
+    }
+
+    /**
+     * @return Whether a previous check found the deadline expired, so that some work was
+     * skipped.
+     */
+    public boolean wasReached() {
+        return reached;
+    }
+}
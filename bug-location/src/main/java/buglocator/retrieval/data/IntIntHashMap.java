@@ -0,0 +1,96 @@
+package buglocator.retrieval.data;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from non-negative ints (document IDs) to ints (term frequencies). Used
+ * instead of a {@code HashMap<Integer, Integer>} so that lookups in the scoring loops don't box.
+ */
+public class IntIntHashMap {
+    private static final int EMPTY = -1;
+    private static final float MAX_LOAD = 0.6F;
+
+    private int[] keys;
+    private int[] values;
+    private int size = 0;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public void put(int key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Keys must be non-negative");
+        }
+
+        int slot = findSlot(keys, key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+
+        if (size > keys.length * MAX_LOAD) {
+            grow();
+        }
+    }
+
+    /**
+     * @return The value mapped to the key, or {@code defaultValue} if there is none.
+     */
+    public int get(int key, int defaultValue) {
+        int slot = findSlot(keys, key);
+        return keys[slot] == EMPTY ? defaultValue : values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return keys[findSlot(keys, key)] != EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Heap taken by this map, see {@link MemoryEstimates}.
+     */
+    public long estimateBytes() {
+        // Object header and fields plus both arrays
+        return 32 + MemoryEstimates.intArrayBytes(keys.length) +
+                MemoryEstimates.intArrayBytes(values.length);
+    }
+
+    private static int findSlot(int[] keys, int key) {
+        int mask = keys.length - 1;
+        // Fibonacci hashing spreads consecutive document IDs across the table
+        int slot = (key * 0x9E3779B9) >>> 1 & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = findSlot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package buglocator.retrieval.data;
+
+import java.util.Map;
+
+/**
+ * Rough heap size estimates for the caches kept by retrievers. The figures assume a 64 bit JVM
+ * with compressed oops and are only meant to compare systems against a memory budget, not to be
+ * exact.
+ */
+public final class MemoryEstimates {
+    /**
+     * Cost of a {@link java.util.HashMap} entry plus its share of the bucket table.
+     */
+    public static final long HASH_ENTRY_BYTES = 40;
+
+    /**
+     * Cost of a boxed {@link Integer} or {@link Float} outside of the JVM's small value cache.
+     */
+    public static final long BOXED_NUMBER_BYTES = 16;
+
+    /**
+     * Fixed cost of an empty {@link java.util.HashMap} instance.
+     */
+    public static final long MAP_BYTES = 48;
+
+    private MemoryEstimates() {
+    }
+
+    public static long stringBytes(String string) {
+        // String header plus the backing array, two bytes per char
+        return 40 + 2L * string.length();
+    }
+
+    public static long intArrayBytes(int length) {
+        return 16 + 4L * length;
+    }
+
+    public static long floatArrayBytes(int length) {
+        return 16 + 4L * length;
+    }
+
+    /**
+     * @return Estimated size of a map from strings to boxed numbers, including the keys.
+     */
+    public static long stringMapBytes(Map<String, ? extends Number> map) {
+        long bytes = MAP_BYTES + map.size() * (HASH_ENTRY_BYTES + BOXED_NUMBER_BYTES);
+        for (String key : map.keySet()) {
+            bytes += stringBytes(key);
+        }
+
+        return bytes;
+    }
+}
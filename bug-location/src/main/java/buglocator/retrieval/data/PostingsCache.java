@@ -0,0 +1,219 @@
+package buglocator.retrieval.data;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.ArrayUtil;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Keeps the decoded postings of the most recently queried terms of an index, so that the terms
+ * found in most queries are neither looked up in the terms dictionary nor decoded again.
+ * <p>
+ * Postings are cached per segment core, including deleted documents, and are evicted when the
+ * core is closed, so a reopened reader only reuses the postings of the segments it shares with
+ * the previous one. The least recently used terms are evicted once the estimated size of the
+ * cache exceeds its budget. The cache can be shared by several searches in parallel.
+ */
+public class PostingsCache {
+    private final long maxBytes;
+    private final LinkedHashMap<Key, DecodedPostings> entries =
+            new LinkedHashMap<>(16, 0.75F, true);
+    private final Set<Object> knownCores = new HashSet<>();
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxBytes Budget of the cached postings, see {@link MemoryEstimates}.
+     */
+    public PostingsCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The postings cache budget must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The cached postings of the term in the segment or {@code null} if they have to be
+     * decoded.
+     */
+    public synchronized DecodedPostings get(LeafReader reader, Term term) {
+        DecodedPostings postings = entries.get(new Key(reader.getCoreCacheKey(), term));
+        if (postings == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+
+        return postings;
+    }
+
+    /**
+     * Reads all the postings of the term in the segment, deleted documents included, and caches
+     * them.
+     *
+     * @return The decoded postings, empty if the term isn't in the segment.
+     */
+    public DecodedPostings decode(LeafReader reader, Term term) throws IOException {
+        // Unlike LeafReader#postings, which skips the documents deleted from that reader, so
+        // that the postings suit every reader of the segment core
+        Terms terms = reader.terms(term.field());
+        TermsEnum termsEnum = terms == null ? null : terms.iterator();
+        PostingsEnum postingsEnum = termsEnum != null && termsEnum.seekExact(term.bytes()) ?
+                termsEnum.postings(null, null, PostingsEnum.FREQS) : null;
+        int[] docs = new int[postingsEnum == null ? 0 : (int) postingsEnum.cost()];
+        int[] freqs = new int[docs.length];
+        int size = 0;
+        if (postingsEnum != null) {
+            for (int doc = postingsEnum.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS;
+                 doc = postingsEnum.nextDoc()) {
+                if (size == docs.length) {
+                    docs = ArrayUtil.grow(docs, size + 1);
+                    freqs = ArrayUtil.grow(freqs, size + 1);
+                }
+                docs[size] = doc;
+                freqs[size] = postingsEnum.freq();
+                size++;
+            }
+        }
+
+        DecodedPostings postings = new DecodedPostings(Arrays.copyOf(docs, size),
+                Arrays.copyOf(freqs, size));
+        put(reader, new Key(reader.getCoreCacheKey(), term), postings);
+        return postings;
+    }
+
+    private synchronized void put(LeafReader reader, Key key, DecodedPostings postings) {
+        long entryBytes = estimateBytes(key, postings);
+        if (entryBytes > maxBytes || entries.containsKey(key)) {
+            return;
+        }
+
+        if (knownCores.add(key.core)) {
+            reader.addCoreClosedListener(this::evictCore);
+        }
+        entries.put(key, postings);
+        bytes += entryBytes;
+
+        Iterator<Map.Entry<Key, DecodedPostings>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            Map.Entry<Key, DecodedPostings> e = eldest.next();
+            bytes -= estimateBytes(e.getKey(), e.getValue());
+            eldest.remove();
+        }
+    }
+
+    private synchronized void evictCore(Object core) {
+        knownCores.remove(core);
+        Iterator<Map.Entry<Key, DecodedPostings>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, DecodedPostings> e = it.next();
+            if (e.getKey().core == core) {
+                bytes -= estimateBytes(e.getKey(), e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return Estimated heap size of the cached postings, see {@link MemoryEstimates}.
+     */
+    public synchronized long estimateBytes() {
+        return MemoryEstimates.MAP_BYTES + bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The fraction of lookups since the cache was created that found the postings
+     * cached, {@code NaN} if there were none.
+     */
+    public synchronized float getHitRate() {
+        return (float) hits / (hits + misses);
+    }
+
+    private static long estimateBytes(Key key, DecodedPostings postings) {
+        // Entry, key and term objects plus the term bytes and both arrays
+        return MemoryEstimates.HASH_ENTRY_BYTES + 72 + key.term.bytes().length +
+                2 * MemoryEstimates.intArrayBytes(postings.size());
+    }
+
+    /**
+     * The documents of a segment containing a term, in increasing order, with the frequency of
+     * the term in each of them.
+     */
+    public static final class DecodedPostings {
+        private final int[] docs;
+        private final int[] freqs;
+        private final long totalTermFreq;
+
+        DecodedPostings(int[] docs, int[] freqs) {
+            this.docs = docs;
+            this.freqs = freqs;
+            totalTermFreq = Arrays.stream(freqs).asLongStream().sum();
+        }
+
+        public int size() {
+            return docs.length;
+        }
+
+        public int getDoc(int index) {
+            return docs[index];
+        }
+
+        public int getFreq(int index) {
+            return freqs[index];
+        }
+
+        /**
+         * @return The index of the first document from {@code fromIndex} on that is at least
+         * {@code target}, or {@link #size()} if there is none.
+         */
+        public int advance(int fromIndex, int target) {
+            if (fromIndex >= docs.length) {
+                return docs.length;
+            }
+            int index = Arrays.binarySearch(docs, fromIndex, docs.length, target);
+            return index < 0 ? -index - 1 : index;
+        }
+
+        public long getTotalTermFreq() {
+            return totalTermFreq;
+        }
+    }
+
+    private static final class Key {
+        private final Object core;
+        private final Term term;
+
+        Key(Object core, Term term) {
+            this.core = core;
+            this.term = term;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return core == other.core && term.equals(other.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(core) + term.hashCode();
+        }
+    }
+}
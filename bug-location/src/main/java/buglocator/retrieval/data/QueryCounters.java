@@ -0,0 +1,216 @@
+package buglocator.retrieval.data;
+
+/**
+ * Work done by a retriever to answer queries, used to explain why some queries take much longer
+ * than others. After {@link #reset()} the counters are those of a single query, while counters
+ * created empty accumulate several queries with {@link #add(QueryCounters)}.
+ * <p>
+ * Counting is not synchronized, each retriever has its own counters.
+ */
+public class QueryCounters {
+    public static final String CSV_HEADER = "Terms Kept;Terms Dropped;Postings Visited;" +
+            "Postings Decoded;Postings Cache Hit Rate;Documents Scored;Term Vectors Decoded;" +
+            "Similar Bugs Matched;Fixed File Lookups;Search ms;Scoring ms;Similar Bugs ms";
+
+    private int queries;
+    private long termsKept;
+    private long termsDropped;
+    private long postingsVisited;
+    private long postingsDecoded;
+    private long postingsCacheHits;
+    private long postingsCacheMisses;
+    private long documentsScored;
+    private long termVectorsDecoded;
+    private long similarBugsMatched;
+    private long fixedFileLookups;
+    private long searchNanos;
+    private long scoringNanos;
+    private long similarBugsNanos;
+
+    /**
+     * Starts counting the work of a new query.
+     */
+    public void reset() {
+        queries = 1;
+        termsKept = 0;
+        termsDropped = 0;
+        postingsVisited = 0;
+        postingsDecoded = 0;
+        postingsCacheHits = 0;
+        postingsCacheMisses = 0;
+        documentsScored = 0;
+        termVectorsDecoded = 0;
+        similarBugsMatched = 0;
+        fixedFileLookups = 0;
+        searchNanos = 0;
+        scoringNanos = 0;
+        similarBugsNanos = 0;
+    }
+
+    /**
+     * Accumulates the work of other queries into these counters.
+     */
+    public void add(QueryCounters other) {
+        queries += other.queries;
+        termsKept += other.termsKept;
+        termsDropped += other.termsDropped;
+        postingsVisited += other.postingsVisited;
+        postingsDecoded += other.postingsDecoded;
+        postingsCacheHits += other.postingsCacheHits;
+        postingsCacheMisses += other.postingsCacheMisses;
+        documentsScored += other.documentsScored;
+        termVectorsDecoded += other.termVectorsDecoded;
+        similarBugsMatched += other.similarBugsMatched;
+        fixedFileLookups += other.fixedFileLookups;
+        searchNanos += other.searchNanos;
+        scoringNanos += other.scoringNanos;
+        similarBugsNanos += other.similarBugsNanos;
+    }
+
+    /**
+     * @param kept    Distinct query words found in the corpus and kept by the query reduction.
+     * @param dropped Distinct query words that aren't in the corpus or were removed by the
+     *                query reduction.
+     */
+    public void countTerms(int kept, int dropped) {
+        termsKept += kept;
+        termsDropped += dropped;
+    }
+
+    /**
+     * Counts a posting whose frequency was read, either for a source file or a bug report.
+     */
+    public void countPosting() {
+        postingsVisited++;
+    }
+
+    /**
+     * Counts postings read from the index, either while searching or to fill a
+     * {@link PostingsCache}.
+     */
+    public void countPostingsDecoded(int postings) {
+        postingsDecoded += postings;
+    }
+
+    /**
+     * Counts a lookup of the postings of a query term in a segment in a {@link PostingsCache}.
+     */
+    public void countPostingsCacheLookup(boolean hit) {
+        if (hit) {
+            postingsCacheHits++;
+        } else {
+            postingsCacheMisses++;
+        }
+    }
+
+    public void countDocumentsScored(int documents) {
+        documentsScored += documents;
+    }
+
+    /**
+     * Counts a term vector read from the index to compute a document norm.
+     */
+    public void countTermVector() {
+        termVectorsDecoded++;
+    }
+
+    /**
+     * Counts a past bug report with a positive similarity, whose fixed files get a SimiScore.
+     */
+    public void countSimilarBug() {
+        similarBugsMatched++;
+    }
+
+    /**
+     * Counts a fixed file of a similar bug report resolved to its document ID.
+     */
+    public void countFixedFileLookup() {
+        fixedFileLookups++;
+    }
+
+    /**
+     * @param nanos Time spent searching the source files and collecting their frequencies.
+     */
+    public void addSearchNanos(long nanos) {
+        searchNanos += nanos;
+    }
+
+    /**
+     * @param nanos Time spent computing the similarity of the source files.
+     */
+    public void addScoringNanos(long nanos) {
+        scoringNanos += nanos;
+    }
+
+    /**
+     * @param nanos Time spent searching and scoring the similar bug reports.
+     */
+    public void addSimilarBugsNanos(long nanos) {
+        similarBugsNanos += nanos;
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public long getTermsKept() {
+        return termsKept;
+    }
+
+    public long getTermsDropped() {
+        return termsDropped;
+    }
+
+    public long getPostingsVisited() {
+        return postingsVisited;
+    }
+
+    public long getPostingsDecoded() {
+        return postingsDecoded;
+    }
+
+    /**
+     * @return The fraction of postings cache lookups that found the postings cached, {@code NaN}
+     * if there were none.
+     */
+    public float getPostingsCacheHitRate() {
+        return (float) postingsCacheHits / (postingsCacheHits + postingsCacheMisses);
+    }
+
+    public long getDocumentsScored() {
+        return documentsScored;
+    }
+
+    public long getTermVectorsDecoded() {
+        return termVectorsDecoded;
+    }
+
+    public long getSimilarBugsMatched() {
+        return similarBugsMatched;
+    }
+
+    public long getFixedFileLookups() {
+        return fixedFileLookups;
+    }
+
+    /**
+     * @return The counters averaged over the queries in the order of {@link #CSV_HEADER},
+     * {@code NaN} if there are no queries. The hit rate is that of all the queries instead.
+     */
+    public String getCSVLine() {
+        float q = queries;
+        return String.join(";",
+                String.valueOf(termsKept / q),
+                String.valueOf(termsDropped / q),
+                String.valueOf(postingsVisited / q),
+                String.valueOf(postingsDecoded / q),
+                String.valueOf(getPostingsCacheHitRate()),
+                String.valueOf(documentsScored / q),
+                String.valueOf(termVectorsDecoded / q),
+                String.valueOf(similarBugsMatched / q),
+                String.valueOf(fixedFileLookups / q),
+                String.valueOf(searchNanos / 1e6F / q),
+                String.valueOf(scoringNanos / 1e6F / q),
+                String.valueOf(similarBugsNanos / 1e6F / q));
+    }
+}
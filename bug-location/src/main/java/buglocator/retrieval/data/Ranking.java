@@ -0,0 +1,165 @@
+package buglocator.retrieval.data;
+
+import org.apache.lucene.search.ScoreDoc;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Best documents of a query together with the exact rank of some tracked documents among all the
+ * scored ones, which is what the full-depth metrics need, obtained without sorting every scored
+ * document.
+ * <p>
+ * Documents are ranked by decreasing score and documents with the same score keep the order in
+ * which they were scored, the same order a stable sort of all of them gives.
+ * <p>
+ * Rankings of queries that reached their {@link Deadline} are partial, they only include the
+ * scores computed before it.
+ */
+public class Ranking {
+    private final ScoreDoc[] topDocs;
+    private final IntIntHashMap ranks;
+    private final int scoredDocs;
+    private final boolean partial;
+
+    private Ranking(ScoreDoc[] topDocs, IntIntHashMap ranks, int scoredDocs, boolean partial) {
+        this.topDocs = topDocs;
+        this.ranks = ranks;
+        this.scoredDocs = scoredDocs;
+        this.partial = partial;
+    }
+
+    /**
+     * Selects the best {@code maxResults} documents keeping at most that many in a heap, and
+     * finds the rank of each tracked document by comparing its score with every other score.
+     *
+     * @param scoreDocs   Every scored document, in the order they were scored.
+     * @param trackedDocs Documents whose rank is required.
+     */
+    public static Ranking of(ScoreDoc[] scoreDocs, int maxResults, int[] trackedDocs) {
+        return new Ranking(selectTop(scoreDocs, maxResults),
+                findRanks(scoreDocs, trackedDocs), scoreDocs.length, false);
+    }
+
+    /**
+     * Ranks documents that are already sorted, such as the results of a retriever.
+     */
+    public static Ranking ofSorted(ScoreDoc[] sortedDocs, int maxResults, int[] trackedDocs) {
+        IntIntHashMap ranks = new IntIntHashMap(trackedDocs.length);
+        for (int trackedDoc : trackedDocs) {
+            ranks.put(trackedDoc, 0);
+        }
+        for (int i = 0; i < sortedDocs.length; i++) {
+            if (ranks.get(sortedDocs[i].doc, -1) == 0) {
+                ranks.put(sortedDocs[i].doc, i + 1);
+            }
+        }
+
+        return new Ranking(Arrays.copyOfRange(sortedDocs, 0,
+                Math.min(maxResults, sortedDocs.length)), ranks, sortedDocs.length, false);
+    }
+
+    /**
+     * @return The best documents by decreasing score.
+     */
+    public ScoreDoc[] getTopDocs() {
+        return topDocs;
+    }
+
+    /**
+     * @return The rank of a tracked document, starting at 1, or 0 if it wasn't scored.
+     */
+    public int getRank(int trackedDoc) {
+        int rank = ranks.get(trackedDoc, -1);
+        if (rank < 0) {
+            throw new IllegalArgumentException("Document " + trackedDoc + " isn't tracked");
+        }
+        return rank;
+    }
+
+    /**
+     * @return Amount of documents scored for the query.
+     */
+    public int getScoredDocs() {
+        return scoredDocs;
+    }
+
+    /**
+     * @return Whether the query reached its deadline before all the scores were computed.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @return The same ranking marked as partial.
+     */
+    public Ranking asPartial() {
+        return new Ranking(topDocs, ranks, scoredDocs, true);
+    }
+
+    private static ScoreDoc[] selectTop(ScoreDoc[] scoreDocs, int maxResults) {
+        // Compares positions, lower positions win ties as in a stable sort
+        Comparator<Integer> byRank = (i, j) -> {
+            int byScore = Float.compare(scoreDocs[j].score, scoreDocs[i].score);
+            return byScore != 0 ? byScore : Integer.compare(i, j);
+        };
+
+        int size = Math.min(maxResults, scoreDocs.length);
+        if (size <= 0) {
+            return new ScoreDoc[0];
+        }
+
+        // The worst selected document is at the head
+        PriorityQueue<Integer> selected = new PriorityQueue<>(size, byRank.reversed());
+        for (int i = 0; i < scoreDocs.length; i++) {
+            if (selected.size() < size) {
+                selected.add(i);
+            } else if (byRank.compare(i, selected.peek()) < 0) {
+                selected.poll();
+                selected.add(i);
+            }
+        }
+
+        ScoreDoc[] topDocs = new ScoreDoc[size];
+        for (int i = size - 1; i >= 0; i--) {
+            topDocs[i] = scoreDocs[selected.poll()];
+        }
+
+        return topDocs;
+    }
+
+    private static IntIntHashMap findRanks(ScoreDoc[] scoreDocs, int[] trackedDocs) {
+        IntIntHashMap positions = new IntIntHashMap(trackedDocs.length);
+        for (int trackedDoc : trackedDocs) {
+            positions.put(trackedDoc, -1);
+        }
+        for (int i = 0; i < scoreDocs.length; i++) {
+            if (positions.get(scoreDocs[i].doc, 0) == -1) {
+                positions.put(scoreDocs[i].doc, i);
+            }
+        }
+
+        IntIntHashMap ranks = new IntIntHashMap(trackedDocs.length);
+        for (int trackedDoc : trackedDocs) {
+            int position = positions.get(trackedDoc, -1);
+            if (position < 0) {
+                ranks.put(trackedDoc, 0);
+                continue;
+            }
+
+            float score = scoreDocs[position].score;
+            int rank = 1;
+            for (int i = 0; i < scoreDocs.length; i++) {
+                int byScore = Float.compare(scoreDocs[i].score, score);
+                if (byScore > 0 || (byScore == 0 && i < position)) {
+                    rank++;
+                }
+            }
+            ranks.put(trackedDoc, rank);
+        }
+
+        return ranks;
+    }
+}
@@ -0,0 +1,225 @@
+package buglocator.retrieval.data;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexFormatTooNewException;
+import org.apache.lucene.index.IndexFormatTooOldException;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File holding the query-independent state a retriever derived from its indexes, so that a new
+ * retriever can bulk load it instead of computing it lazily while answering its first queries.
+ * <p>
+ * The file is stored in the source code index directory and records the version and generation
+ * of the indexes it was derived from, snapshots of any other commit are ignored like those of
+ * {@link buglocator.indexing.DocumentStatistics}. It ends with a checksum footer, and snapshots
+ * that don't match their checksum, like those whose saving was interrupted, are ignored too.
+ */
+public class RetrieverSnapshot {
+    private static final String CODEC_NAME = "RetrieverSnapshot";
+    private static final int FORMAT_VERSION = 1;
+
+    private RetrieverSnapshot() {
+    }
+
+    /**
+     * @param name Identifies the kind of retriever, whose snapshots are kept apart.
+     */
+    public static String getFileName(String name) {
+        return name + ".snapshot";
+    }
+
+    /**
+     * Writes the state of a retriever to a snapshot.
+     */
+    public interface StateWriter {
+        void write(IndexOutput output) throws IOException;
+    }
+
+    /**
+     * Saves a snapshot, replacing any previous one of the same name. The snapshot is written
+     * under a temporary name and then renamed, so that an interrupted save leaves no snapshot
+     * or the previous one. Nothing is saved if the readers don't read from index directories.
+     */
+    public static void save(String name, IndexReader sourceReader, IndexReader bugReportReader,
+                            StateWriter stateWriter) throws IOException {
+        if (!(sourceReader instanceof DirectoryReader) ||
+                !(bugReportReader instanceof DirectoryReader)) {
+            return;
+        }
+
+        Directory directory = ((DirectoryReader) sourceReader).directory();
+        String fileName = getFileName(name);
+        String temporaryName = fileName + ".tmp";
+        deleteIfExists(directory, temporaryName);
+
+        try (IndexOutput output = directory.createOutput(temporaryName, IOContext.DEFAULT)) {
+            CodecUtil.writeHeader(output, CODEC_NAME, FORMAT_VERSION);
+            writeFingerprint(output, (DirectoryReader) sourceReader);
+            writeFingerprint(output, (DirectoryReader) bugReportReader);
+            stateWriter.write(output);
+            CodecUtil.writeFooter(output);
+        }
+        directory.sync(Collections.singleton(temporaryName));
+
+        deleteIfExists(directory, fileName);
+        directory.renameFile(temporaryName, fileName);
+    }
+
+    /**
+     * Checks the whole snapshot against its checksum before returning it, so that the state of
+     * the retriever is never replaced by that of a corrupt snapshot.
+     *
+     * @return An input positioned after the header, or {@code null} if there is no snapshot of
+     * that name, it was derived from other versions of the indexes or it is corrupt.
+     */
+    public static IndexInput open(String name, IndexReader sourceReader,
+                                  IndexReader bugReportReader) throws IOException {
+        if (!(sourceReader instanceof DirectoryReader) ||
+                !(bugReportReader instanceof DirectoryReader)) {
+            return null;
+        }
+
+        Directory directory = ((DirectoryReader) sourceReader).directory();
+        String fileName = getFileName(name);
+        if (!Arrays.asList(directory.listAll()).contains(fileName)) {
+            return null;
+        }
+
+        try (ChecksumIndexInput input = directory.openChecksumInput(fileName, IOContext.READONCE)) {
+            if (!readHeader(input, (DirectoryReader) sourceReader,
+                    (DirectoryReader) bugReportReader) ||
+                    input.length() - CodecUtil.footerLength() < input.getFilePointer()) {
+                return null;
+            }
+            input.seek(input.length() - CodecUtil.footerLength());
+            CodecUtil.checkFooter(input);
+        } catch (CorruptIndexException | IndexFormatTooOldException |
+                IndexFormatTooNewException | EOFException e) {
+            return null;
+        }
+
+        IndexInput input = directory.openInput(fileName, IOContext.READONCE);
+        try {
+            readHeader(input, (DirectoryReader) sourceReader, (DirectoryReader) bugReportReader);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+
+        return input;
+    }
+
+    /**
+     * @return Whether the snapshot was derived from the current versions of the indexes.
+     */
+    private static boolean readHeader(IndexInput input, DirectoryReader sourceReader,
+                                      DirectoryReader bugReportReader) throws IOException {
+        CodecUtil.checkHeader(input, CODEC_NAME, FORMAT_VERSION, FORMAT_VERSION);
+        return matchesFingerprint(input, sourceReader) &&
+                matchesFingerprint(input, bugReportReader);
+    }
+
+    private static void deleteIfExists(Directory directory, String fileName) throws IOException {
+        if (Arrays.asList(directory.listAll()).contains(fileName)) {
+            directory.deleteFile(fileName);
+        }
+    }
+
+    private static void writeFingerprint(DataOutput output, DirectoryReader reader)
+            throws IOException {
+        output.writeLong(reader.getVersion());
+        output.writeLong(reader.getIndexCommit().getGeneration());
+        output.writeInt(reader.maxDoc());
+    }
+
+    private static boolean matchesFingerprint(DataInput input, DirectoryReader reader)
+            throws IOException {
+        long version = input.readLong();
+        long generation = input.readLong();
+        int maxDoc = input.readInt();
+        return version == reader.getVersion() &&
+                generation == reader.getIndexCommit().getGeneration() &&
+                maxDoc == reader.maxDoc();
+    }
+
+    // Arrays are written in bulk with their length first, -1 standing for null
+
+    public static void writeFloats(DataOutput output, float[] values) throws IOException {
+        if (values == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length);
+        buffer.asFloatBuffer().put(values);
+        output.writeInt(values.length);
+        output.writeBytes(buffer.array(), buffer.capacity());
+    }
+
+    public static float[] readFloats(DataInput input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[4 * length];
+        input.readBytes(bytes, 0, bytes.length);
+        float[] values = new float[length];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(values);
+        return values;
+    }
+
+    public static void writeInts(DataOutput output, int[] values) throws IOException {
+        if (values == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length);
+        buffer.asIntBuffer().put(values);
+        output.writeInt(values.length);
+        output.writeBytes(buffer.array(), buffer.capacity());
+    }
+
+    public static int[] readInts(DataInput input) throws IOException {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[4 * length];
+        input.readBytes(bytes, 0, bytes.length);
+        int[] values = new int[length];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+        return values;
+    }
+
+    public static void writeStringIntMap(DataOutput output, Map<String, Integer> map)
+            throws IOException {
+        output.writeVInt(map.size());
+        for (Map.Entry<String, Integer> e : map.entrySet()) {
+            output.writeString(e.getKey());
+            output.writeVInt(e.getValue());
+        }
+    }
+
+    public static Map<String, Integer> readStringIntMap(DataInput input) throws IOException {
+        int size = input.readVInt();
+        Map<String, Integer> map = new HashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            map.put(input.readString(), input.readVInt());
+        }
+        return map;
+    }
+}
@@ -5,15 +5,26 @@ import java.util.HashMap;
 /**
  * Caches part of an inverted index in memory.
  */
-public class TermFrequencyDictionary extends HashMap<String, HashMap<Integer, Integer>> {
+public class TermFrequencyDictionary extends HashMap<String, IntIntHashMap> {
     public void putTermFrequency(int docId, String termString, int termFreq) {
-        if (!containsKey(termString)) {
-            put(termString, new HashMap<>());
+        IntIntHashMap postings = get(termString);
+        if (postings == null) {
+            postings = new IntIntHashMap();
+            put(termString, postings);
         }
-        get(termString).put(docId, termFreq);
+        postings.put(docId, termFreq);
     }
 
-    public int getFrequencyOrZero(int docId, String term) {
-        return containsKey(term) ? get(term).getOrDefault(docId, 0) : 0;
+    /**
+     * @return Estimated heap size of the cached postings, see {@link MemoryEstimates}.
+     */
+    public long estimateBytes() {
+        long bytes = MemoryEstimates.MAP_BYTES;
+        for (Entry<String, IntIntHashMap> e : entrySet()) {
+            bytes += MemoryEstimates.HASH_ENTRY_BYTES + MemoryEstimates.stringBytes(e.getKey()) +
+                    e.getValue().estimateBytes();
+        }
+
+        return bytes;
     }
 }
@@ -0,0 +1,78 @@
+package buglocator.retrieval.internals;
+
+import buglocator.retrieval.data.PostingsCache.DecodedPostings;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Iterates over the postings of a term held by a
+ * {@link buglocator.retrieval.data.PostingsCache}, skipping the documents that aren't accepted.
+ * Only document IDs and frequencies are available.
+ */
+final class CachedPostingsEnum extends PostingsEnum {
+    private final DecodedPostings postings;
+    private final Bits acceptDocs;
+    private int index = -1;
+    private int doc = -1;
+
+    CachedPostingsEnum(DecodedPostings postings, Bits acceptDocs) {
+        this.postings = postings;
+        this.acceptDocs = acceptDocs;
+    }
+
+    @Override
+    public int docID() {
+        return doc;
+    }
+
+    @Override
+    public int freq() {
+        return postings.getFreq(index);
+    }
+
+    @Override
+    public int nextDoc() {
+        return moveTo(index + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+        return moveTo(postings.advance(index + 1, target));
+    }
+
+    private int moveTo(int newIndex) {
+        index = newIndex;
+        while (index < postings.size() && acceptDocs != null &&
+                !acceptDocs.get(postings.getDoc(index))) {
+            index++;
+        }
+        doc = index < postings.size() ? postings.getDoc(index) : NO_MORE_DOCS;
+        return doc;
+    }
+
+    @Override
+    public int nextPosition() {
+        return -1;
+    }
+
+    @Override
+    public int startOffset() {
+        return -1;
+    }
+
+    @Override
+    public int endOffset() {
+        return -1;
+    }
+
+    @Override
+    public BytesRef getPayload() {
+        return null;
+    }
+
+    @Override
+    public long cost() {
+        return postings.size();
+    }
+}
@@ -1,5 +1,9 @@
 package buglocator.retrieval.internals;
 
+import buglocator.retrieval.data.Deadline;
+import buglocator.retrieval.data.PostingsCache;
+import buglocator.retrieval.data.PostingsCache.DecodedPostings;
+import buglocator.retrieval.data.QueryCounters;
 import buglocator.retrieval.data.TermFrequencyDictionary;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
@@ -8,6 +12,7 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.ToStringUtils;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -18,14 +23,46 @@ public class FrequencyCollectingQuery extends Query {
     private final TermContext perReaderTermState;
     private final TermFrequencyDictionary tfCounts;
     private final String termString;
+    private final QueryCounters counters;
+    private final PostingsCache postingsCache;
+    private final Deadline deadline;
 
     /**
      * Constructs a query for the term <code>t</code>.
      */
     public FrequencyCollectingQuery(String field, String termString, TermFrequencyDictionary tfCounts) {
+        this(field, termString, tfCounts, null);
+    }
+
+    /**
+     * Constructs a query for the term <code>t</code> that counts the postings it visits.
+     *
+     * @param counters Counters of the query in progress, or {@code null} to count nothing.
+     */
+    public FrequencyCollectingQuery(String field, String termString, TermFrequencyDictionary tfCounts,
+                                    QueryCounters counters) {
+        this(field, termString, tfCounts, counters, null, Deadline.NONE);
+    }
+
+    /**
+     * Constructs a query for the term <code>t</code> that reads its postings from a cache,
+     * decoding and caching them in the segments where they aren't cached yet.
+     *
+     * @param counters      Counters of the query in progress, or {@code null} to count nothing.
+     * @param postingsCache Cache of the index searched, or {@code null} to always read the
+     *                      postings from the index.
+     * @param deadline      Deadline of the query in progress, once it expires the postings that
+     *                      are left aren't collected.
+     */
+    public FrequencyCollectingQuery(String field, String termString, TermFrequencyDictionary tfCounts,
+                                    QueryCounters counters, PostingsCache postingsCache,
+                                    Deadline deadline) {
         this.tfCounts = tfCounts;
         this.term = new Term(field, termString);
         this.termString = termString;
+        this.counters = counters;
+        this.postingsCache = postingsCache;
+        this.deadline = deadline;
         perReaderTermState = null;
     }
 
@@ -33,26 +70,47 @@ public class FrequencyCollectingQuery extends Query {
         private final Similarity similarity;
         private final Similarity.SimWeight stats;
         private final TermContext termStates;
+        private final DecodedPostings[] cachedPostings;
         private final boolean needsScores;
         private final TermFrequencyDictionary tfCounts;
         private final String termString;
 
+        /**
+         * @param termStates     The states of the term in every segment, {@code null} if its
+         *                       postings are cached for all of them.
+         * @param cachedPostings The cached postings of the term in every segment, with
+         *                       {@code null} for the segments where they aren't cached, or
+         *                       {@code null} if no cache is used.
+         */
         public MyWeight(String termString, IndexSearcher searcher, boolean needsScores, TermContext termStates,
-                        TermFrequencyDictionary tfCounts)
+                        DecodedPostings[] cachedPostings, TermFrequencyDictionary tfCounts)
                 throws IOException {
             super(FrequencyCollectingQuery.this);
             this.termString = termString;
             this.tfCounts = tfCounts;
             this.needsScores = needsScores;
-            assert termStates != null : "TermContext must not be null";
+            assert termStates != null || cachedPostings != null : "TermContext must not be null";
             // checked with a real exception in FrequencyCollectingQuery constructor
-            assert termStates.hasOnlyRealTerms();
+            assert termStates == null || termStates.hasOnlyRealTerms();
             this.termStates = termStates;
+            this.cachedPostings = cachedPostings;
             this.similarity = searcher.getSimilarity();
 
             final CollectionStatistics collectionStats;
             final TermStatistics termStats;
-            if (needsScores) {
+            if (termStates == null) {
+                // The cached postings include the deleted documents, like the terms dictionary
+                int docFreq = 0;
+                long totalTermFreq = 0;
+                for (DecodedPostings postings : cachedPostings) {
+                    docFreq += postings.size();
+                    totalTermFreq += postings.getTotalTermFreq();
+                }
+                collectionStats = needsScores ? searcher.collectionStatistics(term.field()) :
+                        new CollectionStatistics(term.field(), searcher.getIndexReader().maxDoc(),
+                                -1, -1, -1);
+                termStats = new TermStatistics(term.bytes(), docFreq, totalTermFreq);
+            } else if (needsScores) {
                 collectionStats = searcher.collectionStatistics(term.field());
                 termStats = searcher.termStatistics(term, termStates);
             } else {
@@ -88,6 +146,22 @@ public class FrequencyCollectingQuery extends Query {
 
         @Override
         public Scorer scorer(LeafReaderContext context, Bits acceptDocs) throws IOException {
+            if (cachedPostings != null) {
+                DecodedPostings postings = cachedPostings[context.ord];
+                if (postings == null) {
+                    postings = postingsCache.decode(context.reader(), term);
+                    if (counters != null) {
+                        counters.countPostingsDecoded(postings.size());
+                    }
+                }
+                if (postings.size() == 0) {
+                    return null;
+                }
+                return new FrequencyCollectingScorer(termString, this,
+                        new CachedPostingsEnum(postings, acceptDocs),
+                        similarity.simScorer(stats, context), tfCounts, counters, deadline);
+            }
+
             assert termStates.topReaderContext == ReaderUtil.getTopLevelContext(context) : "The top-reader used to create Weight (" + termStates.topReaderContext + ") is not the same as the current reader's top-reader (" + ReaderUtil.getTopLevelContext(context);
             final TermsEnum termsEnum = getTermsEnum(context);
             if (termsEnum == null) {
@@ -95,7 +169,7 @@ public class FrequencyCollectingQuery extends Query {
             }
             PostingsEnum docs = termsEnum.postings(acceptDocs, null, needsScores ? PostingsEnum.FREQS : PostingsEnum.NONE);
             assert docs != null;
-            return new FrequencyCollectingScorer(termString, this, docs, similarity.simScorer(stats, context), tfCounts);
+            return new FrequencyCollectingScorer(termString, this, docs, similarity.simScorer(stats, context), tfCounts, counters, deadline);
         }
 
         /**
@@ -154,6 +228,27 @@ public class FrequencyCollectingQuery extends Query {
     @Override
     public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException {
         final IndexReaderContext context = searcher.getTopReaderContext();
+
+        DecodedPostings[] cachedPostings = null;
+        if (postingsCache != null) {
+            List<LeafReaderContext> leaves = context.leaves();
+            cachedPostings = new DecodedPostings[leaves.size()];
+            boolean allCached = true;
+            for (LeafReaderContext leaf : leaves) {
+                cachedPostings[leaf.ord] = postingsCache.get(leaf.reader(), term);
+                allCached &= cachedPostings[leaf.ord] != null;
+                if (counters != null) {
+                    counters.countPostingsCacheLookup(cachedPostings[leaf.ord] != null);
+                }
+            }
+
+            // Neither the terms dictionary is looked up nor the postings decoded
+            if (allCached) {
+                return new MyWeight(termString, searcher, needsScores, null, cachedPostings,
+                        tfCounts);
+            }
+        }
+
         final TermContext termState;
         if (perReaderTermState == null
                 || perReaderTermState.topReaderContext != context) {
@@ -165,7 +260,7 @@ public class FrequencyCollectingQuery extends Query {
             termState = this.perReaderTermState;
         }
 
-        return new MyWeight(termString, searcher, needsScores, termState, tfCounts);
+        return new MyWeight(termString, searcher, needsScores, termState, cachedPostings, tfCounts);
     }
 
     /**
@@ -1,5 +1,7 @@
 package buglocator.retrieval.internals;
 
+import buglocator.retrieval.data.Deadline;
+import buglocator.retrieval.data.QueryCounters;
 import buglocator.retrieval.data.TermFrequencyDictionary;
 import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.search.Scorer;
@@ -12,22 +14,55 @@ import java.io.IOException;
  * A scorer to use with {@link FrequencyCollectingQuery}.
  */
 public class FrequencyCollectingScorer extends Scorer {
+    /**
+     * Amount of postings iterated between checks of the deadline, the size of the postings blocks
+     * of the default codec.
+     */
+    private static final int DEADLINE_CHECK_INTERVAL = 128;
+
     private final PostingsEnum postingsEnum;
     private final TermFrequencyDictionary tfCounts;
     private final String termString;
+    private final QueryCounters counters;
+    private final Deadline deadline;
+    private int untilDeadlineCheck = DEADLINE_CHECK_INTERVAL;
+    private boolean stopped = false;
 
     public FrequencyCollectingScorer(String termString, Weight weight, PostingsEnum td,
                                      Similarity.SimScorer docScorer,
                                      TermFrequencyDictionary tfCounts) {
+        this(termString, weight, td, docScorer, tfCounts, null);
+    }
+
+    /**
+     * @param counters Counters of the query in progress, or {@code null} to count nothing.
+     */
+    public FrequencyCollectingScorer(String termString, Weight weight, PostingsEnum td,
+                                     Similarity.SimScorer docScorer,
+                                     TermFrequencyDictionary tfCounts, QueryCounters counters) {
+        this(termString, weight, td, docScorer, tfCounts, counters, Deadline.NONE);
+    }
+
+    /**
+     * @param counters Counters of the query in progress, or {@code null} to count nothing.
+     * @param deadline Deadline of the query in progress, once it expires the scorer matches no
+     *                 more documents.
+     */
+    public FrequencyCollectingScorer(String termString, Weight weight, PostingsEnum td,
+                                     Similarity.SimScorer docScorer,
+                                     TermFrequencyDictionary tfCounts, QueryCounters counters,
+                                     Deadline deadline) {
         super(weight);
         this.termString = termString;
         this.tfCounts = tfCounts;
         this.postingsEnum = td;
+        this.counters = counters;
+        this.deadline = deadline;
     }
 
     @Override
     public int docID() {
-        return postingsEnum.docID();
+        return stopped ? NO_MORE_DOCS : postingsEnum.docID();
     }
 
     @Override
@@ -37,7 +72,7 @@ public class FrequencyCollectingScorer extends Scorer {
 
     @Override
     public int nextDoc() throws IOException {
-        return postingsEnum.nextDoc();
+        return reachedDeadline() ? NO_MORE_DOCS : postingsEnum.nextDoc();
     }
 
     @Override
@@ -46,12 +81,26 @@ public class FrequencyCollectingScorer extends Scorer {
         int docId = postingsEnum.docID();
         int freq = postingsEnum.freq();
         tfCounts.putTermFrequency(docId, termString, freq);
+        if (counters != null) {
+            counters.countPosting();
+            if (!(postingsEnum instanceof CachedPostingsEnum)) {
+                counters.countPostingsDecoded(1);
+            }
+        }
         return 1;
     }
 
     @Override
     public int advance(int target) throws IOException {
-        return postingsEnum.advance(target);
+        return reachedDeadline() ? NO_MORE_DOCS : postingsEnum.advance(target);
+    }
+
+    private boolean reachedDeadline() {
+        if (!stopped && --untilDeadlineCheck == 0) {
+            untilDeadlineCheck = DEADLINE_CHECK_INTERVAL;
+            stopped = deadline.isExpired();
+        }
+        return stopped;
     }
 
     @Override
@@ -1,28 +1,115 @@
 package buglocator.retrieval.similarity;
 
+import buglocator.retrieval.data.IntIntHashMap;
+import buglocator.retrieval.data.QueryCounters;
 import buglocator.retrieval.data.TermFrequencyDictionary;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
 
 import java.io.IOException;
 import java.util.Map;
-import java.util.function.BinaryOperator;
 
 /**
  * Base class for custom document similarity implementations.
  */
 public abstract class BaseSimilarity {
-    protected static final BinaryOperator<Float> floatAdder = (x, y) -> x + y;
-    protected static final BinaryOperator<Integer> intAdder = (i, j) -> i + j;
+    /**
+     * Term frequencies below this value get their dampened value from a lookup table.
+     */
+    private static final int DAMPENED_TABLE_SIZE = 1024;
+    private static final double[] dampenedTable = new double[DAMPENED_TABLE_SIZE];
+
+    static {
+        for (int tf = 1; tf < DAMPENED_TABLE_SIZE; tf++) {
+            dampenedTable[tf] = Math.log(tf) + 1;
+        }
+    }
 
     protected TermFrequencyDictionary termFrequencies;
     protected IndexReader reader;
 
+    /**
+     * Counts the term vectors decoded, {@code null} to count nothing.
+     */
+    protected QueryCounters counters;
+
     public BaseSimilarity(TermFrequencyDictionary termFrequencies, IndexReader reader) {
         this.termFrequencies = termFrequencies;
         this.reader = reader;
     }
 
-    public abstract float calculate(
-            Map<String, Integer> queryFrequencies, float queryNorm, int docId)
-            throws IOException;
+    /**
+     * @param counters Counters of the query in progress of the retriever using this similarity.
+     */
+    public void setCounters(QueryCounters counters) {
+        this.counters = counters;
+    }
+
+    /**
+     * Makes sure that a document without a term vector of the field is an empty one, and not one
+     * of an index that doesn't store term vectors, whose norms can only come from its statistics.
+     *
+     * @throws IllegalStateException if the index doesn't store term vectors of the field.
+     */
+    protected void checkTermVectors(String field) {
+        FieldInfo fieldInfo = MultiFields.getMergedFieldInfos(reader).fieldInfo(field);
+        if (fieldInfo != null && !fieldInfo.hasVectors()) {
+            Object index = reader instanceof DirectoryReader ?
+                    ((DirectoryReader) reader).directory() : reader;
+            throw new IllegalStateException("The index " + index + " has neither term vectors " +
+                    "nor up to date statistics of the field \"" + field + "\"");
+        }
+    }
+
+    /**
+     * Resolves the query-side values used by {@link #calculate(QueryVector, int)}. Has to be
+     * called after the frequencies of the query terms in the matching documents were collected.
+     * The terms keep the iteration order of the map, which is alphabetical for the queries of
+     * {@link buglocator.retrieval.RetrieverBase}, so that the scores of a document are summed in
+     * the same order by every query having its terms.
+     *
+     * @param queryFrequencies Frequency of every query term.
+     */
+    public QueryVector createQueryVector(Map<String, Integer> queryFrequencies) {
+        int size = queryFrequencies.size();
+        String[] terms = new String[size];
+        int[] frequencies = new int[size];
+        IntIntHashMap[] postings = new IntIntHashMap[size];
+        double[] dampenedFrequencies = new double[size];
+        double[] idfSquared = new double[size];
+
+        int i = 0;
+        for (Map.Entry<String, Integer> e : queryFrequencies.entrySet()) {
+            terms[i] = e.getKey();
+            frequencies[i] = e.getValue();
+            postings[i] = termFrequencies.get(e.getKey());
+            dampenedFrequencies[i] = dampen(e.getValue());
+            idfSquared[i] = getIdfSquared(e.getKey());
+            i++;
+        }
+
+        return new QueryVector(terms, frequencies, postings, dampenedFrequencies, idfSquared,
+                computeQueryNorm(terms, frequencies));
+    }
+
+    public abstract float calculate(QueryVector query, int docId) throws IOException;
+
+    /**
+     * @return {@code log(tf) + 1}, the same value as computing it directly.
+     */
+    protected static double dampen(int termFrequency) {
+        return termFrequency < DAMPENED_TABLE_SIZE ?
+                dampenedTable[termFrequency] : Math.log(termFrequency) + 1;
+    }
+
+    /**
+     * @return The squared idf of a term, or zero if this similarity doesn't weight terms by idf.
+     */
+    protected double getIdfSquared(String term) {
+        return 0;
+    }
+
+    protected abstract float computeQueryNorm(String[] terms, int[] frequencies);
 }
@@ -1,32 +1,47 @@
 package buglocator.retrieval.similarity;
 
+import buglocator.indexing.DocumentStatistics;
+import buglocator.retrieval.data.IntIntHashMap;
+import buglocator.retrieval.data.MemoryEstimates;
+import buglocator.retrieval.data.RetrieverSnapshot;
 import buglocator.retrieval.data.TermFrequencyDictionary;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
-import static java.lang.Math.sqrt;
-import static java.lang.StrictMath.pow;
-
 /**
  * Calculates the similarity used by BugLocator.
+ * <p>
+ * Per-document values are cached in arrays indexed by document ID and per-term values are
+ * resolved once per query in a {@link QueryVector}, so scoring a document doesn't allocate once
+ * its norm has been computed. Squares are computed as {@code x * x} instead of with {@code pow},
+ * which may change a score in its last bit (relative difference below {@code 1e-6}) but never the
+ * terms that contribute to it.
  */
 public class BugLocatorSimilarity extends BaseSimilarity {
     private final Map<String, Integer> documentFrequencies = new HashMap<>();
-    final Map<Integer, Float> documentNorms = new HashMap<>();
-    private final Map<Integer, Integer> documentLengths = new HashMap<>();
     private final int minDocumentLength;
     final float numDocs;
     private final float doclenRange;
     private final int minus3Sigma;
     private final int plus3Sigma;
-    private Map<Integer, Float> normalizationFactors = new HashMap<>();
+
+    /**
+     * tf-idf norm of every document, {@code NaN} until computed. Allocated on first use.
+     */
+    float[] documentNorms;
+    private int[] documentLengths;
 
     public BugLocatorSimilarity(TermFrequencyDictionary termFrequencies, IndexReader reader,
                                 int minus3Sigma, int plus3Sigma) {
@@ -39,83 +54,230 @@ public class BugLocatorSimilarity extends BaseSimilarity {
     }
 
     @Override
-    public float calculate(Map<String, Integer> queryFrequencies, float queryNorm, int docId) throws IOException {
+    public float calculate(QueryVector query, int docId) throws IOException {
+        return normalizeLength(calculateTfIdf(query, docId), docId);
+    }
+
+    /**
+     * @return The cosine similarity of the tf-idf vectors of the query and the document, which
+     * {@link #calculate(QueryVector, int)} weights by the length of the document.
+     */
+    public final float calculateTfIdf(QueryVector query, int docId) throws IOException {
+        return calculateTfIdf(query, docId, combineTfIdf(query, docId));
+    }
+
+    /**
+     * Same as {@link #calculateTfIdf(QueryVector, int)} given the value of
+     * {@link #combineTfIdf(QueryVector, int)} for the document, which only changes with the
+     * query terms the document has.
+     */
+    public final float calculateTfIdf(QueryVector query, int docId, float combinedTfIdf)
+            throws IOException {
         // First part: Multiplicative inverse of the square root of the sum of squared tf-idf
         // values for every term in the query
-        float firstPart = 1 / queryNorm;
+        float firstPart = 1 / query.norm;
 
         // Second part: same as first part but for document
-        float documentTfIdfNorm;
-        if (!documentNorms.containsKey(docId)) {
+        float secondPart = 1 / getDocumentNorm(docId);
+
+        // Third part: combination of tf-idf for common terms
+        return firstPart * secondPart * combinedTfIdf;
+    }
+
+    /**
+     * Weights a score returned by {@link #calculateTfIdf(QueryVector, int)} for a document by
+     * its length, which gives the score returned by {@link #calculate(QueryVector, int)}.
+     */
+    public final float normalizeLength(float tfIdfScore, int docId) {
+        // Normalization factor according to a logistic function, it gives more weight to longer
+        // documents
+        float docLenNorm = getLengthNormalization(documentLengths[docId]);
+
+        return docLenNorm * tfIdfScore;
+    }
+
+    /**
+     * Same query norm the retrievers always used. The idf in it uses integer division, which
+     * scales every score of a query by the same factor and therefore doesn't change rankings.
+     */
+    @Override
+    protected float computeQueryNorm(String[] terms, int[] frequencies) {
+        int intNumDocs = (int) numDocs;
+        float accumulator = 0;
+        for (int i = 0; i < terms.length; i++) {
+            // Dampened term frequency value in query
+            float dampTf = (float) dampen(frequencies[i]);
+            // idf value for term
+            float idf = (float) Math.log(intNumDocs / getDocFreq(terms[i]));
+            double weight = dampTf * idf;
+            accumulator += (float) (weight * weight);
+        }
+
+        return (float) Math.sqrt(accumulator);
+    }
+
+    @Override
+    protected double getIdfSquared(String term) {
+        double idf = Math.log(numDocs / getDocFreq(term));
+        return idf * idf;
+    }
+
+    /**
+     * Sum over the query terms of the product of the dampened frequencies in query and document
+     * and the squared idf.
+     */
+    public final float combineTfIdf(QueryVector query, int docId) {
+        float accumulator = 0;
+        for (int i = 0; i < query.terms.length; i++) {
+            IntIntHashMap postings = query.postings[i];
+            int docFreq = postings == null ? 0 : postings.get(docId, 0);
+            if (docFreq != 0) {
+                accumulator += (float) (dampen(docFreq) * query.dampenedFrequencies[i] *
+                        query.idfSquared[i]);
+            }
+        }
+
+        return accumulator;
+    }
+
+    /**
+     * @return The norm of the tf-idf vector of a document, taken from the index's
+     * {@link DocumentStatistics} if it has them or computed from its term vector the first time
+     * it is requested otherwise.
+     */
+    final float getDocumentNorm(int docId) throws IOException {
+        if (documentNorms == null) {
+            documentNorms = new float[reader.maxDoc()];
+            documentLengths = new int[reader.maxDoc()];
+            DocumentStatistics statistics = DocumentStatistics.load(reader, "text");
+            if (statistics != null) {
+                for (int i = 0; i < documentNorms.length; i++) {
+                    documentNorms[i] = statistics.getTfIdfNorm(i);
+                    documentLengths[i] = statistics.getLength(i);
+                }
+            } else {
+                Arrays.fill(documentNorms, Float.NaN);
+            }
+        }
+
+        float documentTfIdfNorm = documentNorms[docId];
+        if (Float.isNaN(documentTfIdfNorm)) {
             Terms termVector = reader.getTermVector(docId, "text");
+            if (counters != null) {
+                counters.countTermVector();
+            }
             float tfIdfNormAccum = 0;
             int docLenAccum = 0;
-            TermsEnum termsEnum = termVector.iterator();
+            // Documents without terms have no term vector, like the empty ones
+            if (termVector == null) {
+                checkTermVectors("text");
+            }
+            TermsEnum termsEnum = termVector == null ? TermsEnum.EMPTY : termVector.iterator();
             BytesRef term;
             while ((term = termsEnum.next()) != null) {
                 String termString = term.utf8ToString();
                 int totalTermFreq = (int) termsEnum.totalTermFreq();
                 docLenAccum += totalTermFreq;
-                float tfIdfWeight = (float) ((Math.log(totalTermFreq) + 1) *
+                float tfIdfWeight = (float) (dampen(totalTermFreq) *
                         Math.log(numDocs / getDocFreq(termString)));
-                tfIdfNormAccum += pow(tfIdfWeight, 2);
+                tfIdfNormAccum += (double) tfIdfWeight * tfIdfWeight;
             }
-            documentTfIdfNorm = (float) sqrt(tfIdfNormAccum);
+            documentTfIdfNorm = (float) Math.sqrt(tfIdfNormAccum);
+
+            documentNorms[docId] = documentTfIdfNorm;
+            documentLengths[docId] = docLenAccum;
+        }
+
+        return documentTfIdfNorm;
+    }
 
-            documentNorms.put(docId, documentTfIdfNorm);
-            documentLengths.put(docId, docLenAccum);
+    private float getLengthNormalization(int docLen) {
+        if (docLen < minus3Sigma) {
+            return 0.5F;
+        } else if (docLen > plus3Sigma) {
+            return 1;
         } else {
-            documentTfIdfNorm = documentNorms.get(docId);
+            float n = (6 * (docLen - minDocumentLength)) / (doclenRange);
+            float power = (float) Math.exp(n);
+            return power / (1 + power);
         }
+    }
 
-        float secondPart = 1 / documentTfIdfNorm;
+    /**
+     * @return Estimated heap size of the per-document and per-term values cached so far.
+     */
+    public long estimateCacheBytes() {
+        long bytes = MemoryEstimates.stringMapBytes(documentFrequencies);
+        if (documentNorms != null) {
+            bytes += MemoryEstimates.floatArrayBytes(documentNorms.length) +
+                    MemoryEstimates.intArrayBytes(documentLengths.length);
+        }
 
-        // Normalization factor according to a logistic function, it gives more weight to longer
-        // documents
-        float docLenNorm;
-        if (!normalizationFactors.containsKey(docId)) {
-            int docLen = documentLengths.get(docId);
-            if (docLen < minus3Sigma) {
-                docLenNorm = 0.5F;
-            } else if (docLen > plus3Sigma) {
-                docLenNorm = 1;
-            } else {
-                float n = (6 * (docLen - minDocumentLength)) / (doclenRange);
-                float power = (float) Math.exp(n);
-                docLenNorm = power / (1 + power);
+        return bytes;
+    }
+
+    /**
+     * Drops every cached value, they will be lazily computed again from the index when needed.
+     */
+    public void clearCaches() {
+        documentFrequencies.clear();
+        documentNorms = null;
+        documentLengths = null;
+    }
+
+    /**
+     * Computes the norm and length of every document and the document frequency of every term
+     * of the index, which are otherwise computed when queries first need them.
+     */
+    public void warmUp() throws IOException {
+        Terms terms = MultiFields.getTerms(reader, "text");
+        if (terms != null) {
+            TermsEnum termsEnum = terms.iterator();
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                documentFrequencies.put(term.utf8ToString(), termsEnum.docFreq());
             }
-            normalizationFactors.put(docId, docLenNorm);
-        } else {
-            docLenNorm = normalizationFactors.get(docId);
         }
 
-        // Combination of tf-idf for common terms
-        float thirdPart = queryFrequencies.entrySet().stream().map(e -> {
-            // e: queryTerm -> queryFreq
-            Integer docFreq = termFrequencies.getFrequencyOrZero(docId, e.getKey());
-            if (docFreq == 0) {
-                return 0F;
-            } else {
-                return (float) ((Math.log(docFreq) + 1) * (Math.log(e.getValue()) + 1) *
-                        pow(Math.log(numDocs / getDocFreq(e.getKey())), 2));
+        Bits liveDocs = MultiFields.getLiveDocs(reader);
+        for (int docId = 0; docId < reader.maxDoc(); docId++) {
+            if (liveDocs == null || liveDocs.get(docId)) {
+                getDocumentNorm(docId);
             }
-        }).reduce(floatAdder).get();
+        }
+    }
 
-        float tfIdfScore = firstPart * secondPart * thirdPart;
+    /**
+     * Writes the values cached so far to a {@link RetrieverSnapshot}.
+     */
+    public void writeState(DataOutput output) throws IOException {
+        RetrieverSnapshot.writeStringIntMap(output, documentFrequencies);
+        RetrieverSnapshot.writeFloats(output, documentNorms);
+        RetrieverSnapshot.writeInts(output, documentLengths);
+    }
 
-        return docLenNorm * tfIdfScore;
+    /**
+     * Replaces the cached values with those written by {@link #writeState(DataOutput)}.
+     */
+    public void readState(DataInput input) throws IOException {
+        documentFrequencies.clear();
+        documentFrequencies.putAll(RetrieverSnapshot.readStringIntMap(input));
+        documentNorms = RetrieverSnapshot.readFloats(input);
+        documentLengths = RetrieverSnapshot.readInts(input);
     }
 
     public int getDocFreq(String termString) {
         // If document frequency for the current term is not in the dictionary, read it from
         // the index
-        if (!documentFrequencies.containsKey(termString)) {
+        Integer docFreq = documentFrequencies.get(termString);
+        if (docFreq == null) {
             try {
-                documentFrequencies.put(termString, reader.docFreq(new Term("text", termString)));
+                docFreq = reader.docFreq(new Term("text", termString));
             } catch (IOException e) {
                 return 1;
             }
+            documentFrequencies.put(termString, docFreq);
         }
-        return documentFrequencies.get(termString);
+        return docFreq;
     }
 }
@@ -1,37 +1,142 @@
 package buglocator.retrieval.similarity;
 
+import buglocator.indexing.DocumentStatistics;
+import buglocator.retrieval.data.IntIntHashMap;
+import buglocator.retrieval.data.MemoryEstimates;
+import buglocator.retrieval.data.RetrieverSnapshot;
 import buglocator.retrieval.data.TermFrequencyDictionary;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.util.Bits;
 
 import java.io.IOException;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Calculates cosine similarity between a query and a document.
  */
 public class CosineSimilarity extends BaseSimilarity {
+    /**
+     * Norm of the raw term frequency vector of every document, {@code NaN} until computed.
+     */
+    private float[] documentNorms;
+
     public CosineSimilarity(TermFrequencyDictionary termFrequencies, IndexReader reader) {
         super(termFrequencies, reader);
     }
 
     @Override
-    public float calculate(Map<String, Integer> queryFrequencies, float queryNorm, int docId) throws IOException {
-
-        // Calculate norm of the document, same as for the query but using the term vector stored
-        // in the index
-        float docNorm = 0;
-        TermsEnum termIterator = reader.getTermVector(docId, "fullText").iterator();
-        while (termIterator.next() != null) {
-            docNorm += Math.pow(termIterator.totalTermFreq(), 2);
-        }
-        docNorm = (float) Math.sqrt(docNorm);
-
+    public float calculate(QueryVector query, int docId) throws IOException {
         // Calculate the dot product of the query and the document and return the result divided
         // by the product of both norms
-        return queryFrequencies.entrySet().stream().map(e -> {
-            Integer docFreq = termFrequencies.getFrequencyOrZero(docId, e.getKey());
-            return e.getValue() * docFreq;
-        }).reduce(intAdder).get() / (docNorm * queryNorm);
+        int dotProduct = 0;
+        for (int i = 0; i < query.terms.length; i++) {
+            IntIntHashMap postings = query.postings[i];
+            if (postings != null) {
+                dotProduct += query.frequencies[i] * postings.get(docId, 0);
+            }
+        }
+
+        return calculate(dotProduct, query, docId);
+    }
+
+    /**
+     * Same as {@link #calculate(QueryVector, int)} given the dot product of the frequencies of
+     * the query and the document.
+     */
+    public float calculate(int dotProduct, QueryVector query, int docId) throws IOException {
+        return dotProduct / (getDocumentNorm(docId) * query.norm);
+    }
+
+    /**
+     * The norm of the query vector: square root of the sum of square term frequencies.
+     */
+    @Override
+    protected float computeQueryNorm(String[] terms, int[] frequencies) {
+        float accumulator = 0;
+        for (int frequency : frequencies) {
+            accumulator += (float) frequency * frequency;
+        }
+
+        return (float) Math.sqrt(accumulator);
+    }
+
+    private float getDocumentNorm(int docId) throws IOException {
+        if (documentNorms == null) {
+            documentNorms = new float[reader.maxDoc()];
+            DocumentStatistics statistics = DocumentStatistics.load(reader, "fullText");
+            if (statistics != null) {
+                for (int i = 0; i < documentNorms.length; i++) {
+                    documentNorms[i] = statistics.getFrequencyNorm(i);
+                }
+            } else {
+                Arrays.fill(documentNorms, Float.NaN);
+            }
+        }
+
+        float docNorm = documentNorms[docId];
+        if (Float.isNaN(docNorm)) {
+            // Same as for the query but using the term vector stored in the index
+            docNorm = 0;
+            // Documents without terms have no term vector, like the empty ones
+            Terms termVector = reader.getTermVector(docId, "fullText");
+            if (termVector == null) {
+                checkTermVectors("fullText");
+            }
+            TermsEnum termIterator = termVector == null ? TermsEnum.EMPTY : termVector.iterator();
+            if (counters != null) {
+                counters.countTermVector();
+            }
+            while (termIterator.next() != null) {
+                long termFreq = termIterator.totalTermFreq();
+                docNorm += (double) termFreq * termFreq;
+            }
+            docNorm = (float) Math.sqrt(docNorm);
+            documentNorms[docId] = docNorm;
+        }
+
+        return docNorm;
+    }
+
+    /**
+     * @return Estimated heap size of the cached document norms.
+     */
+    public long estimateCacheBytes() {
+        return documentNorms == null ? 0 : MemoryEstimates.floatArrayBytes(documentNorms.length);
+    }
+
+    public void clearCaches() {
+        documentNorms = null;
+    }
+
+    /**
+     * Computes the norm of every document, which is otherwise computed when queries first need
+     * it.
+     */
+    public void warmUp() throws IOException {
+        Bits liveDocs = MultiFields.getLiveDocs(reader);
+        for (int docId = 0; docId < reader.maxDoc(); docId++) {
+            if (liveDocs == null || liveDocs.get(docId)) {
+                getDocumentNorm(docId);
+            }
+        }
+    }
+
+    /**
+     * Writes the norms cached so far to a {@link RetrieverSnapshot}.
+     */
+    public void writeState(DataOutput output) throws IOException {
+        RetrieverSnapshot.writeFloats(output, documentNorms);
+    }
+
+    /**
+     * Replaces the cached norms with those written by {@link #writeState(DataOutput)}.
+     */
+    public void readState(DataInput input) throws IOException {
+        documentNorms = RetrieverSnapshot.readFloats(input);
     }
 }
@@ -0,0 +1,48 @@
+package buglocator.retrieval.similarity;
+
+import buglocator.retrieval.data.IntIntHashMap;
+
+/**
+ * Query terms laid out in parallel arrays together with every value the scoring loops need that
+ * doesn't depend on the scored document. Created by {@link BaseSimilarity#createQueryVector} once
+ * per query, after the term frequencies of the matching documents were collected.
+ */
+public class QueryVector {
+    final String[] terms;
+    final int[] frequencies;
+
+    /**
+     * Cached frequencies of each term in the documents, {@code null} when no document has it.
+     */
+    final IntIntHashMap[] postings;
+
+    /**
+     * Dampened query frequency ({@code log(tf) + 1}) of each term.
+     */
+    final double[] dampenedFrequencies;
+
+    /**
+     * Squared idf of each term, zero for similarities that don't use it.
+     */
+    final double[] idfSquared;
+
+    final float norm;
+
+    QueryVector(String[] terms, int[] frequencies, IntIntHashMap[] postings,
+                double[] dampenedFrequencies, double[] idfSquared, float norm) {
+        this.terms = terms;
+        this.frequencies = frequencies;
+        this.postings = postings;
+        this.dampenedFrequencies = dampenedFrequencies;
+        this.idfSquared = idfSquared;
+        this.norm = norm;
+    }
+
+    public int size() {
+        return terms.length;
+    }
+
+    public float getNorm() {
+        return norm;
+    }
+}
@@ -0,0 +1,166 @@
+package data.extraction;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk cache of extracted source texts keyed by the SHA-256 hash of the source file contents,
+ * so that the files that didn't change between releases of a system aren't parsed again. Each
+ * entry is a file in the cache folder. When the entries exceed the size limit the least recently
+ * used ones are deleted, the modification time of the files records their last use so that the
+ * order survives between runs. Safe for concurrent use by the extraction workers.
+ */
+public class ExtractionCache {
+    /**
+     * Part of every key, it has to be changed whenever the extracted texts change so that stale
+     * entries are never used.
+     */
+    private static final String EXTRACTOR_VERSION = "1";
+
+    private final Path folder;
+    private final long maxBytes;
+
+    /**
+     * Size of every entry in least recently used order.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75F, true);
+    private long usedBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long missNanos = 0;
+
+    public ExtractionCache(Path folder, long maxBytes) throws IOException {
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+
+        FileUtils.forceMkdir(folder.toFile());
+        File[] files = folder.toFile().listFiles();
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (file.getName().endsWith(".tmp")) {
+                    // Left by an interrupted write
+                    file.delete();
+                } else {
+                    entries.put(file.getName(), file.length());
+                    usedBytes += file.length();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param variant Identifies the way the texts are extracted, since each one may extract
+     *                different texts from the same contents.
+     * @return The key of a source file with the given contents.
+     */
+    public static String getKey(String variant, byte[] sourceContents) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((EXTRACTOR_VERSION + "/" + variant + "/")
+                    .getBytes(StandardCharsets.UTF_8));
+            byte[] hash = digest.digest(sourceContents);
+            StringBuilder key = new StringBuilder(2 * hash.length);
+            for (byte b : hash) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The cached text of a key or {@code null} if it isn't cached.
+     */
+    public String get(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+
+        Path entryPath = folder.resolve(key);
+        try {
+            String text = new String(Files.readAllBytes(entryPath), StandardCharsets.UTF_8);
+            entryPath.toFile().setLastModified(System.currentTimeMillis());
+            synchronized (this) {
+                hits++;
+            }
+            return text;
+        } catch (IOException e) {
+            // Evicted while reading
+            return null;
+        }
+    }
+
+    /**
+     * Stores the text extracted for a key, evicting the least recently used entries if needed.
+     *
+     * @param extractionNanos Time spent extracting the text, which would be saved by later hits.
+     */
+    public void put(String key, String text, long extractionNanos) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        Path temporaryPath = Files.createTempFile(folder, key, ".tmp");
+        Files.write(temporaryPath, bytes);
+        Files.move(temporaryPath, folder.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (this) {
+            misses++;
+            missNanos += extractionNanos;
+
+            Long previousBytes = entries.put(key, (long) bytes.length);
+            usedBytes += bytes.length - (previousBytes == null ? 0 : previousBytes);
+
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (usedBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                Files.deleteIfExists(folder.resolve(eldest.getKey()));
+                usedBytes -= eldest.getValue();
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized float getHitRate() {
+        return hits + misses == 0 ? 0 : (float) hits / (hits + misses);
+    }
+
+    /**
+     * @return Extraction time saved by the hits, estimated with the average extraction time of
+     * the misses.
+     */
+    public synchronized long getSavedMillis() {
+        return misses == 0 ? 0 : hits * missNanos / misses / 1000000;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+}
@@ -0,0 +1,95 @@
+package data.extraction;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the throughput of extracting texts by parsing each file and by scanning its tokens,
+ * and counts the files for which both ways extract different texts. Files are read in memory
+ * before measuring, so that only the extraction is timed.
+ * <p>
+ * Usage: {@code ExtractionModeComparisonMain <source folder>... [-r rounds]}
+ */
+public class ExtractionModeComparisonMain {
+    public static void main(String[] args) throws IOException {
+        int rounds = 3;
+        List<Path> sourceFolders = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-r") && i + 1 < args.length) {
+                rounds = Integer.parseInt(args[++i]);
+            } else {
+                sourceFolders.add(Paths.get(args[i]));
+            }
+        }
+        if (sourceFolders.isEmpty()) {
+            System.err.println("Usage: ExtractionModeComparisonMain <source folder>... " +
+                    "[-r rounds]");
+            return;
+        }
+
+        List<String> sources = new ArrayList<>();
+        long totalChars = 0;
+        for (Path sourceFolder : sourceFolders) {
+            List<Path> files;
+            try (Stream<Path> paths = Files.walk(sourceFolder)) {
+                files = paths.filter(file -> file.toString().endsWith(".java"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String source = FileUtils.readFileToString(file.toFile());
+                sources.add(source);
+                totalChars += source.length();
+            }
+        }
+
+        // Texts extracted in the first round of each mode, to count the differences
+        List<String> astTexts = new ArrayList<>();
+        List<String> scannerTexts = new ArrayList<>();
+        ASTParser parser = ASTParser.newParser(AST.JLS8);
+
+        System.out.println("Mode;Files;Files/s;MB/s");
+        for (int mode = 0; mode < 2; mode++) {
+            // One round as warm up
+            long elapsed = 0;
+            for (int round = 0; round <= rounds; round++) {
+                long startTime = System.nanoTime();
+                for (String source : sources) {
+                    String text = mode == 0 ?
+                            ParallelTextExtractor.extractText(source, parser) :
+                            String.join(" ", JavaSourceTextExtractor.scanTexts(source));
+                    if (round == 0) {
+                        (mode == 0 ? astTexts : scannerTexts).add(text);
+                    }
+                }
+                if (round > 0) {
+                    elapsed += System.nanoTime() - startTime;
+                }
+            }
+
+            double seconds = elapsed / 1e9;
+            System.out.println(String.format("%s;%d;%.1f;%.2f", mode == 0 ? "AST" : "Scanner",
+                    sources.size(), rounds * sources.size() / seconds,
+                    rounds * totalChars / seconds / (1024 * 1024)));
+        }
+
+        int differentFiles = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            if (!astTexts.get(i).equals(scannerTexts.get(i))) {
+                differentFiles++;
+            }
+        }
+        System.out.println(String.format("Files with different texts: %d of %d",
+                differentFiles, sources.size()));
+    }
+}
@@ -1,5 +1,10 @@
 package data.extraction;
 
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.IScanner;
+import org.eclipse.jdt.core.compiler.ITerminalSymbols;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
 import org.eclipse.jdt.core.dom.*;
 
 import java.util.ArrayList;
@@ -7,6 +12,9 @@ import java.util.List;
 
 /**
  * Extracts textual information from .java source files.
+ * <p>
+ * Used as a visitor it gathers the texts from a parsed compilation unit. {@link #scanTexts}
+ * gathers the same texts from the tokens of the source, without building an AST.
  */
 public class JavaSourceTextExtractor extends ASTVisitor {
     private final String sourceString;
@@ -69,4 +77,86 @@ public class JavaSourceTextExtractor extends ASTVisitor {
         extractedTexts.add(node.getIdentifier());
         return super.visit(node);
     }
+
+    /**
+     * Extracts the same texts as visiting the compilation unit with a scanner: comments except
+     * Javadoc, then identifiers and string literals outside package and import declarations.
+     * The scanner uses the same source level as {@link ASTParser} by default. Files with syntax
+     * errors may differ, since the parser drops the parts of the source it can't recover.
+     */
+    public static List<String> scanTexts(String sourceString) {
+        IScanner scanner = ToolFactory.createScanner(true, false, false,
+                JavaCore.getOption(JavaCore.COMPILER_SOURCE),
+                JavaCore.getOption(JavaCore.COMPILER_COMPLIANCE));
+        scanner.setSource(sourceString.toCharArray());
+
+        List<String> comments = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        boolean inDeclaration = false;
+        while (true) {
+            int token;
+            int position = scanner.getCurrentTokenEndPosition();
+            try {
+                token = scanner.getNextToken();
+            } catch (InvalidInputException e) {
+                if (scanner.getCurrentTokenEndPosition() <= position) {
+                    break;
+                }
+                continue;
+            }
+
+            if (token == ITerminalSymbols.TokenNameEOF) {
+                break;
+            }
+
+            switch (token) {
+                case ITerminalSymbols.TokenNameCOMMENT_LINE:
+                    comments.add(stripLineSeparator(
+                            new String(scanner.getCurrentTokenSource()).substring(2)));
+                    break;
+                case ITerminalSymbols.TokenNameCOMMENT_BLOCK:
+                    String commentText = new String(scanner.getCurrentTokenSource());
+                    comments.add(commentText.substring(2, commentText.length() - 2)
+                            .replace('\n', ' '));
+                    break;
+                case ITerminalSymbols.TokenNamepackage:
+                    // Anything before the package declaration are its annotations
+                    names.clear();
+                    inDeclaration = true;
+                    break;
+                case ITerminalSymbols.TokenNameimport:
+                    inDeclaration = true;
+                    break;
+                case ITerminalSymbols.TokenNameSEMICOLON:
+                    inDeclaration = false;
+                    break;
+                case ITerminalSymbols.TokenNameIdentifier:
+                    if (!inDeclaration) {
+                        names.add(new String(scanner.getCurrentTokenSource()));
+                    }
+                    break;
+                case ITerminalSymbols.TokenNameStringLiteral:
+                    if (!inDeclaration) {
+                        // The scanner already replaces the escape sequences in the token
+                        String literal = new String(scanner.getCurrentTokenSource());
+                        names.add(literal.substring(1, literal.length() - 1));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        comments.addAll(names);
+        return comments;
+    }
+
+    private static String stripLineSeparator(String comment) {
+        int end = comment.length();
+        while (end > 0 && (comment.charAt(end - 1) == '\n' || comment.charAt(end - 1) == '\r')) {
+            end--;
+        }
+
+        return comment.substring(0, end);
+    }
 }
@@ -0,0 +1,229 @@
+package data.extraction;
+
+import com.google.gson.Gson;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Extracts the texts of several systems concurrently. The .java files of all systems are parsed
+ * by a shared pool of workers, and the texts of each system are passed in path order through a
+ * bounded queue to the single thread that writes its output file, so the output is the same as
+ * the one of a sequential extraction sorted by path.
+ */
+public class ParallelTextExtractor {
+    private final int threads;
+    private final int queueCapacity;
+    private final ThreadLocal<ASTParser> parsers =
+            ThreadLocal.withInitial(() -> ASTParser.newParser(AST.JLS8));
+    private final AtomicLong extractedFiles = new AtomicLong();
+    private ExtractionCache cache = null;
+    private boolean useScanner = false;
+
+    /**
+     * @param threads       Amount of workers parsing files.
+     * @param queueCapacity Maximum amount of files of a system whose text may be pending to be
+     *                      written, which bounds the memory used by the extraction.
+     */
+    public ParallelTextExtractor(int threads, int queueCapacity) {
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param cache Cache of previously extracted texts, files whose contents are in it aren't
+     *              parsed again. May be {@code null} to parse every file.
+     */
+    public void setCache(ExtractionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param useScanner Whether to extract the texts with {@link JavaSourceTextExtractor#scanTexts}
+     *                   instead of parsing each file.
+     */
+    public void setUseScanner(boolean useScanner) {
+        this.useScanner = useScanner;
+    }
+
+    /**
+     * Extracts the texts of every system to a JSON lines file named after it in the output
+     * folder, replacing the file if it exists.
+     *
+     * @param systemRoots Root folder of each system, by system name.
+     */
+    public void extract(Map<String, String> systemRoots, Path outputFolder)
+            throws IOException, InterruptedException {
+        FileUtils.forceMkdir(outputFolder.toFile());
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ExecutorService systemThreads = Executors.newCachedThreadPool();
+        long startTime = System.currentTimeMillis();
+
+        try {
+            List<Future<?>> systems = new ArrayList<>();
+            systemRoots.forEach((systemName, pathString) -> systems.add(systemThreads.submit(
+                    () -> extractSystem(systemName, pathString,
+                            outputFolder.resolve(systemName + ".json"), workers))));
+
+            for (Future<?> system : systems) {
+                try {
+                    system.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+            systemThreads.shutdownNow();
+        }
+
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        System.out.println(String.format("Extracted %d files in %d ms (%.1f files/s)",
+                extractedFiles.get(), elapsed, extractedFiles.get() * 1000.0 / elapsed));
+        if (cache != null) {
+            System.out.println(String.format("Extraction cache: %d hits, %d misses " +
+                            "(%.1f%% hit rate), about %d ms of parsing saved, %d bytes used",
+                    cache.getHits(), cache.getMisses(), 100 * cache.getHitRate(),
+                    cache.getSavedMillis(), cache.getUsedBytes()));
+        }
+    }
+
+    private Void extractSystem(String systemName, String pathString, Path outputFile,
+                               ExecutorService workers) throws Exception {
+        long startTime = System.currentTimeMillis();
+        List<Path> sourceFiles;
+        try (Stream<Path> files = Files.walk(Paths.get(pathString))) {
+            sourceFiles = files
+                    .filter(file -> file.toString().endsWith(".java") && Files.isRegularFile(file))
+                    .sorted(Comparator.comparing(Path::toString))
+                    .collect(Collectors.toList());
+        }
+
+        // Texts are queued in path order as soon as their extraction is submitted, the queue
+        // blocks the submission when the writer falls behind
+        BlockingQueue<Future<String>> pendingTexts = new ArrayBlockingQueue<>(queueCapacity);
+        Future<String> endOfFiles = CompletableFuture.completedFuture(null);
+        Gson gson = new Gson();
+        FutureTask<Integer> writer = new FutureTask<>(() -> {
+            int written = 0;
+            try (BufferedWriter bufferedWriter =
+                         Files.newBufferedWriter(outputFile, Charset.defaultCharset())) {
+                Future<String> pendingText;
+                while ((pendingText = pendingTexts.take()) != endOfFiles) {
+                    String sourceText = pendingText.get();
+                    if (sourceText == null) {
+                        continue;
+                    }
+                    bufferedWriter.write(sourceText);
+                    bufferedWriter.write('\n');
+                    written++;
+                }
+            }
+            return written;
+        });
+        Thread writerThread = new Thread(writer, systemName + "-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        for (Path file : sourceFiles) {
+            FutureTask<String> task = new FutureTask<>(() -> {
+                try {
+                    Map<String, String> json = new HashMap<>();
+                    json.put("file_path", file.toString().replace(pathString, ""));
+                    json.put("text", extractText(Files.readAllBytes(file)));
+                    return gson.toJson(json);
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Could not extract the text of " + file);
+                    e.printStackTrace();
+                    return null;
+                }
+            });
+            enqueue(pendingTexts, task, writer);
+            workers.execute(task);
+        }
+        enqueue(pendingTexts, endOfFiles, writer);
+
+        int written = writer.get();
+        extractedFiles.addAndGet(written);
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        System.out.println(String.format("Extracted %d files of system %s in %d ms " +
+                "(%.1f files/s)", written, systemName, elapsed, written * 1000.0 / elapsed));
+
+        return null;
+    }
+
+    private String extractText(byte[] sourceContents) throws IOException {
+        String key = null;
+        if (cache != null) {
+            key = ExtractionCache.getKey(useScanner ? "scanner" : "ast", sourceContents);
+            String cachedText = cache.get(key);
+            if (cachedText != null) {
+                return cachedText;
+            }
+        }
+
+        long startTime = System.nanoTime();
+        String sourceString = new String(sourceContents, Charset.defaultCharset());
+        String text = useScanner ?
+                String.join(" ", JavaSourceTextExtractor.scanTexts(sourceString)) :
+                extractText(sourceString, parsers.get());
+        if (cache != null) {
+            cache.put(key, text, System.nanoTime() - startTime);
+        }
+
+        return text;
+    }
+
+    /**
+     * Waits for space in the queue, failing if the writer stopped and therefore will never take
+     * anything from it.
+     */
+    private static void enqueue(BlockingQueue<Future<String>> pendingTexts, Future<String> text,
+                                Future<Integer> writer) throws Exception {
+        while (!pendingTexts.offer(text, 100, TimeUnit.MILLISECONDS)) {
+            if (writer.isDone()) {
+                writer.get();
+                throw new IllegalStateException("The writer stopped before the end of the files");
+            }
+        }
+    }
+
+    /**
+     * @return The texts of a source file extracted by a {@link JavaSourceTextExtractor}, joined
+     * with spaces.
+     */
+    public static String extractText(String sourceString) {
+        return extractText(sourceString, ASTParser.newParser(AST.JLS8));
+    }
+
+    /**
+     * Same as {@link #extractText(String)} reusing a parser, whose state is reset after each
+     * parse.
+     */
+    static String extractText(String sourceString, ASTParser parser) {
+        parser.setSource(sourceString.toCharArray());
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+
+        // Parse file contents
+        CompilationUnit compilationUnit = (CompilationUnit) parser.createAST(null);
+
+        // Extract textual information from AST
+        JavaSourceTextExtractor extractor = new JavaSourceTextExtractor(sourceString);
+        compilationUnit.accept(extractor);
+
+        return String.join(" ", extractor.getExtractedTexts());
+    }
+}
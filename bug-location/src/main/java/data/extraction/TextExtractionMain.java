@@ -1,20 +1,14 @@
 package data.extraction;
 
-import com.google.gson.Gson;
-import org.apache.commons.io.FileUtils;
-import org.eclipse.jdt.core.dom.AST;
-import org.eclipse.jdt.core.dom.ASTParser;
-import org.eclipse.jdt.core.dom.CompilationUnit;
-
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.*;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Extracts texts from the software systems present in the file system.
+ * Extracts texts from the software systems present in the file system. Every system is
+ * extracted concurrently, see {@link ParallelTextExtractor}.
  */
 public class TextExtractionMain {
     private static final Map<String, String> systemRoot = new HashMap<>();
@@ -37,80 +31,12 @@ public class TextExtractionMain {
         systemRoot.put("aspectj-1.5.3", "/home/juan/Source/aspectj-1.5.3/");
     }
 
-    public static void main(String[] args) {
-        systemRoot.forEach((systemName, pathString) -> {
-            Path startPath = Paths.get(pathString);
-            File outputFile =
-                    new File(".." + File.separator + "data" + File.separator + "raw-source" +
-                            File.separator + systemName + ".json");
-            Gson gson = new Gson();
-            try {
-                Files.walkFileTree(startPath, new FileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult preVisitDirectory(
-                            Path dir, BasicFileAttributes attrs) throws IOException {
-//                         Ignore test directories
-//                        if (dir.endsWith("src/test")) {
-//                            System.out.println("Ignoring test directory: " + dir.toString());
-//                            return FileVisitResult.SKIP_SUBTREE;
-//                        } else {
-//                            return FileVisitResult.CONTINUE;
-//                        }
-
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    @Override
-                    public FileVisitResult visitFile(
-                            Path file, BasicFileAttributes attrs) throws IOException {
-
-                        // If this is not a .java file, ignore
-                        if (!file.toString().endsWith(".java")) {
-                            return FileVisitResult.CONTINUE;
-                        }
-
-                        // Load source file contents
-                        String sourceString = FileUtils.readFileToString(file.toFile());
-
-                        // Create a parser
-                        ASTParser parser = ASTParser.newParser(AST.JLS8);
-                        parser.setSource(sourceString.toCharArray());
-                        parser.setKind(ASTParser.K_COMPILATION_UNIT);
-
-                        // Parse file contents
-                        CompilationUnit compilationUnit = (CompilationUnit) parser.createAST(null);
-
-                        // Extract textual information from AST
-                        JavaSourceTextExtractor extractor =
-                                new JavaSourceTextExtractor(sourceString);
-                        compilationUnit.accept(extractor);
-
-                        String sourceText = String.join(" ", extractor.getExtractedTexts());
-
-                        Map<String, String> json = new HashMap<>();
-                        json.put("file_path", file.toString().replace(pathString, ""));
-                        json.put("text", sourceText);
-
-                        FileUtils.write(outputFile, gson.toJson(json) + "\n", true);
-
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    @Override
-                    public FileVisitResult visitFileFailed(
-                            Path file, IOException exc) throws IOException {
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    @Override
-                    public FileVisitResult postVisitDirectory(
-                            Path dir, IOException exc) throws IOException {
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        });
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path outputFolder = Paths.get("..", "data", "raw-source");
+        int threads = Runtime.getRuntime().availableProcessors();
+        ParallelTextExtractor extractor = new ParallelTextExtractor(threads, 64 * threads);
+        extractor.setCache(new ExtractionCache(
+                Paths.get("..", "data", "extraction-cache"), 1024L * 1024 * 1024));
+        extractor.extract(systemRoot, outputFolder);
     }
 }
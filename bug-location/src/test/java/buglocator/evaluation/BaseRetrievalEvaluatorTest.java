@@ -0,0 +1,145 @@
+package buglocator.evaluation;
+
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.data.SourceFileText;
+import buglocator.indexing.source.code.SourceCodeIndexBuilder;
+import buglocator.retrieval.RetrieverBase.UseField;
+import buglocator.retrieval.data.Deadline;
+import buglocator.retrieval.data.Ranking;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test suite for resuming interrupted evaluations from their checkpoints.
+ */
+public class BaseRetrievalEvaluatorTest {
+    private static final String SYSTEM = "system";
+    private static final String[] WORDS =
+            {"parser", "token", "widget", "layout", "socket", "buffer", "thread", "render"};
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path dataPath;
+    private Path indexPath;
+
+    @Before
+    public void createCorpus() throws IOException {
+        Path root = temporaryFolder.getRoot().toPath();
+        dataPath = root.resolve("data");
+        indexPath = root.resolve("index");
+        Gson gson = new GsonBuilder()
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES).create();
+
+        List<String> sourceFiles = new ArrayList<>();
+        for (int i = 0; i < WORDS.length; i++) {
+            String text = String.join(" ", WORDS[i], WORDS[i], WORDS[(i + 1) % WORDS.length]);
+            sourceFiles.add(gson.toJson(new SourceFileText("src/File" + i + ".java", text)));
+        }
+        Path sourceCodeFile = writeCorpus("processed-source-code", sourceFiles);
+
+        List<String> bugReports = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            bugReports.add(gson.toJson(new BugReport("BUG-" + i, WORDS[i % WORDS.length] + " fails",
+                    WORDS[(i + 3) % WORDS.length], null, null,
+                    Collections.singletonList("src/File" + (i % WORDS.length) + ".java"))));
+        }
+        writeCorpus("processed-bug-reports", bugReports);
+
+        Path sourceIndexPath = indexPath.resolve("source-code").resolve(SYSTEM);
+        Files.createDirectories(sourceIndexPath);
+        new SourceCodeIndexBuilder().buildIndex(sourceCodeFile, sourceIndexPath);
+    }
+
+    @Test
+    public void resumeTest() throws IOException {
+        Path expectedRunFolder = temporaryFolder.newFolder("expected").toPath();
+        BaseRetrievalEvaluator uninterrupted = createEvaluator(expectedRunFolder, -1);
+        EvaluationResult expected = uninterrupted.evaluate();
+
+        Path runFolder = temporaryFolder.newFolder("runs").toPath();
+        try {
+            createEvaluator(runFolder, 7).evaluate();
+            fail("The evaluation wasn't interrupted");
+        } catch (IllegalStateException e) {
+            // Interrupted after saving the checkpoint of the first 7 bug reports
+        }
+
+        // A save interrupted while appending its runs and writing the info
+        Path checkpointPrefix = RunFile.list(runFolder.resolve("checkpoints")).get(0);
+        Files.write(checkpointPrefix.resolveSibling(checkpointPrefix.getFileName() + ".run"),
+                "BUG-7\tQ0\tsrc/File".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        Files.write(checkpointPrefix.resolveSibling(checkpointPrefix.getFileName() + ".info.tmp"),
+                "position=".getBytes(StandardCharsets.UTF_8));
+
+        BaseRetrievalEvaluator resumed = createEvaluator(runFolder, -1);
+        resumed.setResume(true);
+        EvaluationResult actual = resumed.evaluate();
+
+        // Only the queries of the resumed evaluation are timed
+        assertEquals(12 - 7, resumed.getQueryLatencies().length);
+        assertEquals(expected.getCSVLine(), actual.getCSVLine());
+        assertTrue(RunFile.list(runFolder.resolve("checkpoints")).isEmpty());
+
+        Path expectedPrefix = RunFile.list(expectedRunFolder).get(0);
+        Path actualPrefix = RunFile.list(runFolder).get(0);
+        for (String extension : new String[]{".queries", ".run", ".qrels"}) {
+            assertArrayEquals(extension, readRunFile(expectedPrefix, extension),
+                    readRunFile(actualPrefix, extension));
+        }
+    }
+
+    /**
+     * @param failingQuery Query that interrupts the evaluation, -1 to complete it.
+     */
+    private BaseRetrievalEvaluator createEvaluator(Path runFolder, int failingQuery) {
+        BaseRetrievalEvaluator evaluator = new BaselineEvaluator(SYSTEM,
+                UseField.TITLE_AND_DESCRIPTION, indexPath, dataPath) {
+            private int queries = 0;
+
+            @Override
+            protected Ranking[] rank(BugReport bugReport, int maxResults, int[] goldDocs,
+                                     Deadline deadline) throws IOException {
+                if (queries++ == failingQuery) {
+                    throw new IllegalStateException("Interrupted");
+                }
+                return super.rank(bugReport, maxResults, goldDocs, deadline);
+            }
+        };
+        evaluator.setRunFolder(runFolder, 10);
+        evaluator.setCheckpointInterval(0);
+
+        return evaluator;
+    }
+
+    private Path writeCorpus(String folder, List<String> lines) throws IOException {
+        Path file = dataPath.resolve(folder).resolve(SYSTEM + ".json");
+        Files.createDirectories(file.getParent());
+        return Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readRunFile(Path prefix, String extension) throws IOException {
+        return Files.readAllBytes(prefix.resolveSibling(prefix.getFileName() + extension));
+    }
+}
@@ -0,0 +1,115 @@
+package buglocator.evaluation;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test suite for the persisted query runs and the metrics computed from them.
+ */
+public class RunFileTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTripTest() throws IOException {
+        Properties info = new Properties();
+        info.setProperty(RunFile.METHOD, "Baseline (VSM)");
+        info.setProperty(RunFile.DEPTH, "3");
+        Path prefix = temporaryFolder.getRoot().toPath().resolve("system-Baseline");
+        List<QueryRun> runs = new ArrayList<>(createRuns());
+        QueryRun withoutRelevantFiles = new QueryRun("BUG-4", Collections.emptySet());
+        withoutRelevantFiles.addRankedFile("src/Some File.java", 0.4F);
+        runs.add(withoutRelevantFiles);
+        new RunFile(info, runs).write(prefix);
+
+        assertTrue(RunFile.exists(prefix));
+        assertEquals(Collections.singletonList(prefix), RunFile.list(prefix.getParent()));
+
+        RunFile runFile = RunFile.read(prefix);
+        assertEquals("3", runFile.getInfo().getProperty(RunFile.DEPTH));
+        runs = runFile.getRuns();
+        assertEquals(4, runs.size());
+        assertEquals("BUG-2", runs.get(1).getQueryId());
+        assertEquals(Arrays.asList("C.java", "D.java", "B.java"), runs.get(1).getRankedFiles());
+        assertEquals(0.5F, runs.get(1).getScore(1), 0);
+        // Queries without retrieved files are kept
+        assertTrue(runs.get(2).getRankedFiles().isEmpty());
+        // And so are queries without relevant files and paths with spaces
+        assertTrue(runs.get(3).getRelevantFiles().isEmpty());
+        assertEquals(Collections.singletonList("src/Some File.java"),
+                runs.get(3).getRankedFiles());
+    }
+
+    @Test
+    public void checkpointTest() throws IOException {
+        Properties info = new Properties();
+        info.setProperty(RunFile.METHOD, "Baseline (VSM)");
+        Path prefix = temporaryFolder.getRoot().toPath().resolve("checkpoints").resolve("system");
+        Files.createDirectories(prefix.getParent());
+        List<QueryRun> runs = createRuns();
+
+        info.setProperty(RunFile.POSITION, "1");
+        new RunFile(info, runs.subList(0, 1)).appendCheckpoint(prefix);
+        info.setProperty(RunFile.POSITION, "3");
+        new RunFile(info, runs.subList(1, 3)).appendCheckpoint(prefix);
+
+        assertEquals(3, RunFile.getCheckpointPosition(prefix));
+        assertNull(RunFile.readCheckpoint(prefix, 2));
+        // Going back to the previous save discards the runs of the last one
+        RunFile checkpoint = RunFile.readCheckpoint(prefix, 1);
+        assertEquals("1", checkpoint.getInfo().getProperty(RunFile.POSITION));
+        assertEquals(1, checkpoint.getRuns().size());
+        assertEquals("BUG-1", checkpoint.getRuns().get(0).getQueryId());
+        assertEquals(1, RunFile.getCheckpointPosition(prefix));
+
+        info.setProperty(RunFile.POSITION, "2");
+        new RunFile(info, runs.subList(1, 2)).appendCheckpoint(prefix);
+        checkpoint = RunFile.readCheckpoint(prefix, 2);
+        assertEquals(2, checkpoint.getRuns().size());
+        assertEquals(Arrays.asList("C.java", "D.java", "B.java"),
+                checkpoint.getRuns().get(1).getRankedFiles());
+    }
+
+    @Test
+    public void metricsTest() {
+        RankingMetrics metrics = new RankingMetrics(createRuns());
+
+        assertEquals(1 / 3F, metrics.getTopNPrecision(1), 1e-6);
+        assertEquals(2 / 3F, metrics.getTopNPrecision(3), 1e-6);
+        assertEquals((1 + 1 / 3F) / 3, metrics.getMeanReciprocalRank(3), 1e-6);
+        // Only the first file of the second run is considered
+        assertEquals(1 / 3F, metrics.getMeanReciprocalRank(1), 1e-6);
+        assertEquals((1 + (1 / 3F) / 2) / 3, metrics.getMeanAveragePrecision(3), 1e-6);
+        assertEquals((1 + 1 / 2F) / 3, metrics.getAverageRecall(3), 1e-6);
+    }
+
+    private static List<QueryRun> createRuns() {
+        QueryRun first = new QueryRun("BUG-1", Collections.singleton("A.java"));
+        first.addRankedFile("A.java", 0.9F);
+        first.addRankedFile("B.java", 0.1F);
+
+        QueryRun second = new QueryRun("BUG-2", new HashSet<>(Arrays.asList("B.java", "E.java")));
+        second.addRankedFile("C.java", 0.7F);
+        second.addRankedFile("D.java", 0.5F);
+        second.addRankedFile("B.java", 0.2F);
+
+        QueryRun third = new QueryRun("BUG-3", Collections.singleton("A.java"));
+
+        return Arrays.asList(first, second, third);
+    }
+}
@@ -0,0 +1,50 @@
+package buglocator.indexing.analysis;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test suite for the preprocessing analyzer, against titles of the bundled bug reports as they
+ * were processed by the Python scripts.
+ */
+public class PreprocessingAnalyzerTest {
+    private final PreprocessingAnalyzer analyzer = new PreprocessingAnalyzer();
+
+    @Test
+    public void bundledTitlesTest() {
+        assertEquals("opendocu open document odf parser produc multipl startdocu start " +
+                        "document event",
+                analyzer.preprocess("OpenDocument (ODF) parser produces multiple " +
+                        "startDocument() events"));
+        assertEquals("unnecessarili instancenotfoundexcept instanc found come unregist fail " +
+                        "jmxbean",
+                analyzer.preprocess("Unnecessarily InstanceNotFoundException is coming when " +
+                        "unregister failed jmxbeans"));
+        assertEquals("concurrenthashmap concurr hash map isn't properli quorumcnxmanag quorum " +
+                        "cnx manag",
+                analyzer.preprocess("ConcurrentHashMap isn't properly used in " +
+                        "QuorumCnxManager"));
+    }
+
+    @Test
+    public void numericAndShortTokensTest() {
+        assertEquals(Arrays.asList("log4j", "utf8"),
+                analyzer.tokenize("at 12 x1 1a2b3 log4j utf8 v12"));
+    }
+
+    @Test
+    public void nltkStemmerDeparturesTest() {
+        NltkPorterStemmer stemmer = new NltkPorterStemmer();
+        assertEquals("die", stemmer.stem("dying"));
+        assertEquals("fli", stemmer.stem("flies"));
+        assertEquals("die", stemmer.stem("dies"));
+        assertEquals("enjoy", stemmer.stem("enjoy"));
+        assertEquals("happi", stemmer.stem("happy"));
+        assertEquals("conform", stemmer.stem("conformably"));
+        assertEquals("analog", stemmer.stem("analogi"));
+        assertEquals("gener", stemmer.stem("generalization"));
+    }
+}
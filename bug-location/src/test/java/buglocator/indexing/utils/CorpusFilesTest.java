@@ -0,0 +1,125 @@
+package buglocator.indexing.utils;
+
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.data.SourceFileText;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test suite for reading corpus files in every format.
+ */
+public class CorpusFilesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void compressedSameLinesTest() throws IOException {
+        // Spans several chunks of the decompression thread
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            lines.add("{\"key\": \"BUG-" + i + "\", \"title\": \"null pointer \u00fcn\u00efcode\"}");
+        }
+
+        Path file = folder.getRoot().toPath().resolve("system" + CorpusFiles.EXTENSION);
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        Path compressedFile = writeCompressed(file, "system" + CorpusFiles.COMPRESSED_EXTENSION);
+
+        assertTrue(CorpusFiles.isCompressed(compressedFile));
+        assertFalse(CorpusFiles.isCompressed(file));
+        assertEquals(lines, CorpusFiles.readLines(file));
+        assertEquals(lines, CorpusFiles.readLines(compressedFile));
+    }
+
+    @Test
+    public void magicBytesTest() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("plain.txt");
+        Files.write(file, "first\nsecond".getBytes(StandardCharsets.UTF_8));
+        Path compressedFile = writeCompressed(file, "compressed" + CorpusFiles.EXTENSION);
+
+        assertTrue(CorpusFiles.isCompressed(compressedFile));
+        assertEquals(CorpusFiles.readLines(file), CorpusFiles.readLines(compressedFile));
+    }
+
+    @Test
+    public void resolveTest() throws IOException {
+        Path root = folder.getRoot().toPath();
+        assertEquals(root.resolve("a.json"), CorpusFiles.resolve(root, "a"));
+
+        Files.createFile(root.resolve("a.json.gz"));
+        assertEquals(root.resolve("a.json.gz"), CorpusFiles.resolve(root, "a"));
+        assertEquals("a", CorpusFiles.getSystem(root.resolve("a.json.gz")));
+
+        Files.createFile(root.resolve("a.json"));
+        assertEquals(root.resolve("a.json"), CorpusFiles.resolve(root, "a"));
+
+        Path binaryFile = Files.createFile(root.resolve("a.bin"));
+        assertEquals(binaryFile, CorpusFiles.resolve(root, "a"));
+        Files.setLastModifiedTime(binaryFile, FileTime.fromMillis(
+                Files.getLastModifiedTime(root.resolve("a.json")).toMillis() - 1000));
+        assertEquals(root.resolve("a.json"), CorpusFiles.resolve(root, "a"));
+    }
+
+    @Test
+    public void binarySameItemsTest() throws IOException {
+        List<BugReport> bugReports = Arrays.asList(
+                new BugReport("BUG-1", "null pointer  except", "", new DateTime(1000L),
+                        new DateTime(2000L), Arrays.asList("a/b.java", "a/c.java")),
+                new BugReport("BUG-2", " except ", null, new DateTime(3000L), null,
+                        Collections.emptyList()));
+        Path root = folder.getRoot().toPath();
+        Path binaryFile = root.resolve("bugs" + CorpusFiles.BINARY_EXTENSION);
+        BinaryCorpus.write(bugReports, BugReport.class, binaryFile);
+
+        List<BugReport> read = CorpusFiles.readAll(binaryFile, BugReport.class);
+        assertEquals(bugReports.size(), read.size());
+        for (int i = 0; i < read.size(); i++) {
+            BugReport expected = bugReports.get(i);
+            BugReport actual = read.get(i);
+            assertEquals(expected.getKey(), actual.getKey());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getDescription(), actual.getDescription());
+            assertEquals(expected.getCreationDate(), actual.getCreationDate());
+            assertEquals(expected.getResolutionDate(), actual.getResolutionDate());
+            assertEquals(expected.getFixedFiles(), actual.getFixedFiles());
+        }
+
+        Path sourceFile = root.resolve("source" + CorpusFiles.EXTENSION);
+        Files.write(sourceFile, Arrays.asList(
+                "{\"file_path\": \"a/b.java\", \"text\": \"get get set\"}",
+                "{\"file_path\": \"a/c.java\", \"text\": \"set\"}"), StandardCharsets.UTF_8);
+        Path binarySourceFile = root.resolve("source" + CorpusFiles.BINARY_EXTENSION);
+        assertEquals(2, BinaryCorpus.convert(sourceFile, binarySourceFile, SourceFileText.class));
+        List<SourceFileText> sourceFiles =
+                CorpusFiles.readAll(binarySourceFile, SourceFileText.class);
+        assertEquals("a/b.java", sourceFiles.get(0).getFilePath());
+        assertEquals("get get set", sourceFiles.get(0).getText());
+        assertEquals("set", sourceFiles.get(1).getText());
+    }
+
+    private Path writeCompressed(Path file, String fileName) throws IOException {
+        Path compressedFile = file.resolveSibling(fileName);
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(compressedFile))) {
+            Files.copy(file, output);
+        }
+
+        return compressedFile;
+    }
+}
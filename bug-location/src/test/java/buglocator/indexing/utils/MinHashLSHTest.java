@@ -0,0 +1,53 @@
+package buglocator.indexing.utils;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test suite for the MinHash signatures and LSH buckets.
+ */
+public class MinHashLSHTest {
+    @Test
+    public void sameTermSetSameBucketsTest() {
+        MinHashLSH lsh = new MinHashLSH();
+        assertEquals(lsh.buckets("null pointer except thrown"),
+                lsh.buckets("  except thrown null pointer pointer"));
+    }
+
+    @Test
+    public void deterministicAcrossInstancesTest() {
+        assertArrayEquals(new MinHashLSH(8, 2).signature("file open fail"),
+                new MinHashLSH(8, 2).signature("file open fail"));
+    }
+
+    @Test
+    public void oneBucketPerBandTest() {
+        assertEquals(16, new MinHashLSH(16, 4).buckets("index writer lock").size());
+        assertTrue(new MinHashLSH().buckets("  ").isEmpty());
+    }
+
+    @Test
+    public void similarTextsShareMoreBucketsTest() {
+        MinHashLSH lsh = new MinHashLSH();
+        String text = "search index writer lock obtain fail timeout segment merg thread";
+        String similar = "search index writer lock obtain fail timeout segment merg schedul";
+        String unrelated = "widget button layout paint shell display color font dialog menu";
+
+        assertTrue(sharedBuckets(lsh, text, similar) > sharedBuckets(lsh, text, unrelated));
+    }
+
+    private int sharedBuckets(MinHashLSH lsh, String text, String other) {
+        Set<String> buckets = new HashSet<>(lsh.buckets(text));
+        List<String> otherBuckets = lsh.buckets(other);
+        otherBuckets.retainAll(buckets);
+
+        return otherBuckets.size();
+    }
+}
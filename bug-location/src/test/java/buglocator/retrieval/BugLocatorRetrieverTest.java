@@ -0,0 +1,184 @@
+package buglocator.retrieval;
+
+import buglocator.indexing.bug.reports.BugReportIndexBuilder;
+import buglocator.indexing.data.BugReport;
+import buglocator.indexing.source.code.SourceCodeIndexBuilder;
+import buglocator.retrieval.BugLocatorRetriever.IncrementalQuery;
+import buglocator.retrieval.RetrieverBase.UseField;
+import buglocator.retrieval.data.Ranking;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.FSDirectory;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test suite for rescoring the versions of a bug report incrementally.
+ */
+public class BugLocatorRetrieverTest {
+    private static final String[] SOURCE_TEXTS = {
+            "parser token token stream",
+            "parser parser grammar",
+            "widget layout layout paint",
+            "widget event listener",
+            "socket buffer stream",
+            "buffer buffer token parser",
+            "layout paint paint widget event",
+            "thread socket listener"};
+    private static final String[] PAST_BUG_TEXTS = {
+            "parser token error",
+            "widget layout broken",
+            "socket stream closed",
+            "event listener leak",
+            "buffer token overflow",
+            "paint widget flicker"};
+    private static final int DEPTH = 5;
+    private static final int[] TRACKED_DOCS = {1, 4, 7};
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private IndexSearcher sourceSearcher;
+    private IndexSearcher bugReportSearcher;
+    private int[] extrema;
+    private BugLocatorRetriever retriever;
+    private final List<BugReport> pastBugReports = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        Path root = temporaryFolder.getRoot().toPath();
+
+        List<String> sourceFiles = new ArrayList<>();
+        for (int i = 0; i < SOURCE_TEXTS.length; i++) {
+            sourceFiles.add(String.format("{\"file_path\": \"src/File%d.java\", \"text\": \"%s\"}",
+                    i, SOURCE_TEXTS[i]));
+        }
+        List<String> bugReports = new ArrayList<>();
+        for (int i = 0; i < PAST_BUG_TEXTS.length; i++) {
+            String[] words = PAST_BUG_TEXTS[i].split(" ");
+            BugReport bugReport = new BugReport("BUG-" + i, words[0], words[1] + " " + words[2],
+                    new DateTime(2010, 1, i + 1, 0, 0), new DateTime(2010, 2, i + 1, 0, 0),
+                    Arrays.asList("src/File" + i + ".java", "src/File" + (i + 2) + ".java"));
+            pastBugReports.add(bugReport);
+            bugReports.add(String.format("{\"key\": \"%s\", \"title\": \"%s\", " +
+                            "\"description\": \"%s\", " +
+                            "\"creation_date\": \"2010-01-%02d 00:00:00\", " +
+                            "\"resolution_date\": \"2010-02-%02d 00:00:00\", " +
+                            "\"fixed_files\": [\"%s\"]}",
+                    bugReport.getKey(), bugReport.getTitle(), bugReport.getDescription(), i + 1,
+                    i + 1, String.join("\", \"", bugReport.getFixedFiles())));
+        }
+
+        Path sourceIndexPath = root.resolve("source-code");
+        Path bugReportIndexPath = root.resolve("bug-reports");
+        Files.createDirectories(sourceIndexPath);
+        Files.createDirectories(bugReportIndexPath);
+        new SourceCodeIndexBuilder().buildIndex(
+                Files.write(root.resolve("source.json"), sourceFiles, StandardCharsets.UTF_8),
+                sourceIndexPath);
+        new BugReportIndexBuilder().buildIndex(
+                Files.write(root.resolve("bugs.json"), bugReports, StandardCharsets.UTF_8),
+                bugReportIndexPath);
+
+        sourceSearcher = new IndexSearcher(DirectoryReader.open(FSDirectory.open(sourceIndexPath)));
+        bugReportSearcher =
+                new IndexSearcher(DirectoryReader.open(FSDirectory.open(bugReportIndexPath)));
+        extrema = Files.readAllLines(sourceIndexPath.resolve("stats.txt")).stream()
+                .mapToInt(Integer::parseInt).toArray();
+        retriever = new BugLocatorRetriever(UseField.TITLE_AND_DESCRIPTION, sourceSearcher,
+                bugReportSearcher, 0.3F, extrema[0], extrema[1]);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sourceSearcher.getIndexReader().close();
+        bugReportSearcher.getIndexReader().close();
+    }
+
+    @Test
+    public void incrementalRescoringTest() throws IOException {
+        retriever.enableBugHistory();
+        for (BugReport pastBugReport : pastBugReports.subList(0, 3)) {
+            retriever.addToBugHistory(pastBugReport);
+        }
+
+        BugReport bugReport = new BugReport("BUG-NEW", "parser", "",
+                new DateTime(2010, 3, 1, 0, 0), null, Collections.emptyList());
+        IncrementalQuery query = retriever.openIncrementalQuery(bugReport);
+
+        assertSameRanking(bugReport, query);
+        // Added terms
+        assertSameRanking(bugReport.withTexts("parser", "token widget"), query);
+        // Changed frequencies
+        assertSameRanking(bugReport.withTexts("parser", "token token widget"), query);
+        // Removed and added terms
+        assertSameRanking(bugReport.withTexts("parser", "token layout paint"), query);
+
+        // A resolution between two edits
+        retriever.addToBugHistory(pastBugReports.get(5));
+        assertSameRanking(bugReport.withTexts("parser", "token layout paint paint"), query);
+        assertSameRanking(bugReport.withTexts("parser", "layout paint socket"), query);
+        // Every term of the description removed
+        assertSameRanking(bugReport.withTexts("parser", ""), query);
+    }
+
+    @Test
+    public void snapshotTest() throws IOException {
+        BugReport bugReport = new BugReport("BUG-NEW", "parser token", "widget layout",
+                new DateTime(2010, 3, 1, 0, 0), null, Collections.emptyList());
+        retriever.warmUp();
+        retriever.saveSnapshot();
+        Ranking expected = retriever.rank(bugReport, DEPTH, TRACKED_DOCS);
+
+        BugLocatorRetriever loaded = new BugLocatorRetriever(UseField.TITLE_AND_DESCRIPTION,
+                sourceSearcher, bugReportSearcher, 0.3F, extrema[0], extrema[1]);
+        assertTrue(loaded.loadSnapshot());
+        assertSameRanking(expected, loaded.rank(bugReport, DEPTH, TRACKED_DOCS));
+    }
+
+    /**
+     * Rescores the version and checks that it gets exactly the ranking of ranking it from
+     * scratch.
+     */
+    private void assertSameRanking(BugReport version, IncrementalQuery query) throws IOException {
+        assertSameRanking(retriever.rank(version, DEPTH, TRACKED_DOCS),
+                query.rescore(version, DEPTH, TRACKED_DOCS));
+    }
+
+    private static void assertSameRanking(Ranking expected, Ranking actual) {
+        assertNotNull(expected);
+        assertNotNull(actual);
+
+        assertEquals(expected.getScoredDocs(), actual.getScoredDocs());
+        ScoreDoc[] expectedDocs = expected.getTopDocs();
+        ScoreDoc[] actualDocs = actual.getTopDocs();
+        assertTrue(expectedDocs.length > 0);
+        assertEquals(expectedDocs.length, actualDocs.length);
+        for (int i = 0; i < expectedDocs.length; i++) {
+            assertEquals(expectedDocs[i].doc, actualDocs[i].doc);
+            assertEquals(Float.floatToIntBits(expectedDocs[i].score),
+                    Float.floatToIntBits(actualDocs[i].score));
+        }
+        for (int doc : TRACKED_DOCS) {
+            assertEquals(expected.getRank(doc), actual.getRank(doc));
+        }
+    }
+}
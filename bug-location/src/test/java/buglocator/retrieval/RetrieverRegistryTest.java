@@ -0,0 +1,110 @@
+package buglocator.retrieval;
+
+import buglocator.indexing.data.BugReport;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test suite for the memory-bounded retriever registry.
+ */
+public class RetrieverRegistryTest {
+    private IndexSearcher emptySearcher;
+
+    @Before
+    public void setUp() throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer())).close();
+        emptySearcher = new IndexSearcher(DirectoryReader.open(directory));
+    }
+
+    @Test
+    public void hitsWithinBudgetTest() throws IOException {
+        RetrieverRegistry registry = new RetrieverRegistry(1000);
+        registry.register("a", () -> new FixedSizeRetriever(400));
+        registry.register("b", () -> new FixedSizeRetriever(400));
+
+        registry.locate("a", null, 10);
+        registry.locate("b", null, 10);
+        registry.locate("a", null, 10);
+
+        assertEquals(800, registry.getUsedBytes());
+        assertEquals(1, registry.getStats("a").getHits());
+        assertEquals(0, registry.getStats("b").getEvictions());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedTest() throws IOException {
+        RetrieverRegistry registry = new RetrieverRegistry(1000);
+        registry.register("a", () -> new FixedSizeRetriever(400));
+        registry.register("b", () -> new FixedSizeRetriever(400));
+        registry.register("c", () -> new FixedSizeRetriever(400));
+
+        registry.locate("a", null, 10);
+        registry.locate("b", null, 10);
+        registry.locate("c", null, 10);
+
+        assertEquals(1, registry.getStats("a").getEvictions());
+        assertEquals(0, registry.getStats("b").getEvictions());
+        assertEquals(800, registry.getUsedBytes());
+
+        // Querying the evicted system again reloads it and evicts the next one in line
+        registry.locate("a", null, 10);
+
+        assertEquals(1, registry.getStats("a").getReloads());
+        assertEquals(1, registry.getStats("b").getEvictions());
+        assertEquals(800, registry.getUsedBytes());
+    }
+
+    @Test
+    public void mostRecentlyUsedIsKeptTest() throws IOException {
+        RetrieverRegistry registry = new RetrieverRegistry(100);
+        registry.register("a", () -> new FixedSizeRetriever(400));
+
+        registry.locate("a", null, 10);
+        registry.locate("a", null, 10);
+
+        assertEquals(0, registry.getStats("a").getEvictions());
+        assertEquals(1, registry.getStats("a").getHits());
+        assertEquals(400, registry.getUsedBytes());
+    }
+
+    /**
+     * Retriever that pretends to hold a fixed amount of derived state after every query.
+     */
+    private class FixedSizeRetriever extends RetrieverBase {
+        private final long size;
+        private long currentSize = 0;
+
+        private FixedSizeRetriever(long size) {
+            super(UseField.TITLE, emptySearcher);
+            this.size = size;
+        }
+
+        @Override
+        public ScoreDoc[] locate(BugReport bugReport, int maxResults) {
+            currentSize = size;
+            return new ScoreDoc[0];
+        }
+
+        @Override
+        public long getDerivedStateBytes() {
+            return currentSize;
+        }
+
+        @Override
+        public void releaseDerivedState() {
+            currentSize = 0;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package buglocator.retrieval.data;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test suite for the growth and filtering of the bug history.
+ */
+public class BugHistoryTest {
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+
+    @Before
+    public void setUp() throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer =
+                     new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            for (String key : new String[]{"BUG-1", "BUG-2", "BUG-3"}) {
+                Document document = new Document();
+                document.add(new StringField("key", key, Field.Store.YES));
+                writer.addDocument(document);
+                // One segment per bug report
+                writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        searcher = new IndexSearcher(reader);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+    }
+
+    @Test
+    public void filterTest() throws IOException {
+        BugHistory history = new BugHistory(reader);
+        assertEquals(0, searcher.count(filtered(history)));
+
+        assertTrue(history.add("BUG-3"));
+        assertTrue(history.add("BUG-1"));
+        assertFalse(history.add("BUG-4"));
+        assertTrue(history.add("BUG-1"));
+        assertEquals(2, history.size());
+
+        Query query = filtered(history);
+        assertEquals(2, searcher.count(query));
+
+        // The filter of a query sees the bug reports added after it was created
+        history.add("BUG-2");
+        assertEquals(3, searcher.count(query));
+    }
+
+    private static Query filtered(BugHistory history) {
+        BooleanQuery query = new BooleanQuery();
+        query.add(new BooleanClause(new MatchAllDocsQuery(), BooleanClause.Occur.MUST));
+        query.add(new BooleanClause(history.createFilter(), BooleanClause.Occur.FILTER));
+        return query;
+    }
+}
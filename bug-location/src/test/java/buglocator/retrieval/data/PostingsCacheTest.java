@@ -0,0 +1,138 @@
+package buglocator.retrieval.data;
+
+import buglocator.retrieval.data.PostingsCache.DecodedPostings;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Test suite for the decoding, eviction and invalidation of cached postings.
+ */
+public class PostingsCacheTest {
+    private DirectoryReader reader;
+    private LeafReader leaf;
+
+    @Before
+    public void setUp() throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer =
+                     new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            for (String text : new String[]{"null except", "file", "null null method"}) {
+                Document document = new Document();
+                document.add(new TextField("text", text, Field.Store.NO));
+                writer.addDocument(document);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        leaf = reader.leaves().get(0).reader();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+    }
+
+    @Test
+    public void decodeTest() throws IOException {
+        PostingsCache cache = new PostingsCache(1 << 20);
+        Term term = new Term("text", "null");
+        assertNull(cache.get(leaf, term));
+
+        DecodedPostings postings = cache.decode(leaf, term);
+        assertEquals(2, postings.size());
+        assertEquals(0, postings.getDoc(0));
+        assertEquals(1, postings.getFreq(0));
+        assertEquals(2, postings.getDoc(1));
+        assertEquals(2, postings.getFreq(1));
+        assertEquals(3, postings.getTotalTermFreq());
+        assertEquals(1, postings.advance(0, 1));
+        assertEquals(2, postings.advance(0, 3));
+
+        assertSame(postings, cache.get(leaf, term));
+        assertEquals(0, cache.decode(leaf, new Term("text", "missing")).size());
+        assertEquals(0.5F, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void deletedDocumentsKeptTest() throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer =
+                     new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            for (String text : new String[]{"null except", "file", "null null method"}) {
+                Document document = new Document();
+                document.add(new StringField("id", text, Field.Store.NO));
+                document.add(new TextField("text", text, Field.Store.NO));
+                writer.addDocument(document);
+            }
+            writer.commit();
+            writer.deleteDocuments(new Term("id", "null except"));
+        }
+
+        try (DirectoryReader withDeletions = DirectoryReader.open(directory)) {
+            LeafReader deletionsLeaf = withDeletions.leaves().get(0).reader();
+            assertFalse(deletionsLeaf.getLiveDocs().get(0));
+
+            // The postings are shared by the readers of the segment with any deletions
+            DecodedPostings postings =
+                    new PostingsCache(1 << 20).decode(deletionsLeaf, new Term("text", "null"));
+            assertEquals(2, postings.size());
+            assertEquals(0, postings.getDoc(0));
+            assertEquals(3, postings.getTotalTermFreq());
+            assertEquals(deletionsLeaf.docFreq(new Term("text", "null")), postings.size());
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedEvictedTest() throws IOException {
+        PostingsCache sizing = new PostingsCache(1 << 20);
+        sizing.decode(leaf, new Term("text", "file"));
+        long entryBytes = sizing.estimateBytes() - new PostingsCache(1).estimateBytes();
+
+        // "null" has one more posting than "file", the missing terms one less
+        PostingsCache cache = new PostingsCache(2 * entryBytes);
+        cache.decode(leaf, new Term("text", "file"));
+        cache.decode(leaf, new Term("text", "null"));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        cache.decode(leaf, new Term("text", "file"));
+        cache.decode(leaf, new Term("text", "item"));
+        cache.get(leaf, new Term("text", "file"));
+        cache.decode(leaf, new Term("text", "text"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(leaf, new Term("text", "file")));
+        assertNull(cache.get(leaf, new Term("text", "item")));
+    }
+
+    @Test
+    public void closedReaderEvictedTest() throws IOException {
+        PostingsCache cache = new PostingsCache(1 << 20);
+        cache.decode(leaf, new Term("text", "null"));
+        cache.decode(leaf, new Term("text", "method"));
+        assertEquals(2, cache.size());
+
+        reader.close();
+        assertEquals(0, cache.size());
+        assertEquals(new PostingsCache(1).estimateBytes(), cache.estimateBytes());
+    }
+}
@@ -0,0 +1,78 @@
+package buglocator.retrieval.data;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test suite for the top-k selection and rank finding of rankings.
+ */
+public class RankingTest {
+    @Test
+    public void sameAsStableSortTest() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            // Few distinct scores so that there are many ties
+            ScoreDoc[] scoreDocs = new ScoreDoc[1 + random.nextInt(200)];
+            for (int i = 0; i < scoreDocs.length; i++) {
+                scoreDocs[i] = new ScoreDoc(3 * i + 1, random.nextInt(8) / 8F);
+            }
+            ScoreDoc[] sorted = Arrays.stream(scoreDocs)
+                    .sorted((o1, o2) -> Float.compare(o2.score, o1.score))
+                    .toArray(ScoreDoc[]::new);
+            int[] trackedDocs = {scoreDocs[random.nextInt(scoreDocs.length)].doc,
+                    scoreDocs[scoreDocs.length - 1].doc, 0};
+
+            Ranking ranking = Ranking.of(scoreDocs, 10, trackedDocs);
+
+            ScoreDoc[] topDocs = ranking.getTopDocs();
+            assertEquals(Math.min(10, scoreDocs.length), topDocs.length);
+            for (int i = 0; i < topDocs.length; i++) {
+                assertSame(sorted[i], topDocs[i]);
+            }
+            for (int i = 0; i < sorted.length; i++) {
+                if (sorted[i].doc == trackedDocs[0] || sorted[i].doc == trackedDocs[1]) {
+                    assertEquals(i + 1, ranking.getRank(sorted[i].doc));
+                }
+            }
+            // Not scored
+            assertEquals(0, ranking.getRank(0));
+        }
+    }
+
+    @Test
+    public void ofSortedTest() {
+        ScoreDoc[] sorted = {new ScoreDoc(5, 3), new ScoreDoc(2, 2), new ScoreDoc(9, 1)};
+
+        Ranking ranking = Ranking.ofSorted(sorted, 2, new int[]{9, 7});
+
+        assertEquals(2, ranking.getTopDocs().length);
+        assertEquals(3, ranking.getRank(9));
+        assertEquals(0, ranking.getRank(7));
+        assertEquals(3, ranking.getScoredDocs());
+    }
+
+    @Test
+    public void partialTest() {
+        Ranking ranking = Ranking.of(new ScoreDoc[]{new ScoreDoc(4, 1), new ScoreDoc(6, 2)}, 1,
+                new int[]{4});
+        Ranking partial = ranking.asPartial();
+
+        assertFalse(ranking.isPartial());
+        assertTrue(partial.isPartial());
+        assertSame(ranking.getTopDocs(), partial.getTopDocs());
+        assertEquals(2, partial.getRank(4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void untrackedDocumentTest() {
+        Ranking.of(new ScoreDoc[]{new ScoreDoc(1, 1)}, 10, new int[0]).getRank(1);
+    }
+}
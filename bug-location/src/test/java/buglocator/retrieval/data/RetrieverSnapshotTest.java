@@ -0,0 +1,95 @@
+package buglocator.retrieval.data;
+
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IndexInput;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test suite for saving and loading the snapshots of derived retriever state.
+ */
+public class RetrieverSnapshotTest {
+    private static final String NAME = "Retriever";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path indexPath;
+    private DirectoryReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        indexPath = temporaryFolder.getRoot().toPath();
+        try (IndexWriter writer = new IndexWriter(FSDirectory.open(indexPath),
+                new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            Document document = new Document();
+            document.add(new TextField("text", "null pointer", Field.Store.NO));
+            writer.addDocument(document);
+        }
+        reader = DirectoryReader.open(FSDirectory.open(indexPath));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+    }
+
+    @Test
+    public void roundTripTest() throws IOException {
+        save(new int[]{3, 1, 2});
+        save(new int[]{4, 5});
+
+        try (IndexInput input = RetrieverSnapshot.open(NAME, reader, reader)) {
+            assertArrayEquals(new int[]{4, 5}, RetrieverSnapshot.readInts(input));
+            assertArrayEquals(new float[]{0.5F}, RetrieverSnapshot.readFloats(input), 0);
+            assertNull(RetrieverSnapshot.readFloats(input));
+            Map<String, Integer> map = RetrieverSnapshot.readStringIntMap(input);
+            assertEquals(Collections.singletonMap("A.java", 7), map);
+        }
+        assertFalse(Files.exists(indexPath.resolve(RetrieverSnapshot.getFileName(NAME) + ".tmp")));
+    }
+
+    @Test
+    public void truncatedTest() throws IOException {
+        save(new int[]{3, 1, 2});
+        Path snapshotPath = indexPath.resolve(RetrieverSnapshot.getFileName(NAME));
+        for (long length : new long[]{Files.size(snapshotPath) - 1, 20, 0}) {
+            try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            }
+            assertNull(RetrieverSnapshot.open(NAME, reader, reader));
+        }
+    }
+
+    private void save(int[] ints) throws IOException {
+        RetrieverSnapshot.save(NAME, reader, reader, output -> {
+            RetrieverSnapshot.writeInts(output, ints);
+            RetrieverSnapshot.writeFloats(output, new float[]{0.5F});
+            RetrieverSnapshot.writeFloats(output, null);
+            RetrieverSnapshot.writeStringIntMap(output, Collections.singletonMap("A.java", 7));
+        });
+    }
+}
@@ -0,0 +1,68 @@
+package buglocator.retrieval.similarity;
+
+import buglocator.retrieval.data.TermFrequencyDictionary;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test suite for the document norms computed from term vectors.
+ */
+public class CosineSimilarityTest {
+    @Test
+    public void emptyDocumentTest() throws IOException {
+        FieldType withVectors = new FieldType(TextField.TYPE_NOT_STORED);
+        withVectors.setStoreTermVectors(true);
+        withVectors.freeze();
+
+        try (DirectoryReader reader = createReader(withVectors)) {
+            CosineSimilarity similarity = new CosineSimilarity(createFrequencies(), reader);
+            QueryVector query =
+                    similarity.createQueryVector(Collections.singletonMap("null", 1));
+
+            assertEquals(2 / (float) Math.sqrt(5), similarity.calculate(query, 0), 1e-6);
+            assertEquals(Float.NaN, similarity.calculate(query, 1), 0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingTermVectorsTest() throws IOException {
+        try (DirectoryReader reader = createReader(TextField.TYPE_NOT_STORED)) {
+            CosineSimilarity similarity = new CosineSimilarity(createFrequencies(), reader);
+            similarity.calculate(
+                    similarity.createQueryVector(Collections.singletonMap("null", 1)), 0);
+        }
+    }
+
+    private static DirectoryReader createReader(FieldType fieldType) throws IOException {
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer =
+                     new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            for (String text : new String[]{"null null except", ""}) {
+                Document document = new Document();
+                document.add(new Field("fullText", text, fieldType));
+                writer.addDocument(document);
+            }
+        }
+
+        return DirectoryReader.open(directory);
+    }
+
+    private static TermFrequencyDictionary createFrequencies() {
+        TermFrequencyDictionary frequencies = new TermFrequencyDictionary();
+        frequencies.putTermFrequency(0, "null", 2);
+        return frequencies;
+    }
+}
@@ -0,0 +1,262 @@
+package buglocator.retrieval.similarity;
+
+import buglocator.retrieval.data.TermFrequencyDictionary;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Test suite comparing the scoring loops of the similarities with the stream and {@code pow}
+ * based formulas they replaced, which must give the same scores within a relative difference of
+ * {@code 1e-6}.
+ */
+public class ScoringKernelTest {
+    private static final String[] TEXTS = {
+            "parser token token stream",
+            "parser parser parser grammar token",
+            "widget layout layout paint",
+            "widget event listener listener listener listener",
+            "socket buffer stream",
+            "buffer buffer token parser socket socket thread",
+            "layout paint paint widget event",
+            "thread"};
+    private static final String[] QUERIES = {
+            "parser",
+            "parser token",
+            "token token stream widget",
+            "listener listener event paint layout buffer",
+            "thread socket socket socket parser grammar"};
+    private static final int MINUS_3_SIGMA = 2;
+    private static final int PLUS_3_SIGMA = 6;
+    private static final double TOLERANCE = 1e-6;
+
+    private DirectoryReader reader;
+    private TermFrequencyDictionary termFrequencies;
+
+    @Before
+    public void setUp() throws IOException {
+        FieldType withVectors = new FieldType(TextField.TYPE_NOT_STORED);
+        withVectors.setStoreTermVectors(true);
+        withVectors.freeze();
+
+        RAMDirectory directory = new RAMDirectory();
+        try (IndexWriter writer =
+                     new IndexWriter(directory, new IndexWriterConfig(new WhitespaceAnalyzer()))) {
+            for (String text : TEXTS) {
+                Document document = new Document();
+                document.add(new Field("text", text, withVectors));
+                document.add(new Field("fullText", text, withVectors));
+                writer.addDocument(document);
+            }
+        }
+        reader = DirectoryReader.open(directory);
+
+        termFrequencies = new TermFrequencyDictionary();
+        for (int docId = 0; docId < reader.maxDoc(); docId++) {
+            TermsEnum termsEnum = reader.getTermVector(docId, "text").iterator();
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                termFrequencies.putTermFrequency(docId, term.utf8ToString(),
+                        (int) termsEnum.totalTermFreq());
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        reader.close();
+    }
+
+    @Test
+    public void bugLocatorSimilarityTest() throws IOException {
+        BugLocatorSimilarity similarity = new BugLocatorSimilarity(termFrequencies, reader,
+                MINUS_3_SIGMA, PLUS_3_SIGMA);
+        TfIdfSimilarity tfIdfSimilarity = new TfIdfSimilarity(termFrequencies, reader);
+
+        for (String queryText : QUERIES) {
+            Map<String, Integer> queryFrequencies = getFrequencies(queryText);
+            float queryNorm = previousTfIdfQueryNorm(similarity, queryFrequencies);
+            QueryVector query = similarity.createQueryVector(queryFrequencies);
+            QueryVector tfIdfQuery = tfIdfSimilarity.createQueryVector(queryFrequencies);
+            assertClose(queryNorm, query.getNorm());
+
+            for (int docId = 0; docId < reader.maxDoc(); docId++) {
+                float tfIdfScore =
+                        previousTfIdfScore(similarity, queryFrequencies, queryNorm, docId);
+                assertClose(tfIdfScore, tfIdfSimilarity.calculate(tfIdfQuery, docId));
+                assertClose(previousLengthNormalization(docId) * tfIdfScore,
+                        similarity.calculate(query, docId));
+            }
+        }
+    }
+
+    @Test
+    public void cosineSimilarityTest() throws IOException {
+        CosineSimilarity similarity = new CosineSimilarity(termFrequencies, reader);
+
+        for (String queryText : QUERIES) {
+            Map<String, Integer> queryFrequencies = getFrequencies(queryText);
+            float queryNorm = previousCosineQueryNorm(queryFrequencies);
+            QueryVector query = similarity.createQueryVector(queryFrequencies);
+            assertClose(queryNorm, query.getNorm());
+
+            for (int docId = 0; docId < reader.maxDoc(); docId++) {
+                assertClose(previousCosineScore(queryFrequencies, queryNorm, docId),
+                        similarity.calculate(query, docId));
+            }
+        }
+    }
+
+    /**
+     * The previous formulas failed on an empty reduce, the loops sum no terms instead.
+     */
+    @Test
+    public void emptyQueryTest() throws IOException {
+        BugLocatorSimilarity similarity = new BugLocatorSimilarity(termFrequencies, reader,
+                MINUS_3_SIGMA, PLUS_3_SIGMA);
+        CosineSimilarity cosineSimilarity = new CosineSimilarity(termFrequencies, reader);
+        Map<String, Integer> queryFrequencies = Collections.emptyMap();
+
+        try {
+            previousTfIdfQueryNorm(similarity, queryFrequencies);
+            fail("The previous query norm was computed for an empty query");
+        } catch (NoSuchElementException e) {
+            // Optional.get() on the empty reduce
+        }
+        try {
+            previousCosineScore(queryFrequencies, 1, 0);
+            fail("The previous cosine score was computed for an empty query");
+        } catch (NoSuchElementException e) {
+            // Optional.get() on the empty reduce
+        }
+
+        QueryVector query = similarity.createQueryVector(queryFrequencies);
+        QueryVector cosineQuery = cosineSimilarity.createQueryVector(queryFrequencies);
+        assertEquals(0, query.size());
+        assertEquals(0, query.getNorm(), 0);
+        assertEquals(0, cosineQuery.getNorm(), 0);
+        for (int docId = 0; docId < reader.maxDoc(); docId++) {
+            assertEquals(0, similarity.combineTfIdf(query, docId), 0);
+        }
+    }
+
+    private static Map<String, Integer> getFrequencies(String text) {
+        // The retrievers build the query frequencies in alphabetical order
+        Map<String, Integer> frequencies = new TreeMap<>();
+        for (String term : text.split(" ")) {
+            frequencies.merge(term, 1, Integer::sum);
+        }
+
+        return frequencies;
+    }
+
+    private static void assertClose(float expected, float actual) {
+        assertEquals(expected, actual, TOLERANCE * Math.abs(expected));
+    }
+
+    /*
+     * The formulas as they were computed before the scoring loops.
+     */
+
+    private float previousTfIdfQueryNorm(BugLocatorSimilarity similarity,
+                                         Map<String, Integer> queryFreqs) {
+        int numDocs = reader.numDocs();
+        return (float) Math.sqrt(queryFreqs.entrySet().stream()
+                .map(e -> {
+                    float dampTf = (float) (Math.log(e.getValue()) + 1);
+                    float idf = (float) Math.log(numDocs / similarity.getDocFreq(e.getKey()));
+                    return (float) Math.pow(dampTf * idf, 2);
+                })
+                .reduce((x, y) -> x + y).get());
+    }
+
+    private float previousTfIdfScore(BugLocatorSimilarity similarity,
+                                     Map<String, Integer> queryFrequencies, float queryNorm,
+                                     int docId) throws IOException {
+        float numDocs = reader.numDocs();
+        float firstPart = 1 / queryNorm;
+
+        Terms termVector = reader.getTermVector(docId, "text");
+        float tfIdfNormAccum = 0;
+        TermsEnum termsEnum = termVector.iterator();
+        BytesRef term;
+        while ((term = termsEnum.next()) != null) {
+            int totalTermFreq = (int) termsEnum.totalTermFreq();
+            float tfIdfWeight = (float) ((Math.log(totalTermFreq) + 1) *
+                    Math.log(numDocs / similarity.getDocFreq(term.utf8ToString())));
+            tfIdfNormAccum += Math.pow(tfIdfWeight, 2);
+        }
+        float secondPart = 1 / (float) Math.sqrt(tfIdfNormAccum);
+
+        float thirdPart = queryFrequencies.entrySet().stream().map(e -> {
+            int docFreq = termFrequencies.get(e.getKey()).get(docId, 0);
+            if (docFreq == 0) {
+                return 0F;
+            } else {
+                return (float) ((Math.log(docFreq) + 1) * (Math.log(e.getValue()) + 1) *
+                        Math.pow(Math.log(numDocs / similarity.getDocFreq(e.getKey())), 2));
+            }
+        }).reduce((x, y) -> x + y).get();
+
+        return firstPart * secondPart * thirdPart;
+    }
+
+    private float previousLengthNormalization(int docId) throws IOException {
+        int docLen = 0;
+        TermsEnum termsEnum = reader.getTermVector(docId, "text").iterator();
+        while (termsEnum.next() != null) {
+            docLen += termsEnum.totalTermFreq();
+        }
+        if (docLen < MINUS_3_SIGMA) {
+            return 0.5F;
+        } else if (docLen > PLUS_3_SIGMA) {
+            return 1;
+        } else {
+            float n = (6 * (docLen - MINUS_3_SIGMA)) / (float) (PLUS_3_SIGMA - MINUS_3_SIGMA);
+            float power = (float) Math.exp(n);
+            return power / (1 + power);
+        }
+    }
+
+    private static float previousCosineQueryNorm(Map<String, Integer> queryFreqs) {
+        return (float) Math.sqrt(queryFreqs.values().stream()
+                .map(f -> (float) Math.pow(f, 2))
+                .reduce((x, y) -> x + y).get());
+    }
+
+    private float previousCosineScore(Map<String, Integer> queryFrequencies, float queryNorm,
+                                      int docId) throws IOException {
+        float docNorm = 0;
+        TermsEnum termIterator = reader.getTermVector(docId, "fullText").iterator();
+        while (termIterator.next() != null) {
+            docNorm += Math.pow(termIterator.totalTermFreq(), 2);
+        }
+        docNorm = (float) Math.sqrt(docNorm);
+
+        return queryFrequencies.entrySet().stream().map(e -> {
+            int docFreq = termFrequencies.get(e.getKey()).get(docId, 0);
+            return e.getValue() * docFreq;
+        }).reduce((i, j) -> i + j).get() / (docNorm * queryNorm);
+    }
+}
@@ -0,0 +1,58 @@
+package data.extraction;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test suite for the on-disk extraction cache.
+ */
+public class ExtractionCacheTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void keyDependsOnContentsTest() {
+        assertEquals(key("class A {}"), key("class A {}"));
+        assertNotEquals(key("class A {}"), key("class B {}"));
+        assertNotEquals(key("class A {}"), ExtractionCache.getKey("scanner",
+                "class A {}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void persistsBetweenInstancesTest() throws IOException {
+        Path folder = temporaryFolder.getRoot().toPath();
+        new ExtractionCache(folder, 1000).put(key("class A {}"), "A", 10);
+
+        ExtractionCache cache = new ExtractionCache(folder, 1000);
+        assertEquals("A", cache.get(key("class A {}")));
+        assertNull(cache.get(key("class B {}")));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedTest() throws IOException {
+        ExtractionCache cache = new ExtractionCache(temporaryFolder.getRoot().toPath(), 10);
+        cache.put("a", "aaaa", 0);
+        cache.put("b", "bbbb", 0);
+        cache.get("a");
+        cache.put("c", "cccc", 0);
+
+        assertEquals("aaaa", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(8, cache.getUsedBytes());
+    }
+
+    private static String key(String sourceString) {
+        return ExtractionCache.getKey("ast", sourceString.getBytes(StandardCharsets.UTF_8));
+    }
+}
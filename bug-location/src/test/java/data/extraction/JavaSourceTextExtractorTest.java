@@ -83,5 +83,8 @@ public class JavaSourceTextExtractorTest {
 
         expectedAnswer.stream().forEach(t -> assertTrue("Extracted text not found in answer",
                 answer.contains(t)));
+
+        assertEquals("Scanner texts are different from the AST ones",
+                answer, JavaSourceTextExtractor.scanTexts(sourceString));
     }
 }